@@ -12,6 +12,7 @@ import com.frodo.app.android.core.toolbox.ResourceManager;
 import com.frodo.app.android.core.toolbox.SDCardUtils;
 import com.frodo.app.android.core.toolbox.StrictModeWrapper;
 import com.frodo.app.framework.broadcast.GlobalLocalBroadcastManager;
+import com.frodo.app.framework.cache.CacheSystem;
 import com.frodo.app.framework.config.Configuration;
 import com.frodo.app.framework.context.MicroContext;
 import com.frodo.app.framework.controller.MainController;
@@ -90,6 +91,10 @@ public abstract class MicroApplication extends Application implements MicroConte
     public abstract ExceptionHandler loadExceptionHandler();
 
     public final void enableCache(boolean enable) {
+        CacheSystem previous = controller.getCacheSystem();
+        if (previous != null) {
+            previous.close();
+        }
         if (enable) {
             controller.setCacheSystem(new AndroidCacheSystem(this.controller, getFilesDirName() + "cache" + File.separator));
         } else {
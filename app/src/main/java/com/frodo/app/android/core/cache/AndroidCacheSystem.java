@@ -3,10 +3,18 @@ package com.frodo.app.android.core.cache;
 import android.content.Context;
 
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.frodo.app.android.core.toolbox.JsonConverter;
 import com.frodo.app.framework.cache.Cache;
+import com.frodo.app.framework.cache.CacheStats;
 import com.frodo.app.framework.cache.CacheSystem;
+import com.frodo.app.framework.cache.DiskLruCache;
+import com.frodo.app.framework.cache.EvictionCause;
+import com.frodo.app.framework.cache.EvictionListener;
+import com.frodo.app.framework.cache.MemoryCache;
+import com.frodo.app.framework.cache.SegmentStore;
+import com.frodo.app.framework.cache.StatsCounter;
+import com.frodo.app.framework.cache.TimingWheel;
+import com.frodo.app.framework.cache.ValueCodec;
+import com.frodo.app.framework.cache.Weigher;
 import com.frodo.app.framework.controller.AbstractChildSystem;
 import com.frodo.app.framework.controller.IController;
 import com.frodo.app.framework.filesystem.FileSystem;
@@ -14,6 +22,14 @@ import com.frodo.app.framework.filesystem.FileSystem;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 缓存实现 (sharepreference, db, disk)
@@ -21,10 +37,69 @@ import java.lang.reflect.Type;
  */
 public class AndroidCacheSystem extends AbstractChildSystem implements CacheSystem {
 
+    private static final long DEFAULT_DISK_CACHE_SIZE = 32 * 1024 * 1024;
+    private static final long DEFAULT_SEGMENT_STORE_SIZE = 16 * 1024 * 1024;
+    /**
+     * larger {@link Cache.Type#DISK} entries get a file of their own
+     */
+    private static final int SMALL_ENTRY_MAX_BYTES = 16 * 1024;
+    /**
+     * "TTL1", starts the {@link Cache.Type#DISK} entries put with a time to live,
+     * followed by the write time and the time to live in milliseconds of the wall clock
+     */
+    private static final int EXPIRY_MAGIC = 0x54544c31;
+    private static final int EXPIRY_HEADER_BYTES = 4 + 8 + 8;
+    /**
+     * suffix of the JSON files which held the {@link Cache.Type#DISK} entries before the disk cache
+     */
+    private static final String LEGACY_FILE_SUFFIX = ".cache.tmp";
+
+    /**
+     * rough heap size of a cached object: the payload of strings and arrays, a fixed cost for other objects
+     */
+    public static final Weigher<String, Object> ESTIMATED_SIZE_WEIGHER = new Weigher<String, Object>() {
+        @Override
+        public int weigh(String key, Object value) {
+            return (int) Math.min(40 + 2 * key.length() + estimateSize(value), Integer.MAX_VALUE);
+        }
+    };
+
     private Context context;
     private String cacheDir;
 
     private FileSystem fileSystem;
+    private final StatsCounter internalStats = new StatsCounter();
+    private final StatsCounter diskStats = new StatsCounter();
+    private final List<EvictionListener> evictionListeners = new CopyOnWriteArrayList<>();
+    private final EvictionListener diskEvictionListener = new EvictionListener() {
+        @Override
+        public void onEvicted(String key, EvictionCause cause) {
+            diskStats.recordEviction(cause);
+            notifyEvicted(key, cause);
+        }
+    };
+    /**
+     * {@link Cache.Type#INTERNAL}, an eighth of the heap by default
+     */
+    private volatile MemoryCache<String, Object> internalCache =
+            newInternalCache(Runtime.getRuntime().maxMemory() / 8, ESTIMATED_SIZE_WEIGHER);
+    /**
+     * {@link Cache.Type#DISK} entries larger than {@link #SMALL_ENTRY_MAX_BYTES},
+     * opened on first use in the "disk" directory of the cache dir;
+     * read without lock, opened and closed holding the lock of this system
+     */
+    private volatile DiskLruCache diskCache;
+    private long diskCacheSize = DEFAULT_DISK_CACHE_SIZE;
+    /**
+     * the small {@link Cache.Type#DISK} entries, opened on first use in the "segments" directory of the cache dir,
+     * as {@link #diskCache}
+     */
+    private volatile SegmentStore segmentStore;
+    /**
+     * guarded by the lock of this system
+     */
+    private boolean legacyFilesDeleted;
+    private volatile ValueCodec valueCodec = JacksonValueCodec.smile();
 
     public AndroidCacheSystem(IController controller, String cacheDir) {
         super(controller);
@@ -40,47 +115,300 @@ public class AndroidCacheSystem extends AbstractChildSystem implements CacheSyst
     }
 
     @Override
-    public void setCacheDir(String dir) {
+    public synchronized void setCacheDir(String dir) {
         this.cacheDir = dir;
+        closeDiskCache();
+    }
+
+    @Override
+    public ValueCodec getValueCodec() {
+        return valueCodec;
+    }
+
+    /**
+     * @param codec such as {@link JacksonValueCodec#smile()}, the default
+     */
+    @Override
+    public void setValueCodec(ValueCodec codec) {
+        this.valueCodec = codec;
+    }
+
+    /**
+     * replace the {@link Cache.Type#INTERNAL} cache, its entries are dropped
+     *
+     * @param maxWeight total weight of the entries
+     * @param weigher   weight of an entry, such as {@link #ESTIMATED_SIZE_WEIGHER}, null for a weight of 1 per entry
+     */
+    public void setInternalCacheSize(long maxWeight, Weigher<String, Object> weigher) {
+        this.internalCache = newInternalCache(maxWeight, weigher);
+    }
+
+    private MemoryCache<String, Object> newInternalCache(long maxWeight, Weigher<String, Object> weigher) {
+        return new MemoryCache<String, Object>(maxWeight, weigher) {
+            @Override
+            protected void onEvicted(String key, Object value) {
+                internalStats.recordEviction(EvictionCause.SIZE);
+                notifyEvicted(key, EvictionCause.SIZE);
+            }
+        };
+    }
+
+    public MemoryCache<String, Object> getInternalCache() {
+        return internalCache;
+    }
+
+    /**
+     * @param maxBytes total size of the {@link Cache.Type#DISK} entries, least recently used ones are evicted
+     */
+    public synchronized void setDiskCacheSize(long maxBytes) {
+        this.diskCacheSize = maxBytes;
+        if (diskCache != null) {
+            try {
+                diskCache.setMaxSize(maxBytes);
+            } catch (IOException e) {
+                getController().getLogCollector().e(systemName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * double checked: every disk read and write gets the cache, only the first one opens it
+     */
+    private DiskLruCache getDiskCache() throws IOException {
+        DiskLruCache cache = diskCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = diskCache;
+                if (cache == null) {
+                    cache = DiskLruCache.open(new File(cacheDir, "disk"), diskCacheSize);
+                    cache.setEvictionListener(diskEvictionListener);
+                    diskCache = cache;
+                    deleteLegacyFiles();
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * the JSON files written in the file path before the disk cache are never read again, delete them once
+     */
+    private void deleteLegacyFiles() {
+        if (legacyFilesDeleted || fileSystem == null) {
+            return;
+        }
+        legacyFilesDeleted = true;
+        File[] files = new File(fileSystem.getFilePath()).listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isFile() && file.getName().endsWith(LEGACY_FILE_SUFFIX) && !file.delete()) {
+                getController().getLogCollector().e(systemName(), "cannot delete " + file);
+            }
+        }
+    }
+
+    private SegmentStore getSegmentStore() throws IOException {
+        SegmentStore store = segmentStore;
+        if (store == null) {
+            synchronized (this) {
+                store = segmentStore;
+                if (store == null) {
+                    store = SegmentStore.open(new File(cacheDir, "segments"), DEFAULT_SEGMENT_STORE_SIZE);
+                    store.setEvictionListener(diskEvictionListener);
+                    segmentStore = store;
+                }
+            }
+        }
+        return store;
+    }
+
+    private synchronized void closeDiskCache() {
+        if (diskCache != null) {
+            try {
+                diskCache.close();
+            } catch (IOException e) {
+                getController().getLogCollector().e(systemName(), e.getMessage());
+            }
+            diskCache = null;
+        }
+        if (segmentStore != null) {
+            segmentStore.close();
+            segmentStore = null;
+        }
     }
 
     @Override
     public boolean existCacheByType(String key, Cache.Type type) {
-        return false;
+        switch (type) {
+            case INTERNAL:
+                return existCacheInInternal(key);
+            case DATABASE:
+                return existCacheInDatabase(key);
+            case DISK:
+                return existCacheInDisk(key);
+            default:
+                return false;
+        }
     }
 
     @Override
     public <T> T findCacheByType(String key, Type classType, Cache.Type type) {
-        return null;
+        switch (type) {
+            case INTERNAL:
+                return findCacheFromInternal(key, classType);
+            case DATABASE:
+                return findCacheFromDatabase(key, classType);
+            case DISK:
+                return findCacheFromDisk(key, classType);
+            default:
+                return null;
+        }
     }
 
     @Override
     public <K, V> boolean put(K key, V value, Cache.Type type) {
+        return put(key, value, type, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param ttl only stored with the {@link Cache.Type#DISK} entries, the {@link Cache.Type#INTERNAL} ones do not
+     *            outlive the process and are expired by their {@link com.frodo.app.framework.cache.AbstractCache}
+     */
+    @Override
+    public <K, V> boolean put(K key, V value, Cache.Type type, long ttl, TimeUnit unit) {
+        if (value == null) {
+            evict(key.toString(), type, EvictionCause.EXPLICIT);
+            return type.equals(Cache.Type.INTERNAL) || type.equals(Cache.Type.DISK);
+        }
+        if (type.equals(Cache.Type.INTERNAL)) {
+            internalCache.put(key.toString(), value);
+            return true;
+        }
         if (type.equals(Cache.Type.DISK)) {
-            File file = fileSystem.createFile(key.toString());
-            fileSystem.writeToFile(file, JsonConverter.toJson(value));
+            try {
+                String diskKey = DiskLruCache.hashKey(key.toString());
+                byte[] data = valueCodec.encode(value);
+                long ttlMillis = unit.toMillis(ttl);
+                if (ttlMillis > 0) {
+                    data = ByteBuffer.allocate(EXPIRY_HEADER_BYTES + data.length)
+                            .putInt(EXPIRY_MAGIC).putLong(System.currentTimeMillis()).putLong(ttlMillis)
+                            .put(data).array();
+                }
+                if (data.length <= SMALL_ENTRY_MAX_BYTES) {
+                    getSegmentStore().put(diskKey, data);
+                    getDiskCache().remove(diskKey);
+                } else {
+                    getDiskCache().put(diskKey, data);
+                    getSegmentStore().remove(diskKey);
+                }
+                return true;
+            } catch (IOException e) {
+                getController().getLogCollector().e(systemName(), e.getMessage());
+            }
         }
         return false;
     }
 
     @Override
     public void evict(String key) {
-        fileSystem.clearDirectory(new File(key));
+        if (internalCache.remove(key) != null) {
+            internalStats.recordEviction(EvictionCause.EXPLICIT);
+        }
+        try {
+            removeFromDisk(DiskLruCache.hashKey(key), EvictionCause.EXPLICIT);
+        } catch (IOException e) {
+            getController().getLogCollector().e(systemName(), e.getMessage());
+        }
+    }
+
+    @Override
+    public void evict(String key, Cache.Type type, EvictionCause cause) {
+        if (type.equals(Cache.Type.INTERNAL)) {
+            if (internalCache.remove(key) != null) {
+                internalStats.recordEviction(cause);
+            }
+        } else if (type.equals(Cache.Type.DISK)) {
+            try {
+                removeFromDisk(DiskLruCache.hashKey(key), cause);
+            } catch (IOException e) {
+                getController().getLogCollector().e(systemName(), e.getMessage());
+            }
+        }
+    }
+
+    private void removeFromDisk(String diskKey, EvictionCause cause) throws IOException {
+        if (getSegmentStore().remove(diskKey) | getDiskCache().remove(diskKey)) {
+            diskStats.recordEviction(cause);
+        }
     }
 
     @Override
     public void evictAll() {
+        internalStats.recordEvictions(EvictionCause.EXPLICIT, internalCache.size());
+        internalCache.clear();
+        try {
+            diskStats.recordEvictions(EvictionCause.EXPLICIT, getSegmentStore().count() + getDiskCache().count());
+            getSegmentStore().evictAll();
+            getDiskCache().evictAll();
+        } catch (IOException e) {
+            getController().getLogCollector().e(systemName(), e.getMessage());
+        }
+    }
 
+    /**
+     * @param listener told about the {@link Cache.Type#INTERNAL} and {@link Cache.Type#DISK} entries evicted
+     *                 to make room and the disk entries found expired
+     */
+    @Override
+    public void addEvictionListener(EvictionListener listener) {
+        evictionListeners.add(listener);
+    }
+
+    @Override
+    public void removeEvictionListener(EvictionListener listener) {
+        evictionListeners.remove(listener);
+    }
+
+    private void notifyEvicted(String storageKey, EvictionCause cause) {
+        for (EvictionListener listener : evictionListeners) {
+            listener.onEvicted(storageKey, cause);
+        }
+    }
+
+    /**
+     * @return the key itself for {@link Cache.Type#INTERNAL}, its hash for {@link Cache.Type#DISK}
+     */
+    @Override
+    public String getStorageKey(String key, Cache.Type type) {
+        return type.equals(Cache.Type.DISK) ? DiskLruCache.hashKey(key) : key;
+    }
+
+    @Override
+    public void close() {
+        closeDiskCache();
+        TimingWheel.shutdownDefault();
     }
 
     @Override
     public boolean existCacheInInternal(String key) {
-        return false;
+        return internalCache.containsKey(key);
     }
 
+    /**
+     * @return the cached object itself, not a copy: it must not be changed
+     */
     @Override
+    @SuppressWarnings("unchecked")
     public <T> T findCacheFromInternal(String key, Type classType) {
-        return null;
+        Object value = internalCache.get(key);
+        if (value == null || classType instanceof Class && !((Class<?>) classType).isInstance(value)) {
+            internalStats.recordMiss();
+            return null;
+        }
+        internalStats.recordHit();
+        return (T) value;
     }
 
     @Override
@@ -93,20 +421,133 @@ public class AndroidCacheSystem extends AbstractChildSystem implements CacheSyst
         return null;
     }
 
+    /**
+     * @param fileName key of the entry in the disk cache
+     */
     @Override
     public boolean existCacheInDisk(String fileName) {
-        return fileSystem.exists(new File(fileName));
+        try {
+            String diskKey = DiskLruCache.hashKey(fileName);
+            return getSegmentStore().contains(diskKey) || getDiskCache().contains(diskKey);
+        } catch (IOException e) {
+            getController().getLogCollector().e(systemName(), e.getMessage());
+            return false;
+        }
     }
 
+    /**
+     * @param fileName key of the entry in the disk cache
+     * @param clazz    a {@link TypeReference} or a {@link Type}
+     */
     @Override
     public <T> T findCacheFromDisk(String fileName, Object clazz) {
+        Type type;
+        if (clazz instanceof TypeReference) {
+            type = ((TypeReference<?>) clazz).getType();
+        } else if (clazz instanceof Type) {
+            type = (Type) clazz;
+        } else {
+            return null;
+        }
+        String diskKey = DiskLruCache.hashKey(fileName);
+        long start = System.nanoTime();
+        byte[] data;
         try {
-            if (clazz instanceof TypeReference) {
-                return (T) new ObjectMapper().readValue(new File(fileName), (TypeReference) clazz);
+            data = getSegmentStore().get(diskKey);
+            if (data == null) {
+                data = getDiskCache().get(diskKey);
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            diskStats.recordLoadFailure(System.nanoTime() - start);
+            getController().getLogCollector().e(systemName(), e.getMessage());
+            return null;
+        }
+        if (data == null) {
+            diskStats.recordMiss();
+            return null;
+        }
+        if (data.length >= EXPIRY_HEADER_BYTES && ByteBuffer.wrap(data).getInt() == EXPIRY_MAGIC) {
+            ByteBuffer header = ByteBuffer.wrap(data, 4, EXPIRY_HEADER_BYTES - 4);
+            long writeMillis = header.getLong();
+            long ttlMillis = header.getLong();
+            long age = System.currentTimeMillis() - writeMillis;
+            // negative after the clock was set back, the entry is kept
+            if (age >= ttlMillis) {
+                diskStats.recordMiss();
+                try {
+                    removeFromDisk(diskKey, EvictionCause.EXPIRED);
+                } catch (IOException e) {
+                    getController().getLogCollector().e(systemName(), e.getMessage());
+                }
+                notifyEvicted(diskKey, EvictionCause.EXPIRED);
+                return null;
+            }
+            data = Arrays.copyOfRange(data, EXPIRY_HEADER_BYTES, data.length);
+        }
+        try {
+            T value = valueCodec.decode(data, type);
+            diskStats.recordHit();
+            diskStats.recordLoadSuccess(System.nanoTime() - start);
+            return value;
+        } catch (IOException e) {
+            diskStats.recordMiss();
+            diskStats.recordLoadFailure(System.nanoTime() - start);
+            // written by an older version of the value class or with another codec
+            evict(fileName);
+            getController().getLogCollector().e(systemName(), e.getMessage());
         }
         return null;
     }
+
+    /**
+     * {@link Cache.Type#DISK} load times are the reads and decodes of the hits, the disk entries are not counted
+     * until the disk cache is opened by a first use
+     */
+    @Override
+    public Map<Cache.Type, CacheStats> stats() {
+        Map<Cache.Type, CacheStats> stats = new EnumMap<>(Cache.Type.class);
+        MemoryCache<String, Object> memoryCache = internalCache;
+        stats.put(Cache.Type.INTERNAL, internalStats.snapshot(memoryCache.size(), memoryCache.weight()));
+        long entryCount = 0;
+        long byteSize = 0;
+        DiskLruCache disk = diskCache;
+        if (disk != null) {
+            entryCount += disk.count();
+            byteSize += disk.size();
+        }
+        SegmentStore segments = segmentStore;
+        if (segments != null) {
+            entryCount += segments.count();
+            byteSize += segments.size();
+        }
+        stats.put(Cache.Type.DISK, diskStats.snapshot(entryCount, byteSize));
+        return stats;
+    }
+
+    private static long estimateSize(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof CharSequence) {
+            return 40 + 2 * ((CharSequence) value).length();
+        }
+        if (value instanceof byte[]) {
+            return 16 + ((byte[]) value).length;
+        }
+        if (value instanceof Collection) {
+            long size = 40;
+            for (Object item : (Collection<?>) value) {
+                size += 8 + estimateSize(item);
+            }
+            return size;
+        }
+        if (value instanceof Map) {
+            long size = 40;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += 32 + estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+            }
+            return size;
+        }
+        return 64;
+    }
 }
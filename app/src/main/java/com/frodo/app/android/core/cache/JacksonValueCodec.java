@@ -0,0 +1,77 @@
+package com.frodo.app.android.core.cache;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.frodo.app.framework.cache.ValueCodec;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link ValueCodec} backed by Jackson, in binary Smile by default or in JSON text.
+ * The mapper is configured once, then the writer and a reader per type are shared by every thread,
+ * so a value is not introspected again on each call.
+ */
+public class JacksonValueCodec implements ValueCodec {
+
+    private final String name;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter writer;
+    private final ConcurrentHashMap<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    /**
+     * Smile, a binary JSON: numbers are not text and repeated names and short strings are written once,
+     * so the values are smaller and faster to decode than in JSON.
+     */
+    public static JacksonValueCodec smile() {
+        SmileFactory smileFactory = new SmileFactory();
+        smileFactory.configure(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES, true);
+        return new JacksonValueCodec("smile", new ObjectMapper(smileFactory));
+    }
+
+    public static JacksonValueCodec json() {
+        return new JacksonValueCodec("json", new ObjectMapper());
+    }
+
+    /**
+     * @param objectMapper copied, later changes to it do not apply to this codec
+     */
+    public JacksonValueCodec(String name, ObjectMapper objectMapper) {
+        this.name = name;
+        this.objectMapper = objectMapper.copy();
+        this.objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.writer = this.objectMapper.writer();
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public byte[] encode(Object value) throws IOException {
+        return writer.writeValueAsBytes(value);
+    }
+
+    @Override
+    public <T> T decode(byte[] data, Type type) throws IOException {
+        return readerFor(type).readValue(data);
+    }
+
+    private ObjectReader readerFor(Type type) {
+        ObjectReader reader = readers.get(type);
+        if (reader == null) {
+            reader = objectMapper.readerFor(objectMapper.getTypeFactory().constructType(type));
+            ObjectReader previous = readers.putIfAbsent(type, reader);
+            if (previous != null) {
+                reader = previous;
+            }
+        }
+        return reader;
+    }
+}
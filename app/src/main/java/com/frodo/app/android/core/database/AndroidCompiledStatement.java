@@ -0,0 +1,200 @@
+package com.frodo.app.android.core.database;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+
+import com.frodo.app.framework.exception.DbException;
+import com.frodo.app.framework.orm.CompiledStatement;
+import com.frodo.app.framework.orm.sql.BindArgs;
+import com.frodo.app.framework.orm.table.ColumnUtils;
+
+/**
+ * {@link CompiledStatement} backed by a {@link SQLiteStatement}.
+ */
+public class AndroidCompiledStatement implements CompiledStatement {
+
+    private final SQLiteDatabase database;
+    private final SQLiteStatement statement;
+    private final String sql;
+    /**
+     * run after an execution which may have changed rows, null for a statement which only reads
+     */
+    private final Runnable changeTracker;
+    /**
+     * "SELECT changes()" for executeUpdateDelete before Honeycomb
+     */
+    private SQLiteStatement changesStatement;
+
+    public AndroidCompiledStatement(SQLiteDatabase database, String sql) throws DbException {
+        this(database, sql, null);
+    }
+
+    /**
+     * @param changeTracker run after every execution which may have changed rows
+     */
+    public AndroidCompiledStatement(SQLiteDatabase database, String sql, Runnable changeTracker) throws DbException {
+        this.database = database;
+        this.sql = sql;
+        this.changeTracker = changeTracker;
+        try {
+            this.statement = database.compileStatement(sql);
+        } catch (Throwable e) {
+            throw new DbException(e);
+        }
+    }
+
+    @Override
+    public String getSql() {
+        return sql;
+    }
+
+    @Override
+    public void bind(int index, long value) {
+        statement.bindLong(index, value);
+    }
+
+    @Override
+    public void bind(int index, double value) {
+        statement.bindDouble(index, value);
+    }
+
+    @Override
+    public void bind(int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    @Override
+    public void bind(int index, byte[] value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindBlob(index, value);
+        }
+    }
+
+    @Override
+    public void bindNull(int index) {
+        statement.bindNull(index);
+    }
+
+    @Override
+    public void bindArgs(Object... args) {
+        if (args == null) return;
+        for (int i = 0; i < args.length; i++) {
+            bindObject(statement, i + 1, ColumnUtils.convert2DbColumnValueIfNeeded(args[i]));
+        }
+    }
+
+    /**
+     * bind every arg with its type from index 1, numbers are not converted to text
+     */
+    /* package */ static void bindArgs(SQLiteStatement statement, BindArgs args) {
+        for (int i = 0; i < args.size(); i++) {
+            switch (args.getType(i)) {
+                case BindArgs.TYPE_LONG:
+                    statement.bindLong(i + 1, args.getLong(i));
+                    break;
+                case BindArgs.TYPE_DOUBLE:
+                    statement.bindDouble(i + 1, args.getDouble(i));
+                    break;
+                case BindArgs.TYPE_STRING:
+                    statement.bindString(i + 1, args.getString(i));
+                    break;
+                case BindArgs.TYPE_BLOB:
+                    statement.bindBlob(i + 1, args.getBlob(i));
+                    break;
+                default:
+                    statement.bindNull(i + 1);
+                    break;
+            }
+        }
+    }
+
+    /* package */ static void bindObject(SQLiteStatement statement, int index, Object value) {
+        if (value instanceof Boolean) {
+            statement.bindLong(index, (Boolean) value ? 1 : 0);
+        } else {
+            DatabaseUtils.bindObjectToProgram(statement, index, value);
+        }
+    }
+
+    @Override
+    public void clearBindings() {
+        statement.clearBindings();
+    }
+
+    @Override
+    public void execute() throws DbException {
+        try {
+            statement.execute();
+        } catch (Throwable e) {
+            throw new DbException(e);
+        }
+        trackChange();
+    }
+
+    @Override
+    public long executeInsert() throws DbException {
+        long rowId;
+        try {
+            rowId = statement.executeInsert();
+        } catch (Throwable e) {
+            throw new DbException(e);
+        }
+        if (rowId != -1) {
+            trackChange();
+        }
+        return rowId;
+    }
+
+    @Override
+    public int executeUpdateDelete() throws DbException {
+        int changes;
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                changes = statement.executeUpdateDelete();
+            } else {
+                statement.execute();
+                if (changesStatement == null) {
+                    changesStatement = database.compileStatement("SELECT changes()");
+                }
+                changes = (int) changesStatement.simpleQueryForLong();
+            }
+        } catch (Throwable e) {
+            throw new DbException(e);
+        }
+        if (changes > 0) {
+            trackChange();
+        }
+        return changes;
+    }
+
+    private void trackChange() {
+        if (changeTracker != null) {
+            changeTracker.run();
+        }
+    }
+
+    @Override
+    public long simpleQueryForLong() throws DbException {
+        try {
+            return statement.simpleQueryForLong();
+        } catch (Throwable e) {
+            throw new DbException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        statement.close();
+        if (changesStatement != null) {
+            changesStatement.close();
+        }
+    }
+}
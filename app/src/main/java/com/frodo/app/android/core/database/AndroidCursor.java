@@ -16,6 +16,16 @@ public class AndroidCursor implements Cursor {
         return cursor;
     }
 
+    @Override
+    public boolean moveToNext() {
+        return cursor.moveToNext();
+    }
+
+    @Override
+    public int getCount() {
+        return cursor.getCount();
+    }
+
     @Override
     public boolean isNull(int index) {
         return cursor.isNull(index);
@@ -57,17 +67,17 @@ public class AndroidCursor implements Cursor {
     }
 
     @Override
-    public Double getDouble(int index) {
+    public double getDouble(int index) {
         return cursor.getDouble(index);
     }
 
     @Override
-    public Float getFloat(int index) {
+    public float getFloat(int index) {
         return cursor.getFloat(index);
     }
 
     @Override
-    public Short getShort(int index) {
+    public short getShort(int index) {
         return cursor.getShort(index);
     }
 }
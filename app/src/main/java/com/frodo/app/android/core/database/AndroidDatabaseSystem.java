@@ -2,21 +2,33 @@ package com.frodo.app.android.core.database;
 
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
 
 import com.frodo.app.android.core.toolbox.IOUtils;
 import com.frodo.app.framework.controller.AbstractChildSystem;
 import com.frodo.app.framework.controller.IController;
 import com.frodo.app.framework.exception.DbException;
+import com.frodo.app.framework.orm.AsyncDatabase;
+import com.frodo.app.framework.orm.ChangeEvent;
+import com.frodo.app.framework.orm.ChangeLog;
+import com.frodo.app.framework.orm.CompiledStatement;
 import com.frodo.app.framework.orm.DaoConfig;
 import com.frodo.app.framework.orm.Database;
 import com.frodo.app.framework.orm.DbUpgradeListener;
+import com.frodo.app.framework.orm.EntityCache;
+import com.frodo.app.framework.orm.ShardedDatabase;
+import com.frodo.app.framework.orm.TableChangeDispatcher;
+import com.frodo.app.framework.orm.TableChangeListener;
 import com.frodo.app.framework.orm.sql.CursorUtils;
 import com.frodo.app.framework.orm.sql.DbModelSelector;
 import com.frodo.app.framework.orm.sql.Selector;
 import com.frodo.app.framework.orm.sql.SqlInfo;
 import com.frodo.app.framework.orm.sql.SqlInfoBuilder;
+import com.frodo.app.framework.orm.sql.SqlMetrics;
 import com.frodo.app.framework.orm.sql.WhereBuilder;
 import com.frodo.app.framework.orm.table.DbModel;
+import com.frodo.app.framework.orm.table.GroupAggregate;
 import com.frodo.app.framework.orm.table.Id;
 import com.frodo.app.framework.orm.table.Table;
 import com.frodo.app.framework.orm.table.TableUtils;
@@ -25,9 +37,19 @@ import com.google.common.base.Preconditions;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -36,21 +58,58 @@ import java.util.concurrent.locks.ReentrantLock;
  * Created by frodo on 2015/6/20.
  */
 public final class AndroidDatabaseSystem extends AbstractChildSystem implements Database {
+    private static final int STATEMENT_CACHE_SIZE = 32;
     /**
      * key: dbName
      */
     private static HashMap<String, AndroidDatabaseSystem> daoMap = new HashMap<>();
     /////////////////////// temp cache ////////////////////////////////////////////////////////////////
     private final FindTempCache findTempCache = new FindTempCache();
+    private final SqlMetrics sqlMetrics = new SqlMetrics();
+    private final EntityCache entityCache = new EntityCache();
+    private volatile AsyncDatabase asyncDatabase;
+    private final TableChangeDispatcher tableChangeDispatcher;
+    private final ChangeLog changeLog;
+    /**
+     * tables changed by the running write transaction, only touched by the thread owning it
+     */
+    private final Set<String> changedTables = new HashSet<>();
+    private final Set<Class<?>> changedEntityTypes = new HashSet<>();
+    private final List<ChangeEvent> changeEvents = new ArrayList<>();
+    private boolean transactionSuccessful = false;
+    /**
+     * key: sql template of execNonQuery with bind args, least recently used statements are closed
+     */
+    private final LinkedHashMap<String, SQLiteStatement> statementCache =
+            new LinkedHashMap<String, SQLiteStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+                    if (size() > STATEMENT_CACHE_SIZE) {
+                        eldest.getValue().close();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+    /**
+     * incremented when the statement cache is cleared, guarded by the cache
+     */
+    private int statementCacheGeneration = 0;
     private SQLiteDatabase database;
     private DaoConfig daoConfig;
     private boolean allowTransaction = false;
     private Lock writeLock = new ReentrantLock();
     private volatile boolean writeLocked = false;
+    /**
+     * after an upgrade the indexes of existing tables are created when the table is first checked
+     */
+    private volatile boolean indexUpgradePending = false;
 
     private AndroidDatabaseSystem(IController controller, DaoConfig daoConfig) {
         super(controller);
         this.database = createDatabase(daoConfig);
+        this.tableChangeDispatcher = new TableChangeDispatcher(daoConfig.getDbName());
+        this.changeLog = new ChangeLog(daoConfig.getChangeLogCapacity());
         this.daoConfig = Preconditions.checkNotNull(daoConfig, "DaoConfig cannot be null");
     }
 
@@ -71,6 +130,7 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
             if (oldVersion != 0) {
                 DbUpgradeListener upgradeListener = daoConfig.getDbUpgradeListener();
                 if (upgradeListener != null) {
+                    dao.indexUpgradePending = true;
                     upgradeListener.onUpgrade(dao, oldVersion, newVersion);
                 } else {
                     try {
@@ -125,6 +185,18 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
         return getInstance(controller, daoConfig);
     }
 
+    /**
+     * A database with a file and a writer per shard, see {@link DaoConfig#setShardRule(com.frodo.app.framework.orm.ShardRule)}.
+     */
+    public static ShardedDatabase createSharded(final IController controller, DaoConfig daoConfig) {
+        return new ShardedDatabase(controller, daoConfig, new ShardedDatabase.ShardFactory() {
+            @Override
+            public Database create(DaoConfig shardConfig) {
+                return getInstance(controller, shardConfig);
+            }
+        });
+    }
+
     public AndroidDatabaseSystem configAllowTransaction(boolean allowTransaction) {
         this.allowTransaction = allowTransaction;
         return this;
@@ -138,6 +210,41 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
         return daoConfig;
     }
 
+    public SqlMetrics getSqlMetrics() {
+        return sqlMetrics;
+    }
+
+    public EntityCache getEntityCache() {
+        return entityCache;
+    }
+
+    public ChangeLog getChangeLog() {
+        return changeLog;
+    }
+
+    public AsyncDatabase getAsyncDatabase() {
+        if (asyncDatabase == null) {
+            synchronized (this) {
+                if (asyncDatabase == null) {
+                    asyncDatabase = new AsyncDatabase(this);
+                }
+            }
+        }
+        return asyncDatabase;
+    }
+
+    public void addTableChangeListener(TableChangeListener listener) {
+        tableChangeDispatcher.addListener(listener);
+    }
+
+    public void removeTableChangeListener(TableChangeListener listener) {
+        tableChangeDispatcher.removeListener(listener);
+    }
+
+    public long getTableVersion(Class<?> entityType) {
+        return tableChangeDispatcher.getVersion(TableUtils.getTableName(entityType));
+    }
+
     //*********************************************** operations ********************************************************
     public void saveOrUpdate(Object entity) throws DbException {
         try {
@@ -146,6 +253,7 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
             createTableIfNotExist(entity.getClass());
             saveOrUpdateWithoutTransaction(entity);
 
+            markTableChanged(entity.getClass());
             setTransactionSuccessful();
         } finally {
             endTransaction();
@@ -162,6 +270,7 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
                 saveOrUpdateWithoutTransaction(entity);
             }
 
+            markTableChanged(entities.get(0).getClass());
             setTransactionSuccessful();
         } finally {
             endTransaction();
@@ -173,8 +282,10 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
             beginTransaction();
 
             createTableIfNotExist(entity.getClass());
-            execNonQuery(SqlInfoBuilder.buildReplaceSqlInfo(this, entity));
+            Object id = insert(entity, SqlInfoBuilder.buildReplaceSqlInfo(this, entity));
+            recordChange(ChangeEvent.Type.REPLACE, entity.getClass(), id, null);
 
+            markTableChanged(entity.getClass());
             setTransactionSuccessful();
         } finally {
             endTransaction();
@@ -188,9 +299,11 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
 
             createTableIfNotExist(entities.get(0).getClass());
             for (Object entity : entities) {
-                execNonQuery(SqlInfoBuilder.buildReplaceSqlInfo(this, entity));
+                Object id = insert(entity, SqlInfoBuilder.buildReplaceSqlInfo(this, entity));
+                recordChange(ChangeEvent.Type.REPLACE, entity.getClass(), id, null);
             }
 
+            markTableChanged(entities.get(0).getClass());
             setTransactionSuccessful();
         } finally {
             endTransaction();
@@ -202,8 +315,10 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
             beginTransaction();
 
             createTableIfNotExist(entity.getClass());
-            execNonQuery(SqlInfoBuilder.buildInsertSqlInfo(this, entity));
+            Object id = insert(entity, SqlInfoBuilder.buildInsertSqlInfo(this, entity));
+            recordChange(ChangeEvent.Type.INSERT, entity.getClass(), id, null);
 
+            markTableChanged(entity.getClass());
             setTransactionSuccessful();
         } finally {
             endTransaction();
@@ -216,10 +331,15 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
             beginTransaction();
 
             createTableIfNotExist(entities.get(0).getClass());
+            // one bind buffer for the whole batch, the statement is executed before the next row is bound
+            SqlInfo sqlInfo = null;
             for (Object entity : entities) {
-                execNonQuery(SqlInfoBuilder.buildInsertSqlInfo(this, entity));
+                sqlInfo = SqlInfoBuilder.buildInsertSqlInfo(this, entity, sqlInfo);
+                Object id = insert(entity, sqlInfo);
+                recordChange(ChangeEvent.Type.INSERT, entity.getClass(), id, null);
             }
 
+            markTableChanged(entities.get(0).getClass());
             setTransactionSuccessful();
         } finally {
             endTransaction();
@@ -234,6 +354,7 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
             createTableIfNotExist(entity.getClass());
             result = saveBindingIdWithoutTransaction(entity);
 
+            markTableChanged(entity.getClass());
             setTransactionSuccessful();
         } finally {
             endTransaction();
@@ -253,6 +374,7 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
                 }
             }
 
+            markTableChanged(entities.get(0).getClass());
             setTransactionSuccessful();
         } finally {
             endTransaction();
@@ -265,7 +387,9 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
             beginTransaction();
 
             execNonQuery(SqlInfoBuilder.buildDeleteSqlInfo(this, entityType, idValue));
+            recordChange(ChangeEvent.Type.DELETE, entityType, idValue, null);
 
+            markTableChanged(entityType);
             setTransactionSuccessful();
         } finally {
             endTransaction();
@@ -278,7 +402,9 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
             beginTransaction();
 
             execNonQuery(SqlInfoBuilder.buildDeleteSqlInfo(this, entity));
+            recordChange(ChangeEvent.Type.DELETE, entity.getClass(), getId(entity), null);
 
+            markTableChanged(entity.getClass());
             setTransactionSuccessful();
         } finally {
             endTransaction();
@@ -291,7 +417,9 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
             beginTransaction();
 
             execNonQuery(SqlInfoBuilder.buildDeleteSqlInfo(this, entityType, whereBuilder));
+            recordChange(ChangeEvent.Type.DELETE, entityType, null, whereBuilder);
 
+            markTableChanged(entityType);
             setTransactionSuccessful();
         } finally {
             endTransaction();
@@ -306,8 +434,10 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
 
             for (Object entity : entities) {
                 execNonQuery(SqlInfoBuilder.buildDeleteSqlInfo(this, entity));
+                recordChange(ChangeEvent.Type.DELETE, entity.getClass(), getId(entity), null);
             }
 
+            markTableChanged(entities.get(0).getClass());
             setTransactionSuccessful();
         } finally {
             endTransaction();
@@ -324,7 +454,9 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
             beginTransaction();
 
             execNonQuery(SqlInfoBuilder.buildUpdateSqlInfo(this, entity, updateColumnNames));
+            recordChange(ChangeEvent.Type.UPDATE, entity.getClass(), getId(entity), null, updateColumnNames);
 
+            markTableChanged(entity.getClass());
             setTransactionSuccessful();
         } finally {
             endTransaction();
@@ -337,7 +469,9 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
             beginTransaction();
 
             execNonQuery(SqlInfoBuilder.buildUpdateSqlInfo(this, entity, whereBuilder, updateColumnNames));
+            recordChange(ChangeEvent.Type.UPDATE, entity.getClass(), null, whereBuilder, updateColumnNames);
 
+            markTableChanged(entity.getClass());
             setTransactionSuccessful();
         } finally {
             endTransaction();
@@ -352,8 +486,10 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
 
             for (Object entity : entities) {
                 execNonQuery(SqlInfoBuilder.buildUpdateSqlInfo(this, entity, updateColumnNames));
+                recordChange(ChangeEvent.Type.UPDATE, entity.getClass(), getId(entity), null, updateColumnNames);
             }
 
+            markTableChanged(entities.get(0).getClass());
             setTransactionSuccessful();
         } finally {
             endTransaction();
@@ -368,8 +504,10 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
 
             for (Object entity : entities) {
                 execNonQuery(SqlInfoBuilder.buildUpdateSqlInfo(this, entity, whereBuilder, updateColumnNames));
+                recordChange(ChangeEvent.Type.UPDATE, entity.getClass(), null, whereBuilder, updateColumnNames);
             }
 
+            markTableChanged(entities.get(0).getClass());
             setTransactionSuccessful();
         } finally {
             endTransaction();
@@ -381,6 +519,15 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
         if (!tableIsExist(entityType)) return null;
 
         Table table = Table.get(this, entityType);
+        EntityCache.Region cacheRegion = entityCache.getRegion(entityType);
+        long cacheVersion = 0;
+        if (cacheRegion != null) {
+            Object cached = cacheRegion.get(table, idValue);
+            if (cached != null) {
+                return (T) cached;
+            }
+            cacheVersion = cacheRegion.getVersion();
+        }
         Selector selector = Selector.from(entityType).where(table.id.getColumnName(), "=", idValue);
 
         String sql = selector.limit(1).toString();
@@ -391,18 +538,25 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
             return (T) obj;
         }
 
+        long start = System.nanoTime();
+        int rows = 0;
         android.database.Cursor cursor = execQuery(sql);
         if (cursor != null) {
             try {
                 if (cursor.moveToNext()) {
+                    rows = 1;
                     T entity = (T) CursorUtils.getEntity(this, new AndroidCursor(cursor), entityType, seq);
                     findTempCache.put(sql, entity);
+                    if (cacheRegion != null) {
+                        cacheRegion.put(table, idValue, entity, cacheVersion);
+                    }
                     return entity;
                 }
             } catch (Throwable e) {
                 throw new DbException(e);
             } finally {
                 IOUtils.closeQuietly(cursor);
+                recordSql(entityType, sql, start, rows, rows);
             }
         }
         return null;
@@ -412,26 +566,32 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
     public <T> T findFirst(Selector selector) throws DbException {
         if (!tableIsExist(selector.getEntityType())) return null;
 
-        String sql = selector.limit(1).toString();
+        SqlInfo sqlInfo = selector.limit(1).toSqlInfo();
+        String sql = sqlInfo.getSql();
+        String cacheKey = findCacheKey(sqlInfo);
         long seq = CursorUtils.FindCacheSequence.getSeq();
         findTempCache.setSeq(seq);
-        Object obj = findTempCache.get(sql);
+        Object obj = findTempCache.get(cacheKey);
         if (obj != null) {
             return (T) obj;
         }
 
-        android.database.Cursor cursor = execQuery(sql);
+        long start = System.nanoTime();
+        int rows = 0;
+        android.database.Cursor cursor = execQuery(sqlInfo);
         if (cursor != null) {
             try {
                 if (cursor.moveToNext()) {
+                    rows = 1;
                     T entity = (T) CursorUtils.getEntity(this, new AndroidCursor(cursor), selector.getEntityType(), seq);
-                    findTempCache.put(sql, entity);
+                    findTempCache.put(cacheKey, entity);
                     return entity;
                 }
             } catch (Throwable e) {
                 throw new DbException(e);
             } finally {
                 IOUtils.closeQuietly(cursor);
+                recordSql(selector.getEntityType(), sql, start, rows, rows);
             }
         }
         return null;
@@ -444,29 +604,34 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
     @SuppressWarnings("unchecked")
     public <T> List<T> findAll(Selector selector) throws DbException {
         if (!tableIsExist(selector.getEntityType())) return null;
+        if (selector.getInKeys() != null) {
+            return findAllByChunks(selector);
+        }
 
-        String sql = selector.toString();
+        SqlInfo sqlInfo = selector.toSqlInfo();
+        String sql = sqlInfo.getSql();
+        String cacheKey = findCacheKey(sqlInfo);
         long seq = CursorUtils.FindCacheSequence.getSeq();
         findTempCache.setSeq(seq);
-        Object obj = findTempCache.get(sql);
+        Object obj = findTempCache.get(cacheKey);
         if (obj != null) {
             return (List<T>) obj;
         }
 
         List<T> result = new ArrayList<T>();
 
-        android.database.Cursor cursor = execQuery(sql);
+        long start = System.nanoTime();
+        android.database.Cursor cursor = execQuery(sqlInfo);
         if (cursor != null) {
             try {
-                while (cursor.moveToNext()) {
-                    T entity = (T) CursorUtils.getEntity(this, new AndroidCursor(cursor), selector.getEntityType(), seq);
-                    result.add(entity);
-                }
-                findTempCache.put(sql, result);
+                result = CursorUtils.getEntities(this, new AndroidCursor(cursor), (Class<T>) selector.getEntityType(),
+                        seq, daoConfig.getParallelHydrationThreshold());
+                findTempCache.put(cacheKey, result);
             } catch (Throwable e) {
                 throw new DbException(e);
             } finally {
                 IOUtils.closeQuietly(cursor);
+                recordSql(selector.getEntityType(), sql, start, result.size(), result.size());
             }
         }
         return result;
@@ -476,17 +641,127 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
         return findAll(Selector.from(entityType));
     }
 
+    public <T> List<T> findByIds(Class<T> entityType, Collection<?> idValues) throws DbException {
+        return findByIds(entityType, idValues, false);
+    }
+
+    public <T> List<T> findByIds(Class<T> entityType, Collection<?> idValues, boolean keepOrder) throws DbException {
+        if (!tableIsExist(entityType)) return null;
+
+        Table table = Table.get(this, entityType);
+        List<T> entities = findAll(Selector.from(entityType).whereIn(table.id.getColumnName(), idValues));
+        return keepOrder ? CursorUtils.sortByIds(table, entities, idValues) : entities;
+    }
+
+    /**
+     * The keys of {@link Selector#whereIn(String, Collection)} are bound by chunks,
+     * chunks are claimed one by one by the caller and up to readerConnectionCount - 1 tasks of the read executor.
+     * The caller runs chunks until none is left, then only waits for the chunks already running and cancels
+     * the tasks still queued, so a caller on a read thread does not wait for its own pool.
+     * Inside a transaction of the calling thread the caller runs every chunk:
+     * reader connections do not see the rows it has not committed yet.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> List<T> findAllByChunks(Selector selector) throws DbException {
+        final Class<T> entityType = (Class<T>) selector.getEntityType();
+        final List<SqlInfo> sqlInfos = selector.toSqlInfos(Selector.MAX_BIND_ARGS);
+        final long seq = CursorUtils.FindCacheSequence.getSeq();
+        findTempCache.setSeq(seq);
+        if (sqlInfos.size() == 1) {
+            return findAll(entityType, sqlInfos.get(0), seq);
+        }
+        if (!selector.isChunkable()) {
+            throw new DbException("order by, limit and offset support at most " + Selector.MAX_BIND_ARGS + " keys");
+        }
+
+        final List<?>[] results = new List<?>[sqlInfos.size()];
+        final AtomicInteger nextChunk = new AtomicInteger();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final CountDownLatch chunksDone = new CountDownLatch(sqlInfos.size());
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                int chunk;
+                while ((chunk = nextChunk.getAndIncrement()) < sqlInfos.size()) {
+                    try {
+                        // chunks left after a failure are only counted down
+                        if (error.get() == null) {
+                            results[chunk] = findAll(entityType, sqlInfos.get(chunk), seq);
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    } finally {
+                        chunksDone.countDown();
+                    }
+                }
+            }
+        };
+        int helpers = database.inTransaction()
+                ? 0 : Math.min(daoConfig.getReaderConnectionCount(), sqlInfos.size()) - 1;
+        List<Future<?>> futures = new ArrayList<>(Math.max(helpers, 0));
+        for (int i = 0; i < helpers; i++) {
+            futures.add(getAsyncDatabase().getReadExecutor().submit(worker));
+        }
+        worker.run();
+        // every chunk is claimed: the tasks which did not start have nothing left to do
+        for (Future<?> future : futures) {
+            future.cancel(false);
+        }
+        try {
+            chunksDone.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DbException(e);
+        }
+        if (error.get() != null) {
+            throw error.get() instanceof DbException ? (DbException) error.get() : new DbException(error.get());
+        }
+
+        int size = 0;
+        for (List<?> result : results) {
+            size += result.size();
+        }
+        List<T> entities = new ArrayList<>(size);
+        for (List<?> result : results) {
+            entities.addAll((List<T>) result);
+        }
+        return entities;
+    }
+
+    private <T> List<T> findAll(Class<T> entityType, SqlInfo sqlInfo, long seq) throws DbException {
+        List<T> result = new ArrayList<T>();
+
+        long start = System.nanoTime();
+        android.database.Cursor cursor = execQuery(sqlInfo);
+        if (cursor != null) {
+            try {
+                result = CursorUtils.getEntities(this, new AndroidCursor(cursor), entityType,
+                        seq, daoConfig.getParallelHydrationThreshold());
+            } catch (Throwable e) {
+                throw new DbException(e);
+            } finally {
+                IOUtils.closeQuietly(cursor);
+                recordSql(entityType, sqlInfo.getSql(), start, result.size(), result.size());
+            }
+        }
+        return result;
+    }
+
     public DbModel findDbModelFirst(SqlInfo sqlInfo) throws DbException {
+        long start = System.nanoTime();
+        int rows = 0;
         android.database.Cursor cursor = execQuery(sqlInfo);
         if (cursor != null) {
             try {
                 if (cursor.moveToNext()) {
+                    rows = 1;
                     return CursorUtils.getDbModel(new AndroidCursor(cursor));
                 }
             } catch (Throwable e) {
                 throw new DbException(e);
             } finally {
                 IOUtils.closeQuietly(cursor);
+                recordSql(null, sqlInfo.getSql(), start, rows, 0);
             }
         }
         return null;
@@ -495,16 +770,22 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
     public DbModel findDbModelFirst(DbModelSelector selector) throws DbException {
         if (!tableIsExist(selector.getEntityType())) return null;
 
-        android.database.Cursor cursor = execQuery(selector.limit(1).toString());
+        SqlInfo sqlInfo = selector.limit(1).toSqlInfo();
+        String sql = sqlInfo.getSql();
+        long start = System.nanoTime();
+        int rows = 0;
+        android.database.Cursor cursor = execQuery(sqlInfo);
         if (cursor != null) {
             try {
                 if (cursor.moveToNext()) {
+                    rows = 1;
                     return CursorUtils.getDbModel(new AndroidCursor(cursor));
                 }
             } catch (Throwable e) {
                 throw new DbException(e);
             } finally {
                 IOUtils.closeQuietly(cursor);
+                recordSql(selector.getEntityType(), sql, start, rows, 0);
             }
         }
         return null;
@@ -513,6 +794,7 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
     public List<DbModel> findDbModelAll(SqlInfo sqlInfo) throws DbException {
         List<DbModel> dbModelList = new ArrayList<>();
 
+        long start = System.nanoTime();
         android.database.Cursor cursor = execQuery(sqlInfo);
         if (cursor != null) {
             try {
@@ -523,6 +805,7 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
                 throw new DbException(e);
             } finally {
                 IOUtils.closeQuietly(cursor);
+                recordSql(null, sqlInfo.getSql(), start, dbModelList.size(), 0);
             }
         }
         return dbModelList;
@@ -533,7 +816,10 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
 
         List<DbModel> dbModelList = new ArrayList<DbModel>();
 
-        android.database.Cursor cursor = execQuery(selector.toString());
+        SqlInfo sqlInfo = selector.toSqlInfo();
+        String sql = sqlInfo.getSql();
+        long start = System.nanoTime();
+        android.database.Cursor cursor = execQuery(sqlInfo);
         if (cursor != null) {
             try {
                 while (cursor.moveToNext()) {
@@ -543,6 +829,7 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
                 throw new DbException(e);
             } finally {
                 IOUtils.closeQuietly(cursor);
+                recordSql(selector.getEntityType(), sql, start, dbModelList.size(), 0);
             }
         }
         return dbModelList;
@@ -553,14 +840,144 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
         if (!tableIsExist(entityType)) return 0;
 
         Table table = Table.get(this, entityType);
-        DbModelSelector dmSelector = selector.select("count(" + table.id.getColumnName() + ") as count");
-        return findDbModelFirst(dmSelector).getLong("count");
+        return aggregateLong(selector, "COUNT", table.id.getColumnName());
     }
 
     public long count(Class<?> entityType) throws DbException {
         return count(Selector.from(entityType));
     }
 
+    //*********************************************** aggregate ********************************************************
+    public long sumLong(Selector selector, String columnName) throws DbException {
+        return aggregateLong(selector, "SUM", columnName);
+    }
+
+    public double sumDouble(Selector selector, String columnName) throws DbException {
+        return aggregateDouble(selector, "TOTAL", columnName);
+    }
+
+    public double avg(Selector selector, String columnName) throws DbException {
+        return aggregateDouble(selector, "AVG", columnName);
+    }
+
+    public long minLong(Selector selector, String columnName) throws DbException {
+        return aggregateLong(selector, "MIN", columnName);
+    }
+
+    public long maxLong(Selector selector, String columnName) throws DbException {
+        return aggregateLong(selector, "MAX", columnName);
+    }
+
+    public double min(Selector selector, String columnName) throws DbException {
+        return aggregateDouble(selector, "MIN", columnName);
+    }
+
+    public double max(Selector selector, String columnName) throws DbException {
+        return aggregateDouble(selector, "MAX", columnName);
+    }
+
+    public GroupAggregate countGroupBy(Selector selector, String groupByColumnName) throws DbException {
+        Table table = Table.get(this, selector.getEntityType());
+        return aggregateGroupBy(selector, groupByColumnName, "COUNT", table.id.getColumnName());
+    }
+
+    public GroupAggregate sumGroupBy(Selector selector, String groupByColumnName, String columnName) throws DbException {
+        return aggregateGroupBy(selector, groupByColumnName, "SUM", columnName);
+    }
+
+    public GroupAggregate avgGroupBy(Selector selector, String groupByColumnName, String columnName) throws DbException {
+        return aggregateGroupBy(selector, groupByColumnName, "AVG", columnName);
+    }
+
+    public GroupAggregate minGroupBy(Selector selector, String groupByColumnName, String columnName) throws DbException {
+        return aggregateGroupBy(selector, groupByColumnName, "MIN", columnName);
+    }
+
+    public GroupAggregate maxGroupBy(Selector selector, String groupByColumnName, String columnName) throws DbException {
+        return aggregateGroupBy(selector, groupByColumnName, "MAX", columnName);
+    }
+
+    private long aggregateLong(Selector selector, String function, String columnName) throws DbException {
+        if (!tableIsExist(selector.getEntityType())) return 0;
+
+        SqlInfo sqlInfo = selector.select(function + "(" + columnName + ")").toSqlInfo();
+        String sql = sqlInfo.getSql();
+        long start = System.nanoTime();
+        android.database.Cursor cursor = execQuery(sqlInfo);
+        if (cursor != null) {
+            try {
+                if (cursor.moveToNext() && !cursor.isNull(0)) {
+                    return cursor.getLong(0);
+                }
+            } catch (Throwable e) {
+                throw new DbException(e);
+            } finally {
+                IOUtils.closeQuietly(cursor);
+                recordSql(selector.getEntityType(), sql, start, 1, 0);
+            }
+        }
+        return 0;
+    }
+
+    private double aggregateDouble(Selector selector, String function, String columnName) throws DbException {
+        if (!tableIsExist(selector.getEntityType())) return 0;
+
+        SqlInfo sqlInfo = selector.select(function + "(" + columnName + ")").toSqlInfo();
+        String sql = sqlInfo.getSql();
+        long start = System.nanoTime();
+        android.database.Cursor cursor = execQuery(sqlInfo);
+        if (cursor != null) {
+            try {
+                if (cursor.moveToNext() && !cursor.isNull(0)) {
+                    return cursor.getDouble(0);
+                }
+            } catch (Throwable e) {
+                throw new DbException(e);
+            } finally {
+                IOUtils.closeQuietly(cursor);
+                recordSql(selector.getEntityType(), sql, start, 1, 0);
+            }
+        }
+        return 0;
+    }
+
+    private GroupAggregate aggregateGroupBy(Selector selector, String groupByColumnName, String function, String columnName) throws DbException {
+        GroupAggregate result = new GroupAggregate();
+        if (!tableIsExist(selector.getEntityType())) return result;
+
+        SqlInfo sqlInfo = selector.groupBy(groupByColumnName)
+                .select(groupByColumnName, function + "(" + columnName + ")").toSqlInfo();
+        long start = System.nanoTime();
+        android.database.Cursor cursor = execQuery(sqlInfo);
+        if (cursor != null) {
+            try {
+                while (cursor.moveToNext()) {
+                    if (cursor.isNull(1)) {
+                        result.add(cursor.getString(0), 0, 0);
+                    } else {
+                        result.add(cursor.getString(0), cursor.getLong(1), cursor.getDouble(1));
+                    }
+                }
+            } catch (Throwable e) {
+                throw new DbException(e);
+            } finally {
+                IOUtils.closeQuietly(cursor);
+                recordSql(selector.getEntityType(), sqlInfo.getSql(), start, result.size(), 0);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * key of {@link #findTempCache}: the sql and its bind args, such as a match query
+     */
+    private static String findCacheKey(SqlInfo sqlInfo) {
+        if (sqlInfo.getBindArgCount() == 0) {
+            return sqlInfo.getSql();
+        }
+        return sqlInfo.getSql() + Arrays.toString(sqlInfo.getBindArgsAsStrArray());
+    }
+
     //************************************************ tools ***********************************
 
     private SQLiteDatabase createDatabase(DaoConfig config) {
@@ -577,6 +994,11 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
             android.content.Context androidContext = (Context) config.getContext();
             result = androidContext.openOrCreateDatabase(config.getDbName(), 0, null);
         }
+        // readers only run in parallel on separate connections, which needs write-ahead logging
+        if (result != null && config.getReaderConnectionCount() > 1
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            result.enableWriteAheadLogging();
+        }
         return result;
     }
 
@@ -585,13 +1007,16 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
         Table table = Table.get(this, entity.getClass());
         Id id = table.id;
         if (id.isAutoIncrement()) {
-            if (id.getColumnValue(entity) != null) {
+            Object idValue = id.getColumnValue(entity);
+            if (idValue != null) {
                 execNonQuery(SqlInfoBuilder.buildUpdateSqlInfo(this, entity));
+                recordChange(ChangeEvent.Type.UPDATE, entity.getClass(), idValue, null);
             } else {
                 saveBindingIdWithoutTransaction(entity);
             }
         } else {
             execNonQuery(SqlInfoBuilder.buildReplaceSqlInfo(this, entity));
+            recordChange(ChangeEvent.Type.REPLACE, entity.getClass(), id.getColumnValue(entity), null);
         }
     }
 
@@ -600,34 +1025,38 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
         Table table = Table.get(this, entityType);
         Id idColumn = table.id;
         if (idColumn.isAutoIncrement()) {
-            execNonQuery(SqlInfoBuilder.buildInsertSqlInfo(this, entity));
-            long id = getLastAutoIncrementId(table.tableName);
+            // the autoincrement id is the rowid returned by the insert
+            long id = execInsert(SqlInfoBuilder.buildInsertSqlInfo(this, entity));
             if (id == -1) {
                 return false;
             }
             idColumn.setAutoIncrementId(entity, id);
+            recordChange(ChangeEvent.Type.INSERT, entityType, id, null);
             return true;
         } else {
             execNonQuery(SqlInfoBuilder.buildInsertSqlInfo(this, entity));
+            recordChange(ChangeEvent.Type.INSERT, entityType, idColumn.getColumnValue(entity), null);
             return true;
         }
     }
 
-    private long getLastAutoIncrementId(String tableName) throws DbException {
-        long id = -1;
-        android.database.Cursor cursor = execQuery("SELECT seq FROM sqlite_sequence WHERE name='" + tableName + "'");
-        if (cursor != null) {
-            try {
-                if (cursor.moveToNext()) {
-                    id = cursor.getLong(0);
-                }
-            } catch (Throwable e) {
-                throw new DbException(e);
-            } finally {
-                IOUtils.closeQuietly(cursor);
-            }
+    /**
+     * @return id of the inserted row, the rowid is only queried for an auto increment id when changes are captured
+     */
+    private Object insert(Object entity, SqlInfo sqlInfo) throws DbException {
+        Id id = Table.get(this, entity.getClass()).id;
+        if (id.isAutoIncrement() && changeLog.isEnabled()) {
+            return execInsert(sqlInfo);
+        }
+        execNonQuery(sqlInfo);
+        return id.getColumnValue(entity);
+    }
+
+    private Object getId(Object entity) throws DbException {
+        if (!changeLog.isEnabled()) {
+            return null;
         }
-        return id;
+        return Table.get(this, entity.getClass()).id.getColumnValue(entity);
     }
 
     public void createTableIfNotExist(Class<?> entityType) throws DbException {
@@ -638,6 +1067,48 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
             if (!TextUtils.isEmpty(execAfterTableCreated)) {
                 execNonQuery(execAfterTableCreated);
             }
+            createIndexIfNotExist(entityType);
+            createFullTextIfNotExist(entityType);
+        }
+    }
+
+    public void createIndexIfNotExist(Class<?> entityType) throws DbException {
+        List<SqlInfo> sqlInfoList = SqlInfoBuilder.buildCreateIndexSqlInfos(this, entityType);
+        for (SqlInfo sqlInfo : sqlInfoList) {
+            execNonQuery(sqlInfo);
+        }
+    }
+
+    /**
+     * Create the full text table and its triggers of an entity with {@link com.frodo.app.framework.orm.annotation.FullText} columns,
+     * existing rows are copied into it.
+     */
+    public void createFullTextIfNotExist(Class<?> entityType) throws DbException {
+        Table table = Table.get(this, entityType);
+        if (table.fullTextColumns.isEmpty()) {
+            return;
+        }
+
+        String ftsTableName = TableUtils.getFullTextTableName(table.tableName);
+        android.database.Cursor cursor = execQuery("SELECT COUNT(*) AS c FROM sqlite_master WHERE name IN ('" + ftsTableName
+                + "', '" + SqlInfoBuilder.getFullTextReplaceTriggerName(table.tableName) + "')");
+        if (cursor != null) {
+            try {
+                if (cursor.moveToNext() && cursor.getInt(0) > 1) {
+                    return;
+                }
+            } catch (Throwable e) {
+                throw new DbException(e);
+            } finally {
+                IOUtils.closeQuietly(cursor);
+            }
+        }
+
+        // a full text table without the replace trigger is created again
+        List<SqlInfo> sqlInfoList = SqlInfoBuilder.buildDropFullTextSqlInfos(table.tableName);
+        sqlInfoList.addAll(SqlInfoBuilder.buildCreateFullTextSqlInfos(this, entityType));
+        for (SqlInfo sqlInfo : sqlInfoList) {
+            execNonQuery(sqlInfo);
         }
     }
 
@@ -654,6 +1125,10 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
                     int count = cursor.getInt(0);
                     if (count > 0) {
                         table.setCheckedDatabase(true);
+                        if (indexUpgradePending) {
+                            createIndexIfNotExist(entityType);
+                        }
+                        createFullTextIfNotExist(entityType);
                         return true;
                     }
                 }
@@ -668,13 +1143,16 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
     }
 
     public void dropDb() throws DbException {
+        clearStatementCache();
+        entityCache.invalidateAll();
         android.database.Cursor cursor = execQuery("SELECT name FROM sqlite_master WHERE type='table' AND name<>'sqlite_sequence'");
         if (cursor != null) {
             try {
                 while (cursor.moveToNext()) {
                     try {
                         String tableName = cursor.getString(0);
-                        execNonQuery("DROP TABLE " + tableName);
+                        // full text shadow tables are dropped along with their virtual table
+                        execNonQuery("DROP TABLE IF EXISTS " + tableName);
                         Table.remove(this, tableName);
                     } catch (Throwable e) {
                         getController().getLogCollector().e(systemName(), e.getMessage());
@@ -692,14 +1170,28 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
     public void dropTable(Class<?> entityType) throws DbException {
         if (!tableIsExist(entityType)) return;
         String tableName = TableUtils.getTableName(entityType);
+        clearStatementCache();
+        entityCache.invalidate(entityType);
         execNonQuery("DROP TABLE " + tableName);
+        if (!Table.get(this, entityType).fullTextColumns.isEmpty()) {
+            execNonQuery("DROP TABLE IF EXISTS " + TableUtils.getFullTextTableName(tableName));
+        }
         Table.remove(this, entityType);
+        if (changeLog.isEnabled()) {
+            changeLog.append(Collections.singletonList(new ChangeEvent(ChangeEvent.Type.DELETE, entityType, null, null)));
+        }
     }
 
     public void close() {
         String dbName = this.daoConfig.getDbName();
         if (daoMap.containsKey(dbName)) {
             daoMap.remove(dbName);
+            if (asyncDatabase != null) {
+                asyncDatabase.shutdown();
+            }
+            tableChangeDispatcher.shutdown();
+            clearStatementCache();
+            entityCache.invalidateAll();
             this.database.close();
         }
     }
@@ -709,6 +1201,18 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
         getController().getLogCollector().d(systemName(), sql);
     }
 
+    private void recordSql(Class<?> entityType, String sql, long startNanos, int rowsReturned, int rowsHydrated) {
+        long costNanos = System.nanoTime() - startNanos;
+        if (daoConfig.isSqlMetricsEnabled()) {
+            sqlMetrics.record(entityType, sql, costNanos, rowsReturned, rowsHydrated);
+        }
+        long slowQueryThreshold = daoConfig.getSlowQueryThreshold();
+        if (slowQueryThreshold >= 0 && costNanos / 1000000 > slowQueryThreshold) {
+            getController().getLogCollector().w(systemName(), "slow sql (" + costNanos / 1000000 + "ms, "
+                    + rowsReturned + " rows, " + rowsHydrated + " hydrated): " + sql);
+        }
+    }
+
     private void beginTransaction() {
         if (allowTransaction) {
             database.beginTransaction();
@@ -722,44 +1226,233 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
         if (allowTransaction) {
             database.setTransactionSuccessful();
         }
+        transactionSuccessful = true;
     }
 
     private void endTransaction() {
+        Set<String> committedTables = null;
+        if (transactionSuccessful && !changedTables.isEmpty()) {
+            committedTables = new HashSet<>(changedTables);
+        }
+        changedTables.clear();
+        // taken before the commit, the next writer may add its own types as soon as sqlite releases the lock
+        Set<Class<?>> invalidatedTypes = null;
+        if (!changedEntityTypes.isEmpty()) {
+            invalidatedTypes = new HashSet<>(changedEntityTypes);
+            changedEntityTypes.clear();
+        }
+        if (transactionSuccessful) {
+            // in commit order, appended while still holding the write lock
+            changeLog.append(changeEvents);
+        }
+        changeEvents.clear();
+        transactionSuccessful = false;
+
         if (allowTransaction) {
             database.endTransaction();
         }
+        // after the commit, so finds which read the old rows can not cache them
+        if (invalidatedTypes != null) {
+            for (Class<?> entityType : invalidatedTypes) {
+                entityCache.invalidate(entityType);
+            }
+        }
         if (writeLocked) {
             writeLock.unlock();
             writeLocked = false;
         }
+
+        if (committedTables != null) {
+            tableChangeDispatcher.publish(committedTables, daoConfig.getTableChangeDebounce());
+        }
+    }
+
+    private void recordChange(ChangeEvent.Type type, Class<?> entityType, Object id, WhereBuilder whereBuilder,
+                              String... columnNames) {
+        if (changeLog.isEnabled()) {
+            String where = whereBuilder == null || whereBuilder.getWhereItemSize() == 0 ? null : whereBuilder.toString();
+            changeEvents.add(new ChangeEvent(type, entityType, id, where, columnNames));
+        }
+    }
+
+    private void markTableChanged(Class<?> entityType) {
+        changedTables.add(TableUtils.getTableName(entityType));
+        changedEntityTypes.add(entityType);
+    }
+
+    public CompiledStatement compile(SqlInfo template) throws DbException {
+        if (ChangeEvent.getWriteType(template.getSql()) != null) {
+            throw new DbException("compile a write with its entity type: " + template.getSql());
+        }
+        debugSql(template.getSql());
+        AndroidCompiledStatement statement = new AndroidCompiledStatement(database, template.getSql());
+        template.bindTo(statement);
+        return statement;
+    }
+
+    public CompiledStatement compile(final Class<?> entityType, SqlInfo template) throws DbException {
+        ChangeEvent.Type writeType = ChangeEvent.getWriteType(template.getSql());
+        // a statement of unknown kind is tracked as an update of the whole table
+        final ChangeEvent.Type changeType = writeType != null ? writeType : ChangeEvent.Type.UPDATE;
+        debugSql(template.getSql());
+        AndroidCompiledStatement statement = new AndroidCompiledStatement(database, template.getSql(), new Runnable() {
+            @Override
+            public void run() {
+                recordStatementChange(changeType, entityType);
+            }
+        });
+        template.bindTo(statement);
+        return statement;
+    }
+
+    /**
+     * A compiled statement changed rows in a transaction of its own, as after a commit of {@link #endTransaction()}.
+     */
+    private void recordStatementChange(ChangeEvent.Type type, Class<?> entityType) {
+        entityCache.invalidate(entityType);
+        if (changeLog.isEnabled()) {
+            changeLog.append(Collections.singletonList(new ChangeEvent(type, entityType, null, null)));
+        }
+        tableChangeDispatcher.publish(Collections.singleton(TableUtils.getTableName(entityType)),
+                daoConfig.getTableChangeDebounce());
     }
 
     public void execNonQuery(SqlInfo sqlInfo) throws DbException {
         debugSql(sqlInfo.getSql());
+        long start = System.nanoTime();
         try {
-            if (sqlInfo.getBindArgs() != null) {
-                database.execSQL(sqlInfo.getSql(), sqlInfo.getBindArgsAsArray());
+            if (sqlInfo.getBindArgBuffer() != null) {
+                executeCachedStatement(sqlInfo, false);
             } else {
                 database.execSQL(sqlInfo.getSql());
             }
+        } catch (DbException e) {
+            throw e;
         } catch (Throwable e) {
             throw new DbException(e);
+        } finally {
+            recordSql(null, sqlInfo.getSql(), start, 0, 0);
+        }
+    }
+
+    /**
+     * @return rowid of the inserted row
+     */
+    private long execInsert(SqlInfo sqlInfo) throws DbException {
+        debugSql(sqlInfo.getSql());
+        long start = System.nanoTime();
+        try {
+            return executeCachedStatement(sqlInfo, true);
+        } finally {
+            recordSql(null, sqlInfo.getSql(), start, 0, 0);
+        }
+    }
+
+    /**
+     * The monitor of the cache is only held to check a statement out and back in, never while sqlite runs it:
+     * a thread waiting for the connection must not block the thread of the write transaction.
+     */
+    private long executeCachedStatement(SqlInfo sqlInfo, boolean insert) throws DbException {
+        String sql = sqlInfo.getSql();
+        SQLiteStatement statement;
+        int generation;
+        synchronized (statementCache) {
+            // checked out, no other thread binds it meanwhile
+            statement = statementCache.remove(sql);
+            generation = statementCacheGeneration;
+        }
+        try {
+            if (statement == null) {
+                statement = database.compileStatement(sql);
+            }
+            statement.clearBindings();
+            if (sqlInfo.getBindArgBuffer() != null) {
+                AndroidCompiledStatement.bindArgs(statement, sqlInfo.getBindArgBuffer());
+            }
+            long result = 0;
+            if (insert) {
+                result = statement.executeInsert();
+            } else {
+                statement.execute();
+            }
+            checkInStatement(sql, statement, generation);
+            return result;
+        } catch (Throwable e) {
+            if (statement != null) {
+                statement.close();
+            }
+            throw new DbException(e);
+        }
+    }
+
+    private void checkInStatement(String sql, SQLiteStatement statement, int generation) {
+        synchronized (statementCache) {
+            // the cache was cleared meanwhile, the statement may refer to a dropped table
+            if (generation != statementCacheGeneration || statementCache.containsKey(sql)) {
+                statement.close();
+            } else {
+                statementCache.put(sql, statement);
+            }
+        }
+    }
+
+    private void clearStatementCache() {
+        synchronized (statementCache) {
+            statementCacheGeneration++;
+            for (SQLiteStatement statement : statementCache.values()) {
+                statement.close();
+            }
+            statementCache.clear();
         }
     }
 
     public void execNonQuery(String sql) throws DbException {
         debugSql(sql);
+        long start = System.nanoTime();
         try {
             database.execSQL(sql);
         } catch (Throwable e) {
             throw new DbException(e);
+        } finally {
+            recordSql(null, sql, start, 0, 0);
+        }
+    }
+
+    /**
+     * The statements run in a sqlite transaction even when transactions are not allowed,
+     * such as a migration run before {@link #configAllowTransaction(boolean)} can be called.
+     */
+    public void execNonQueryInTransaction(List<SqlInfo> sqlInfoList) throws DbException {
+        if (sqlInfoList == null || sqlInfoList.isEmpty()) return;
+        boolean ownTransaction = !allowTransaction;
+        try {
+            beginTransaction();
+            if (ownTransaction) {
+                database.beginTransaction();
+            }
+            try {
+                for (SqlInfo sqlInfo : sqlInfoList) {
+                    execNonQuery(sqlInfo);
+                }
+                if (ownTransaction) {
+                    database.setTransactionSuccessful();
+                }
+            } finally {
+                if (ownTransaction) {
+                    database.endTransaction();
+                }
+            }
+
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
         }
     }
 
     public android.database.Cursor execQuery(SqlInfo sqlInfo) throws DbException {
         debugSql(sqlInfo.getSql());
         try {
-            return database.rawQuery(sqlInfo.getSql(), sqlInfo.getBindArgsAsStrArray());
+            return rawQuery(sqlInfo.getSql(), sqlInfo.getBindArgsAsStrArray());
         } catch (Throwable e) {
             throw new DbException(e);
         }
@@ -768,37 +1461,99 @@ public final class AndroidDatabaseSystem extends AbstractChildSystem implements
     public android.database.Cursor execQuery(String sql) throws DbException {
         debugSql(sql);
         try {
-            AndroidCursor cursor = (AndroidCursor) database.rawQuery(sql, null);
-            return cursor.getCursor();
+            return rawQuery(sql, null);
         } catch (Throwable e) {
             throw new DbException(e);
         }
     }
 
-    private class FindTempCache {
-        /**
-         * key: sql;
-         * value: find result
-         */
-        private final ConcurrentHashMap<String, Object> cache = new ConcurrentHashMap<>();
-        private long seq = 0;
+    private android.database.Cursor rawQuery(String sql, String[] selectionArgs) {
+        long threshold = daoConfig.getExplainQueryPlanThreshold();
+        if (threshold < 0) {
+            return database.rawQuery(sql, selectionArgs);
+        }
+
+        long start = System.nanoTime();
+        android.database.Cursor cursor = database.rawQuery(sql, selectionArgs);
+        boolean returned = false;
+        try {
+            cursor.getCount(); // the query is lazy, fill the first window to time it
+            long costMillis = (System.nanoTime() - start) / 1000000;
+            if (costMillis > threshold) {
+                explainQueryPlan(sql, selectionArgs, costMillis);
+            }
+            returned = true;
+            return cursor;
+        } finally {
+            // the caller never gets a cursor which failed to fill
+            if (!returned) {
+                IOUtils.closeQuietly(cursor);
+            }
+        }
+    }
+
+    private void explainQueryPlan(String sql, String[] selectionArgs, long costMillis) {
+        android.database.Cursor cursor = null;
+        try {
+            cursor = database.rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+            int detailIndex = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                String detail = detailIndex < 0 ? null : cursor.getString(detailIndex);
+                if (isFullScan(detail)) {
+                    getController().getLogCollector().w(systemName(),
+                            "slow query (" + costMillis + "ms) full scan [" + detail + "]: " + sql);
+                }
+            }
+        } catch (Throwable e) {
+            getController().getLogCollector().w(systemName(), "explain query plan failed: " + sql, e);
+        } finally {
+            IOUtils.closeQuietly(cursor);
+        }
+    }
+
+    private static boolean isFullScan(String detail) {
+        // "SCAN TABLE x" (or "SCAN x" since sqlite 3.36) without an index
+        return detail != null && detail.startsWith("SCAN ")
+                && !detail.contains(" INDEX") && !detail.contains("PRIMARY KEY");
+    }
+
+    /**
+     * Results of the current find of the thread, confined to it so parallel readers never see each other's results.
+     */
+    private static class FindTempCache {
+        private final ThreadLocal<Scope> scope = new ThreadLocal<>();
 
         private FindTempCache() {
         }
 
         public void put(String sql, Object result) {
-            if (sql != null && result != null) {
-                cache.put(sql, result);
+            Scope current = scope.get();
+            if (current != null && sql != null && result != null) {
+                current.cache.put(sql, result);
             }
         }
 
         public Object get(String sql) {
-            return cache.get(sql);
+            Scope current = scope.get();
+            return current == null ? null : current.cache.get(sql);
         }
 
         public void setSeq(long seq) {
-            if (this.seq != seq) {
-                cache.clear();
+            Scope current = scope.get();
+            if (current == null || current.seq != seq) {
+                scope.set(new Scope(seq));
+            }
+        }
+
+        private static final class Scope {
+            final long seq;
+            /**
+             * key: sql;
+             * value: find result
+             */
+            final HashMap<String, Object> cache = new HashMap<>();
+
+            Scope(long seq) {
                 this.seq = seq;
             }
         }
@@ -0,0 +1,161 @@
+package com.frodo.app.android.core.database;
+
+import com.frodo.app.framework.exception.DbException;
+import com.frodo.app.framework.orm.AsyncDatabase;
+import com.frodo.app.framework.orm.AsyncDatabase.DbCallable;
+import com.frodo.app.framework.orm.Database;
+import com.frodo.app.framework.orm.sql.Selector;
+import com.frodo.app.framework.orm.sql.WhereBuilder;
+
+import java.util.List;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.schedulers.Schedulers;
+
+/**
+ * RxJava flavor of {@link AsyncDatabase}: every observable emits once on the db read or write threads,
+ * observe it on the main thread with {@code observeOn(AndroidSchedulers.mainThread())}.
+ */
+public class RxDatabase {
+
+    private final AsyncDatabase asyncDatabase;
+    private final Scheduler readScheduler;
+    private final Scheduler writeScheduler;
+
+    public RxDatabase(Database database) {
+        this(database.getAsyncDatabase());
+    }
+
+    public RxDatabase(AsyncDatabase asyncDatabase) {
+        this.asyncDatabase = asyncDatabase;
+        this.readScheduler = Schedulers.from(asyncDatabase.getReadExecutor());
+        this.writeScheduler = Schedulers.from(asyncDatabase.getWriteExecutor());
+    }
+
+    public <T> Observable<T> read(DbCallable<T> callable) {
+        return create(callable).subscribeOn(readScheduler);
+    }
+
+    public <T> Observable<T> write(DbCallable<T> callable) {
+        return create(callable).subscribeOn(writeScheduler);
+    }
+
+    public <T> Observable<T> findById(final Class<T> entityType, final Object idValue) {
+        return read(new DbCallable<T>() {
+            @Override
+            public T call(Database db) throws DbException {
+                return db.findById(entityType, idValue);
+            }
+        });
+    }
+
+    public <T> Observable<T> findFirst(final Selector selector) {
+        return read(new DbCallable<T>() {
+            @Override
+            public T call(Database db) throws DbException {
+                return db.findFirst(selector);
+            }
+        });
+    }
+
+    public <T> Observable<List<T>> findAll(final Selector selector) {
+        return read(new DbCallable<List<T>>() {
+            @Override
+            public List<T> call(Database db) throws DbException {
+                return db.findAll(selector);
+            }
+        });
+    }
+
+    public <T> Observable<List<T>> findAll(final Class<T> entityType) {
+        return read(new DbCallable<List<T>>() {
+            @Override
+            public List<T> call(Database db) throws DbException {
+                return db.findAll(entityType);
+            }
+        });
+    }
+
+    public Observable<Long> count(final Selector selector) {
+        return read(new DbCallable<Long>() {
+            @Override
+            public Long call(Database db) throws DbException {
+                return db.count(selector);
+            }
+        });
+    }
+
+    public Observable<Void> saveOrUpdate(final Object entity) {
+        return write(new DbCallable<Void>() {
+            @Override
+            public Void call(Database db) throws DbException {
+                db.saveOrUpdate(entity);
+                return null;
+            }
+        });
+    }
+
+    public Observable<Void> saveOrUpdateAll(final List<?> entities) {
+        return write(new DbCallable<Void>() {
+            @Override
+            public Void call(Database db) throws DbException {
+                db.saveOrUpdateAll(entities);
+                return null;
+            }
+        });
+    }
+
+    public Observable<Void> update(final Object entity, final String... updateColumnNames) {
+        return write(new DbCallable<Void>() {
+            @Override
+            public Void call(Database db) throws DbException {
+                db.update(entity, updateColumnNames);
+                return null;
+            }
+        });
+    }
+
+    public Observable<Void> delete(final Object entity) {
+        return write(new DbCallable<Void>() {
+            @Override
+            public Void call(Database db) throws DbException {
+                db.delete(entity);
+                return null;
+            }
+        });
+    }
+
+    public Observable<Void> delete(final Class<?> entityType, final WhereBuilder whereBuilder) {
+        return write(new DbCallable<Void>() {
+            @Override
+            public Void call(Database db) throws DbException {
+                db.delete(entityType, whereBuilder);
+                return null;
+            }
+        });
+    }
+
+    private <T> Observable<T> create(final DbCallable<T> callable) {
+        return Observable.create(new Observable.OnSubscribe<T>() {
+            @Override
+            public void call(Subscriber<? super T> subscriber) {
+                if (subscriber.isUnsubscribed()) {
+                    return;
+                }
+                T result;
+                try {
+                    result = callable.call(asyncDatabase.getDatabase());
+                } catch (Throwable e) {
+                    subscriber.onError(e);
+                    return;
+                }
+                if (!subscriber.isUnsubscribed()) {
+                    subscriber.onNext(result);
+                    subscriber.onCompleted();
+                }
+            }
+        });
+    }
+}
@@ -1,18 +1,67 @@
 package com.frodo.app.framework.cache;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Abstract Cache
+ * <p/>
+ * Keeps the write time of every entry, subclasses call {@link #recordWrite(Object)} when they put an entry
+ * and {@link #recordEvict(Object)} when they evict one. An entry outliving its time to live is found
+ * by the shared {@link TimingWheel} and evicted on a background thread, so a slow eviction does not delay
+ * the other timeouts. Subclasses record their hits and misses with {@link #getStatsCounter()}.
+ * <p/>
+ * The write time of an entry the {@link CacheSystem} evicts by itself, such as to make room, is dropped
+ * when the cache system tells its eviction listeners, see {@link #getSystemKey(Object)}.
+ * <p/>
+ * The write times are kept in memory: a subclass storing entries out of memory stores the time to live with them,
+ * see {@link CacheSystem#put(Object, Object, Type, long, TimeUnit)}.
  * @param <K>
  * @param <V>
  *     Created by frodo on 2015/7/23.
  */
 public abstract class AbstractCache<K, V> implements Cache<K, V> {
+    /**
+     * its thread ends when it has been idle for a minute
+     */
+    private static final ExecutorService EXPIRY_EXECUTOR = new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactoryBuilder().setNameFormat("cache-expiry").setDaemon(true).build());
+
     private CacheSystem cacheSystem;
     private Type type;
+    private final ConcurrentHashMap<K, WriteRecord> writeRecords = new ConcurrentHashMap<>();
+    /**
+     * key of the entries in the cache system, see {@link CacheSystem#getStorageKey(String, Type)}
+     */
+    private final ConcurrentHashMap<String, K> storageKeys = new ConcurrentHashMap<>();
+    private final EvictionListener systemEvictionListener = new EvictionListener() {
+        @Override
+        public void onEvicted(String storageKey, EvictionCause cause) {
+            // the cache system has counted the eviction
+            K key = storageKeys.get(storageKey);
+            WriteRecord record = key == null ? null : writeRecords.get(key);
+            if (record != null && storageKey.equals(record.storageKey) && writeRecords.remove(key, record)) {
+                forget(key, record);
+            }
+        }
+    };
+    private volatile long expireAfterWriteNanos;
+    private volatile long refreshAfterWriteNanos;
+    private final StatsCounter statsCounter = new StatsCounter();
 
     public AbstractCache(CacheSystem cacheSystem, Type type) {
         this.cacheSystem = cacheSystem;
         this.type = type;
+        if (cacheSystem != null) {
+            cacheSystem.addEvictionListener(systemEvictionListener);
+        }
     }
 
     @Override
@@ -23,4 +72,232 @@ public abstract class AbstractCache<K, V> implements Cache<K, V> {
     public final Type getType() {
         return type;
     }
+
+    /**
+     * @param duration default time to live of the entries put from now on, 0 to keep them
+     */
+    public void setExpireAfterWrite(long duration, TimeUnit unit) {
+        this.expireAfterWriteNanos = unit.toNanos(duration);
+    }
+
+    /**
+     * @param duration age after which the entries put from now on need a refresh, 0 to never refresh them
+     */
+    public void setRefreshAfterWrite(long duration, TimeUnit unit) {
+        this.refreshAfterWriteNanos = unit.toNanos(duration);
+    }
+
+    protected final StatsCounter getStatsCounter() {
+        return statsCounter;
+    }
+
+    /**
+     * @return the key the entry of key is put with in the {@link CacheSystem}, the key itself by default
+     */
+    protected String getSystemKey(K key) {
+        return String.valueOf(key);
+    }
+
+    /**
+     * Stop listening to the evictions of the {@link CacheSystem}, the cache is not used anymore.
+     */
+    public void close() {
+        if (cacheSystem != null) {
+            cacheSystem.removeEvictionListener(systemEvictionListener);
+        }
+    }
+
+    /**
+     * @return the statistics of this cache, the entries are counted by the {@link CacheSystem}
+     */
+    public CacheStats stats() {
+        return statsCounter.snapshot(-1, -1);
+    }
+
+    @Override
+    public void put(K key, V value, long ttl, TimeUnit unit) {
+        put(key, value);
+        recordWrite(key, getTimeToLive(ttl, unit));
+    }
+
+    /**
+     * @return the time to live in nanoseconds, the default one if ttl is not positive, 0 to keep the entry
+     */
+    protected final long getTimeToLive(long ttl, TimeUnit unit) {
+        long ttlNanos = unit.toNanos(ttl);
+        return ttlNanos > 0 ? ttlNanos : expireAfterWriteNanos;
+    }
+
+    @Override
+    public boolean isExpired(K key) {
+        WriteRecord record = writeRecords.get(key);
+        return record != null && record.isExpired(System.nanoTime());
+    }
+
+    @Override
+    public boolean needsRefresh(K key) {
+        WriteRecord record = writeRecords.get(key);
+        return record != null && record.needsRefresh(System.nanoTime());
+    }
+
+    @Override
+    public long getRemainingTimeToLive(K key, TimeUnit unit) {
+        WriteRecord record = writeRecords.get(key);
+        if (record == null || record.ttlNanos <= 0) {
+            return 0;
+        }
+        return Math.max(unit.convert(record.remainingNanos(System.nanoTime()), TimeUnit.NANOSECONDS), 1);
+    }
+
+    /**
+     * The entry has been put with the default time to live.
+     */
+    protected final void recordWrite(K key) {
+        recordWrite(key, expireAfterWriteNanos);
+    }
+
+    /**
+     * The entry has been put with a time to live.
+     *
+     * @param ttlNanos such as {@link #getTimeToLive(long, TimeUnit)}, 0 to keep the entry
+     */
+    protected final void recordWrite(final K key, long ttlNanos) {
+        String storageKey = cacheSystem == null ? null : cacheSystem.getStorageKey(getSystemKey(key), type);
+        final WriteRecord record = new WriteRecord(System.nanoTime(), ttlNanos, refreshAfterWriteNanos, storageKey);
+        if (storageKey != null) {
+            storageKeys.put(storageKey, key);
+        }
+        if (ttlNanos > 0) {
+            final Runnable expiry = new Runnable() {
+                @Override
+                public void run() {
+                    // unless the entry has been written again meanwhile
+                    if (writeRecords.remove(key, record)) {
+                        forget(key, record);
+                        statsCounter.recordEviction(EvictionCause.EXPIRED);
+                        evict(key, EvictionCause.EXPIRED);
+                    }
+                }
+            };
+            record.timeout = TimingWheel.getDefault().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    // an eviction may do I/O, the wheel thread only hands it over
+                    EXPIRY_EXECUTOR.execute(expiry);
+                }
+            }, ttlNanos, TimeUnit.NANOSECONDS);
+        }
+        WriteRecord previous = writeRecords.put(key, record);
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    /**
+     * the record has been removed from {@link #writeRecords}
+     */
+    private void forget(K key, WriteRecord record) {
+        record.cancel();
+        if (record.storageKey != null) {
+            storageKeys.remove(record.storageKey, key);
+        }
+    }
+
+    /**
+     * Evict the entry if it is expired, before the timing wheel does.
+     *
+     * @return true if the entry was expired
+     */
+    protected final boolean evictIfExpired(K key) {
+        WriteRecord record = writeRecords.get(key);
+        if (record == null || !record.isExpired(System.nanoTime()) || !writeRecords.remove(key, record)) {
+            return false;
+        }
+        forget(key, record);
+        statsCounter.recordEviction(EvictionCause.EXPIRED);
+        evict(key, EvictionCause.EXPIRED);
+        return true;
+    }
+
+    /**
+     * Evict the entry for a cause, {@link EvictionCause#EXPIRED} when its time to live has elapsed.
+     * Subclasses storing their entries in the {@link CacheSystem} pass the cause on
+     * with {@link CacheSystem#evict(String, Type, EvictionCause)}, the default calls {@link #evict(Object)}.
+     */
+    protected void evict(K key, EvictionCause cause) {
+        evict(key);
+    }
+
+    /**
+     * The entry has been evicted.
+     */
+    protected final void recordEvict(K key) {
+        WriteRecord previous = writeRecords.remove(key);
+        if (previous != null) {
+            forget(key, previous);
+            statsCounter.recordEviction(EvictionCause.EXPLICIT);
+        }
+    }
+
+    /**
+     * All the entries have been evicted.
+     */
+    protected final void recordEvictAll() {
+        for (K key : writeRecords.keySet()) {
+            recordEvict(key);
+        }
+    }
+
+    /**
+     * Evict every entry written through this cache and still cached with {@link #evict(Object, EvictionCause)},
+     * for subclasses sharing their {@link CacheSystem} with other caches.
+     */
+    protected final void evictAllWritten() {
+        for (Map.Entry<K, WriteRecord> entry : writeRecords.entrySet()) {
+            K key = entry.getKey();
+            WriteRecord record = entry.getValue();
+            if (writeRecords.remove(key, record)) {
+                forget(key, record);
+                statsCounter.recordEviction(EvictionCause.EXPLICIT);
+                evict(key, EvictionCause.EXPLICIT);
+            }
+        }
+    }
+
+    private static final class WriteRecord {
+        final long writeNanos;
+        final long ttlNanos;
+        final long refreshNanos;
+        /**
+         * null without a cache system
+         */
+        final String storageKey;
+        volatile TimingWheel.Timeout timeout;
+
+        WriteRecord(long writeNanos, long ttlNanos, long refreshNanos, String storageKey) {
+            this.writeNanos = writeNanos;
+            this.ttlNanos = ttlNanos;
+            this.refreshNanos = refreshNanos;
+            this.storageKey = storageKey;
+        }
+
+        boolean isExpired(long now) {
+            return ttlNanos > 0 && now - writeNanos >= ttlNanos;
+        }
+
+        long remainingNanos(long now) {
+            return ttlNanos - (now - writeNanos);
+        }
+
+        boolean needsRefresh(long now) {
+            return refreshNanos > 0 && now - writeNanos >= refreshNanos;
+        }
+
+        void cancel() {
+            TimingWheel.Timeout current = timeout;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+    }
 }
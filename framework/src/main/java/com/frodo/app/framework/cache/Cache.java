@@ -1,5 +1,7 @@
 package com.frodo.app.framework.cache;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * An interface representing a E Cache.
  * @param <K>
@@ -37,6 +39,13 @@ public interface Cache<K, V> {
      */
     void put(K key, V value);
 
+    /**
+     * Puts an element into the cache, removed once the time to live has elapsed.
+     *
+     * @param ttl time to live from now, 0 for the default of the cache
+     */
+    void put(K key, V value, long ttl, TimeUnit unit);
+
     /**
      * Checks if an element (E) exists in the cache.
      *
@@ -52,6 +61,34 @@ public interface Cache<K, V> {
      */
     boolean isExpired();
 
+    /**
+     * Checks if the element has outlived its time to live, it is removed in the background soon.
+     *
+     * @return true if the element is expired, false if it is not or if it is not cached.
+     */
+    boolean isExpired(K key);
+
+    /**
+     * Checks if the element has been cached for longer than the refresh delay,
+     * it is still served but should be loaded again.
+     *
+     * @return true if the element should be refreshed.
+     */
+    boolean needsRefresh(K key);
+
+    /**
+     * Gets the time the element has left to live, to copy it elsewhere with the same expiry.
+     *
+     * @return at least 1 while the element is cached with a time to live,
+     * 0 if it is kept until evicted or if it is not cached.
+     */
+    long getRemainingTimeToLive(K key, TimeUnit unit);
+
+    /**
+     * Evict an element of the cache.
+     */
+    void evict(K key);
+
     /**
      * Evict all elements of the cache.
      */
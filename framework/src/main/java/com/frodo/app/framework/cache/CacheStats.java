@@ -0,0 +1,137 @@
+package com.frodo.app.framework.cache;
+
+import java.util.Arrays;
+
+/**
+ * Statistics of a cache at one point in time, taken by {@link StatsCounter#snapshot(long, long)}.
+ * Counts start when the cache is created, compare two snapshots for the activity in between.
+ */
+public final class CacheStats {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long loadSuccessCount;
+    private final long loadFailureCount;
+    private final long meanLoadMicros;
+    private final long medianLoadMicros;
+    private final long p99LoadMicros;
+    private final long maxLoadMicros;
+    private final long[] evictionCounts;
+    private final long entryCount;
+    private final long byteSize;
+
+    CacheStats(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount,
+               long meanLoadMicros, long medianLoadMicros, long p99LoadMicros, long maxLoadMicros,
+               long[] evictionCounts, long entryCount, long byteSize) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.meanLoadMicros = meanLoadMicros;
+        this.medianLoadMicros = medianLoadMicros;
+        this.p99LoadMicros = p99LoadMicros;
+        this.maxLoadMicros = maxLoadMicros;
+        this.evictionCounts = evictionCounts;
+        this.entryCount = entryCount;
+        this.byteSize = byteSize;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getRequestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * @return hits per lookup, 1 if there was no lookup
+     */
+    public double getHitRate() {
+        long requestCount = getRequestCount();
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    /**
+     * @return misses per lookup, 0 if there was no lookup
+     */
+    public double getMissRate() {
+        long requestCount = getRequestCount();
+        return requestCount == 0 ? 0.0 : (double) missCount / requestCount;
+    }
+
+    public long getLoadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailureCount;
+    }
+
+    public long getMeanLoadMicros() {
+        return meanLoadMicros;
+    }
+
+    public long getMedianLoadMicros() {
+        return medianLoadMicros;
+    }
+
+    public long getP99LoadMicros() {
+        return p99LoadMicros;
+    }
+
+    public long getMaxLoadMicros() {
+        return maxLoadMicros;
+    }
+
+    public long getEvictionCount(EvictionCause cause) {
+        return evictionCounts[cause.ordinal()];
+    }
+
+    /**
+     * @return evictions of every cause
+     */
+    public long getEvictionCount() {
+        long count = 0;
+        for (long evictionCount : evictionCounts) {
+            count += evictionCount;
+        }
+        return count;
+    }
+
+    /**
+     * @return number of entries cached, -1 if unknown
+     */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return size of the entries cached, estimated for memory caches, -1 if unknown
+     */
+    public long getByteSize() {
+        return byteSize;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", hitRate=" + getHitRate() +
+                ", loadSuccessCount=" + loadSuccessCount +
+                ", loadFailureCount=" + loadFailureCount +
+                ", meanLoadMicros=" + meanLoadMicros +
+                ", medianLoadMicros=" + medianLoadMicros +
+                ", p99LoadMicros=" + p99LoadMicros +
+                ", maxLoadMicros=" + maxLoadMicros +
+                ", evictionCounts=" + Arrays.toString(evictionCounts) +
+                ", entryCount=" + entryCount +
+                ", byteSize=" + byteSize +
+                '}';
+    }
+}
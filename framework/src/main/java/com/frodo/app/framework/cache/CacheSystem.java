@@ -3,6 +3,8 @@ package com.frodo.app.framework.cache;
 import com.frodo.app.framework.controller.ChildSystem;
 
 import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * a cache system to manager {@link Cache}
@@ -23,6 +25,20 @@ public interface CacheSystem extends ChildSystem {
      */
     void setCacheDir(String dir);
 
+    /**
+     * get the codec of the values stored out of memory
+     *
+     * @return {@link ValueCodec}
+     */
+    ValueCodec getValueCodec();
+
+    /**
+     * set the codec of the values stored out of memory, values stored with another codec become misses
+     *
+     * @param codec {@link ValueCodec}
+     */
+    void setValueCodec(ValueCodec codec);
+
     /**
      * is exist cache by {@link Cache.Type}
      *
@@ -55,6 +71,21 @@ public interface CacheSystem extends ChildSystem {
      */
     <K, V> boolean put(K key, V value, Cache.Type type);
 
+    /**
+     * is success put, the time to live is stored with the entries out of memory, so they still expire
+     * after a restart: an expired entry is a miss
+     *
+     * @param key   {@link K}
+     * @param value {@link V}
+     * @param type  {@link Cache.Type}
+     * @param ttl   time to live from now, 0 to keep the entry
+     * @param unit  {@link TimeUnit}
+     * @param <K>   {@link K}
+     * @param <V>   {@link V}
+     * @return boolean
+     */
+    <K, V> boolean put(K key, V value, Cache.Type type, long ttl, TimeUnit unit);
+
     /**
      * evict
      *
@@ -62,11 +93,55 @@ public interface CacheSystem extends ChildSystem {
      */
     void evict(String key);
 
+    /**
+     * evict the entry of one {@link Cache.Type}
+     *
+     * @param key   {@link String}
+     * @param type  {@link Cache.Type}
+     * @param cause {@link EvictionCause} counted by {@link #stats()}
+     */
+    void evict(String key, Cache.Type type, EvictionCause cause);
+
     /**
      * evict all
      */
     void evictAll();
 
+    /**
+     * add a listener of the entries the cache system evicts by itself, such as to make room
+     *
+     * @param listener gets the key of {@link #getStorageKey(String, Cache.Type)}
+     */
+    void addEvictionListener(EvictionListener listener);
+
+    /**
+     * remove a listener added by {@link #addEvictionListener(EvictionListener)}
+     *
+     * @param listener {@link EvictionListener}
+     */
+    void removeEvictionListener(EvictionListener listener);
+
+    /**
+     * get the key an entry is stored with
+     *
+     * @param key  {@link String} the entry is put with
+     * @param type {@link Cache.Type}
+     * @return {@link String} given to the eviction listeners
+     */
+    String getStorageKey(String key, Cache.Type type);
+
+    /**
+     * close the stores out of memory and stop the {@link TimingWheel#getDefault()} thread
+     */
+    void close();
+
+    /**
+     * statistics of the caches, cheap enough to poll
+     *
+     * @return {@link CacheStats} of every {@link Cache.Type} the system stores
+     */
+    Map<Cache.Type, CacheStats> stats();
+
     /**
      * is exist cache in application internal
      *
@@ -0,0 +1,451 @@
+package com.frodo.app.framework.cache;
+
+import com.google.common.base.Charsets;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A cache of byte arrays in a directory, bounded by their total size and evicted least recently used first.
+ * <p/>
+ * Every entry is a file written to a temporary file, synced and then renamed, so a reader sees the old or the new
+ * value but never a partial one. An append only journal records the puts, reads and removes:
+ * <pre>
+ *     PUT key size
+ *     GET key
+ *     DEL key
+ * </pre>
+ * Opening replays it to rebuild the index in recency order, an entry whose journal line was lost in a crash is deleted
+ * with the temporary files, and the journal is compacted when it is mostly redundant.
+ * All methods are thread safe, files are read outside of the lock.
+ */
+public final class DiskLruCache implements Closeable {
+
+    static final String JOURNAL_FILE = "journal";
+    static final String JOURNAL_FILE_TEMP = "journal.tmp";
+    static final String MAGIC = "frodo.DiskLruCache";
+    static final String VERSION = "1";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String PUT = "PUT";
+    private static final String GET = "GET";
+    private static final String DEL = "DEL";
+    private static final Pattern KEY_PATTERN = Pattern.compile("[a-z0-9_-]{1,120}");
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+
+    private final File directory;
+    private final File journalFile;
+    private long maxSize;
+    /**
+     * key: entry key, value: size in bytes, in access order
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+    private int redundantOpCount;
+    private Writer journalWriter;
+    private EvictionListener evictionListener;
+
+    private DiskLruCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.journalFile = new File(directory, JOURNAL_FILE);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Open the cache in the directory, rebuilding its index from the journal.
+     *
+     * @param maxSize total size of the entries in bytes
+     */
+    public static DiskLruCache open(File directory, long maxSize) throws IOException {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("can not create cache directory " + directory);
+        }
+        DiskLruCache cache = new DiskLruCache(directory, maxSize);
+        File journalTemp = new File(directory, JOURNAL_FILE_TEMP);
+        if (!cache.journalFile.exists() && journalTemp.exists()) {
+            // a crash after the old journal was deleted by a compaction
+            rename(journalTemp, cache.journalFile);
+        }
+        if (cache.journalFile.exists()) {
+            try {
+                cache.readJournal();
+                cache.deleteStrayFiles();
+                cache.journalWriter = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(cache.journalFile, true), Charsets.UTF_8));
+                synchronized (cache) {
+                    cache.trimToSize();
+                    cache.compactIfNeeded();
+                }
+                return cache;
+            } catch (IOException e) {
+                // unreadable journal: start afresh
+                cache.entries.clear();
+                cache.size = 0;
+            }
+        }
+        cache.deleteStrayFiles();
+        cache.rebuildJournal();
+        return cache;
+    }
+
+    /**
+     * @return a key accepted by the cache for any string: the hex SHA-1 of it
+     */
+    public static String hashKey(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(Charsets.UTF_8));
+            StringBuilder result = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private void readJournal() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), Charsets.UTF_8));
+        try {
+            String magic = reader.readLine();
+            String version = reader.readLine();
+            String blank = reader.readLine();
+            if (!MAGIC.equals(magic) || !VERSION.equals(version) || !"".equals(blank)) {
+                throw new IOException("unexpected journal header: [" + magic + ", " + version + ", " + blank + "]");
+            }
+            int lineCount = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // a line cut by a crash is ignored
+                readJournalLine(line);
+                lineCount++;
+            }
+            redundantOpCount = lineCount - entries.size();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void readJournalLine(String line) {
+        String[] parts = line.split(" ");
+        if (parts.length < 2 || !KEY_PATTERN.matcher(parts[1]).matches()) {
+            return;
+        }
+        String key = parts[1];
+        if (PUT.equals(parts[0]) && parts.length == 3) {
+            long entrySize;
+            try {
+                entrySize = Long.parseLong(parts[2]);
+            } catch (NumberFormatException e) {
+                return;
+            }
+            Long previous = entries.put(key, entrySize);
+            size += entrySize - (previous == null ? 0 : previous);
+        } else if (GET.equals(parts[0])) {
+            entries.get(key);
+        } else if (DEL.equals(parts[0])) {
+            Long previous = entries.remove(key);
+            if (previous != null) {
+                size -= previous;
+            }
+        }
+    }
+
+    /**
+     * delete temporary files, and the entry files which are not in the index or have another size
+     */
+    private void deleteStrayFiles() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.equals(JOURNAL_FILE) || name.equals(JOURNAL_FILE_TEMP)) {
+                continue;
+            }
+            Long entrySize = entries.get(name);
+            if (entrySize == null || entrySize != file.length()) {
+                file.delete();
+                if (entrySize != null) {
+                    entries.remove(name);
+                    size -= entrySize;
+                }
+            }
+        }
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            if (!new File(directory, entry.getKey()).exists()) {
+                size -= entry.getValue();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * write the index to a new journal, replacing the current one at once
+     */
+    private synchronized void rebuildJournal() throws IOException {
+        if (journalWriter != null) {
+            journalWriter.close();
+        }
+        File journalTemp = new File(directory, JOURNAL_FILE_TEMP);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalTemp), Charsets.UTF_8));
+        try {
+            writer.write(MAGIC + "\n" + VERSION + "\n\n");
+            for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                writer.write(PUT + " " + entry.getKey() + " " + entry.getValue() + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+        rename(journalTemp, journalFile);
+        journalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, true), Charsets.UTF_8));
+        redundantOpCount = 0;
+    }
+
+    private static void rename(File from, File to) throws IOException {
+        if (!from.renameTo(to)) {
+            // renameTo does not replace an existing file on every platform
+            to.delete();
+            if (!from.renameTo(to)) {
+                throw new IOException("can not rename " + from + " to " + to);
+            }
+        }
+    }
+
+    private static void checkKey(String key) {
+        if (key == null || !KEY_PATTERN.matcher(key).matches()) {
+            throw new IllegalArgumentException("keys must match " + KEY_PATTERN.pattern() + ", see hashKey(String): " + key);
+        }
+    }
+
+    private void checkNotClosed() {
+        if (journalWriter == null) {
+            throw new IllegalStateException("cache is closed");
+        }
+    }
+
+    /**
+     * @return the value, null if it is not cached, the entry becomes the most recently used
+     */
+    public byte[] get(String key) throws IOException {
+        checkKey(key);
+        File file;
+        synchronized (this) {
+            checkNotClosed();
+            if (entries.get(key) == null) {
+                return null;
+            }
+            // recency only: lost in a crash it does not harm
+            journalWriter.write(GET + " " + key + "\n");
+            redundantOpCount++;
+            compactIfNeeded();
+            file = new File(directory, key);
+        }
+        try {
+            return readFully(new FileInputStream(file));
+        } catch (FileNotFoundException e) {
+            // removed after the lookup
+            return null;
+        }
+    }
+
+    public synchronized boolean contains(String key) {
+        checkKey(key);
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Write the value atomically, least recently used entries are evicted until the total size fits.
+     * A value larger than the maximum size is not cached.
+     */
+    public void put(String key, byte[] value) throws IOException {
+        checkKey(key);
+        File temp = new File(directory, key + "." + Thread.currentThread().getId() + TEMP_SUFFIX);
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(value);
+            out.flush();
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        synchronized (this) {
+            checkNotClosed();
+            if (value.length > maxSize) {
+                temp.delete();
+                remove(key);
+                return;
+            }
+            rename(temp, new File(directory, key));
+            Long previous = entries.put(key, (long) value.length);
+            size += value.length - (previous == null ? 0 : previous);
+            if (previous != null) {
+                redundantOpCount++;
+            }
+            journalWriter.write(PUT + " " + key + " " + value.length + "\n");
+            journalWriter.flush();
+            trimToSize();
+            compactIfNeeded();
+        }
+    }
+
+    public String getString(String key) throws IOException {
+        byte[] value = get(key);
+        return value == null ? null : new String(value, Charsets.UTF_8);
+    }
+
+    public void putString(String key, String value) throws IOException {
+        put(key, value.getBytes(Charsets.UTF_8));
+    }
+
+    /**
+     * @return true if the entry was cached
+     */
+    public synchronized boolean remove(String key) throws IOException {
+        checkKey(key);
+        checkNotClosed();
+        Long previous = entries.remove(key);
+        if (previous == null) {
+            return false;
+        }
+        deleteEntry(key, previous);
+        journalWriter.flush();
+        compactIfNeeded();
+        return true;
+    }
+
+    private void deleteEntry(String key, long entrySize) throws IOException {
+        File file = new File(directory, key);
+        if (file.exists() && !file.delete()) {
+            throw new IOException("can not delete " + file);
+        }
+        size -= entrySize;
+        redundantOpCount += 2;
+        journalWriter.write(DEL + " " + key + "\n");
+    }
+
+    private void trimToSize() throws IOException {
+        if (size <= maxSize) {
+            return;
+        }
+        List<Map.Entry<String, Long>> evicted = new ArrayList<>();
+        long remaining = size;
+        for (Map.Entry<String, Long> entry : entries.entrySet()) {
+            if (remaining <= maxSize) {
+                break;
+            }
+            evicted.add(entry);
+            remaining -= entry.getValue();
+        }
+        for (Map.Entry<String, Long> entry : evicted) {
+            entries.remove(entry.getKey());
+            deleteEntry(entry.getKey(), entry.getValue());
+            if (evictionListener != null) {
+                evictionListener.onEvicted(entry.getKey(), EvictionCause.SIZE);
+            }
+        }
+        journalWriter.flush();
+    }
+
+    private void compactIfNeeded() throws IOException {
+        if (redundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD && redundantOpCount >= entries.size()) {
+            rebuildJournal();
+        }
+    }
+
+    /**
+     * @return total size of the entries in bytes
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * @param listener told about the entries evicted to make room, null for none
+     */
+    public synchronized void setEvictionListener(EvictionListener listener) {
+        this.evictionListener = listener;
+    }
+
+    public synchronized int count() {
+        return entries.size();
+    }
+
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized void setMaxSize(long maxSize) throws IOException {
+        this.maxSize = maxSize;
+        if (journalWriter != null) {
+            trimToSize();
+        }
+    }
+
+    /**
+     * remove every entry
+     */
+    public synchronized void evictAll() throws IOException {
+        checkNotClosed();
+        for (String key : entries.keySet()) {
+            new File(directory, key).delete();
+        }
+        entries.clear();
+        size = 0;
+        rebuildJournal();
+    }
+
+    /**
+     * write the buffered reads to the journal
+     */
+    public synchronized void flush() throws IOException {
+        checkNotClosed();
+        journalWriter.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (journalWriter != null) {
+            journalWriter.close();
+            journalWriter = null;
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.frodo.app.framework.cache;
+
+/**
+ * Why an entry left a cache, see {@link CacheStats#getEvictionCount(EvictionCause)}.
+ */
+public enum EvictionCause {
+    /**
+     * evicted by the caller
+     */
+    EXPLICIT,
+    /**
+     * evicted to make room
+     */
+    SIZE,
+    /**
+     * outlived its time to live
+     */
+    EXPIRED,
+}
@@ -0,0 +1,10 @@
+package com.frodo.app.framework.cache;
+
+/**
+ * Told about the entries a store evicts on its own, such as {@link DiskLruCache} and {@link SegmentStore}.
+ * Called under the lock of the store: it must be quick and must not call the store.
+ */
+public interface EvictionListener {
+
+    void onEvicted(String key, EvictionCause cause);
+}
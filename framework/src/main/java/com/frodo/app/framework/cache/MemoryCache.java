@@ -0,0 +1,256 @@
+package com.frodo.app.framework.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrent in-memory cache bounded by the total weight of its entries.
+ * Keys are spread over lock striped segments, each one a least recently used map
+ * owning an equal share of the maximum weight, so threads working on different keys rarely wait on each other
+ * and the least recently used entries of a segment are evicted when it is full.
+ * Null keys and values are not supported.
+ *
+ * @param <K> key
+ * @param <V> value
+ */
+public class MemoryCache<K, V> {
+
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 4;
+    private static final int MAX_SEGMENTS = 1 << 16;
+
+    private final Weigher<? super K, ? super V> weigher;
+    private final long maxWeight;
+    private final Segment<K, V>[] segments;
+    private final int segmentMask;
+
+    /**
+     * @param maxEntries every entry weighs 1
+     */
+    public MemoryCache(long maxEntries) {
+        this(maxEntries, null, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    public MemoryCache(long maxWeight, Weigher<? super K, ? super V> weigher) {
+        this(maxWeight, weigher, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * @param maxWeight        total weight of the entries
+     * @param weigher          weight of an entry, null for a weight of 1 per entry
+     * @param concurrencyLevel number of threads expected to write at the same time, the number of segments
+     */
+    public MemoryCache(long maxWeight, Weigher<? super K, ? super V> weigher, int concurrencyLevel) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("maxWeight must be positive");
+        }
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        int segmentCount = 1;
+        while (segmentCount < concurrencyLevel && segmentCount < MAX_SEGMENTS && segmentCount * 2 <= maxWeight) {
+            segmentCount <<= 1;
+        }
+        this.segmentMask = segmentCount - 1;
+        @SuppressWarnings("unchecked")
+        Segment<K, V>[] segments = (Segment<K, V>[]) new Segment<?, ?>[segmentCount];
+        long segmentWeight = (maxWeight + segmentCount - 1) / segmentCount;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(this, segmentWeight);
+        }
+        this.segments = segments;
+    }
+
+    private Segment<K, V> segmentFor(Object key) {
+        int h = key.hashCode();
+        // spread the high bits, LinkedHashMap uses the low ones inside the segment
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return segments[(h >>> 16) & segmentMask];
+    }
+
+    /**
+     * @return the cached value, null if it is not cached, the entry becomes the most recently used
+     */
+    public V get(K key) {
+        return segmentFor(key).get(key);
+    }
+
+    public boolean containsKey(K key) {
+        return segmentFor(key).containsKey(key);
+    }
+
+    /**
+     * Cache the value, least recently used entries are evicted until it fits.
+     * A value heavier than a segment share of the maximum weight is not cached.
+     *
+     * @return the value previously cached with the key, null if none
+     */
+    public V put(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("key and value can not be null");
+        }
+        int weight = weigher == null ? 1 : weigher.weigh(key, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("negative weight " + weight + " of " + key);
+        }
+        return segmentFor(key).put(key, value, weight);
+    }
+
+    /**
+     * @return the removed value, null if it was not cached
+     */
+    public V remove(K key) {
+        return segmentFor(key).remove(key);
+    }
+
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment<K, V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the total weight of the cached entries
+     */
+    public long weight() {
+        long weight = 0;
+        for (Segment<K, V> segment : segments) {
+            weight += segment.weight();
+        }
+        return weight;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Called when an entry has been evicted to make room, under the lock of its segment:
+     * it must be quick and must not call the cache.
+     */
+    protected void onEvicted(K key, V value) {
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final int weight;
+
+        Entry(V value, int weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    private static final class Segment<K, V> {
+        private final MemoryCache<K, V> cache;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final long maxWeight;
+        /**
+         * in access order, the eldest is the least recently used
+         */
+        private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long weight;
+
+        Segment(MemoryCache<K, V> cache, long maxWeight) {
+            this.cache = cache;
+            this.maxWeight = maxWeight;
+        }
+
+        V get(Object key) {
+            lock.lock();
+            try {
+                Entry<V> entry = entries.get(key);
+                return entry == null ? null : entry.value;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean containsKey(Object key) {
+            lock.lock();
+            try {
+                return entries.containsKey(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        V put(K key, V value, int entryWeight) {
+            V previousValue;
+            lock.lock();
+            try {
+                Entry<V> previous = entries.remove(key);
+                if (previous != null) {
+                    weight -= previous.weight;
+                }
+                previousValue = previous == null ? null : previous.value;
+                if (entryWeight > maxWeight) {
+                    return previousValue;
+                }
+                entries.put(key, new Entry<>(value, entryWeight));
+                weight += entryWeight;
+                Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+                while (weight > maxWeight && iterator.hasNext()) {
+                    Map.Entry<K, Entry<V>> eldest = iterator.next();
+                    iterator.remove();
+                    weight -= eldest.getValue().weight;
+                    cache.onEvicted(eldest.getKey(), eldest.getValue().value);
+                }
+            } finally {
+                lock.unlock();
+            }
+            return previousValue;
+        }
+
+        V remove(Object key) {
+            lock.lock();
+            try {
+                Entry<V> previous = entries.remove(key);
+                if (previous == null) {
+                    return null;
+                }
+                weight -= previous.weight;
+                return previous.value;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void clear() {
+            lock.lock();
+            try {
+                entries.clear();
+                weight = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return entries.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long weight() {
+            lock.lock();
+            try {
+                return weight;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,515 @@
+package com.frodo.app.framework.cache;
+
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * A store of small byte arrays appended to a few large segment files, instead of a file per entry.
+ * <p/>
+ * Every segment is a file of a fixed size mapped in memory, records are appended to the newest one:
+ * <pre>
+ *     key length (int) | value length (int, -1 when removed) | key (UTF-8) | value | CRC32 (int)
+ * </pre>
+ * An in-memory index keeps the segment and offset of the latest record of each key, so a lookup copies
+ * the value out of the mapping without any system call. Opening replays the segments oldest first and stops
+ * at the first torn record of a segment.
+ * <p/>
+ * Records overwritten or removed are dead space, a segment whose dead space passes the compaction threshold
+ * has its live records copied to the newest segment and is deleted, on a background thread.
+ * When the segments exceed the maximum size, the oldest segment is dropped with its entries.
+ * All methods are thread safe.
+ */
+public final class SegmentStore implements Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+    public static final float DEFAULT_COMPACTION_THRESHOLD = 0.5f;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final int HEADER_SIZE = 8;
+    private static final int CRC_SIZE = 4;
+    private static final int REMOVED = -1;
+
+    private final File directory;
+    private final int segmentSize;
+    private final float compactionThreshold;
+    private long maxSize;
+    /**
+     * key: segment id, oldest first
+     */
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private final HashMap<String, Location> index = new HashMap<>();
+    private Segment activeSegment;
+    private ExecutorService compactionExecutor;
+    private boolean compactionScheduled;
+    private EvictionListener evictionListener;
+    private boolean closed;
+
+    private SegmentStore(File directory, long maxSize, int segmentSize, float compactionThreshold) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.segmentSize = segmentSize;
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    public static SegmentStore open(File directory, long maxSize) throws IOException {
+        return open(directory, maxSize, DEFAULT_SEGMENT_SIZE, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * Open the store in the directory, rebuilding its index from the segments.
+     *
+     * @param maxSize             total size of the segment files in bytes, at least two segments
+     * @param segmentSize         size of a segment file, the largest record it holds
+     * @param compactionThreshold part of a segment that is dead space before it is compacted, between 0 and 1
+     */
+    public static SegmentStore open(File directory, long maxSize, int segmentSize, float compactionThreshold)
+            throws IOException {
+        if (segmentSize <= HEADER_SIZE + CRC_SIZE) {
+            throw new IllegalArgumentException("segmentSize too small " + segmentSize);
+        }
+        if (maxSize < 2L * segmentSize) {
+            throw new IllegalArgumentException("maxSize must hold two segments at least");
+        }
+        if (compactionThreshold <= 0 || compactionThreshold > 1) {
+            throw new IllegalArgumentException("compactionThreshold must be in (0, 1]");
+        }
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("can not create store directory " + directory);
+        }
+        SegmentStore store = new SegmentStore(directory, maxSize, segmentSize, compactionThreshold);
+        synchronized (store) {
+            store.readSegments();
+            store.trimToSize();
+        }
+        return store;
+    }
+
+    private void readSegments() throws IOException {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+                    continue;
+                }
+                try {
+                    int id = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length()));
+                    segments.put(id, null);
+                } catch (NumberFormatException e) {
+                    // not a segment
+                }
+            }
+        }
+        for (Integer id : new ArrayList<>(segments.keySet())) {
+            Segment segment = mapSegment(id);
+            segments.put(id, segment);
+            replay(segment);
+        }
+        activeSegment = segments.isEmpty() ? newSegment() : segments.lastEntry().getValue();
+    }
+
+    private void replay(Segment segment) {
+        int position = 0;
+        Record record;
+        while ((record = readRecord(segment, position)) != null) {
+            Location previous = index.remove(record.key);
+            if (previous != null) {
+                previous.segment.liveBytes -= previous.recordSize;
+            }
+            if (record.valueLength != REMOVED) {
+                index.put(record.key, new Location(segment, position, record.size, record.valueLength));
+                segment.liveBytes += record.size;
+            }
+            position += record.size;
+        }
+        segment.writePosition = position;
+    }
+
+    /**
+     * @return the record at the position, null at the end of the segment or at a torn record
+     */
+    private Record readRecord(Segment segment, int position) {
+        ByteBuffer buffer = segment.buffer;
+        if (position + HEADER_SIZE + CRC_SIZE > segmentSize) {
+            return null;
+        }
+        int keyLength = buffer.getInt(position);
+        int valueLength = buffer.getInt(position + 4);
+        if (keyLength <= 0 || valueLength < REMOVED) {
+            return null;
+        }
+        long size = (long) HEADER_SIZE + keyLength + Math.max(valueLength, 0) + CRC_SIZE;
+        if (position + size > segmentSize) {
+            return null;
+        }
+        byte[] bytes = new byte[(int) size - CRC_SIZE];
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.get(bytes);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        if ((int) crc.getValue() != view.getInt()) {
+            return null;
+        }
+        return new Record(new String(bytes, HEADER_SIZE, keyLength, Charsets.UTF_8), valueLength, (int) size);
+    }
+
+    private File segmentFile(int id) {
+        return new File(directory, SEGMENT_PREFIX + String.format("%08d", id) + SEGMENT_SUFFIX);
+    }
+
+    private Segment mapSegment(int id) throws IOException {
+        File file = segmentFile(id);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            if (randomAccessFile.length() != segmentSize) {
+                randomAccessFile.setLength(segmentSize);
+            }
+            FileChannel channel = randomAccessFile.getChannel();
+            // the mapping stays valid once the file is closed
+            return new Segment(id, file, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private Segment newSegment() throws IOException {
+        int id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        Segment segment = mapSegment(id);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    /**
+     * @return the value, null if the key is not stored
+     */
+    public synchronized byte[] get(String key) throws IOException {
+        checkNotClosed();
+        Location location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+        byte[] value = new byte[location.valueLength];
+        ByteBuffer view = location.segment.buffer.duplicate();
+        view.position(location.offset + location.recordSize - CRC_SIZE - location.valueLength);
+        view.get(value);
+        return value;
+    }
+
+    public synchronized boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the record is larger than a segment
+     */
+    public synchronized void put(String key, byte[] value) throws IOException {
+        checkNotClosed();
+        Location location = append(key, value);
+        release(index.put(key, location));
+        trimToSize();
+    }
+
+    /**
+     * @return false if the key was not stored
+     */
+    public synchronized boolean remove(String key) throws IOException {
+        checkNotClosed();
+        Location previous = index.remove(key);
+        if (previous == null) {
+            return false;
+        }
+        append(key, null);
+        release(previous);
+        trimToSize();
+        return true;
+    }
+
+    /**
+     * remove every entry and delete the segments
+     */
+    public synchronized void evictAll() throws IOException {
+        checkNotClosed();
+        index.clear();
+        for (Segment segment : segments.values()) {
+            deleteFile(segment.file);
+        }
+        segments.clear();
+        activeSegment = newSegment();
+    }
+
+    /**
+     * @param listener told about the entries dropped with the oldest segment, null for none
+     */
+    public synchronized void setEvictionListener(EvictionListener listener) {
+        this.evictionListener = listener;
+    }
+
+    /**
+     * @return number of entries
+     */
+    public synchronized int count() {
+        return index.size();
+    }
+
+    /**
+     * @return total size of the segment files
+     */
+    public synchronized long size() {
+        return (long) segments.size() * segmentSize;
+    }
+
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized void setMaxSize(long maxSize) throws IOException {
+        if (maxSize < 2L * segmentSize) {
+            throw new IllegalArgumentException("maxSize must hold two segments at least");
+        }
+        this.maxSize = maxSize;
+        trimToSize();
+    }
+
+    /**
+     * write the segments to the storage device
+     */
+    public synchronized void flush() {
+        for (Segment segment : segments.values()) {
+            segment.buffer.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+        if (compactionExecutor != null) {
+            compactionExecutor.shutdown();
+            compactionExecutor = null;
+        }
+    }
+
+    /**
+     * @param value null for a removal record
+     */
+    private Location append(String key, byte[] value) throws IOException {
+        byte[] keyBytes = key.getBytes(Charsets.UTF_8);
+        int valueLength = value == null ? REMOVED : value.length;
+        long size = (long) HEADER_SIZE + keyBytes.length + Math.max(valueLength, 0) + CRC_SIZE;
+        if (keyBytes.length == 0 || size > segmentSize) {
+            throw new IllegalArgumentException("record of " + size + " bytes does not fit a segment");
+        }
+        ByteBuffer record = ByteBuffer.allocate((int) size);
+        record.putInt(keyBytes.length).putInt(valueLength).put(keyBytes);
+        if (value != null) {
+            record.put(value);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue());
+
+        if (activeSegment.writePosition + size > segmentSize) {
+            Segment full = activeSegment;
+            activeSegment = newSegment();
+            scheduleCompactionIfNeeded(full);
+        }
+        Segment segment = activeSegment;
+        ByteBuffer view = segment.buffer.duplicate();
+        view.position(segment.writePosition);
+        view.put(record.array());
+        Location location = new Location(segment, segment.writePosition, (int) size, Math.max(valueLength, 0));
+        segment.writePosition += size;
+        if (value != null) {
+            segment.liveBytes += size;
+        }
+        return location;
+    }
+
+    /**
+     * the record of the location is dead
+     */
+    private void release(Location location) {
+        if (location != null) {
+            location.segment.liveBytes -= location.recordSize;
+            scheduleCompactionIfNeeded(location.segment);
+        }
+    }
+
+    /**
+     * drop the oldest segments with their entries until the store fits
+     */
+    private void trimToSize() {
+        while (size() > maxSize && segments.size() > 1) {
+            Segment oldest = segments.pollFirstEntry().getValue();
+            Iterator<Map.Entry<String, Location>> iterator = index.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Location> entry = iterator.next();
+                if (entry.getValue().segment == oldest) {
+                    iterator.remove();
+                    if (evictionListener != null) {
+                        evictionListener.onEvicted(entry.getKey(), EvictionCause.SIZE);
+                    }
+                }
+            }
+            deleteFile(oldest.file);
+        }
+    }
+
+    private boolean needsCompaction(Segment segment) {
+        return segment != activeSegment && segments.get(segment.id) == segment
+                && segment.writePosition - segment.liveBytes >= compactionThreshold * segment.writePosition;
+    }
+
+    private void scheduleCompactionIfNeeded(Segment segment) {
+        if (compactionScheduled || closed || !needsCompaction(segment)) {
+            return;
+        }
+        compactionScheduled = true;
+        if (compactionExecutor == null) {
+            compactionExecutor = Executors.newSingleThreadExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("segment-store-compaction").setDaemon(true).build());
+        }
+        compactionExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                compact();
+            }
+        });
+    }
+
+    /**
+     * compact every segment past the threshold, one segment per lock so readers wait for one segment at most
+     */
+    private void compact() {
+        while (true) {
+            synchronized (this) {
+                Segment candidate = null;
+                if (!closed) {
+                    for (Segment segment : segments.values()) {
+                        if (needsCompaction(segment)) {
+                            candidate = segment;
+                            break;
+                        }
+                    }
+                }
+                if (candidate == null) {
+                    compactionScheduled = false;
+                    return;
+                }
+                try {
+                    compactSegment(candidate);
+                } catch (IOException e) {
+                    compactionScheduled = false;
+                    return;
+                }
+            }
+        }
+    }
+
+    private void compactSegment(Segment segment) throws IOException {
+        List<Record> records = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        int position = 0;
+        Record record;
+        while (position < segment.writePosition && (record = readRecord(segment, position)) != null) {
+            records.add(record);
+            positions.add(position);
+            position += record.size;
+        }
+        boolean olderSegments = segments.firstKey() < segment.id;
+        for (int i = 0; i < records.size(); i++) {
+            record = records.get(i);
+            Location location = index.get(record.key);
+            if (location != null && location.segment == segment && location.offset == positions.get(i)) {
+                byte[] value = new byte[location.valueLength];
+                ByteBuffer view = segment.buffer.duplicate();
+                view.position(location.offset + location.recordSize - CRC_SIZE - location.valueLength);
+                view.get(value);
+                index.put(record.key, append(record.key, value));
+            } else if (record.valueLength == REMOVED && olderSegments && location == null) {
+                // an older segment may still hold a record of the key
+                append(record.key, null);
+            }
+        }
+        segments.remove(segment.id);
+        deleteFile(segment.file);
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists()) {
+            // the mapping stays valid until it is collected
+            file.delete();
+        }
+    }
+
+    private void checkNotClosed() {
+        if (closed) {
+            throw new IllegalStateException("store is closed");
+        }
+    }
+
+    private static final class Segment {
+        final int id;
+        final File file;
+        final MappedByteBuffer buffer;
+        int writePosition;
+        /**
+         * size of the records in the index
+         */
+        long liveBytes;
+
+        Segment(int id, File file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    private static final class Location {
+        final Segment segment;
+        final int offset;
+        final int recordSize;
+        final int valueLength;
+
+        Location(Segment segment, int offset, int recordSize, int valueLength) {
+            this.segment = segment;
+            this.offset = offset;
+            this.recordSize = recordSize;
+            this.valueLength = valueLength;
+        }
+    }
+
+    private static final class Record {
+        final String key;
+        final int valueLength;
+        final int size;
+
+        Record(String key, int valueLength, int size) {
+            this.key = key;
+            this.valueLength = valueLength;
+            this.size = size;
+        }
+    }
+}
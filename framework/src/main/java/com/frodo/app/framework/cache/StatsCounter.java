@@ -0,0 +1,79 @@
+package com.frodo.app.framework.cache;
+
+import com.frodo.app.framework.toolbox.LatencyHistogram;
+import com.frodo.app.framework.toolbox.StripedCounter;
+
+/**
+ * Counts the activity of a cache, read with {@link #snapshot(long, long)}.
+ * Hits, misses and evictions go to {@link StripedCounter}s, so recording them on the lookup path
+ * does not make threads contend, the latency of the loads goes to a {@link LatencyHistogram}.
+ */
+public class StatsCounter {
+
+    private final StripedCounter hitCount = new StripedCounter();
+    private final StripedCounter missCount = new StripedCounter();
+    private final StripedCounter loadSuccessCount = new StripedCounter();
+    private final StripedCounter loadFailureCount = new StripedCounter();
+    private final StripedCounter[] evictionCounts = new StripedCounter[EvictionCause.values().length];
+    private final LatencyHistogram loadLatency = new LatencyHistogram();
+
+    public StatsCounter() {
+        for (int i = 0; i < evictionCounts.length; i++) {
+            evictionCounts[i] = new StripedCounter();
+        }
+    }
+
+    public void recordHit() {
+        hitCount.increment();
+    }
+
+    public void recordMiss() {
+        missCount.increment();
+    }
+
+    /**
+     * @param loadNanos time taken to load the value, such as reading and decoding it
+     */
+    public void recordLoadSuccess(long loadNanos) {
+        loadSuccessCount.increment();
+        loadLatency.recordNanos(loadNanos);
+    }
+
+    public void recordLoadFailure(long loadNanos) {
+        loadFailureCount.increment();
+        loadLatency.recordNanos(loadNanos);
+    }
+
+    public void recordEviction(EvictionCause cause) {
+        recordEvictions(cause, 1);
+    }
+
+    public void recordEvictions(EvictionCause cause, long count) {
+        evictionCounts[cause.ordinal()].add(count);
+    }
+
+    /**
+     * @param entryCount number of entries cached, -1 if unknown
+     * @param byteSize   size of the entries cached, -1 if unknown
+     */
+    public CacheStats snapshot(long entryCount, long byteSize) {
+        long[] evictions = new long[evictionCounts.length];
+        for (int i = 0; i < evictions.length; i++) {
+            evictions[i] = evictionCounts[i].sum();
+        }
+        return new CacheStats(hitCount.sum(), missCount.sum(), loadSuccessCount.sum(), loadFailureCount.sum(),
+                loadLatency.getMeanMicros(), loadLatency.getPercentileMicros(50), loadLatency.getPercentileMicros(99),
+                loadLatency.getMaxMicros(), evictions, entryCount, byteSize);
+    }
+
+    public void reset() {
+        hitCount.reset();
+        missCount.reset();
+        loadSuccessCount.reset();
+        loadFailureCount.reset();
+        for (StripedCounter evictionCount : evictionCounts) {
+            evictionCount.reset();
+        }
+        loadLatency.reset();
+    }
+}
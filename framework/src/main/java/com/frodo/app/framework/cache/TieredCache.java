@@ -0,0 +1,532 @@
+package com.frodo.app.framework.cache;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A read through cache composed of tiers, fastest first, such as memory, disk and then database.
+ * A lookup asks every tier in turn and then the {@link Loader}, a value found in a slower tier is promoted
+ * to the faster ones with the time to live it has left there, so the next lookup is served by the fastest tier.
+ * <p/>
+ * Writes go to every tier, or with {@link WritePolicy#WRITE_BEHIND} to the first tier at once and to the others
+ * on a background thread, where successive writes of a key are merged.
+ * After {@link #shutdown()} the writes go to every tier at once and nothing is refreshed in the background.
+ * <p/>
+ * An expired entry of a tier is a miss of that tier. An entry of a tier needing a refresh is still returned,
+ * and loaded again in the background.
+ *
+ * @param <K> key
+ * @param <V> value
+ */
+public class TieredCache<K, V> implements Cache<K, V> {
+
+    /**
+     * Loads a value missing from every tier, such as from the network.
+     */
+    public interface Loader<K, V> {
+        /**
+         * Called once for concurrent lookups of the same key, a failed load is a miss.
+         *
+         * @return the value, null if there is none
+         */
+        V load(K key) throws Exception;
+    }
+
+    public enum WritePolicy {
+        WRITE_THROUGH, WRITE_BEHIND
+    }
+
+    private final List<Cache<K, V>> tiers;
+    private final Loader<K, V> loader;
+    private final WritePolicy writePolicy;
+    /**
+     * loads running or scheduled, so concurrent lookups and refreshes of a key share one load
+     */
+    private final ConcurrentHashMap<K, Load> loads = new ConcurrentHashMap<>();
+    /**
+     * writes waiting for the slower tiers, in write order
+     */
+    private final Map<K, PendingWrite<V>> pendingWrites = new LinkedHashMap<>();
+    private ExecutorService writeBehindExecutor;
+    private ExecutorService refreshExecutor;
+    private boolean writeBehindScheduled;
+    /**
+     * key written to the slower tiers by the write behind thread, null if none, guarded by pendingWrites
+     */
+    private K writingKey;
+    private Thread writingThread;
+    /**
+     * set by {@link #shutdown()}, read holding pendingWrites or loads, so no executor is created again
+     */
+    private volatile boolean shutdown;
+    private final StatsCounter statsCounter = new StatsCounter();
+
+    public TieredCache(List<? extends Cache<K, V>> tiers) {
+        this(tiers, null, WritePolicy.WRITE_THROUGH);
+    }
+
+    /**
+     * @param tiers       fastest first, at least one
+     * @param loader      null to only read the tiers
+     * @param writePolicy how the slower tiers are written
+     */
+    public TieredCache(List<? extends Cache<K, V>> tiers, Loader<K, V> loader, WritePolicy writePolicy) {
+        if (tiers == null || tiers.isEmpty()) {
+            throw new IllegalArgumentException("tiers can not be empty");
+        }
+        this.tiers = Collections.unmodifiableList(new ArrayList<Cache<K, V>>(tiers));
+        this.loader = loader;
+        this.writePolicy = writePolicy;
+    }
+
+    public List<Cache<K, V>> getTiers() {
+        return tiers;
+    }
+
+    @Override
+    public CacheSystem getCacheSystem() {
+        return tiers.get(0).getCacheSystem();
+    }
+
+    /**
+     * @return type of the fastest tier
+     */
+    @Override
+    public Type getType() {
+        return tiers.get(0).getType();
+    }
+
+    @Override
+    public V get(K key) {
+        for (int i = 0; i < tiers.size(); i++) {
+            Cache<K, V> tier = tiers.get(i);
+            if (tier.isExpired(key)) {
+                continue;
+            }
+            V value = tier.get(key);
+            if (value != null) {
+                statsCounter.recordHit();
+                if (i > 0) {
+                    promote(key, value, i, tier.getRemainingTimeToLive(key, TimeUnit.NANOSECONDS));
+                }
+                if (loader != null && tier.needsRefresh(key)) {
+                    refresh(key);
+                }
+                return value;
+            }
+        }
+        PendingWrite<V> pending = getPendingWrite(key);
+        long now = System.nanoTime();
+        if (pending != null && !pending.isExpired(now)) {
+            statsCounter.recordHit();
+            promote(key, pending.value, tiers.size(), pending.remainingNanos(now));
+            return pending.value;
+        }
+        statsCounter.recordMiss();
+        return loader == null ? null : load(key);
+    }
+
+    /**
+     * put the value into the tiers faster than the one it was found in, so it does not outlive it there
+     *
+     * @param ttlNanos time to live left in the tier it was found in, 0 for the default of each tier
+     */
+    private void promote(K key, V value, int foundTier, long ttlNanos) {
+        for (int i = 0; i < foundTier; i++) {
+            putTier(i, key, value, Math.max(ttlNanos, 0), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * load the key again in the background, unless it is loading or scheduled already
+     */
+    private void refresh(K key) {
+        if (loads.containsKey(key)) {
+            return;
+        }
+        // registered before it is queued, so the next lookups of the key do not schedule it again
+        Load load = new Load(key);
+        if (loads.putIfAbsent(key, load) != null) {
+            return;
+        }
+        synchronized (loads) {
+            if (shutdown) {
+                loads.remove(key, load);
+                return;
+            }
+            if (refreshExecutor == null) {
+                refreshExecutor = Executors.newSingleThreadExecutor(
+                        new ThreadFactoryBuilder().setNameFormat("tiered-cache-refresh").setDaemon(true).build());
+            }
+            refreshExecutor.execute(load);
+        }
+    }
+
+    private V load(K key) {
+        Load load = loads.get(key);
+        if (load == null) {
+            Load newLoad = new Load(key);
+            load = loads.putIfAbsent(key, newLoad);
+            if (load == null) {
+                load = newLoad;
+            }
+        }
+        try {
+            // runs a load still queued for a refresh in this thread, does nothing if it is running or done
+            load.run();
+            return load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void put(K key, V value) {
+        put(key, value, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param ttl time to live in every tier, 0 for the default of each tier
+     */
+    @Override
+    public void put(K key, V value, long ttl, TimeUnit unit) {
+        putTier(0, key, value, ttl, unit);
+        if (tiers.size() == 1) {
+            return;
+        }
+        if (writePolicy == WritePolicy.WRITE_BEHIND
+                && scheduleWrite(key, new PendingWrite<>(value, System.nanoTime(), unit.toNanos(ttl)))) {
+            return;
+        }
+        for (int i = 1; i < tiers.size(); i++) {
+            putTier(i, key, value, ttl, unit);
+        }
+    }
+
+    private void putTier(int tier, K key, V value, long ttl, TimeUnit unit) {
+        if (ttl > 0) {
+            tiers.get(tier).put(key, value, ttl, unit);
+        } else {
+            tiers.get(tier).put(key, value);
+        }
+    }
+
+    private PendingWrite<V> getPendingWrite(K key) {
+        synchronized (pendingWrites) {
+            return pendingWrites.get(key);
+        }
+    }
+
+    /**
+     * @return false after {@link #shutdown()}, the caller writes the slower tiers itself
+     */
+    private boolean scheduleWrite(K key, PendingWrite<V> write) {
+        synchronized (pendingWrites) {
+            if (shutdown) {
+                // a write still waiting must not overwrite this one later
+                pendingWrites.remove(key);
+                return false;
+            }
+            // the latest value of a key replaces the one waiting
+            pendingWrites.remove(key);
+            pendingWrites.put(key, write);
+            if (writeBehindScheduled) {
+                return true;
+            }
+            writeBehindScheduled = true;
+            if (writeBehindExecutor == null) {
+                writeBehindExecutor = Executors.newSingleThreadExecutor(
+                        new ThreadFactoryBuilder().setNameFormat("tiered-cache-write-behind").setDaemon(true).build());
+            }
+            writeBehindExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    writePending();
+                }
+            });
+            return true;
+        }
+    }
+
+    private void writePending() {
+        while (true) {
+            K key;
+            PendingWrite<V> write;
+            synchronized (pendingWrites) {
+                if (pendingWrites.isEmpty()) {
+                    writeBehindScheduled = false;
+                    pendingWrites.notifyAll();
+                    return;
+                }
+                Map.Entry<K, PendingWrite<V>> entry = pendingWrites.entrySet().iterator().next();
+                key = entry.getKey();
+                write = entry.getValue();
+                writingKey = key;
+                writingThread = Thread.currentThread();
+            }
+            try {
+                for (int i = 1; i < tiers.size(); i++) {
+                    synchronized (pendingWrites) {
+                        // evicted or written again meanwhile: the write is not the latest one anymore
+                        if (pendingWrites.get(key) != write) {
+                            break;
+                        }
+                    }
+                    long now = System.nanoTime();
+                    if (write.isExpired(now)) {
+                        // expired while waiting, the slower tiers would serve it after the first one
+                        break;
+                    }
+                    try {
+                        putTier(i, key, write.value, write.remainingNanos(now), TimeUnit.NANOSECONDS);
+                    } catch (RuntimeException e) {
+                        // a failed tier is a miss later, the other tiers are still written
+                    }
+                }
+            } finally {
+                synchronized (pendingWrites) {
+                    if (pendingWrites.get(key) == write) {
+                        pendingWrites.remove(key);
+                    }
+                    writingKey = null;
+                    writingThread = null;
+                    // wakes up the evictions waiting for this key
+                    pendingWrites.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * wait until the writes behind are done
+     *
+     * @return false if the timeout elapsed first
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (pendingWrites) {
+            while (writeBehindScheduled) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(pendingWrites, remaining);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isCached(K key) {
+        for (Cache<K, V> tier : tiers) {
+            if (tier.isCached(key)) {
+                return true;
+            }
+        }
+        return getPendingWrite(key) != null;
+    }
+
+    /**
+     * @return true if the fastest tier is expired
+     */
+    @Override
+    public boolean isExpired() {
+        return tiers.get(0).isExpired();
+    }
+
+    /**
+     * @return true if the key is expired in the first tier caching it
+     */
+    @Override
+    public boolean isExpired(K key) {
+        for (Cache<K, V> tier : tiers) {
+            if (tier.isCached(key)) {
+                return tier.isExpired(key);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the time to live left in the first tier caching the key, or of its write behind
+     */
+    @Override
+    public long getRemainingTimeToLive(K key, TimeUnit unit) {
+        for (Cache<K, V> tier : tiers) {
+            if (tier.isCached(key)) {
+                return tier.getRemainingTimeToLive(key, unit);
+            }
+        }
+        PendingWrite<V> pending = getPendingWrite(key);
+        if (pending == null || pending.ttlNanos <= 0) {
+            // kept until evicted, or not cached
+            return 0;
+        }
+        return Math.max(unit.convert(pending.remainingNanos(System.nanoTime()), TimeUnit.NANOSECONDS), 1);
+    }
+
+    /**
+     * @return true if the key needs a refresh in the first tier caching it
+     */
+    @Override
+    public boolean needsRefresh(K key) {
+        for (Cache<K, V> tier : tiers) {
+            if (tier.isCached(key)) {
+                return tier.needsRefresh(key);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Evict the key from every tier, after the write behind of the key in progress if any,
+     * so the write can not put the value back once it is evicted.
+     */
+    @Override
+    public void evict(K key) {
+        statsCounter.recordEviction(EvictionCause.EXPLICIT);
+        synchronized (pendingWrites) {
+            pendingWrites.remove(key);
+            awaitWriting(key);
+        }
+        for (Cache<K, V> tier : tiers) {
+            tier.evict(key);
+        }
+    }
+
+    /**
+     * wait until the write behind thread is done with the key, or with any key if key is null
+     */
+    private void awaitWriting(K key) {
+        boolean interrupted = false;
+        while (writingKey != null && (key == null || writingKey.equals(key))
+                && writingThread != Thread.currentThread()) {
+            try {
+                pendingWrites.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void evictAll() {
+        synchronized (pendingWrites) {
+            pendingWrites.clear();
+            awaitWriting(null);
+        }
+        for (Cache<K, V> tier : tiers) {
+            tier.evictAll();
+        }
+    }
+
+    /**
+     * @return lookups and loads of this cache, a hit in any tier is a hit, see the tiers for their own statistics
+     */
+    public CacheStats stats() {
+        return statsCounter.snapshot(-1, -1);
+    }
+
+    /**
+     * Stop the write behind and refresh threads once the pending writes are done, for good:
+     * later writes go to every tier at once, see {@link #flush(long, TimeUnit)} to wait for the pending ones.
+     */
+    public void shutdown() {
+        synchronized (pendingWrites) {
+            shutdown = true;
+            if (writeBehindExecutor != null) {
+                writeBehindExecutor.shutdown();
+                writeBehindExecutor = null;
+            }
+        }
+        synchronized (loads) {
+            shutdown = true;
+            if (refreshExecutor != null) {
+                refreshExecutor.shutdown();
+                refreshExecutor = null;
+            }
+        }
+    }
+
+    /**
+     * A load of a key, registered in {@link #loads} until it is done.
+     * The value loaded is put into every tier before the load is done.
+     */
+    private final class Load extends FutureTask<V> {
+        private final K key;
+
+        Load(final K key) {
+            super(new Callable<V>() {
+                @Override
+                public V call() throws Exception {
+                    return loadAndPut(key);
+                }
+            });
+            this.key = key;
+        }
+
+        @Override
+        protected void done() {
+            loads.remove(key, this);
+        }
+    }
+
+    private V loadAndPut(K key) throws Exception {
+        long start = System.nanoTime();
+        V value;
+        try {
+            value = loader.load(key);
+        } catch (Exception e) {
+            statsCounter.recordLoadFailure(System.nanoTime() - start);
+            throw e;
+        }
+        statsCounter.recordLoadSuccess(System.nanoTime() - start);
+        if (value != null) {
+            put(key, value);
+        }
+        return value;
+    }
+
+    private static final class PendingWrite<V> {
+        final V value;
+        final long writeNanos;
+        /**
+         * 0 for the default of each tier
+         */
+        final long ttlNanos;
+
+        PendingWrite(V value, long writeNanos, long ttlNanos) {
+            this.value = value;
+            this.writeNanos = writeNanos;
+            this.ttlNanos = ttlNanos;
+        }
+
+        boolean isExpired(long now) {
+            return ttlNanos > 0 && now - writeNanos >= ttlNanos;
+        }
+
+        /**
+         * @return 0 for the default of each tier
+         */
+        long remainingNanos(long now) {
+            return ttlNanos <= 0 ? 0 : Math.max(ttlNanos - (now - writeNanos), 1);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.frodo.app.framework.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A hierarchical timing wheel running delayed tasks on one daemon thread, used to expire cache entries.
+ * <p/>
+ * Level 0 has a slot per tick, every higher level a slot per turn of the level below, so scheduling and
+ * cancelling are O(1) whatever the number of pending tasks: nothing is sorted and no slot is scanned
+ * before it is due. When a level 0 turn is over, the next slot of level 1 is spread over level 0, and so on.
+ * A task runs at most one tick late, tasks must be quick since they run on the wheel thread.
+ * The thread starts with the first task and stops at {@link #shutdown()}.
+ */
+public final class TimingWheel {
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 6;
+    private static final long MAX_DELTA = (1L << (WHEEL_BITS * LEVELS)) - 1;
+    private static final long DEFAULT_TICK_MILLIS = 100;
+
+    private static volatile TimingWheel defaultWheel;
+
+    /**
+     * A scheduled task, cancel it when it is not needed anymore.
+     */
+    public static final class Timeout {
+        private final TimingWheel wheel;
+        private final Runnable task;
+        private final long deadlineTick;
+        private Slot slot;
+        private Timeout previous;
+        private Timeout next;
+        private volatile boolean cancelled;
+        private volatile boolean expired;
+
+        private Timeout(TimingWheel wheel, Runnable task, long deadlineTick) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * @return false if the task has already run
+         */
+        public boolean cancel() {
+            synchronized (wheel) {
+                if (expired || cancelled) {
+                    return false;
+                }
+                cancelled = true;
+                if (slot != null) {
+                    slot.remove(this);
+                    wheel.pendingCount--;
+                }
+                return true;
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isExpired() {
+            return expired;
+        }
+    }
+
+    /**
+     * doubly linked timeouts, removed in O(1)
+     */
+    private static final class Slot {
+        private Timeout head;
+
+        void add(Timeout timeout) {
+            timeout.slot = this;
+            timeout.previous = null;
+            timeout.next = head;
+            if (head != null) {
+                head.previous = timeout;
+            }
+            head = timeout;
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.previous != null) {
+                timeout.previous.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.previous = timeout.previous;
+            }
+            timeout.slot = null;
+            timeout.previous = null;
+            timeout.next = null;
+        }
+
+        Timeout takeAll() {
+            Timeout all = head;
+            head = null;
+            return all;
+        }
+    }
+
+    private final String name;
+    private final long tickNanos;
+    private final long startNanos;
+    private final Slot[][] wheels = new Slot[LEVELS][WHEEL_SIZE];
+    /**
+     * ticks processed since the start
+     */
+    private long currentTick;
+    private int pendingCount;
+    private Thread worker;
+    private boolean shutdown;
+
+    public TimingWheel(String name, long tick, TimeUnit unit) {
+        this.name = name;
+        this.tickNanos = Math.max(unit.toNanos(tick), 1);
+        this.startNanos = System.nanoTime();
+        for (Slot[] wheel : wheels) {
+            for (int i = 0; i < WHEEL_SIZE; i++) {
+                wheel[i] = new Slot();
+            }
+        }
+    }
+
+    /**
+     * @return the wheel shared by the caches, ticking every 100 milliseconds
+     */
+    public static TimingWheel getDefault() {
+        if (defaultWheel == null) {
+            synchronized (TimingWheel.class) {
+                if (defaultWheel == null) {
+                    defaultWheel = new TimingWheel("cache-expiry", DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+        return defaultWheel;
+    }
+
+    /**
+     * Shut the default wheel down, {@link #getDefault()} creates a new one when it is needed again.
+     */
+    public static void shutdownDefault() {
+        TimingWheel wheel;
+        synchronized (TimingWheel.class) {
+            wheel = defaultWheel;
+            defaultWheel = null;
+        }
+        if (wheel != null) {
+            wheel.shutdown();
+        }
+    }
+
+    /**
+     * Stop the wheel thread, the pending tasks are cancelled and no task can be scheduled anymore.
+     */
+    public void shutdown() {
+        Thread current;
+        synchronized (this) {
+            if (shutdown) {
+                return;
+            }
+            shutdown = true;
+            for (Slot[] wheel : wheels) {
+                for (Slot slot : wheel) {
+                    Timeout timeout = slot.takeAll();
+                    while (timeout != null) {
+                        Timeout next = timeout.next;
+                        timeout.slot = null;
+                        timeout.previous = null;
+                        timeout.next = null;
+                        timeout.cancelled = true;
+                        timeout = next;
+                    }
+                }
+            }
+            pendingCount = 0;
+            current = worker;
+            worker = null;
+        }
+        if (current != null) {
+            current.interrupt();
+        }
+    }
+
+    public synchronized boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * @return the scheduled timeout, the task runs on the wheel thread once the delay has elapsed
+     * @throws IllegalStateException after {@link #shutdown()}
+     */
+    public synchronized Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (shutdown) {
+            throw new IllegalStateException("timing wheel is shut down: " + name);
+        }
+        long elapsedTicks = (System.nanoTime() - startNanos) / tickNanos;
+        long delayTicks = (unit.toNanos(Math.max(delay, 0)) + tickNanos - 1) / tickNanos;
+        // ticks not processed yet are due as soon as the worker catches up
+        Timeout timeout = new Timeout(this, task, Math.max(elapsedTicks + delayTicks, currentTick + 1));
+        insert(timeout);
+        pendingCount++;
+        if (worker == null) {
+            worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    work();
+                }
+            }, name);
+            worker.setDaemon(true);
+            worker.start();
+        }
+        return timeout;
+    }
+
+    /**
+     * @return number of timeouts waiting
+     */
+    public synchronized int pendingCount() {
+        return pendingCount;
+    }
+
+    private void insert(Timeout timeout) {
+        long delta = timeout.deadlineTick - currentTick;
+        long placement = delta > MAX_DELTA ? currentTick + MAX_DELTA : timeout.deadlineTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (WHEEL_BITS * (level + 1)))) {
+            level++;
+        }
+        int index = (int) ((placement >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+        wheels[level][index].add(timeout);
+    }
+
+    /**
+     * spread the slot of a level over the levels below
+     *
+     * @return index of the slot
+     */
+    private int cascade(int level) {
+        int index = (int) ((currentTick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+        Timeout timeout = wheels[level][index].takeAll();
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.slot = null;
+            timeout.previous = null;
+            timeout.next = null;
+            insert(timeout);
+            timeout = next;
+        }
+        return index;
+    }
+
+    /**
+     * process the ticks due, collecting the expired timeouts
+     */
+    private synchronized List<Timeout> advance(long targetTick) {
+        List<Timeout> expired = new ArrayList<>();
+        while (currentTick < targetTick) {
+            currentTick++;
+            int index = (int) (currentTick & WHEEL_MASK);
+            for (int level = 1; index == 0 && level < LEVELS; level++) {
+                index = cascade(level);
+            }
+            Timeout timeout = wheels[0][(int) (currentTick & WHEEL_MASK)].takeAll();
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                timeout.slot = null;
+                timeout.previous = null;
+                timeout.next = null;
+                if (timeout.deadlineTick <= currentTick) {
+                    timeout.expired = true;
+                    pendingCount--;
+                    expired.add(timeout);
+                } else {
+                    // placed beyond the last level, not due yet
+                    insert(timeout);
+                }
+                timeout = next;
+            }
+        }
+        return expired;
+    }
+
+    private void work() {
+        while (!isShutdown()) {
+            long nextTickNanos = startNanos + (currentTickSnapshot() + 1) * tickNanos;
+            long sleepNanos = nextTickNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            if (isShutdown()) {
+                return;
+            }
+            List<Timeout> expired = advance((System.nanoTime() - startNanos) / tickNanos);
+            for (Timeout timeout : expired) {
+                try {
+                    timeout.task.run();
+                } catch (Throwable e) {
+                    // a failing task does not stop the wheel
+                }
+            }
+        }
+    }
+
+    private synchronized long currentTickSnapshot() {
+        return currentTick;
+    }
+}
@@ -0,0 +1,24 @@
+package com.frodo.app.framework.cache;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * Serializes the values a {@link CacheSystem} stores out of memory, such as on disk.
+ * Implementations are used by several threads at once and must be thread safe.
+ */
+public interface ValueCodec {
+
+    /**
+     * @return a name of the format, such as "smile"
+     */
+    String name();
+
+    byte[] encode(Object value) throws IOException;
+
+    /**
+     * @param type type of the value, a {@link Class} or a generic type
+     * @throws IOException if the data is not a value of the type in this format
+     */
+    <T> T decode(byte[] data, Type type) throws IOException;
+}
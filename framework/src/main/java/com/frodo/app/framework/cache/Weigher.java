@@ -0,0 +1,16 @@
+package com.frodo.app.framework.cache;
+
+/**
+ * Weight of a cached entry, see {@link MemoryCache}.
+ * The weight of an entry is computed once when it is put, so it must not depend on later changes of the value.
+ *
+ * @param <K> key
+ * @param <V> value
+ */
+public interface Weigher<K, V> {
+
+    /**
+     * @return the weight of the entry, such as its estimated size in bytes, at least 0
+     */
+    int weigh(K key, V value);
+}
@@ -0,0 +1,320 @@
+package com.frodo.app.framework.orm;
+
+import com.frodo.app.framework.exception.DbException;
+import com.frodo.app.framework.orm.sql.Selector;
+import com.frodo.app.framework.orm.sql.WhereBuilder;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Non blocking facade of a {@link Database}.
+ * Reads run in parallel on {@link DaoConfig#getReaderConnectionCount()} threads,
+ * writes are serialized on a single thread per {@link #getWriteKey(Class) write key}, so callers never wait for the database lock.
+ * A failed call completes its future with the {@link DbException} as cause.
+ */
+public class AsyncDatabase {
+
+    /**
+     * A unit of work run against the database on a db thread.
+     */
+    public interface DbCallable<T> {
+        T call(Database db) throws DbException;
+    }
+
+    private final Database database;
+    private final ListeningExecutorService readExecutor;
+    private final ListeningExecutorService writeExecutor;
+    private final Map<String, ListeningExecutorService> keyedWriteExecutors = new HashMap<String, ListeningExecutorService>();
+
+    public AsyncDatabase(Database database) {
+        this(database, database.getDaoConfig().getReaderConnectionCount());
+    }
+
+    public AsyncDatabase(Database database, int readerCount) {
+        this.database = database;
+        String dbName = database.getDaoConfig().getDbName();
+        this.readExecutor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(Math.max(readerCount, 1),
+                new ThreadFactoryBuilder().setNameFormat(dbName + "-read-%d").setDaemon(true).build()));
+        this.writeExecutor = newWriteExecutor(dbName + "-write");
+    }
+
+    private static ListeningExecutorService newWriteExecutor(String threadName) {
+        return MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat(threadName).setDaemon(true).build()));
+    }
+
+    /**
+     * Writes of entity types with the same key share a writer thread, writes with different keys run in parallel.
+     * Override it when the database has independent writers, see {@link ShardedDatabase}.
+     *
+     * @return null for the default writer
+     */
+    protected String getWriteKey(Class<?> entityType) {
+        return null;
+    }
+
+    public Database getDatabase() {
+        return database;
+    }
+
+    public ExecutorService getReadExecutor() {
+        return readExecutor;
+    }
+
+    public ExecutorService getWriteExecutor() {
+        return writeExecutor;
+    }
+
+    public <T> ListenableFuture<T> read(DbCallable<T> callable) {
+        return readExecutor.submit(wrap(callable));
+    }
+
+    public <T> ListenableFuture<T> write(DbCallable<T> callable) {
+        return writeExecutor.submit(wrap(callable));
+    }
+
+    /**
+     * Run a write on the writer of entityType, see {@link #getWriteKey(Class)}.
+     */
+    public <T> ListenableFuture<T> write(Class<?> entityType, DbCallable<T> callable) {
+        return getWriteExecutor(entityType).submit(wrap(callable));
+    }
+
+    private ListeningExecutorService getWriteExecutor(Class<?> entityType) {
+        String key = entityType == null ? null : getWriteKey(entityType);
+        if (key == null) {
+            return writeExecutor;
+        }
+        synchronized (keyedWriteExecutors) {
+            ListeningExecutorService executor = keyedWriteExecutors.get(key);
+            if (executor == null) {
+                executor = newWriteExecutor(database.getDaoConfig().getDbName() + "-write-" + key);
+                keyedWriteExecutors.put(key, executor);
+            }
+            return executor;
+        }
+    }
+
+    private static Class<?> typeOf(List<?> entities) {
+        return entities == null || entities.isEmpty() ? null : entities.get(0).getClass();
+    }
+
+    public void shutdown() {
+        readExecutor.shutdown();
+        writeExecutor.shutdown();
+        synchronized (keyedWriteExecutors) {
+            for (ListeningExecutorService executor : keyedWriteExecutors.values()) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    //***************************************** find *****************************************
+
+    public <T> ListenableFuture<T> findById(final Class<T> entityType, final Object idValue) {
+        return read(new DbCallable<T>() {
+            @Override
+            public T call(Database db) throws DbException {
+                return db.findById(entityType, idValue);
+            }
+        });
+    }
+
+    public <T> ListenableFuture<T> findFirst(final Selector selector) {
+        return read(new DbCallable<T>() {
+            @Override
+            public T call(Database db) throws DbException {
+                return db.findFirst(selector);
+            }
+        });
+    }
+
+    public <T> ListenableFuture<List<T>> findAll(final Selector selector) {
+        return read(new DbCallable<List<T>>() {
+            @Override
+            public List<T> call(Database db) throws DbException {
+                return db.findAll(selector);
+            }
+        });
+    }
+
+    public <T> ListenableFuture<List<T>> findAll(final Class<T> entityType) {
+        return read(new DbCallable<List<T>>() {
+            @Override
+            public List<T> call(Database db) throws DbException {
+                return db.findAll(entityType);
+            }
+        });
+    }
+
+    public ListenableFuture<Long> count(final Selector selector) {
+        return read(new DbCallable<Long>() {
+            @Override
+            public Long call(Database db) throws DbException {
+                return db.count(selector);
+            }
+        });
+    }
+
+    public ListenableFuture<Long> count(final Class<?> entityType) {
+        return read(new DbCallable<Long>() {
+            @Override
+            public Long call(Database db) throws DbException {
+                return db.count(entityType);
+            }
+        });
+    }
+
+    //***************************************** save *****************************************
+
+    public ListenableFuture<Void> saveOrUpdate(final Object entity) {
+        return write(entity.getClass(), new DbCallable<Void>() {
+            @Override
+            public Void call(Database db) throws DbException {
+                db.saveOrUpdate(entity);
+                return null;
+            }
+        });
+    }
+
+    public ListenableFuture<Void> saveOrUpdateAll(final List<?> entities) {
+        return write(typeOf(entities), new DbCallable<Void>() {
+            @Override
+            public Void call(Database db) throws DbException {
+                db.saveOrUpdateAll(entities);
+                return null;
+            }
+        });
+    }
+
+    public ListenableFuture<Void> save(final Object entity) {
+        return write(entity.getClass(), new DbCallable<Void>() {
+            @Override
+            public Void call(Database db) throws DbException {
+                db.save(entity);
+                return null;
+            }
+        });
+    }
+
+    public ListenableFuture<Void> saveAll(final List<?> entities) {
+        return write(typeOf(entities), new DbCallable<Void>() {
+            @Override
+            public Void call(Database db) throws DbException {
+                db.saveAll(entities);
+                return null;
+            }
+        });
+    }
+
+    public ListenableFuture<Boolean> saveBindingId(final Object entity) {
+        return write(entity.getClass(), new DbCallable<Boolean>() {
+            @Override
+            public Boolean call(Database db) throws DbException {
+                return db.saveBindingId(entity);
+            }
+        });
+    }
+
+    //***************************************** update *****************************************
+
+    public ListenableFuture<Void> update(final Object entity, final String... updateColumnNames) {
+        return write(entity.getClass(), new DbCallable<Void>() {
+            @Override
+            public Void call(Database db) throws DbException {
+                db.update(entity, updateColumnNames);
+                return null;
+            }
+        });
+    }
+
+    public ListenableFuture<Void> update(final Object entity, final WhereBuilder whereBuilder, final String... updateColumnNames) {
+        return write(entity.getClass(), new DbCallable<Void>() {
+            @Override
+            public Void call(Database db) throws DbException {
+                db.update(entity, whereBuilder, updateColumnNames);
+                return null;
+            }
+        });
+    }
+
+    public ListenableFuture<Void> updateAll(final List<?> entities, final String... updateColumnNames) {
+        return write(typeOf(entities), new DbCallable<Void>() {
+            @Override
+            public Void call(Database db) throws DbException {
+                db.updateAll(entities, updateColumnNames);
+                return null;
+            }
+        });
+    }
+
+    //***************************************** delete *****************************************
+
+    public ListenableFuture<Void> deleteById(final Class<?> entityType, final Object idValue) {
+        return write(entityType, new DbCallable<Void>() {
+            @Override
+            public Void call(Database db) throws DbException {
+                db.deleteById(entityType, idValue);
+                return null;
+            }
+        });
+    }
+
+    public ListenableFuture<Void> delete(final Object entity) {
+        return write(entity.getClass(), new DbCallable<Void>() {
+            @Override
+            public Void call(Database db) throws DbException {
+                db.delete(entity);
+                return null;
+            }
+        });
+    }
+
+    public ListenableFuture<Void> delete(final Class<?> entityType, final WhereBuilder whereBuilder) {
+        return write(entityType, new DbCallable<Void>() {
+            @Override
+            public Void call(Database db) throws DbException {
+                db.delete(entityType, whereBuilder);
+                return null;
+            }
+        });
+    }
+
+    public ListenableFuture<Void> deleteAll(final List<?> entities) {
+        return write(typeOf(entities), new DbCallable<Void>() {
+            @Override
+            public Void call(Database db) throws DbException {
+                db.deleteAll(entities);
+                return null;
+            }
+        });
+    }
+
+    public ListenableFuture<Void> deleteAll(final Class<?> entityType) {
+        return write(entityType, new DbCallable<Void>() {
+            @Override
+            public Void call(Database db) throws DbException {
+                db.deleteAll(entityType);
+                return null;
+            }
+        });
+    }
+
+    private <T> Callable<T> wrap(final DbCallable<T> callable) {
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return callable.call(database);
+            }
+        };
+    }
+}
@@ -0,0 +1,115 @@
+package com.frodo.app.framework.orm;
+
+import com.frodo.app.framework.orm.table.TableUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A row change made by a write operation of {@link Database}, delivered in {@link ChangeLog.Batch}es.
+ * The id is null when the rows are selected by a where clause, the whole table if the where is null too.
+ */
+public final class ChangeEvent {
+
+    public enum Type {
+        INSERT,
+        /**
+         * insert or replace the rows with the same id or unique value
+         */
+        REPLACE,
+        UPDATE,
+        DELETE
+    }
+
+    private final Type type;
+    private final Class<?> entityType;
+    private final Object id;
+    private final String where;
+    private final List<String> columnNames;
+
+    /**
+     * @param columnNames the updated columns, null or empty for all of them
+     */
+    public ChangeEvent(Type type, Class<?> entityType, Object id, String where, String... columnNames) {
+        this.type = type;
+        this.entityType = entityType;
+        this.id = id;
+        this.where = where;
+        this.columnNames = columnNames == null || columnNames.length == 0
+                ? Collections.<String>emptyList()
+                : Collections.unmodifiableList(Arrays.asList(columnNames.clone()));
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Class<?> getEntityType() {
+        return entityType;
+    }
+
+    public String getTableName() {
+        return TableUtils.getTableName(entityType);
+    }
+
+    /**
+     * @return id of the changed row, null when the rows are selected by {@link #getWhere()}
+     */
+    public Object getId() {
+        return id;
+    }
+
+    /**
+     * @return where clause of the changed rows, null with an id or for the whole table
+     */
+    public String getWhere() {
+        return where;
+    }
+
+    /**
+     * @return true if the event may change any row of the table
+     */
+    public boolean isTableWide() {
+        return id == null;
+    }
+
+    /**
+     * @return the changed columns, empty for all of them
+     */
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    /**
+     * @return the change made by a sql statement, null if it only reads
+     */
+    public static Type getWriteType(String sql) {
+        String statement = sql.trim().toUpperCase(Locale.US);
+        if (statement.startsWith("WITH")) {
+            // a common table expression before the statement itself
+            for (Type type : new Type[]{Type.REPLACE, Type.INSERT, Type.UPDATE, Type.DELETE}) {
+                if (statement.matches("(?s).*\\b" + type + "\\b.*")) {
+                    return type;
+                }
+            }
+            return null;
+        }
+        if (statement.startsWith("REPLACE") || statement.matches("(?s)INSERT\\s+OR\\s+REPLACE\\b.*")) {
+            return Type.REPLACE;
+        }
+        for (Type type : new Type[]{Type.INSERT, Type.UPDATE, Type.DELETE}) {
+            if (statement.startsWith(type.name())) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + getTableName() + (id != null ? " id=" + id : (where != null ? " WHERE " + where : ""))
+                + (columnNames.isEmpty() ? "" : " " + columnNames);
+    }
+}
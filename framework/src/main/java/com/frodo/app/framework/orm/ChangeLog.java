@@ -0,0 +1,160 @@
+package com.frodo.app.framework.orm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Change data capture of a {@link Database}: the {@link ChangeEvent}s of every committed write transaction
+ * are appended as one {@link Batch}, in commit order, to a bounded ring buffer which {@link Consumer}s poll.
+ * <p/>
+ * Appending never blocks on consumers: a consumer which falls behind by more than the capacity loses the
+ * oldest batches, counted by {@link Consumer#getLostBatchCount()}, and should reload what it derived from them.
+ * Changes made by raw sql are not captured, nor the tables dropped by dropDb of a sqlite database.
+ */
+public class ChangeLog {
+
+    /**
+     * The events of one committed transaction.
+     */
+    public static final class Batch {
+        private final long sequence;
+        private final long commitTime;
+        private final List<ChangeEvent> events;
+
+        Batch(long sequence, long commitTime, List<ChangeEvent> events) {
+            this.sequence = sequence;
+            this.commitTime = commitTime;
+            this.events = events;
+        }
+
+        /**
+         * @return position in the log, consecutive from 0
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        public long getCommitTime() {
+            return commitTime;
+        }
+
+        public List<ChangeEvent> getEvents() {
+            return events;
+        }
+    }
+
+    /**
+     * Reads the log from the position it was created at, not thread safe: one consumer per reading thread.
+     */
+    public final class Consumer {
+        private long position;
+        private long lostBatchCount;
+
+        private Consumer(long position) {
+            this.position = position;
+        }
+
+        /**
+         * @param maxBatches at most this many batches are returned
+         * @return the batches committed since the last poll, oldest first, empty if there are none
+         */
+        public List<Batch> poll(int maxBatches) {
+            long head = ChangeLog.this.head;
+            long oldest = Math.max(head - capacity, 0);
+            if (position < oldest) {
+                lostBatchCount += oldest - position;
+                position = oldest;
+            }
+            if (position >= head || maxBatches <= 0) {
+                return Collections.emptyList();
+            }
+            List<Batch> result = new ArrayList<Batch>((int) Math.min(head - position, maxBatches));
+            while (position < head && result.size() < maxBatches) {
+                Batch batch = slots.get((int) (position % capacity));
+                if (batch == null || batch.sequence != position) {
+                    // overwritten by the writer after head was read
+                    long newOldest = Math.max(ChangeLog.this.head - capacity, position + 1);
+                    lostBatchCount += newOldest - position;
+                    position = newOldest;
+                    continue;
+                }
+                result.add(batch);
+                position++;
+            }
+            return result;
+        }
+
+        /**
+         * @return sequence of the next batch to poll
+         */
+        public long getPosition() {
+            return position;
+        }
+
+        /**
+         * @return number of batches overwritten before this consumer could poll them
+         */
+        public long getLostBatchCount() {
+            return lostBatchCount;
+        }
+
+        /**
+         * @return number of batches waiting to be polled
+         */
+        public long getLag() {
+            return Math.max(ChangeLog.this.head - position, 0);
+        }
+    }
+
+    private final int capacity;
+    private final AtomicReferenceArray<Batch> slots;
+    /**
+     * sequence of the next batch, written after its slot
+     */
+    private volatile long head;
+
+    /**
+     * @param capacity number of batches kept, 0 disables the log
+     */
+    public ChangeLog(int capacity) {
+        this.capacity = Math.max(capacity, 0);
+        this.slots = new AtomicReferenceArray<Batch>(this.capacity);
+    }
+
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Called by the database after a commit, events of one transaction must be appended at once.
+     */
+    public synchronized void append(List<ChangeEvent> events) {
+        if (capacity == 0 || events == null || events.isEmpty()) {
+            return;
+        }
+        long sequence = head;
+        slots.set((int) (sequence % capacity),
+                new Batch(sequence, System.currentTimeMillis(), Collections.unmodifiableList(new ArrayList<ChangeEvent>(events))));
+        head = sequence + 1;
+    }
+
+    /**
+     * @return a consumer of the batches appended from now on
+     */
+    public Consumer newConsumer() {
+        return new Consumer(head);
+    }
+
+    /**
+     * @return a consumer of the batches still in the log and the ones appended later
+     */
+    public Consumer newConsumerFromOldest() {
+        return new Consumer(Math.max(head - capacity, 0));
+    }
+}
@@ -0,0 +1,50 @@
+package com.frodo.app.framework.orm;
+
+import com.frodo.app.framework.exception.DbException;
+
+/**
+ * A statement parsed once and executed many times with different bindings,
+ * see {@link Database#compile(com.frodo.app.framework.orm.sql.SqlInfo)} to read
+ * and {@link Database#compile(Class, com.frodo.app.framework.orm.sql.SqlInfo)} to write.
+ * Bind indexes start at 1. A statement is not thread safe, close it when done.
+ */
+public interface CompiledStatement {
+
+    String getSql();
+
+    void bind(int index, long value);
+
+    void bind(int index, double value);
+
+    void bind(int index, String value);
+
+    void bind(int index, byte[] value);
+
+    void bindNull(int index);
+
+    /**
+     * bind values converted by the column converters, from index 1
+     */
+    void bindArgs(Object... args);
+
+    void clearBindings();
+
+    void execute() throws DbException;
+
+    /**
+     * @return rowid of the inserted row, -1 on failure
+     */
+    long executeInsert() throws DbException;
+
+    /**
+     * @return number of rows changed
+     */
+    int executeUpdateDelete() throws DbException;
+
+    /**
+     * @return the first column of the first row
+     */
+    long simpleQueryForLong() throws DbException;
+
+    void close();
+}
@@ -1,6 +1,10 @@
 package com.frodo.app.framework.orm;
 
 public interface Cursor {
+    boolean moveToNext();
+
+    int getCount();
+
     boolean isNull(int index);
 
     int getInt(int index);
@@ -17,9 +21,9 @@ public interface Cursor {
 
     long getLong(int index);
 
-    Double getDouble(int index);
+    double getDouble(int index);
 
-    Float getFloat(int index);
+    float getFloat(int index);
 
-    Short getShort(int index);
+    short getShort(int index);
 }
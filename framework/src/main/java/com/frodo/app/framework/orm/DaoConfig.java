@@ -1,6 +1,7 @@
 package com.frodo.app.framework.orm;
 
 import com.frodo.app.framework.context.MicroContext;
+import com.frodo.app.framework.orm.table.TableUtils;
 import com.frodo.app.framework.toolbox.TextUtils;
 
 /**
@@ -11,6 +12,15 @@ public final class DaoConfig {
     private String dbName = "framework.db"; // default db name
     private int dbVersion = 1;
     private DbUpgradeListener dbUpgradeListener;
+    private long explainQueryPlanThreshold = -1; // disabled
+    private boolean sqlMetricsEnabled = false;
+    private long slowQueryThreshold = -1; // disabled
+    private int readerConnectionCount = 1;
+    private long tableChangeDebounce = 50;
+    private int parallelHydrationThreshold = -1; // disabled
+    private int changeLogCapacity = 0; // disabled
+    private ShardRule shardRule;
+    private String shardName; // null for the main database
 
     private String dbDir;
 
@@ -18,6 +28,26 @@ public final class DaoConfig {
         this.context = context;
     }
 
+    /**
+     * A copy of every setting of source, see {@link #forShard(String)}.
+     */
+    public DaoConfig(DaoConfig source) {
+        this.context = source.context;
+        this.dbName = source.dbName;
+        this.dbVersion = source.dbVersion;
+        this.dbUpgradeListener = source.dbUpgradeListener;
+        this.explainQueryPlanThreshold = source.explainQueryPlanThreshold;
+        this.sqlMetricsEnabled = source.sqlMetricsEnabled;
+        this.slowQueryThreshold = source.slowQueryThreshold;
+        this.readerConnectionCount = source.readerConnectionCount;
+        this.tableChangeDebounce = source.tableChangeDebounce;
+        this.parallelHydrationThreshold = source.parallelHydrationThreshold;
+        this.changeLogCapacity = source.changeLogCapacity;
+        this.shardRule = source.shardRule;
+        this.shardName = source.shardName;
+        this.dbDir = source.dbDir;
+    }
+
     public MicroContext getContext() {
         return context;
     }
@@ -60,4 +90,143 @@ public final class DaoConfig {
     public void setDbDir(String dbDir) {
         this.dbDir = dbDir;
     }
+
+    public long getExplainQueryPlanThreshold() {
+        return explainQueryPlanThreshold;
+    }
+
+    /**
+     * diagnostic mode: queries slower than the threshold are explained by "EXPLAIN QUERY PLAN"
+     * and full table scans are logged.
+     *
+     * @param thresholdMillis query time in milliseconds, a negative value disables it.
+     */
+    public void setExplainQueryPlanThreshold(long thresholdMillis) {
+        this.explainQueryPlanThreshold = thresholdMillis;
+    }
+
+    public boolean isSqlMetricsEnabled() {
+        return sqlMetricsEnabled;
+    }
+
+    /**
+     * record latency and rows of every statement, grouped by sql template.
+     *
+     * @param sqlMetricsEnabled see {@link Database#getSqlMetrics()}
+     */
+    public void setSqlMetricsEnabled(boolean sqlMetricsEnabled) {
+        this.sqlMetricsEnabled = sqlMetricsEnabled;
+    }
+
+    public long getSlowQueryThreshold() {
+        return slowQueryThreshold;
+    }
+
+    /**
+     * statements slower than the threshold are logged as warning.
+     *
+     * @param thresholdMillis time in milliseconds, a negative value disables it.
+     */
+    public void setSlowQueryThreshold(long thresholdMillis) {
+        this.slowQueryThreshold = thresholdMillis;
+    }
+
+    public int getReaderConnectionCount() {
+        return readerConnectionCount;
+    }
+
+    /**
+     * number of reads running in parallel, see {@link AsyncDatabase}.
+     * More than one reader switches the database to write-ahead logging where it is supported,
+     * otherwise reads still share the single connection.
+     *
+     * @param readerConnectionCount at least 1
+     */
+    public void setReaderConnectionCount(int readerConnectionCount) {
+        this.readerConnectionCount = Math.max(readerConnectionCount, 1);
+    }
+
+    public long getTableChangeDebounce() {
+        return tableChangeDebounce;
+    }
+
+    /**
+     * table changes committed within the window are delivered to {@link TableChangeListener}s at once.
+     *
+     * @param debounceMillis time in milliseconds, 0 delivers every commit
+     */
+    public void setTableChangeDebounce(long debounceMillis) {
+        this.tableChangeDebounce = Math.max(debounceMillis, 0);
+    }
+
+    public int getParallelHydrationThreshold() {
+        return parallelHydrationThreshold;
+    }
+
+    /**
+     * entities of results with at least this many rows are built on all cores,
+     * only for entities without foreign or finder columns.
+     *
+     * @param rows row count, a negative value disables it.
+     */
+    public void setParallelHydrationThreshold(int rows) {
+        this.parallelHydrationThreshold = rows;
+    }
+
+    public int getChangeLogCapacity() {
+        return changeLogCapacity;
+    }
+
+    /**
+     * capture the row changes of committed transactions, see {@link Database#getChangeLog()}.
+     *
+     * @param batches number of transactions kept for slow consumers, 0 disables it.
+     */
+    public void setChangeLogCapacity(int batches) {
+        this.changeLogCapacity = Math.max(batches, 0);
+    }
+
+    public ShardRule getShardRule() {
+        return shardRule;
+    }
+
+    /**
+     * map entity types without {@link com.frodo.app.framework.orm.annotation.Table#shard()} to shards,
+     * only used by {@link ShardedDatabase}.
+     */
+    public void setShardRule(ShardRule shardRule) {
+        this.shardRule = shardRule;
+    }
+
+    /**
+     * @return shard of the entity type, the annotation first and then the rule, null for the main database
+     */
+    public String getShard(Class<?> entityType) {
+        String shard = TableUtils.getShard(entityType);
+        if (shard == null && shardRule != null) {
+            shard = shardRule.getShard(entityType);
+        }
+        return TextUtils.isEmpty(shard) ? null : shard;
+    }
+
+    /**
+     * @return shard of this config, null for the main database
+     */
+    public String getShardName() {
+        return shardName;
+    }
+
+    /**
+     * A copy of this config for a shard, stored in its own file next to the main database:
+     * "framework.db" has the shard "user" in "framework_user.db".
+     */
+    public DaoConfig forShard(String shard) {
+        DaoConfig config = new DaoConfig(this);
+        int extension = dbName.lastIndexOf('.');
+        config.dbName = extension > 0
+                ? dbName.substring(0, extension) + "_" + shard + dbName.substring(extension)
+                : dbName + "_" + shard;
+        config.shardName = shard;
+        return config;
+    }
 }
@@ -5,9 +5,12 @@ import com.frodo.app.framework.exception.DbException;
 import com.frodo.app.framework.orm.sql.DbModelSelector;
 import com.frodo.app.framework.orm.sql.Selector;
 import com.frodo.app.framework.orm.sql.SqlInfo;
+import com.frodo.app.framework.orm.sql.SqlMetrics;
 import com.frodo.app.framework.orm.sql.WhereBuilder;
 import com.frodo.app.framework.orm.table.DbModel;
+import com.frodo.app.framework.orm.table.GroupAggregate;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -18,6 +21,50 @@ public interface Database extends ChildSystem {
 
     DaoConfig getDaoConfig();
 
+    /**
+     * Statement metrics, only recorded when {@link DaoConfig#isSqlMetricsEnabled()}.
+     *
+     * @return SqlMetrics
+     */
+    SqlMetrics getSqlMetrics();
+
+    /**
+     * Second level cache of {@link com.frodo.app.framework.orm.annotation.Cacheable} entities found by id.
+     *
+     * @return EntityCache, see {@link EntityCache#getHitRatio()}, null when the database caches no entity
+     */
+    EntityCache getEntityCache();
+
+    /**
+     * Row changes of committed write operations, only captured when {@link DaoConfig#getChangeLogCapacity()} > 0.
+     *
+     * @return ChangeLog, see {@link ChangeLog#newConsumer()}
+     */
+    ChangeLog getChangeLog();
+
+    /**
+     * @return the non blocking facade of this database, created on first use
+     */
+    AsyncDatabase getAsyncDatabase();
+
+    /**
+     * listen to the tables changed by committed write operations, see {@link LiveQuery}.
+     */
+    void addTableChangeListener(TableChangeListener listener);
+
+    void removeTableChangeListener(TableChangeListener listener);
+
+    /**
+     * @return count of the committed writes to the table of entityType, incremented once they are visible;
+     * raw sql is not counted. See {@link com.frodo.app.framework.orm.sql.LazyList}.
+     */
+    long getTableVersion(Class<?> entityType);
+
+    /**
+     * shut down the executors and release the storage of this database, it must not be used afterwards.
+     */
+    void close();
+
     void saveOrUpdate(Object entity) throws DbException;
 
     void saveOrUpdateAll(List<?> entities) throws DbException;
@@ -62,6 +109,19 @@ public interface Database extends ChildSystem {
 
     <T> List<T> findAll(Class<T> entityType) throws DbException;
 
+    /**
+     * Entities of the ids, queried by chunks of bound ids, see {@link Selector#whereIn(String, java.util.Collection)}.
+     * Chunks run in parallel when {@link DaoConfig#getReaderConnectionCount()} is more than one.
+     *
+     * @return the entities in no particular order
+     */
+    <T> List<T> findByIds(Class<T> entityType, Collection<?> idValues) throws DbException;
+
+    /**
+     * @param keepOrder true: the entities are in the order of idValues
+     */
+    <T> List<T> findByIds(Class<T> entityType, Collection<?> idValues, boolean keepOrder) throws DbException;
+
     DbModel findDbModelFirst(SqlInfo sqlInfo) throws DbException;
 
     DbModel findDbModelFirst(DbModelSelector selector) throws DbException;
@@ -74,4 +134,59 @@ public interface Database extends ChildSystem {
 
     long count(Class<?> entityType) throws DbException;
 
+    //******************************* aggregate, SQL NULL (no rows) is returned as 0 *******************************
+
+    long sumLong(Selector selector, String columnName) throws DbException;
+
+    double sumDouble(Selector selector, String columnName) throws DbException;
+
+    double avg(Selector selector, String columnName) throws DbException;
+
+    long minLong(Selector selector, String columnName) throws DbException;
+
+    long maxLong(Selector selector, String columnName) throws DbException;
+
+    double min(Selector selector, String columnName) throws DbException;
+
+    double max(Selector selector, String columnName) throws DbException;
+
+    GroupAggregate countGroupBy(Selector selector, String groupByColumnName) throws DbException;
+
+    GroupAggregate sumGroupBy(Selector selector, String groupByColumnName, String columnName) throws DbException;
+
+    GroupAggregate avgGroupBy(Selector selector, String groupByColumnName, String columnName) throws DbException;
+
+    GroupAggregate minGroupBy(Selector selector, String groupByColumnName, String columnName) throws DbException;
+
+    GroupAggregate maxGroupBy(Selector selector, String groupByColumnName, String columnName) throws DbException;
+
+    //******************************************** raw sql ********************************************
+
+    /**
+     * A statement which only reads, such as SELECT.
+     *
+     * @param template sql with "?" placeholders, its bind args are bound to the statement
+     * @throws DbException for INSERT, REPLACE, UPDATE and DELETE: they would bypass the entity cache invalidation,
+     *                     the {@link ChangeLog} and the table change events, see {@link #compile(Class, SqlInfo)}
+     */
+    CompiledStatement compile(SqlInfo template) throws DbException;
+
+    /**
+     * A statement writing the table of entityType. Every execution changing rows runs as its own transaction:
+     * the cached entities of entityType are invalidated, a table wide {@link ChangeEvent} is appended to the
+     * {@link ChangeLog} and the table change is published.
+     *
+     * @param template sql with "?" placeholders, its bind args are bound to the statement
+     */
+    CompiledStatement compile(Class<?> entityType, SqlInfo template) throws DbException;
+
+    void execNonQuery(SqlInfo sqlInfo) throws DbException;
+
+    void execNonQuery(String sql) throws DbException;
+
+    /**
+     * Execute all statements in one transaction, nothing is applied if one fails.
+     */
+    void execNonQueryInTransaction(List<SqlInfo> sqlInfoList) throws DbException;
+
 }
@@ -0,0 +1,320 @@
+package com.frodo.app.framework.orm;
+
+import com.frodo.app.framework.exception.DbException;
+import com.frodo.app.framework.orm.annotation.Cacheable;
+import com.frodo.app.framework.orm.annotation.Finder;
+import com.frodo.app.framework.orm.annotation.Foreign;
+import com.frodo.app.framework.orm.sql.FinderLazyLoader;
+import com.frodo.app.framework.orm.sql.ForeignLazyLoader;
+import com.frodo.app.framework.orm.sql.LazyList;
+import com.frodo.app.framework.orm.table.Column;
+import com.frodo.app.framework.orm.table.Table;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Second level cache of entities by id, one {@link Region} per entity type annotated by {@link Cacheable}.
+ * Every region is a least recently used map bounded by the estimated size of its entities.
+ * <p/>
+ * A region is invalidated when a write transaction on its entity type ends.
+ * A find reads {@link Region#getVersion()} before its query and puts the result with that version,
+ * the put is dropped if a write ended in between, so a cached entity is never older than the last commit.
+ * Entities hold the entities they refer to by {@link Foreign} and {@link Finder} fields, so a region is also
+ * invalidated with the types it refers to, directly or not.
+ */
+public class EntityCache {
+
+    private static final Region NONE = new Region(0, false);
+
+    /**
+     * key: entity type, {@link #NONE} for types which are not cacheable
+     */
+    private final ConcurrentHashMap<Class<?>, Region> regions = new ConcurrentHashMap<Class<?>, Region>();
+    /**
+     * key: entity type, value: the cacheable types referring to it
+     */
+    private final ConcurrentHashMap<Class<?>, Set<Class<?>>> referrers = new ConcurrentHashMap<Class<?>, Set<Class<?>>>();
+
+    /**
+     * @return the region of entityType, null if it is not annotated by {@link Cacheable}
+     */
+    public Region getRegion(Class<?> entityType) {
+        Region region = regions.get(entityType);
+        if (region == null) {
+            Cacheable cacheable = entityType.getAnnotation(Cacheable.class);
+            region = cacheable == null ? NONE : new Region(cacheable.maxBytes(), cacheable.copyOnRead());
+            if (region != NONE) {
+                // before the region is used: a find may only cache what a write of a referred type invalidates
+                for (Class<?> referredType : referredTypes(entityType)) {
+                    Set<Class<?>> types = referrers.get(referredType);
+                    if (types == null) {
+                        Set<Class<?>> newTypes = Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+                        types = referrers.putIfAbsent(referredType, newTypes);
+                        if (types == null) {
+                            types = newTypes;
+                        }
+                    }
+                    types.add(entityType);
+                }
+            }
+            Region previous = regions.putIfAbsent(entityType, region);
+            if (previous != null) {
+                region = previous;
+            }
+        }
+        return region == NONE ? null : region;
+    }
+
+    /**
+     * Invalidate the region of entityType and the regions of the types referring to it.
+     */
+    public void invalidate(Class<?> entityType) {
+        Set<Class<?>> visited = new HashSet<Class<?>>();
+        Deque<Class<?>> pending = new ArrayDeque<Class<?>>();
+        pending.add(entityType);
+        while (!pending.isEmpty()) {
+            Class<?> type = pending.poll();
+            if (!visited.add(type)) {
+                continue;
+            }
+            Region region = regions.get(type);
+            if (region != null && region != NONE) {
+                region.invalidate();
+            }
+            Set<Class<?>> types = referrers.get(type);
+            if (types != null) {
+                pending.addAll(types);
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        for (Region region : regions.values()) {
+            if (region != NONE) {
+                region.invalidate();
+            }
+        }
+    }
+
+    public long getHitCount() {
+        long hits = 0;
+        for (Region region : regions.values()) {
+            hits += region.hits.get();
+        }
+        return hits;
+    }
+
+    public long getMissCount() {
+        long misses = 0;
+        for (Region region : regions.values()) {
+            misses += region.misses.get();
+        }
+        return misses;
+    }
+
+    /**
+     * @return hits / (hits + misses) of all regions, 0 before the first find
+     */
+    public double getHitRatio() {
+        return ratio(getHitCount(), getMissCount());
+    }
+
+    private static double ratio(long hits, long misses) {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return entity types of the {@link Foreign} and {@link Finder} fields, as the columns resolve them
+     */
+    private static Set<Class<?>> referredTypes(Class<?> entityType) {
+        Set<Class<?>> types = new HashSet<Class<?>>();
+        for (Class<?> type = entityType; type != null && !Object.class.equals(type); type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                if (field.getAnnotation(Foreign.class) != null || field.getAnnotation(Finder.class) != null) {
+                    Class<?> fieldType = field.getType();
+                    if ((List.class.equals(fieldType) || ForeignLazyLoader.class.equals(fieldType)
+                            || FinderLazyLoader.class.equals(fieldType))
+                            && field.getGenericType() instanceof ParameterizedType) {
+                        Object argument = ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0];
+                        if (argument instanceof Class) {
+                            types.add((Class<?>) argument);
+                        }
+                    } else {
+                        types.add(fieldType);
+                    }
+                }
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Ids are compared by value: 1, 1L and (short) 1 are the same key.
+     */
+    private static Object key(Object idValue) {
+        if (idValue instanceof Integer || idValue instanceof Short || idValue instanceof Byte) {
+            return ((Number) idValue).longValue();
+        }
+        return idValue;
+    }
+
+    public static final class Region {
+        private final long maxBytes;
+        private final boolean copyOnRead;
+        private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true);
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private long sizeBytes;
+        private long version;
+
+        private Region(long maxBytes, boolean copyOnRead) {
+            this.maxBytes = maxBytes;
+            this.copyOnRead = copyOnRead;
+        }
+
+        /**
+         * @return the cached entity, or a copy of it, null on a miss
+         */
+        public Object get(Table table, Object idValue) throws DbException {
+            Object entity;
+            synchronized (this) {
+                Entry entry = entries.get(key(idValue));
+                entity = entry == null ? null : entry.entity;
+            }
+            if (entity == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return copyOnRead ? copy(table, entity) : entity;
+        }
+
+        public synchronized long getVersion() {
+            return version;
+        }
+
+        /**
+         * @param version {@link #getVersion()} read before the entity was queried
+         */
+        public void put(Table table, Object idValue, Object entity, long version) throws DbException {
+            if (copyOnRead) {
+                entity = copy(table, entity);
+            }
+            long bytes = estimateSize(table, entity);
+            if (bytes > maxBytes) {
+                return;
+            }
+            synchronized (this) {
+                if (version != this.version) {
+                    return;
+                }
+                Entry previous = entries.put(key(idValue), new Entry(entity, bytes));
+                if (previous != null) {
+                    sizeBytes -= previous.bytes;
+                }
+                sizeBytes += bytes;
+                Iterator<Map.Entry<Object, Entry>> iterator = entries.entrySet().iterator();
+                while (sizeBytes > maxBytes && iterator.hasNext()) {
+                    sizeBytes -= iterator.next().getValue().bytes;
+                    iterator.remove();
+                }
+            }
+        }
+
+        public synchronized void invalidate() {
+            entries.clear();
+            sizeBytes = 0;
+            version++;
+        }
+
+        public synchronized int size() {
+            return entries.size();
+        }
+
+        public synchronized long getSizeBytes() {
+            return sizeBytes;
+        }
+
+        public long getHitCount() {
+            return hits.get();
+        }
+
+        public long getMissCount() {
+            return misses.get();
+        }
+
+        public double getHitRatio() {
+            return ratio(hits.get(), misses.get());
+        }
+    }
+
+    private static final class Entry {
+        final Object entity;
+        final long bytes;
+
+        Entry(Object entity, long bytes) {
+            this.entity = entity;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * shallow copy of the column fields, a {@link LazyList} is replaced by an unloaded one
+     * so the copy queries its own entities, other foreign and finder values are shared
+     */
+    private static Object copy(Table table, Object entity) throws DbException {
+        try {
+            Object copy = entity.getClass().newInstance();
+            copyField(table.id.getColumnField(), entity, copy);
+            for (Column column : table.columnMap.values()) {
+                copyField(column.getColumnField(), entity, copy);
+            }
+            return copy;
+        } catch (Throwable e) {
+            throw new DbException(e);
+        }
+    }
+
+    private static void copyField(Field field, Object from, Object to) throws IllegalAccessException {
+        field.setAccessible(true);
+        Object value = field.get(from);
+        field.set(to, value instanceof LazyList ? ((LazyList<?>) value).unloadedCopy() : value);
+    }
+
+    /**
+     * rough heap size: object header and references, plus the payload of strings and arrays
+     */
+    private static long estimateSize(Table table, Object entity) throws DbException {
+        long bytes = 16 + 8 * (table.columnMap.size() + 1) + estimateSize(table.id.getFieldValue(entity));
+        for (Column column : table.columnMap.values()) {
+            bytes += estimateSize(column.getFieldValue(entity));
+        }
+        return bytes;
+    }
+
+    private static long estimateSize(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof CharSequence) {
+            return 40 + 2 * ((CharSequence) value).length();
+        }
+        if (value instanceof byte[]) {
+            return 16 + ((byte[]) value).length;
+        }
+        return 16;
+    }
+}
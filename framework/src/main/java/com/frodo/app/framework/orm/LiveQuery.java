@@ -0,0 +1,100 @@
+package com.frodo.app.framework.orm;
+
+import com.frodo.app.framework.exception.DbException;
+import com.frodo.app.framework.orm.sql.Selector;
+import com.frodo.app.framework.orm.table.TableUtils;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Re-runs a {@link Selector} on the db read threads whenever its table changes.
+ * Results are delivered on a db thread, post them to the main thread to update the UI.
+ * Changes arriving while a query runs are folded into one more run.
+ */
+public class LiveQuery<T> implements TableChangeListener {
+
+    public interface Observer<T> {
+        void onChanged(List<T> result);
+
+        void onError(DbException e);
+    }
+
+    private final Database database;
+    private final Selector selector;
+    private final String tableName;
+    private final Observer<T> observer;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+    private volatile boolean active;
+
+    public LiveQuery(Database database, Selector selector, Observer<T> observer) {
+        this.database = database;
+        this.selector = selector;
+        this.tableName = TableUtils.getTableName(selector.getEntityType());
+        this.observer = observer;
+    }
+
+    /**
+     * listen to table changes and deliver the current result
+     */
+    public void start() {
+        active = true;
+        database.addTableChangeListener(this);
+        requery();
+    }
+
+    public void stop() {
+        active = false;
+        database.removeTableChangeListener(this);
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public void onTablesChanged(Set<String> tableNames) {
+        if (active && tableNames.contains(tableName)) {
+            requery();
+        }
+    }
+
+    private void requery() {
+        dirty.set(true);
+        drain();
+    }
+
+    private void drain() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        database.getAsyncDatabase().read(new AsyncDatabase.DbCallable<Void>() {
+            @Override
+            public Void call(Database db) throws DbException {
+                try {
+                    while (active && dirty.getAndSet(false)) {
+                        List<T> result;
+                        try {
+                            result = db.findAll(selector);
+                        } catch (DbException e) {
+                            observer.onError(e);
+                            continue;
+                        }
+                        if (active) {
+                            observer.onChanged(result);
+                        }
+                    }
+                } finally {
+                    running.set(false);
+                }
+                // a change may have arrived between the last check and releasing the flag
+                if (active && dirty.get()) {
+                    drain();
+                }
+                return null;
+            }
+        });
+    }
+}
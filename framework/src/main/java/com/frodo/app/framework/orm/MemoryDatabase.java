@@ -0,0 +1,903 @@
+package com.frodo.app.framework.orm;
+
+import com.frodo.app.framework.controller.AbstractChildSystem;
+import com.frodo.app.framework.controller.IController;
+import com.frodo.app.framework.exception.DbException;
+import com.frodo.app.framework.orm.sql.CursorUtils;
+import com.frodo.app.framework.orm.sql.DbModelSelector;
+import com.frodo.app.framework.orm.sql.Selector;
+import com.frodo.app.framework.orm.sql.SqlInfo;
+import com.frodo.app.framework.orm.sql.SqlMetrics;
+import com.frodo.app.framework.orm.sql.WhereBuilder;
+import com.frodo.app.framework.orm.table.DbModel;
+import com.frodo.app.framework.orm.table.GroupAggregate;
+import com.frodo.app.framework.orm.table.Table;
+import com.frodo.app.framework.orm.table.TableUtils;
+import com.frodo.app.framework.toolbox.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link Database} kept in memory, on any jvm: a stand-in for tests and a store for hot, ephemeral data.
+ * Entities are described by the same annotations, where clauses are evaluated from the conditions of
+ * {@link WhereBuilder}, see {@link MemoryPredicate}.
+ * <p/>
+ * Every write method is a transaction: it changes copies of its tables which are published at once when it succeeds,
+ * reads never lock and see the last published tables, so a query never sees a write half done.
+ * Copies share their rows and indexes with the published tables, see {@link MemoryTable}.
+ * <p/>
+ * Not supported, a {@link DbException} is thrown: raw sql ({@link SqlInfo}, {@link WhereBuilder#expr(String)},
+ * column expressions), full text search and HAVING.
+ * Give it a db name of its own, table metadata are cached by db name.
+ */
+public class MemoryDatabase extends AbstractChildSystem implements Database {
+
+    private final DaoConfig daoConfig;
+    private final SqlMetrics sqlMetrics = new SqlMetrics();
+    private final ChangeLog changeLog;
+    private final TableChangeDispatcher tableChangeDispatcher;
+    private volatile AsyncDatabase asyncDatabase;
+
+    /**
+     * published tables, replaced as a whole by every write
+     */
+    private volatile Map<Class<?>, MemoryTable> tables = Collections.emptyMap();
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    /**
+     * tables changed by the running write, only touched by the thread holding the write lock
+     */
+    private Map<Class<?>, MemoryTable> writingTables;
+    private int transactionDepth = 0;
+    private boolean transactionSuccessful = false;
+    private boolean transactionFailed = false;
+    private final List<ChangeEvent> changeEvents = new ArrayList<ChangeEvent>();
+
+    public MemoryDatabase(IController controller, DaoConfig daoConfig) {
+        super(controller);
+        this.daoConfig = daoConfig;
+        this.tableChangeDispatcher = new TableChangeDispatcher(daoConfig.getDbName());
+        this.changeLog = new ChangeLog(daoConfig.getChangeLogCapacity());
+    }
+
+    public static MemoryDatabase create(IController controller, String dbName) {
+        DaoConfig config = new DaoConfig(controller.getMicroContext());
+        config.setDbName(dbName);
+        return new MemoryDatabase(controller, config);
+    }
+
+    public DaoConfig getDaoConfig() {
+        return daoConfig;
+    }
+
+    /**
+     * @return SqlMetrics, always empty: no sql is run
+     */
+    public SqlMetrics getSqlMetrics() {
+        return sqlMetrics;
+    }
+
+    /**
+     * @return null, no entity is cached: entities are built from memory anyway
+     */
+    public EntityCache getEntityCache() {
+        return null;
+    }
+
+    public ChangeLog getChangeLog() {
+        return changeLog;
+    }
+
+    public AsyncDatabase getAsyncDatabase() {
+        if (asyncDatabase == null) {
+            synchronized (this) {
+                if (asyncDatabase == null) {
+                    asyncDatabase = new AsyncDatabase(this);
+                }
+            }
+        }
+        return asyncDatabase;
+    }
+
+    public void addTableChangeListener(TableChangeListener listener) {
+        tableChangeDispatcher.addListener(listener);
+    }
+
+    public void removeTableChangeListener(TableChangeListener listener) {
+        tableChangeDispatcher.removeListener(listener);
+    }
+
+    public long getTableVersion(Class<?> entityType) {
+        return tableChangeDispatcher.getVersion(TableUtils.getTableName(entityType));
+    }
+
+    //***************************************** save *****************************************
+
+    public void saveOrUpdate(Object entity) throws DbException {
+        try {
+            beginTransaction();
+
+            saveOrUpdateWithoutTransaction(entity);
+
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    public void saveOrUpdateAll(List<?> entities) throws DbException {
+        if (entities == null || entities.isEmpty()) return;
+        try {
+            beginTransaction();
+
+            for (Object entity : entities) {
+                saveOrUpdateWithoutTransaction(entity);
+            }
+
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    public void replace(Object entity) throws DbException {
+        try {
+            beginTransaction();
+
+            MemoryTable table = writableTable(entity.getClass());
+            Object id = table.insert(table.toRow(entity, false), true);
+            recordChange(ChangeEvent.Type.REPLACE, entity.getClass(), id);
+
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    public void replaceAll(List<?> entities) throws DbException {
+        if (entities == null || entities.isEmpty()) return;
+        try {
+            beginTransaction();
+
+            for (Object entity : entities) {
+                MemoryTable table = writableTable(entity.getClass());
+                Object id = table.insert(table.toRow(entity, false), true);
+                recordChange(ChangeEvent.Type.REPLACE, entity.getClass(), id);
+            }
+
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    public void save(Object entity) throws DbException {
+        try {
+            beginTransaction();
+
+            MemoryTable table = writableTable(entity.getClass());
+            Object id = table.insert(table.toRow(entity, false), false);
+            recordChange(ChangeEvent.Type.INSERT, entity.getClass(), id);
+
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    public void saveAll(List<?> entities) throws DbException {
+        if (entities == null || entities.isEmpty()) return;
+        try {
+            beginTransaction();
+
+            for (Object entity : entities) {
+                MemoryTable table = writableTable(entity.getClass());
+                Object id = table.insert(table.toRow(entity, false), false);
+                recordChange(ChangeEvent.Type.INSERT, entity.getClass(), id);
+            }
+
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    public boolean saveBindingId(Object entity) throws DbException {
+        boolean result;
+        try {
+            beginTransaction();
+
+            result = saveBindingIdWithoutTransaction(entity);
+
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+        return result;
+    }
+
+    public void saveBindingIdAll(List<?> entities) throws DbException {
+        if (entities == null || entities.isEmpty()) return;
+        try {
+            beginTransaction();
+
+            for (Object entity : entities) {
+                if (!saveBindingIdWithoutTransaction(entity)) {
+                    throw new DbException("saveBindingId error, transaction will not commit!");
+                }
+            }
+
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    private void saveOrUpdateWithoutTransaction(Object entity) throws DbException {
+        MemoryTable table = writableTable(entity.getClass());
+        if (table.table.id.isAutoIncrement()) {
+            Object[] row = table.toRow(entity, true);
+            if (row[0] != null) {
+                if (table.get(row[0]) != null) {
+                    table.update(SqlValues.key(row[0]), row);
+                    recordChange(ChangeEvent.Type.UPDATE, entity.getClass(), row[0]);
+                }
+            } else {
+                saveBindingIdWithoutTransaction(entity);
+            }
+        } else {
+            Object id = table.insert(table.toRow(entity, false), true);
+            recordChange(ChangeEvent.Type.REPLACE, entity.getClass(), id);
+        }
+    }
+
+    private boolean saveBindingIdWithoutTransaction(Object entity) throws DbException {
+        MemoryTable table = writableTable(entity.getClass());
+        Object id = table.insert(table.toRow(entity, false), false);
+        if (table.table.id.isAutoIncrement()) {
+            table.table.id.setAutoIncrementId(entity, (Long) id);
+        }
+        recordChange(ChangeEvent.Type.INSERT, entity.getClass(), id);
+        return true;
+    }
+
+    //***************************************** delete *****************************************
+
+    public void deleteById(Class<?> entityType, Object idValue) throws DbException {
+        if (!tableIsExist(entityType)) return;
+        try {
+            beginTransaction();
+
+            MemoryTable table = writableTable(entityType);
+            deleteRow(table, entityType, SqlValues.key(table.applyAffinity(0, idValue)));
+
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    public void delete(Object entity) throws DbException {
+        if (!tableIsExist(entity.getClass())) return;
+        try {
+            beginTransaction();
+
+            deleteWithoutTransaction(entity);
+
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    public void delete(Class<?> entityType, WhereBuilder whereBuilder) throws DbException {
+        if (!tableIsExist(entityType)) return;
+        try {
+            beginTransaction();
+
+            MemoryTable table = writableTable(entityType);
+            for (Object key : table.selectKeys(MemoryPredicate.compile(table, whereBuilder))) {
+                deleteRow(table, entityType, key);
+            }
+
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    public void deleteAll(List<?> entities) throws DbException {
+        if (entities == null || entities.isEmpty() || !tableIsExist(entities.get(0).getClass())) return;
+        try {
+            beginTransaction();
+
+            for (Object entity : entities) {
+                deleteWithoutTransaction(entity);
+            }
+
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    public void deleteAll(Class<?> entityType) throws DbException {
+        if (!tableIsExist(entityType)) return;
+        try {
+            beginTransaction();
+
+            writableTable(entityType).clear();
+            recordChange(ChangeEvent.Type.DELETE, entityType, null);
+
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    private void deleteWithoutTransaction(Object entity) throws DbException {
+        MemoryTable table = writableTable(entity.getClass());
+        Object idValue = table.table.id.getColumnValue(entity);
+        if (idValue == null) {
+            throw new DbException("this entity[" + entity.getClass() + "]'s id value is null");
+        }
+        deleteRow(table, entity.getClass(), SqlValues.key(table.applyAffinity(0, idValue)));
+    }
+
+    private void deleteRow(MemoryTable table, Class<?> entityType, Object key) {
+        Object[] row = table.get(key);
+        if (row != null) {
+            table.delete(key);
+            recordChange(ChangeEvent.Type.DELETE, entityType, row[0]);
+        }
+    }
+
+    //***************************************** update *****************************************
+
+    public void update(Object entity, String... updateColumnNames) throws DbException {
+        if (!tableIsExist(entity.getClass())) return;
+        try {
+            beginTransaction();
+
+            updateWithoutTransaction(entity, updateColumnNames);
+
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    public void update(Object entity, WhereBuilder whereBuilder, String... updateColumnNames) throws DbException {
+        if (!tableIsExist(entity.getClass())) return;
+        try {
+            beginTransaction();
+
+            updateWithoutTransaction(entity, whereBuilder, updateColumnNames);
+
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    public void updateAll(List<?> entities, String... updateColumnNames) throws DbException {
+        if (entities == null || entities.isEmpty() || !tableIsExist(entities.get(0).getClass())) return;
+        try {
+            beginTransaction();
+
+            for (Object entity : entities) {
+                updateWithoutTransaction(entity, updateColumnNames);
+            }
+
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    public void updateAll(List<?> entities, WhereBuilder whereBuilder, String... updateColumnNames) throws DbException {
+        if (entities == null || entities.isEmpty() || !tableIsExist(entities.get(0).getClass())) return;
+        try {
+            beginTransaction();
+
+            for (Object entity : entities) {
+                updateWithoutTransaction(entity, whereBuilder, updateColumnNames);
+            }
+
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    private void updateWithoutTransaction(Object entity, String... updateColumnNames) throws DbException {
+        MemoryTable table = writableTable(entity.getClass());
+        Object idValue = table.table.id.getColumnValue(entity);
+        if (idValue == null) {
+            throw new DbException("this entity[" + entity.getClass() + "]'s id value is null");
+        }
+        Object key = SqlValues.key(table.applyAffinity(0, idValue));
+        Object[] row = table.get(key);
+        if (row != null) {
+            Object[] updated = updatedRow(table, row, table.toRow(entity, false), updateColumnNames);
+            table.update(key, updated);
+            recordChange(ChangeEvent.Type.UPDATE, entity.getClass(), updated[0], updateColumnNames);
+        }
+    }
+
+    private void updateWithoutTransaction(Object entity, WhereBuilder whereBuilder, String... updateColumnNames) throws DbException {
+        MemoryTable table = writableTable(entity.getClass());
+        Object[] values = table.toRow(entity, false);
+        for (Object key : table.selectKeys(MemoryPredicate.compile(table, whereBuilder))) {
+            Object[] updated = updatedRow(table, table.get(key), values, updateColumnNames);
+            table.update(key, updated);
+            recordChange(ChangeEvent.Type.UPDATE, entity.getClass(), updated[0], updateColumnNames);
+        }
+    }
+
+    /**
+     * @return a copy of row with the columns of the update, the auto increment id is never updated
+     */
+    private static Object[] updatedRow(MemoryTable table, Object[] row, Object[] values, String... updateColumnNames)
+            throws DbException {
+        Object[] updated = row.clone();
+        if (updateColumnNames == null || updateColumnNames.length == 0) {
+            for (int i = 0; i < updated.length; i++) {
+                if (i > 0 || values[0] != null) {
+                    updated[i] = values[i];
+                }
+            }
+        } else {
+            for (String columnName : updateColumnNames) {
+                int column = table.getColumnIndex(columnName);
+                if (column > 0 || values[0] != null) {
+                    updated[column] = values[column];
+                }
+            }
+        }
+        return updated;
+    }
+
+    //***************************************** find *****************************************
+
+    @SuppressWarnings("unchecked")
+    public <T> T findById(Class<T> entityType, Object idValue) throws DbException {
+        MemoryTable table = readableTable(entityType);
+        if (table == null) return null;
+
+        Object[] row = table.get(idValue);
+        if (row == null) {
+            return null;
+        }
+        RowCursor cursor = new RowCursor(table.columnNames, Collections.singletonList(row));
+        cursor.moveToNext();
+        return CursorUtils.getEntity(this, cursor, entityType, CursorUtils.FindCacheSequence.getSeq());
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T findFirst(Selector selector) throws DbException {
+        List<T> entities = findAll(selector.limit(1));
+        return entities == null || entities.isEmpty() ? null : entities.get(0);
+    }
+
+    public <T> T findFirst(Class<T> entityType) throws DbException {
+        return findFirst(Selector.from(entityType));
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> List<T> findAll(Selector selector) throws DbException {
+        MemoryTable table = readableTable(selector.getEntityType());
+        if (table == null) return null;
+
+        List<Object[]> rows = select(table, selector, false);
+        return CursorUtils.getEntities(this, new RowCursor(table.columnNames, rows), (Class<T>) selector.getEntityType(),
+                CursorUtils.FindCacheSequence.getSeq(), daoConfig.getParallelHydrationThreshold());
+    }
+
+    public <T> List<T> findAll(Class<T> entityType) throws DbException {
+        return findAll(Selector.from(entityType));
+    }
+
+    public <T> List<T> findByIds(Class<T> entityType, Collection<?> idValues) throws DbException {
+        return findByIds(entityType, idValues, false);
+    }
+
+    public <T> List<T> findByIds(Class<T> entityType, Collection<?> idValues, boolean keepOrder) throws DbException {
+        MemoryTable table = readableTable(entityType);
+        if (table == null) return null;
+
+        List<T> entities = findAll(Selector.from(entityType).whereIn(table.columnNames[0], idValues));
+        return keepOrder ? CursorUtils.sortByIds(table.table, entities, idValues) : entities;
+    }
+
+    public DbModel findDbModelFirst(SqlInfo sqlInfo) throws DbException {
+        throw new DbException("sql is not supported by MemoryDatabase: " + sqlInfo.getSql());
+    }
+
+    public DbModel findDbModelFirst(DbModelSelector selector) throws DbException {
+        List<DbModel> dbModels = findDbModelAll(selector.limit(1));
+        return dbModels == null || dbModels.isEmpty() ? null : dbModels.get(0);
+    }
+
+    public List<DbModel> findDbModelAll(SqlInfo sqlInfo) throws DbException {
+        throw new DbException("sql is not supported by MemoryDatabase: " + sqlInfo.getSql());
+    }
+
+    /**
+     * Only plain column names can be selected, a group by returns the first row of every group.
+     */
+    public List<DbModel> findDbModelAll(DbModelSelector selector) throws DbException {
+        MemoryTable table = readableTable(selector.getEntityType());
+        if (table == null) return null;
+        if (selector.getHaving() != null && selector.getHaving().getWhereItemSize() > 0) {
+            throw new DbException("HAVING is not supported by MemoryDatabase");
+        }
+
+        String groupByColumnName = selector.getGroupByColumnName();
+        String[] columnNames = selector.getColumnExpressions();
+        if (columnNames == null || columnNames.length == 0) {
+            columnNames = TextUtils.isEmpty(groupByColumnName) ? table.columnNames : new String[]{groupByColumnName};
+        }
+        int[] columns = new int[columnNames.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = table.getColumnIndex(columnNames[i].trim());
+        }
+
+        Selector rowSelector = selector.getSelector();
+        List<Object[]> rows;
+        if (TextUtils.isEmpty(groupByColumnName)) {
+            rows = select(table, rowSelector, false);
+        } else {
+            List<Object[]> all = table.select(where(table, rowSelector), rowSelector.getOrderByList(), 0, 0);
+            Collection<List<Object[]>> groups = groupBy(table, all, groupByColumnName).values();
+            rows = new ArrayList<Object[]>(groups.size());
+            for (List<Object[]> group : groups) {
+                rows.add(group.get(0));
+            }
+            rows = limit(rows, rowSelector.getLimit(), rowSelector.getOffset());
+        }
+
+        List<DbModel> result = new ArrayList<DbModel>(rows.size());
+        for (Object[] row : rows) {
+            DbModel dbModel = new DbModel();
+            for (int i = 0; i < columns.length; i++) {
+                dbModel.add(columnNames[i].trim(), SqlValues.toString(row[columns[i]]));
+            }
+            result.add(dbModel);
+        }
+        return result;
+    }
+
+    public long count(Selector selector) throws DbException {
+        MemoryTable table = readableTable(selector.getEntityType());
+        if (table == null) return 0;
+
+        return select(table, selector, true).size();
+    }
+
+    public long count(Class<?> entityType) throws DbException {
+        MemoryTable table = readableTable(entityType);
+        return table == null ? 0 : table.size();
+    }
+
+    //***************************************** aggregate *****************************************
+
+    public long sumLong(Selector selector, String columnName) throws DbException {
+        return SqlValues.toLong(aggregate(selector, "SUM", columnName));
+    }
+
+    public double sumDouble(Selector selector, String columnName) throws DbException {
+        return SqlValues.toDouble(aggregate(selector, "TOTAL", columnName));
+    }
+
+    public double avg(Selector selector, String columnName) throws DbException {
+        return SqlValues.toDouble(aggregate(selector, "AVG", columnName));
+    }
+
+    public long minLong(Selector selector, String columnName) throws DbException {
+        return SqlValues.toLong(aggregate(selector, "MIN", columnName));
+    }
+
+    public long maxLong(Selector selector, String columnName) throws DbException {
+        return SqlValues.toLong(aggregate(selector, "MAX", columnName));
+    }
+
+    public double min(Selector selector, String columnName) throws DbException {
+        return SqlValues.toDouble(aggregate(selector, "MIN", columnName));
+    }
+
+    public double max(Selector selector, String columnName) throws DbException {
+        return SqlValues.toDouble(aggregate(selector, "MAX", columnName));
+    }
+
+    public GroupAggregate countGroupBy(Selector selector, String groupByColumnName) throws DbException {
+        MemoryTable table = readableTable(selector.getEntityType());
+        return aggregateGroupBy(selector, groupByColumnName, "COUNT", table == null ? null : table.columnNames[0]);
+    }
+
+    public GroupAggregate sumGroupBy(Selector selector, String groupByColumnName, String columnName) throws DbException {
+        return aggregateGroupBy(selector, groupByColumnName, "SUM", columnName);
+    }
+
+    public GroupAggregate avgGroupBy(Selector selector, String groupByColumnName, String columnName) throws DbException {
+        return aggregateGroupBy(selector, groupByColumnName, "AVG", columnName);
+    }
+
+    public GroupAggregate minGroupBy(Selector selector, String groupByColumnName, String columnName) throws DbException {
+        return aggregateGroupBy(selector, groupByColumnName, "MIN", columnName);
+    }
+
+    public GroupAggregate maxGroupBy(Selector selector, String groupByColumnName, String columnName) throws DbException {
+        return aggregateGroupBy(selector, groupByColumnName, "MAX", columnName);
+    }
+
+    private Object aggregate(Selector selector, String function, String columnName) throws DbException {
+        MemoryTable table = readableTable(selector.getEntityType());
+        if (table == null) return null;
+
+        return aggregate(select(table, selector, true), table.getColumnIndex(columnName), function);
+    }
+
+    private GroupAggregate aggregateGroupBy(Selector selector, String groupByColumnName, String function, String columnName) throws DbException {
+        GroupAggregate result = new GroupAggregate();
+        MemoryTable table = readableTable(selector.getEntityType());
+        if (table == null) return result;
+
+        int column = table.getColumnIndex(columnName);
+        for (Map.Entry<Object, List<Object[]>> group : groupBy(table, select(table, selector, true), groupByColumnName).entrySet()) {
+            Object value = aggregate(group.getValue(), column, function);
+            String key = SqlValues.toString(group.getValue().get(0)[table.getColumnIndex(groupByColumnName)]);
+            if (value == null) {
+                result.add(key, 0, 0);
+            } else {
+                result.add(key, SqlValues.toLong(value), SqlValues.toDouble(value));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the sqlite result of the function: null for no value, except COUNT and TOTAL
+     */
+    private static Object aggregate(List<Object[]> rows, int column, String function) {
+        long count = 0;
+        long longSum = 0;
+        double doubleSum = 0;
+        boolean integral = true;
+        Object extreme = null;
+        for (Object[] row : rows) {
+            Object value = row[column];
+            if (value == null) {
+                continue;
+            }
+            count++;
+            if (value instanceof Long) {
+                longSum += (Long) value;
+            } else {
+                integral = false;
+            }
+            doubleSum += SqlValues.toDouble(value);
+            if (extreme == null) {
+                extreme = value;
+            } else {
+                int diff = SqlValues.compare(value, extreme);
+                if ("MIN".equals(function) ? diff < 0 : diff > 0) {
+                    extreme = value;
+                }
+            }
+        }
+        switch (function) {
+            case "COUNT":
+                return count;
+            case "TOTAL":
+                return doubleSum;
+            case "SUM":
+                return count == 0 ? null : (integral ? (Object) longSum : (Object) doubleSum);
+            case "AVG":
+                return count == 0 ? null : doubleSum / count;
+            default:
+                return extreme;
+        }
+    }
+
+    /**
+     * @return rows by group column value, in the order of their first row
+     */
+    private static Map<Object, List<Object[]>> groupBy(MemoryTable table, List<Object[]> rows, String groupByColumnName)
+            throws DbException {
+        int column = table.getColumnIndex(groupByColumnName);
+        Map<Object, List<Object[]>> groups = new LinkedHashMap<Object, List<Object[]>>();
+        for (Object[] row : rows) {
+            Object key = SqlValues.key(row[column]);
+            List<Object[]> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<Object[]>();
+                groups.put(key, group);
+            }
+            group.add(row);
+        }
+        return groups;
+    }
+
+    //***************************************** exec sql *****************************************
+
+    public CompiledStatement compile(SqlInfo template) throws DbException {
+        throw new DbException("sql is not supported by MemoryDatabase: " + template.getSql());
+    }
+
+    public CompiledStatement compile(Class<?> entityType, SqlInfo template) throws DbException {
+        throw new DbException("sql is not supported by MemoryDatabase: " + template.getSql());
+    }
+
+    public void execNonQuery(SqlInfo sqlInfo) throws DbException {
+        throw new DbException("sql is not supported by MemoryDatabase: " + sqlInfo.getSql());
+    }
+
+    public void execNonQuery(String sql) throws DbException {
+        throw new DbException("sql is not supported by MemoryDatabase: " + sql);
+    }
+
+    public void execNonQueryInTransaction(List<SqlInfo> sqlInfoList) throws DbException {
+        if (sqlInfoList == null || sqlInfoList.isEmpty()) return;
+        throw new DbException("sql is not supported by MemoryDatabase: " + sqlInfoList.get(0).getSql());
+    }
+
+    //************************************************ tools ***********************************
+
+    public boolean tableIsExist(Class<?> entityType) {
+        return readableTable(entityType) != null;
+    }
+
+    public void dropTable(Class<?> entityType) throws DbException {
+        if (!tableIsExist(entityType)) return;
+        try {
+            beginTransaction();
+
+            writingTables.put(entityType, null);
+            recordChange(ChangeEvent.Type.DELETE, entityType, null);
+
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    public void dropDb() throws DbException {
+        try {
+            beginTransaction();
+
+            for (Class<?> entityType : tables.keySet()) {
+                writingTables.put(entityType, null);
+                recordChange(ChangeEvent.Type.DELETE, entityType, null);
+            }
+
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    public void close() {
+        if (asyncDatabase != null) {
+            asyncDatabase.shutdown();
+        }
+        tableChangeDispatcher.shutdown();
+    }
+
+    private List<Object[]> select(MemoryTable table, Selector selector, boolean ignoreLimit) throws DbException {
+        MemoryPredicate where = where(table, selector);
+        return ignoreLimit
+                ? table.select(where, null, 0, 0)
+                : table.select(where, selector.getOrderByList(), selector.getLimit(), selector.getOffset());
+    }
+
+    private static MemoryPredicate where(MemoryTable table, Selector selector) throws DbException {
+        if (selector.getMatchQuery() != null) {
+            throw new DbException("full text search is not supported by MemoryDatabase");
+        }
+        MemoryPredicate where = MemoryPredicate.compile(table, selector.getWhereBuilder());
+        if (selector.getInColumnName() != null) {
+            MemoryPredicate in = new MemoryPredicate.Term(table, selector.getInColumnName(), "IN", selector.getInKeys());
+            // first, so the index of the keys is looked up
+            where = where == MemoryPredicate.TRUE ? in : MemoryPredicate.and(Arrays.asList(in, where));
+        }
+        return where;
+    }
+
+    private static List<Object[]> limit(List<Object[]> rows, int limit, int offset) {
+        if (limit <= 0) {
+            return rows;
+        }
+        int from = Math.min(offset, rows.size());
+        return rows.subList(from, Math.min(from + limit, rows.size()));
+    }
+
+    /**
+     * @return the table as the running write of this thread sees it, or the published one, null if it does not exist
+     */
+    private MemoryTable readableTable(Class<?> entityType) {
+        if (writeLock.isHeldByCurrentThread() && writingTables.containsKey(entityType)) {
+            return writingTables.get(entityType);
+        }
+        return tables.get(entityType);
+    }
+
+    private MemoryTable writableTable(Class<?> entityType) throws DbException {
+        MemoryTable table = writingTables.get(entityType);
+        if (table == null) {
+            MemoryTable published = tables.get(entityType);
+            table = published == null ? new MemoryTable(Table.get(this, entityType), entityType) : published.copy();
+            writingTables.put(entityType, table);
+        }
+        return table;
+    }
+
+    /**
+     * the ids are known here, so every row gets its own event, also when selected by a where clause
+     */
+    private void recordChange(ChangeEvent.Type type, Class<?> entityType, Object id, String... columnNames) {
+        if (changeLog.isEnabled()) {
+            changeEvents.add(new ChangeEvent(type, entityType, id, null, columnNames));
+        }
+    }
+
+    private void beginTransaction() {
+        writeLock.lock();
+        if (transactionDepth++ == 0) {
+            writingTables = new HashMap<Class<?>, MemoryTable>();
+            transactionFailed = false;
+            changeEvents.clear();
+        }
+    }
+
+    private void setTransactionSuccessful() {
+        transactionSuccessful = true;
+    }
+
+    /**
+     * A nested write (the foreign entities saved along) commits with the outermost one.
+     */
+    private void endTransaction() {
+        Set<String> committedTables = null;
+        try {
+            if (!transactionSuccessful) {
+                transactionFailed = true;
+            }
+            transactionSuccessful = false;
+            if (--transactionDepth == 0) {
+                if (!transactionFailed && !writingTables.isEmpty()) {
+                    Map<Class<?>, MemoryTable> published = new HashMap<Class<?>, MemoryTable>(tables);
+                    committedTables = new HashSet<String>();
+                    for (Map.Entry<Class<?>, MemoryTable> entry : writingTables.entrySet()) {
+                        if (entry.getValue() == null) {
+                            published.remove(entry.getKey());
+                        } else {
+                            published.put(entry.getKey(), entry.getValue());
+                        }
+                        committedTables.add(TableUtils.getTableName(entry.getKey()));
+                    }
+                    tables = Collections.unmodifiableMap(published);
+                    changeLog.append(changeEvents);
+                }
+                writingTables = null;
+                changeEvents.clear();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+        if (committedTables != null) {
+            tableChangeDispatcher.publish(committedTables, daoConfig.getTableChangeDebounce());
+        }
+    }
+}
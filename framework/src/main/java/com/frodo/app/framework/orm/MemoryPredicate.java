@@ -0,0 +1,248 @@
+package com.frodo.app.framework.orm;
+
+import com.frodo.app.framework.exception.DbException;
+import com.frodo.app.framework.orm.sql.WhereBuilder;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A where clause of {@link MemoryDatabase} compiled from the conditions of a {@link WhereBuilder}.
+ * AND binds tighter than OR as in sql, a comparison with NULL is false.
+ * Raw expressions of {@link WhereBuilder#expr(String)} can not be evaluated and fail to compile.
+ */
+/* package */ abstract class MemoryPredicate {
+
+    static final MemoryPredicate TRUE = new MemoryPredicate() {
+        @Override
+        boolean test(Object[] row) {
+            return true;
+        }
+    };
+
+    abstract boolean test(Object[] row);
+
+    /**
+     * @return the terms which must all be true, used to look up indexes
+     */
+    List<Term> getAndTerms() {
+        return Collections.emptyList();
+    }
+
+    static MemoryPredicate compile(MemoryTable table, WhereBuilder where) throws DbException {
+        if (where == null || where.getConditions().isEmpty()) {
+            return TRUE;
+        }
+        List<MemoryPredicate> orGroups = new ArrayList<MemoryPredicate>();
+        List<MemoryPredicate> andGroup = new ArrayList<MemoryPredicate>();
+        for (WhereBuilder.Condition condition : where.getConditions()) {
+            if (condition.expr != null) {
+                throw new DbException("expression is not supported by MemoryDatabase: " + condition.expr);
+            }
+            if ("OR".equals(condition.conj) && !andGroup.isEmpty()) {
+                orGroups.add(and(andGroup));
+                andGroup = new ArrayList<MemoryPredicate>();
+            }
+            andGroup.add(condition.group != null
+                    ? compile(table, condition.group)
+                    : new Term(table, condition.columnName, condition.op, condition.value));
+        }
+        orGroups.add(and(andGroup));
+        return orGroups.size() == 1 ? orGroups.get(0) : new Or(orGroups);
+    }
+
+    static MemoryPredicate and(List<MemoryPredicate> predicates) {
+        return predicates.size() == 1 ? predicates.get(0) : new And(predicates);
+    }
+
+    private static final class And extends MemoryPredicate {
+        private final MemoryPredicate[] predicates;
+
+        And(List<MemoryPredicate> predicates) {
+            this.predicates = predicates.toArray(new MemoryPredicate[predicates.size()]);
+        }
+
+        @Override
+        boolean test(Object[] row) {
+            for (MemoryPredicate predicate : predicates) {
+                if (!predicate.test(row)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        List<Term> getAndTerms() {
+            List<Term> terms = new ArrayList<Term>();
+            for (MemoryPredicate predicate : predicates) {
+                terms.addAll(predicate.getAndTerms());
+            }
+            return terms;
+        }
+    }
+
+    private static final class Or extends MemoryPredicate {
+        private final MemoryPredicate[] predicates;
+
+        Or(List<MemoryPredicate> predicates) {
+            this.predicates = predicates.toArray(new MemoryPredicate[predicates.size()]);
+        }
+
+        @Override
+        boolean test(Object[] row) {
+            for (MemoryPredicate predicate : predicates) {
+                if (predicate.test(row)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * "column op operand"
+     */
+    static final class Term extends MemoryPredicate {
+        final int column;
+        final String op;
+        /**
+         * the operand, the items of IN or the bounds of BETWEEN, with the affinity of the column
+         */
+        final Object operand;
+        final Object[] operands;
+        private final Pattern pattern;
+
+        Term(MemoryTable table, String columnName, String op, Object value) throws DbException {
+            this.column = table.getColumnIndex(columnName);
+            if (value == null) {
+                if ("=".equals(op) || "IS".equals(op)) {
+                    op = "IS NULL";
+                } else if ("<>".equals(op) || "IS NOT".equals(op)) {
+                    op = "IS NOT NULL";
+                }
+            }
+            this.op = op;
+            Object operand = null;
+            Object[] operands = null;
+            Pattern pattern = null;
+            if ("IN".equals(op) || "BETWEEN".equals(op)) {
+                List<Object> items = items(value);
+                if ("BETWEEN".equals(op) && items.size() < 2) {
+                    throw new IllegalArgumentException("value must have tow items.");
+                }
+                operands = new Object[items.size()];
+                for (int i = 0; i < operands.length; i++) {
+                    operands[i] = table.applyAffinity(column, items.get(i));
+                }
+            } else if ("LIKE".equals(op) || "NOT LIKE".equals(op)) {
+                pattern = likePattern(SqlValues.toString(SqlValues.normalize(value)));
+            } else if ("=".equals(op) || "<>".equals(op) || "<".equals(op) || "<=".equals(op)
+                    || ">".equals(op) || ">=".equals(op)) {
+                operand = table.applyAffinity(column, value);
+            } else if (!"IS NULL".equals(op) && !"IS NOT NULL".equals(op)) {
+                throw new DbException("operator is not supported by MemoryDatabase: " + op);
+            }
+            this.operand = operand;
+            this.operands = operands;
+            this.pattern = pattern;
+        }
+
+        private static List<Object> items(Object value) {
+            List<Object> items = new ArrayList<Object>();
+            if (value instanceof Iterable) {
+                for (Object item : (Iterable<?>) value) {
+                    items.add(item);
+                }
+            } else if (value.getClass().isArray()) {
+                int length = Array.getLength(value);
+                for (int i = 0; i < length; i++) {
+                    items.add(Array.get(value, i));
+                }
+            } else {
+                throw new IllegalArgumentException("value must be an Array or an Iterable.");
+            }
+            return items;
+        }
+
+        /**
+         * sqlite LIKE: "%" any text, "_" one character, ascii letters ignore case
+         */
+        private static Pattern likePattern(String like) {
+            StringBuilder regex = new StringBuilder();
+            StringBuilder literal = new StringBuilder();
+            for (int i = 0; i < like.length(); i++) {
+                char c = like.charAt(i);
+                if (c == '%' || c == '_') {
+                    if (literal.length() > 0) {
+                        regex.append(Pattern.quote(literal.toString()));
+                        literal.setLength(0);
+                    }
+                    regex.append(c == '%' ? ".*" : ".");
+                } else {
+                    literal.append(c);
+                }
+            }
+            if (literal.length() > 0) {
+                regex.append(Pattern.quote(literal.toString()));
+            }
+            return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+        }
+
+        @Override
+        boolean test(Object[] row) {
+            Object value = row[column];
+            if ("IS NULL".equals(op)) {
+                return value == null;
+            }
+            if (value == null) {
+                return false;
+            }
+            if ("IS NOT NULL".equals(op)) {
+                return true;
+            }
+            if (pattern != null) {
+                boolean matches = pattern.matcher(SqlValues.toString(value)).matches();
+                return "LIKE".equals(op) == matches;
+            }
+            if ("IN".equals(op)) {
+                for (Object item : operands) {
+                    if (item != null && SqlValues.compare(value, item) == 0) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if ("BETWEEN".equals(op)) {
+                return operands[0] != null && operands[1] != null
+                        && SqlValues.compare(value, operands[0]) >= 0 && SqlValues.compare(value, operands[1]) <= 0;
+            }
+            if (operand == null) {
+                return false;
+            }
+            int diff = SqlValues.compare(value, operand);
+            switch (op) {
+                case "=":
+                    return diff == 0;
+                case "<>":
+                    return diff != 0;
+                case "<":
+                    return diff < 0;
+                case "<=":
+                    return diff <= 0;
+                case ">":
+                    return diff > 0;
+                default:
+                    return diff >= 0;
+            }
+        }
+
+        @Override
+        List<Term> getAndTerms() {
+            return Collections.singletonList(this);
+        }
+    }
+}
@@ -0,0 +1,440 @@
+package com.frodo.app.framework.orm;
+
+import com.frodo.app.framework.exception.DbException;
+import com.frodo.app.framework.orm.annotation.Index;
+import com.frodo.app.framework.orm.annotation.Indexes;
+import com.frodo.app.framework.orm.sql.Selector;
+import com.frodo.app.framework.orm.table.Column;
+import com.frodo.app.framework.orm.table.ColumnUtils;
+import com.frodo.app.framework.orm.table.Finder;
+import com.frodo.app.framework.orm.table.Table;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rows of one entity type in {@link MemoryDatabase}, column 0 is the id.
+ * The id, {@link Index} and {@link com.frodo.app.framework.orm.annotation.Unique} columns are indexed
+ * by a tree map for equality, ranges and ordering, composite indexes by their first column.
+ * <p/>
+ * A table is a snapshot: it is never modified once published.
+ * Rows and indexes are {@link PersistentTreeMap}s, so a {@link #copy()} costs O(columns) and shares them
+ * with the snapshot, every row written then costs O(log rows) per index.
+ */
+/* package */ final class MemoryTable {
+
+    final Table table;
+    final String[] columnNames;
+    private final Column[] columns;
+    private final boolean[] notNull;
+    private final Map<String, Integer> columnIndexes;
+
+    /**
+     * key: {@link SqlValues#key(Object)} of the id
+     */
+    private PersistentTreeMap<Object, Object[]> rows;
+    /**
+     * by column position, null for columns without index
+     */
+    private final ColumnIndex[] indexes;
+    private long lastId;
+
+    MemoryTable(Table table, Class<?> entityType) {
+        this.table = table;
+        List<Column> columnList = new ArrayList<Column>(table.columnMap.size() + 1);
+        columnList.add(table.id);
+        for (Column column : table.columnMap.values()) {
+            if (!(column instanceof Finder)) {
+                columnList.add(column);
+            }
+        }
+        this.columns = columnList.toArray(new Column[columnList.size()]);
+        this.columnNames = new String[columns.length];
+        this.notNull = new boolean[columns.length];
+        this.columnIndexes = new HashMap<String, Integer>(columns.length * 2);
+        for (int i = 0; i < columns.length; i++) {
+            columnNames[i] = columns[i].getColumnName();
+            notNull[i] = ColumnUtils.isNotNull(columns[i].getColumnField());
+            columnIndexes.put(columnNames[i], i);
+        }
+
+        this.rows = PersistentTreeMap.empty(SqlValues.COMPARATOR);
+        this.indexes = new ColumnIndex[columns.length];
+        indexes[0] = new ColumnIndex(true);
+        for (int i = 1; i < columns.length; i++) {
+            Index index = columns[i].getColumnField().getAnnotation(Index.class);
+            boolean unique = ColumnUtils.isUnique(columns[i].getColumnField()) || (index != null && index.unique());
+            if (index != null || unique) {
+                indexes[i] = new ColumnIndex(unique);
+            }
+        }
+        Index typeIndex = entityType.getAnnotation(Index.class);
+        if (typeIndex != null) {
+            addTypeIndex(typeIndex);
+        }
+        Indexes typeIndexes = entityType.getAnnotation(Indexes.class);
+        if (typeIndexes != null) {
+            for (Index index : typeIndexes.value()) {
+                addTypeIndex(index);
+            }
+        }
+    }
+
+    private void addTypeIndex(Index index) {
+        String[] names = index.columns();
+        Integer column = names.length == 0 ? null : columnIndexes.get(names[0]);
+        if (column != null && indexes[column] == null) {
+            // the first column of a composite index is not unique by itself
+            indexes[column] = new ColumnIndex(index.unique() && names.length == 1);
+        }
+    }
+
+    private MemoryTable(MemoryTable source) {
+        this.table = source.table;
+        this.columns = source.columns;
+        this.columnNames = source.columnNames;
+        this.notNull = source.notNull;
+        this.columnIndexes = source.columnIndexes;
+        this.rows = source.rows;
+        this.indexes = source.indexes.clone();
+        this.lastId = source.lastId;
+    }
+
+    /**
+     * @return a writable copy of this snapshot, in O(columns)
+     */
+    MemoryTable copy() {
+        return new MemoryTable(this);
+    }
+
+    int getColumnIndex(String columnName) throws DbException {
+        Integer index = columnIndexes.get(columnName);
+        if (index == null) {
+            throw new DbException("no such column: " + table.tableName + "." + columnName);
+        }
+        return index;
+    }
+
+    Object applyAffinity(int column, Object value) {
+        return SqlValues.applyAffinity(columns[column].getColumnDbType(), value);
+    }
+
+    /**
+     * @param includeAutoIncrementId false: the id is null when it is auto increment, as in an insert
+     */
+    Object[] toRow(Object entity, boolean includeAutoIncrementId) throws DbException {
+        Object[] row = new Object[columns.length];
+        if (includeAutoIncrementId || !table.id.isAutoIncrement()) {
+            row[0] = applyAffinity(0, table.id.getColumnValue(entity));
+        }
+        for (int i = 1; i < columns.length; i++) {
+            Object value = columns[i].getColumnValue(entity);
+            row[i] = applyAffinity(i, value == null ? columns[i].getDefaultValue() : value);
+        }
+        return row;
+    }
+
+    int size() {
+        return rows.size();
+    }
+
+    Object[] get(Object idValue) {
+        return rows.get(SqlValues.key(applyAffinity(0, idValue)));
+    }
+
+    //***************************************** write *****************************************
+
+    /**
+     * @param replace true: rows with the same id or unique value are deleted first
+     * @return the id of the row
+     */
+    Object insert(Object[] row, boolean replace) throws DbException {
+        if (row[0] == null) {
+            if (!table.id.isAutoIncrement()) {
+                throw new DbException("NOT NULL constraint failed: " + table.tableName + "." + columnNames[0]);
+            }
+            row[0] = ++lastId;
+        } else if (row[0] instanceof Long) {
+            lastId = Math.max(lastId, (Long) row[0]);
+        }
+        checkNotNull(row);
+        if (replace) {
+            for (int i = 0; i < indexes.length; i++) {
+                if (indexes[i] != null && indexes[i].unique && row[i] != null) {
+                    // the index is immutable, deleting replaces it
+                    for (Object key : indexes[i].get(row[i])) {
+                        delete(key);
+                    }
+                }
+            }
+        } else {
+            checkUnique(row, null);
+        }
+        Object key = SqlValues.key(row[0]);
+        rows = rows.put(key, row);
+        for (int i = 0; i < indexes.length; i++) {
+            if (indexes[i] != null) {
+                indexes[i] = indexes[i].add(row[i], key);
+            }
+        }
+        return row[0];
+    }
+
+    void update(Object key, Object[] row) throws DbException {
+        Object[] old = rows.get(key);
+        if (old == null) {
+            return;
+        }
+        Object newKey = SqlValues.key(row[0]);
+        if (!newKey.equals(key)) {
+            delete(key);
+            insert(row, false);
+            return;
+        }
+        checkNotNull(row);
+        checkUnique(row, key);
+        rows = rows.put(key, row);
+        for (int i = 0; i < indexes.length; i++) {
+            if (indexes[i] != null && SqlValues.compare(old[i], row[i]) != 0) {
+                indexes[i] = indexes[i].remove(old[i], key).add(row[i], key);
+            }
+        }
+    }
+
+    void delete(Object key) {
+        Object[] old = rows.get(key);
+        if (old != null) {
+            rows = rows.remove(key);
+            for (int i = 0; i < indexes.length; i++) {
+                if (indexes[i] != null) {
+                    indexes[i] = indexes[i].remove(old[i], key);
+                }
+            }
+        }
+    }
+
+    void clear() {
+        rows = PersistentTreeMap.empty(SqlValues.COMPARATOR);
+        for (int i = 0; i < indexes.length; i++) {
+            if (indexes[i] != null) {
+                indexes[i] = new ColumnIndex(indexes[i].unique);
+            }
+        }
+    }
+
+    private void checkNotNull(Object[] row) throws DbException {
+        for (int i = 1; i < row.length; i++) {
+            if (notNull[i] && row[i] == null) {
+                throw new DbException("NOT NULL constraint failed: " + table.tableName + "." + columnNames[i]);
+            }
+        }
+    }
+
+    private void checkUnique(Object[] row, Object ownKey) throws DbException {
+        for (int i = 0; i < indexes.length; i++) {
+            if (indexes[i] == null || !indexes[i].unique || row[i] == null) {
+                continue;
+            }
+            for (Object key : indexes[i].get(row[i])) {
+                if (!key.equals(ownKey)) {
+                    throw new DbException("UNIQUE constraint failed: " + table.tableName + "." + columnNames[i]);
+                }
+            }
+        }
+    }
+
+    //***************************************** query *****************************************
+
+    /**
+     * @return ids of the matching rows
+     */
+    List<Object> selectKeys(MemoryPredicate where) {
+        List<Object> keys = new ArrayList<Object>();
+        Iterable<Object> candidates = candidates(where);
+        for (Object key : candidates == null ? rows.keys() : candidates) {
+            if (where.test(rows.get(key))) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * @param limit  rows returned, 0 for all, offset is only used with a limit as in {@link Selector}
+     */
+    List<Object[]> select(MemoryPredicate where, List<Selector.OrderBy> orderByList, int limit, int offset)
+            throws DbException {
+        int wanted = limit > 0 ? offset + limit : Integer.MAX_VALUE;
+        List<Object[]> result = new ArrayList<Object[]>();
+        Iterable<Object> candidates = candidates(where);
+        Iterable<Object> keys = candidates == null ? rows.keys() : candidates;
+        if (orderByList == null || orderByList.isEmpty()) {
+            addMatches(result, keys, where, wanted);
+        } else {
+            ColumnIndex orderIndex = candidates == null && orderByList.size() == 1
+                    ? indexes[getColumnIndex(orderByList.get(0).getColumnName())] : null;
+            if (orderIndex != null) {
+                // walk the tree index in order and stop at the limit
+                for (PersistentTreeMap<Object, Boolean> sameValueKeys
+                        : orderIndex.tree.values(orderByList.get(0).isDesc())) {
+                    if (addMatches(result, sameValueKeys.keys(), where, wanted)) {
+                        break;
+                    }
+                }
+            } else {
+                addMatches(result, keys, where, Integer.MAX_VALUE);
+                Collections.sort(result, comparator(orderByList));
+            }
+        }
+
+        if (limit <= 0) {
+            return result;
+        }
+        int from = Math.min(offset, result.size());
+        int to = Math.min(from + limit, result.size());
+        return from == 0 && to == result.size() ? result : new ArrayList<Object[]>(result.subList(from, to));
+    }
+
+    /**
+     * @return true when wanted rows were found
+     */
+    private boolean addMatches(List<Object[]> result, Iterable<Object> keys, MemoryPredicate where, int wanted) {
+        for (Object key : keys) {
+            Object[] row = rows.get(key);
+            if (row != null && where.test(row)) {
+                result.add(row);
+                if (result.size() >= wanted) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private Comparator<Object[]> comparator(List<Selector.OrderBy> orderByList) throws DbException {
+        final int[] orderColumns = new int[orderByList.size()];
+        final boolean[] desc = new boolean[orderByList.size()];
+        for (int i = 0; i < orderColumns.length; i++) {
+            orderColumns[i] = getColumnIndex(orderByList.get(i).getColumnName());
+            desc[i] = orderByList.get(i).isDesc();
+        }
+        return new Comparator<Object[]>() {
+            @Override
+            public int compare(Object[] lhs, Object[] rhs) {
+                for (int i = 0; i < orderColumns.length; i++) {
+                    int diff = SqlValues.compare(lhs[orderColumns[i]], rhs[orderColumns[i]]);
+                    if (diff != 0) {
+                        return desc[i] ? -diff : diff;
+                    }
+                }
+                return 0;
+            }
+        };
+    }
+
+    /**
+     * Look up the first indexed term, equality and IN before ranges.
+     *
+     * @return ids of the rows which may match, null to scan the table
+     */
+    private Iterable<Object> candidates(MemoryPredicate where) {
+        List<MemoryPredicate.Term> terms = where.getAndTerms();
+        for (MemoryPredicate.Term term : terms) {
+            ColumnIndex index = indexes[term.column];
+            if (index == null) {
+                continue;
+            }
+            if ("=".equals(term.op)) {
+                return index.get(term.operand);
+            }
+            if ("IS NULL".equals(term.op)) {
+                return index.get(null);
+            }
+            if ("IN".equals(term.op)) {
+                Set<Object> keys = new LinkedHashSet<Object>();
+                for (Object operand : term.operands) {
+                    if (operand != null) {
+                        for (Object key : index.get(operand)) {
+                            keys.add(key);
+                        }
+                    }
+                }
+                return keys;
+            }
+        }
+        for (MemoryPredicate.Term term : terms) {
+            ColumnIndex index = indexes[term.column];
+            if (index == null) {
+                continue;
+            }
+            Iterable<PersistentTreeMap<Object, Boolean>> range = null;
+            if ("<".equals(term.op) || "<=".equals(term.op)) {
+                range = term.operand == null ? null : index.tree.headValues(SqlValues.key(term.operand), "<=".equals(term.op));
+            } else if (">".equals(term.op) || ">=".equals(term.op)) {
+                range = term.operand == null ? null : index.tree.tailValues(SqlValues.key(term.operand), ">=".equals(term.op));
+            } else if ("BETWEEN".equals(term.op) && term.operands[0] != null && term.operands[1] != null) {
+                if (SqlValues.compare(term.operands[0], term.operands[1]) > 0) {
+                    return Collections.emptyList();
+                }
+                range = index.tree.subValues(SqlValues.key(term.operands[0]), true, SqlValues.key(term.operands[1]), true);
+            }
+            if (range != null) {
+                List<Object> keys = new ArrayList<Object>();
+                for (PersistentTreeMap<Object, Boolean> sameValueKeys : range) {
+                    for (Object key : sameValueKeys.keys()) {
+                        keys.add(key);
+                    }
+                }
+                return keys;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * An immutable tree map from a column value to the ids of its rows, a write returns a new index.
+     */
+    private static final class ColumnIndex {
+        final boolean unique;
+        final PersistentTreeMap<Object, PersistentTreeMap<Object, Boolean>> tree;
+
+        ColumnIndex(boolean unique) {
+            this(unique, PersistentTreeMap.<Object, PersistentTreeMap<Object, Boolean>>empty(SqlValues.COMPARATOR));
+        }
+
+        private ColumnIndex(boolean unique, PersistentTreeMap<Object, PersistentTreeMap<Object, Boolean>> tree) {
+            this.unique = unique;
+            this.tree = tree;
+        }
+
+        Iterable<Object> get(Object value) {
+            PersistentTreeMap<Object, Boolean> keys = tree.get(SqlValues.key(value));
+            return keys == null ? Collections.<Object>emptyList() : keys.keys();
+        }
+
+        ColumnIndex add(Object value, Object rowKey) {
+            Object key = SqlValues.key(value);
+            PersistentTreeMap<Object, Boolean> keys = tree.get(key);
+            if (keys == null) {
+                keys = PersistentTreeMap.empty(SqlValues.COMPARATOR);
+            }
+            return new ColumnIndex(unique, tree.put(key, keys.put(rowKey, Boolean.TRUE)));
+        }
+
+        ColumnIndex remove(Object value, Object rowKey) {
+            Object key = SqlValues.key(value);
+            PersistentTreeMap<Object, Boolean> keys = tree.get(key);
+            if (keys == null || keys.get(rowKey) == null) {
+                return this;
+            }
+            keys = keys.remove(rowKey);
+            return new ColumnIndex(unique, keys.isEmpty() ? tree.remove(key) : tree.put(key, keys));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.frodo.app.framework.orm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What {@link SchemaMigrator} did to every table, and how long it took.
+ */
+public class MigrationReport {
+
+    public enum Action {
+        /**
+         * schema already up to date
+         */
+        UNCHANGED,
+        /**
+         * table did not exist
+         */
+        CREATED,
+        /**
+         * columns or indexes added in place
+         */
+        ALTERED,
+        /**
+         * incompatible change, rows copied into a new table
+         */
+        REBUILT,
+        /**
+         * migration failed, the table was dropped and will be recreated empty
+         */
+        DROPPED
+    }
+
+    public static final class Entry {
+        public final String tableName;
+        public final Action action;
+        /**
+         * added columns for ALTERED, reasons for REBUILT, error for DROPPED
+         */
+        public final List<String> details;
+        public final long rowsCopied;
+        public final long costMillis;
+
+        Entry(String tableName, Action action, List<String> details, long rowsCopied, long costMillis) {
+            this.tableName = tableName;
+            this.action = action;
+            this.details = Collections.unmodifiableList(new ArrayList<>(details));
+            this.rowsCopied = rowsCopied;
+            this.costMillis = costMillis;
+        }
+
+        @Override
+        public String toString() {
+            return tableName + " " + action + " in " + costMillis + "ms"
+                    + (rowsCopied > 0 ? ", " + rowsCopied + " rows copied" : "")
+                    + (details.isEmpty() ? "" : " " + details);
+        }
+    }
+
+    private final int oldVersion;
+    private final int newVersion;
+    private final List<Entry> entries = new ArrayList<>();
+    private long costMillis;
+
+    public MigrationReport(int oldVersion, int newVersion) {
+        this.oldVersion = oldVersion;
+        this.newVersion = newVersion;
+    }
+
+    void add(Entry entry) {
+        entries.add(entry);
+    }
+
+    void setCostMillis(long costMillis) {
+        this.costMillis = costMillis;
+    }
+
+    public int getOldVersion() {
+        return oldVersion;
+    }
+
+    public int getNewVersion() {
+        return newVersion;
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    public long getCostMillis() {
+        return costMillis;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append("migration ").append(oldVersion).append(" -> ").append(newVersion)
+              .append(" in ").append(costMillis).append("ms");
+        for (Entry entry : entries) {
+            result.append("\n  ").append(entry);
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,324 @@
+package com.frodo.app.framework.orm;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable sorted map, an AVL tree: {@link #put(Object, Object)} and {@link #remove(Object)} return a new map
+ * in O(log n) which shares all the nodes off the changed path with this one, so a snapshot costs nothing to keep.
+ * Keys may be null when the comparator accepts them, values may not: {@link #get(Object)} returns null when absent.
+ */
+/* package */ final class PersistentTreeMap<K, V> {
+
+    private final Comparator<? super K> comparator;
+    private final Node<K, V> root;
+
+    private PersistentTreeMap(Comparator<? super K> comparator, Node<K, V> root) {
+        this.comparator = comparator;
+        this.root = root;
+    }
+
+    static <K, V> PersistentTreeMap<K, V> empty(Comparator<? super K> comparator) {
+        return new PersistentTreeMap<K, V>(comparator, null);
+    }
+
+    int size() {
+        return size(root);
+    }
+
+    boolean isEmpty() {
+        return root == null;
+    }
+
+    V get(K key) {
+        Node<K, V> node = root;
+        while (node != null) {
+            int diff = comparator.compare(key, node.key);
+            if (diff == 0) {
+                return node.value;
+            }
+            node = diff < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * @return a map with the key set to the value, this map when it already was
+     */
+    PersistentTreeMap<K, V> put(K key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        Node<K, V> newRoot = put(root, key, value);
+        return newRoot == root ? this : new PersistentTreeMap<K, V>(comparator, newRoot);
+    }
+
+    /**
+     * @return a map without the key, this map when it had not the key
+     */
+    PersistentTreeMap<K, V> remove(K key) {
+        Node<K, V> newRoot = remove(root, key);
+        return newRoot == root ? this : new PersistentTreeMap<K, V>(comparator, newRoot);
+    }
+
+    Iterable<K> keys() {
+        final Iterable<Node<K, V>> nodes = nodes(false, false, null, false, false, null, false);
+        return new Iterable<K>() {
+            @Override
+            public Iterator<K> iterator() {
+                final Iterator<Node<K, V>> iterator = nodes.iterator();
+                return new ReadOnlyIterator<K>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public K next() {
+                        return iterator.next().key;
+                    }
+                };
+            }
+        };
+    }
+
+    Iterable<V> values(boolean descending) {
+        return values(nodes(descending, false, null, false, false, null, false));
+    }
+
+    /**
+     * @return values of the keys below to, in ascending order
+     */
+    Iterable<V> headValues(K to, boolean inclusive) {
+        return values(nodes(false, false, null, false, true, to, inclusive));
+    }
+
+    /**
+     * @return values of the keys above from, in ascending order
+     */
+    Iterable<V> tailValues(K from, boolean inclusive) {
+        return values(nodes(false, true, from, inclusive, false, null, false));
+    }
+
+    /**
+     * @return values of the keys from from to to, in ascending order
+     */
+    Iterable<V> subValues(K from, boolean fromInclusive, K to, boolean toInclusive) {
+        return values(nodes(false, true, from, fromInclusive, true, to, toInclusive));
+    }
+
+    private Iterable<V> values(final Iterable<Node<K, V>> nodes) {
+        return new Iterable<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                final Iterator<Node<K, V>> iterator = nodes.iterator();
+                return new ReadOnlyIterator<V>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public V next() {
+                        return iterator.next().value;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * bounds are given by a flag, null is a key as any other
+     */
+    private Iterable<Node<K, V>> nodes(final boolean descending, final boolean hasFrom, final K from,
+                                       final boolean fromInclusive, final boolean hasTo, final K to,
+                                       final boolean toInclusive) {
+        return new Iterable<Node<K, V>>() {
+            @Override
+            public Iterator<Node<K, V>> iterator() {
+                return new NodeIterator(descending, hasFrom, from, fromInclusive, hasTo, to, toInclusive);
+            }
+        };
+    }
+
+    //***************************************** tree *****************************************
+
+    private Node<K, V> put(Node<K, V> node, K key, V value) {
+        if (node == null) {
+            return new Node<K, V>(key, value, null, null);
+        }
+        int diff = comparator.compare(key, node.key);
+        if (diff < 0) {
+            Node<K, V> left = put(node.left, key, value);
+            return left == node.left ? node : balance(node.key, node.value, left, node.right);
+        }
+        if (diff > 0) {
+            Node<K, V> right = put(node.right, key, value);
+            return right == node.right ? node : balance(node.key, node.value, node.left, right);
+        }
+        return node.value == value ? node : new Node<K, V>(node.key, value, node.left, node.right);
+    }
+
+    private Node<K, V> remove(Node<K, V> node, K key) {
+        if (node == null) {
+            return null;
+        }
+        int diff = comparator.compare(key, node.key);
+        if (diff < 0) {
+            Node<K, V> left = remove(node.left, key);
+            return left == node.left ? node : balance(node.key, node.value, left, node.right);
+        }
+        if (diff > 0) {
+            Node<K, V> right = remove(node.right, key);
+            return right == node.right ? node : balance(node.key, node.value, node.left, right);
+        }
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        Node<K, V> min = node.right;
+        while (min.left != null) {
+            min = min.left;
+        }
+        return balance(min.key, min.value, node.left, removeMin(node.right));
+    }
+
+    private static <K, V> Node<K, V> removeMin(Node<K, V> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        return balance(node.key, node.value, removeMin(node.left), node.right);
+    }
+
+    /**
+     * @return a node of the key with subtrees whose heights differ by one at most, they differ by two at most
+     */
+    private static <K, V> Node<K, V> balance(K key, V value, Node<K, V> left, Node<K, V> right) {
+        int leftHeight = height(left);
+        int rightHeight = height(right);
+        if (leftHeight > rightHeight + 1) {
+            if (height(left.left) >= height(left.right)) {
+                return new Node<K, V>(left.key, left.value, left.left, new Node<K, V>(key, value, left.right, right));
+            }
+            Node<K, V> pivot = left.right;
+            return new Node<K, V>(pivot.key, pivot.value, new Node<K, V>(left.key, left.value, left.left, pivot.left),
+                    new Node<K, V>(key, value, pivot.right, right));
+        }
+        if (rightHeight > leftHeight + 1) {
+            if (height(right.right) >= height(right.left)) {
+                return new Node<K, V>(right.key, right.value, new Node<K, V>(key, value, left, right.left), right.right);
+            }
+            Node<K, V> pivot = right.left;
+            return new Node<K, V>(pivot.key, pivot.value, new Node<K, V>(key, value, left, pivot.left),
+                    new Node<K, V>(right.key, right.value, pivot.right, right.right));
+        }
+        return new Node<K, V>(key, value, left, right);
+    }
+
+    private static int height(Node<?, ?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int size(Node<?, ?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        final V value;
+        final Node<K, V> left;
+        final Node<K, V> right;
+        final int height;
+        final int size;
+
+        Node(K key, V value, Node<K, V> left, Node<K, V> right) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+            this.size = size(left) + size(right) + 1;
+        }
+    }
+
+    /**
+     * in order walk with a stack of the nodes still to visit, nodes out of the bounds are never pushed
+     */
+    private final class NodeIterator extends ReadOnlyIterator<Node<K, V>> {
+        private final Deque<Node<K, V>> stack = new ArrayDeque<Node<K, V>>();
+        private final boolean descending;
+        private final boolean hasFrom;
+        private final K from;
+        private final boolean fromInclusive;
+        private final boolean hasTo;
+        private final K to;
+        private final boolean toInclusive;
+
+        NodeIterator(boolean descending, boolean hasFrom, K from, boolean fromInclusive,
+                     boolean hasTo, K to, boolean toInclusive) {
+            this.descending = descending;
+            this.hasFrom = hasFrom;
+            this.from = from;
+            this.fromInclusive = fromInclusive;
+            this.hasTo = hasTo;
+            this.to = to;
+            this.toInclusive = toInclusive;
+            pushFirst(root);
+        }
+
+        private boolean belowFrom(K key) {
+            int diff = comparator.compare(key, from);
+            return diff < 0 || (diff == 0 && !fromInclusive);
+        }
+
+        private boolean aboveTo(K key) {
+            int diff = comparator.compare(key, to);
+            return diff > 0 || (diff == 0 && !toInclusive);
+        }
+
+        /**
+         * push the path to the first node of the subtree in the walk order
+         */
+        private void pushFirst(Node<K, V> node) {
+            while (node != null) {
+                if (descending ? hasTo && aboveTo(node.key) : hasFrom && belowFrom(node.key)) {
+                    node = descending ? node.left : node.right;
+                } else {
+                    stack.push(node);
+                    node = descending ? node.right : node.left;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            Node<K, V> next = stack.peek();
+            if (next != null && (descending ? hasFrom && belowFrom(next.key) : hasTo && aboveTo(next.key))) {
+                stack.clear();
+            }
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public Node<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Node<K, V> node = stack.pop();
+            pushFirst(descending ? node.left : node.right);
+            return node;
+        }
+    }
+
+    private abstract static class ReadOnlyIterator<T> implements Iterator<T> {
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
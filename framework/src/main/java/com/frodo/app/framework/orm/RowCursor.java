@@ -0,0 +1,100 @@
+package com.frodo.app.framework.orm;
+
+import java.util.List;
+
+/**
+ * A {@link Cursor} over rows of {@link SqlValues}, the results of {@link MemoryDatabase}.
+ */
+/* package */ class RowCursor implements Cursor {
+
+    private final String[] columnNames;
+    private final List<Object[]> rows;
+    private int position = -1;
+
+    RowCursor(String[] columnNames, List<Object[]> rows) {
+        this.columnNames = columnNames;
+        this.rows = rows;
+    }
+
+    private Object value(int index) {
+        return rows.get(position)[index];
+    }
+
+    @Override
+    public boolean moveToNext() {
+        if (position + 1 >= rows.size()) {
+            return false;
+        }
+        position++;
+        return true;
+    }
+
+    @Override
+    public int getCount() {
+        return rows.size();
+    }
+
+    @Override
+    public boolean isNull(int index) {
+        return value(index) == null;
+    }
+
+    @Override
+    public int getInt(int index) {
+        return (int) getLong(index);
+    }
+
+    @Override
+    public int getColumnIndex(String columnName) {
+        for (int i = 0; i < columnNames.length; i++) {
+            if (columnNames[i].equals(columnName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    @Override
+    public String getColumnName(int i) {
+        return columnNames[i];
+    }
+
+    @Override
+    public String getString(int i) {
+        return SqlValues.toString(value(i));
+    }
+
+    @Override
+    public byte[] getBlob(int index) {
+        Object value = value(index);
+        if (value == null || value instanceof byte[]) {
+            return (byte[]) value;
+        }
+        return value.toString().getBytes();
+    }
+
+    @Override
+    public long getLong(int index) {
+        return SqlValues.toLong(value(index));
+    }
+
+    @Override
+    public double getDouble(int index) {
+        return SqlValues.toDouble(value(index));
+    }
+
+    @Override
+    public float getFloat(int index) {
+        return (float) getDouble(index);
+    }
+
+    @Override
+    public short getShort(int index) {
+        return (short) getLong(index);
+    }
+}
@@ -0,0 +1,353 @@
+package com.frodo.app.framework.orm;
+
+import com.frodo.app.framework.exception.DbException;
+import com.frodo.app.framework.orm.sql.SqlInfo;
+import com.frodo.app.framework.orm.sql.SqlInfoBuilder;
+import com.frodo.app.framework.orm.table.Column;
+import com.frodo.app.framework.orm.table.ColumnUtils;
+import com.frodo.app.framework.orm.table.DbModel;
+import com.frodo.app.framework.orm.table.Finder;
+import com.frodo.app.framework.orm.table.Id;
+import com.frodo.app.framework.orm.table.Table;
+import com.frodo.app.framework.orm.table.TableUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Upgrade the tables of the given entities in place instead of dropping them.
+ * The entity metadata is compared with "PRAGMA table_info":
+ * <ul>
+ * <li>missing tables are created</li>
+ * <li>new columns are added by "ALTER TABLE ... ADD COLUMN", missing indexes are created</li>
+ * <li>incompatible changes (primary key, column type, NOT NULL, UNIQUE new column, removed NOT NULL column)
+ * copy the rows into a new table by chunks of rowid, then swap the tables</li>
+ * </ul>
+ * Every batch of statements runs in a transaction of its own, so an interrupted rebuild leaves the old table
+ * and a partial copy, and the next migration resumes the copy after its last row.
+ * Columns removed from the entity but nullable are left in the table.
+ * With a {@link ShardedDatabase} every shard migrates its own entity types only.
+ * Use it as the {@link DaoConfig#setDbUpgradeListener(DbUpgradeListener)}, or call {@link #migrate(Database, int, int)}.
+ */
+public class SchemaMigrator implements DbUpgradeListener {
+
+    private static final String COPY_TABLE_SUFFIX = "__migrating";
+
+    private final Class<?>[] entityTypes;
+    private int chunkSize = 500;
+    private volatile MigrationReport lastReport;
+
+    public SchemaMigrator(Class<?>... entityTypes) {
+        this.entityTypes = entityTypes;
+    }
+
+    /**
+     * @param chunkSize rows copied per transaction when a table is rebuilt
+     */
+    public SchemaMigrator setChunkSize(int chunkSize) {
+        this.chunkSize = Math.max(chunkSize, 1);
+        return this;
+    }
+
+    public MigrationReport getLastReport() {
+        return lastReport;
+    }
+
+    @Override
+    public void onUpgrade(Database db, int oldVersion, int newVersion) {
+        MigrationReport report = migrate(db, oldVersion, newVersion);
+        db.getController().getLogCollector().i(db.systemName(), report.toString());
+    }
+
+    /**
+     * A table failing to migrate is dropped, as without migration, the others are still migrated.
+     */
+    public MigrationReport migrate(Database db, int oldVersion, int newVersion) {
+        MigrationReport report = new MigrationReport(oldVersion, newVersion);
+        long start = System.currentTimeMillis();
+        DaoConfig daoConfig = db.getDaoConfig();
+        String shard = daoConfig.getShardName();
+        for (Class<?> entityType : entityTypes) {
+            String entityShard = daoConfig.getShard(entityType);
+            if (shard == null ? entityShard != null : !shard.equals(entityShard)) {
+                continue;
+            }
+            long tableStart = System.currentTimeMillis();
+            String tableName = TableUtils.getTableName(entityType);
+            try {
+                report.add(migrateTable(db, entityType, tableStart));
+            } catch (DbException e) {
+                try {
+                    db.execNonQueryInTransaction(dropTableSqlInfos(tableName));
+                    Table.remove(db, entityType);
+                } catch (DbException ignored) {
+                    // the error of the migration is reported below
+                }
+                report.add(new MigrationReport.Entry(tableName, MigrationReport.Action.DROPPED,
+                        Collections.singletonList(String.valueOf(e.getMessage())), 0, System.currentTimeMillis() - tableStart));
+            }
+        }
+        report.setCostMillis(System.currentTimeMillis() - start);
+        lastReport = report;
+        return report;
+    }
+
+    private MigrationReport.Entry migrateTable(Database db, Class<?> entityType, long start) throws DbException {
+        Table table = Table.get(db, entityType);
+        String tableName = table.tableName;
+
+        Map<String, DiskColumn> diskColumns = readDiskColumns(db, tableName);
+        String copyTableName = tableName + COPY_TABLE_SUFFIX;
+        if (diskColumns.isEmpty() && !readDiskColumns(db, copyTableName).isEmpty()) {
+            // dropped by a swap which was not atomic yet and was interrupted before the rename: the copy is complete
+            db.execNonQueryInTransaction(Collections.singletonList(
+                    new SqlInfo("ALTER TABLE " + copyTableName + " RENAME TO " + tableName)));
+            diskColumns = readDiskColumns(db, tableName);
+        }
+        if (diskColumns.isEmpty()) {
+            List<SqlInfo> sqlInfoList = new ArrayList<>();
+            sqlInfoList.add(SqlInfoBuilder.buildCreateTableSqlInfo(db, entityType));
+            sqlInfoList.addAll(SqlInfoBuilder.buildCreateIndexSqlInfos(db, entityType));
+            sqlInfoList.addAll(SqlInfoBuilder.buildCreateFullTextSqlInfos(db, entityType));
+            db.execNonQueryInTransaction(sqlInfoList);
+            return entry(tableName, MigrationReport.Action.CREATED, Collections.<String>emptyList(), 0, start);
+        }
+
+        List<String> incompatibilities = new ArrayList<>();
+        List<Column> addedColumns = new ArrayList<>();
+        compare(table, diskColumns, addedColumns, incompatibilities);
+
+        if (!incompatibilities.isEmpty()) {
+            long rowsCopied = rebuild(db, entityType, table, diskColumns);
+            return entry(tableName, MigrationReport.Action.REBUILT, incompatibilities, rowsCopied, start);
+        }
+
+        List<SqlInfo> sqlInfoList = new ArrayList<>();
+        List<String> added = new ArrayList<>(addedColumns.size());
+        for (Column column : addedColumns) {
+            sqlInfoList.add(SqlInfoBuilder.buildAddColumnSqlInfo(table, column));
+            added.add(column.getColumnName());
+        }
+        boolean fullTextChanged = fullTextChanged(db, table);
+        if (sqlInfoList.isEmpty() && !fullTextChanged && !indexesMissing(db, entityType)) {
+            return entry(tableName, MigrationReport.Action.UNCHANGED, added, 0, start);
+        }
+        sqlInfoList.addAll(SqlInfoBuilder.buildCreateIndexSqlInfos(db, entityType));
+        if (fullTextChanged) {
+            sqlInfoList.addAll(SqlInfoBuilder.buildDropFullTextSqlInfos(tableName));
+            sqlInfoList.addAll(SqlInfoBuilder.buildCreateFullTextSqlInfos(db, entityType));
+        }
+        db.execNonQueryInTransaction(sqlInfoList);
+        return entry(tableName, MigrationReport.Action.ALTERED, added, 0, start);
+    }
+
+    private void compare(Table table, Map<String, DiskColumn> diskColumns,
+                         List<Column> addedColumns, List<String> incompatibilities) {
+        Id id = table.id;
+        DiskColumn diskId = diskColumns.get(id.getColumnName());
+        if (diskId == null || !diskId.primaryKey) {
+            incompatibilities.add("primary key " + id.getColumnName());
+        } else if (!diskId.type.equalsIgnoreCase(idDbType(id))) {
+            incompatibilities.add(id.getColumnName() + " " + diskId.type + " -> " + idDbType(id));
+        }
+
+        Map<String, Column> entityColumns = new LinkedHashMap<>();
+        for (Column column : table.columnMap.values()) {
+            if (column instanceof Finder) {
+                continue;
+            }
+            entityColumns.put(column.getColumnName(), column);
+
+            DiskColumn diskColumn = diskColumns.get(column.getColumnName());
+            boolean notNull = ColumnUtils.isNotNull(column.getColumnField());
+            if (diskColumn == null) {
+                if (notNull || ColumnUtils.isUnique(column.getColumnField())) {
+                    incompatibilities.add("new constrained column " + column.getColumnName());
+                } else {
+                    addedColumns.add(column);
+                }
+            } else if (!diskColumn.type.equalsIgnoreCase(column.getColumnDbType().toString())) {
+                incompatibilities.add(column.getColumnName() + " " + diskColumn.type + " -> " + column.getColumnDbType());
+            } else if (diskColumn.notNull != notNull) {
+                incompatibilities.add(column.getColumnName() + (notNull ? " NOT NULL" : " nullable"));
+            }
+        }
+
+        for (DiskColumn diskColumn : diskColumns.values()) {
+            if (diskColumn.notNull && !diskColumn.primaryKey && !entityColumns.containsKey(diskColumn.name)) {
+                incompatibilities.add("removed NOT NULL column " + diskColumn.name);
+            }
+        }
+    }
+
+    /**
+     * Copy the rows into a new table by rowid ranges, each chunk in its own transaction so readers are not blocked
+     * for the whole copy, then replace the old table in one transaction.
+     * A copy left by an interrupted migration to the same schema is resumed after its last rowid.
+     *
+     * @return rows in the copy
+     */
+    private long rebuild(Database db, Class<?> entityType, Table table, Map<String, DiskColumn> diskColumns) throws DbException {
+        String tableName = table.tableName;
+        String copyTableName = tableName + COPY_TABLE_SUFFIX;
+
+        long rowsCopied = 0;
+        long lastRowid = Long.MIN_VALUE;
+        if (isCopyOf(table, readDiskColumns(db, copyTableName))) {
+            DbModel copied = db.findDbModelFirst(new SqlInfo(
+                    "SELECT COUNT(*) AS c, MAX(rowid) AS m FROM " + copyTableName));
+            if (copied != null && !copied.isEmpty("m")) {
+                rowsCopied = copied.getLong("c");
+                lastRowid = copied.getLong("m");
+            }
+        } else {
+            List<SqlInfo> create = new ArrayList<>(2);
+            create.add(new SqlInfo("DROP TABLE IF EXISTS " + copyTableName));
+            create.add(SqlInfoBuilder.buildCreateTableSqlInfo(db, entityType, copyTableName));
+            db.execNonQueryInTransaction(create);
+        }
+
+        StringBuilder columns = new StringBuilder();
+        boolean idCopied = false;
+        List<String> newColumnNames = new ArrayList<>();
+        newColumnNames.add(table.id.getColumnName());
+        for (Column column : table.columnMap.values()) {
+            if (!(column instanceof Finder)) {
+                newColumnNames.add(column.getColumnName());
+            }
+        }
+        for (String columnName : newColumnNames) {
+            if (diskColumns.containsKey(columnName)) {
+                columns.append(",\"").append(columnName).append("\"");
+                idCopied |= columnName.equals(table.id.getColumnName());
+            }
+        }
+        // keep rowids, the full text docids point to them; an INTEGER id already is the rowid
+        boolean copyRowid = !(idCopied && "INTEGER".equals(idDbType(table.id)));
+        String copyColumns = copyRowid ? "rowid" + columns : columns.substring(1);
+
+        while (true) {
+            DbModel chunk = db.findDbModelFirst(new SqlInfo("SELECT COUNT(*) AS c, MAX(rowid) AS m FROM (SELECT rowid FROM "
+                    + tableName + " WHERE rowid > " + lastRowid + " ORDER BY rowid LIMIT " + chunkSize + ")"));
+            if (chunk == null || chunk.isEmpty("m") || chunk.getLong("c") == 0) {
+                break;
+            }
+            long maxRowid = chunk.getLong("m");
+            db.execNonQueryInTransaction(Collections.singletonList(new SqlInfo("INSERT INTO " + copyTableName
+                    + " (" + copyColumns + ") SELECT " + copyColumns + " FROM " + tableName
+                    + " WHERE rowid > " + lastRowid + " AND rowid <= " + maxRowid)));
+            rowsCopied += chunk.getLong("c");
+            lastRowid = maxRowid;
+        }
+
+        List<SqlInfo> swap = new ArrayList<>();
+        swap.addAll(SqlInfoBuilder.buildDropFullTextSqlInfos(tableName));
+        swap.add(new SqlInfo("DROP TABLE " + tableName));
+        swap.add(new SqlInfo("ALTER TABLE " + copyTableName + " RENAME TO " + tableName));
+        swap.addAll(SqlInfoBuilder.buildCreateIndexSqlInfos(db, entityType));
+        swap.addAll(SqlInfoBuilder.buildCreateFullTextSqlInfos(db, entityType));
+        db.execNonQueryInTransaction(swap);
+        return rowsCopied;
+    }
+
+    /**
+     * @return true if the columns are the ones the entity creates, no more and no less
+     */
+    private boolean isCopyOf(Table table, Map<String, DiskColumn> copyColumns) {
+        if (copyColumns.isEmpty()) {
+            return false;
+        }
+        int columnCount = 1;
+        for (Column column : table.columnMap.values()) {
+            if (!(column instanceof Finder)) {
+                columnCount++;
+            }
+        }
+        List<Column> addedColumns = new ArrayList<>();
+        List<String> incompatibilities = new ArrayList<>();
+        compare(table, copyColumns, addedColumns, incompatibilities);
+        return copyColumns.size() == columnCount && addedColumns.isEmpty() && incompatibilities.isEmpty();
+    }
+
+    private boolean fullTextChanged(Database db, Table table) throws DbException {
+        Map<String, DiskColumn> ftsColumns = readDiskColumns(db, TableUtils.getFullTextTableName(table.tableName));
+        if (ftsColumns.size() != table.fullTextColumns.size()) {
+            return true;
+        }
+        for (Column column : table.fullTextColumns) {
+            if (!ftsColumns.containsKey(column.getColumnName())) {
+                return true;
+            }
+        }
+        if (table.fullTextColumns.isEmpty()) {
+            return false;
+        }
+        DbModel model = db.findDbModelFirst(new SqlInfo(
+                "SELECT COUNT(*) AS c FROM sqlite_master WHERE type='trigger' AND name=?",
+                SqlInfoBuilder.getFullTextReplaceTriggerName(table.tableName)));
+        return model == null || model.getInt("c") == 0;
+    }
+
+    private boolean indexesMissing(Database db, Class<?> entityType) throws DbException {
+        for (SqlInfo sqlInfo : SqlInfoBuilder.buildCreateIndexSqlInfos(db, entityType)) {
+            String sql = sqlInfo.getSql();
+            // CREATE [UNIQUE] INDEX IF NOT EXISTS "name" ON ...
+            int nameStart = sql.indexOf('"') + 1;
+            String indexName = sql.substring(nameStart, sql.indexOf('"', nameStart));
+            DbModel model = db.findDbModelFirst(new SqlInfo(
+                    "SELECT COUNT(*) AS c FROM sqlite_master WHERE type='index' AND name=?", indexName));
+            if (model == null || model.getInt("c") == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Map<String, DiskColumn> readDiskColumns(Database db, String tableName) throws DbException {
+        Map<String, DiskColumn> result = new LinkedHashMap<>();
+        List<DbModel> models = db.findDbModelAll(new SqlInfo("PRAGMA table_info(" + tableName + ")"));
+        if (models != null) {
+            for (DbModel model : models) {
+                DiskColumn column = new DiskColumn(model.getString("name"),
+                        model.isEmpty("type") ? "" : model.getString("type"),
+                        "1".equals(model.getString("notnull")),
+                        !"0".equals(model.getString("pk")));
+                result.put(column.name, column);
+            }
+        }
+        return result;
+    }
+
+    private static List<SqlInfo> dropTableSqlInfos(String tableName) {
+        List<SqlInfo> result = new ArrayList<>(SqlInfoBuilder.buildDropFullTextSqlInfos(tableName));
+        result.add(new SqlInfo("DROP TABLE IF EXISTS " + tableName + COPY_TABLE_SUFFIX));
+        result.add(new SqlInfo("DROP TABLE IF EXISTS " + tableName));
+        return result;
+    }
+
+    private static String idDbType(Id id) {
+        return id.isAutoIncrement() ? "INTEGER" : id.getColumnDbType().toString();
+    }
+
+    private static MigrationReport.Entry entry(String tableName, MigrationReport.Action action,
+                                               List<String> details, long rowsCopied, long start) {
+        return new MigrationReport.Entry(tableName, action, details, rowsCopied, System.currentTimeMillis() - start);
+    }
+
+    private static final class DiskColumn {
+        private final String name;
+        private final String type;
+        private final boolean notNull;
+        private final boolean primaryKey;
+
+        private DiskColumn(String name, String type, boolean notNull, boolean primaryKey) {
+            this.name = name;
+            this.type = type;
+            this.notNull = notNull;
+            this.primaryKey = primaryKey;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.frodo.app.framework.orm;
+
+/**
+ * Maps entity types to database shards, see {@link DaoConfig#setShardRule(ShardRule)}.
+ */
+public interface ShardRule {
+
+    /**
+     * @return shard name, null or empty for the main database
+     */
+    String getShard(Class<?> entityType);
+}
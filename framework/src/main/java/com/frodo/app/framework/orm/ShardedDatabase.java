@@ -0,0 +1,519 @@
+package com.frodo.app.framework.orm;
+
+import com.frodo.app.framework.controller.AbstractChildSystem;
+import com.frodo.app.framework.controller.IController;
+import com.frodo.app.framework.exception.DbException;
+import com.frodo.app.framework.orm.sql.DbModelSelector;
+import com.frodo.app.framework.orm.sql.Selector;
+import com.frodo.app.framework.orm.sql.SqlInfo;
+import com.frodo.app.framework.orm.sql.SqlMetrics;
+import com.frodo.app.framework.orm.sql.WhereBuilder;
+import com.frodo.app.framework.orm.table.DbModel;
+import com.frodo.app.framework.orm.table.GroupAggregate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A {@link Database} stored in several files.
+ * Entity types are mapped to shards by {@link com.frodo.app.framework.orm.annotation.Table#shard()}
+ * or {@link DaoConfig#setShardRule(ShardRule)}, every shard is a database of its own with its own writer,
+ * so transactions of different shards never wait for each other.
+ * <p/>
+ * Entities of several shards in one list are written shard by shard, each shard in its own transaction.
+ * Foreign and finder columns must stay in the shard of their entity.
+ * {@link SqlInfo}s and raw sql have no entity type and run on the main database.
+ */
+public class ShardedDatabase extends AbstractChildSystem implements Database {
+
+    /**
+     * Opens the database of a shard.
+     */
+    public interface ShardFactory {
+        Database create(DaoConfig shardConfig);
+    }
+
+    private final DaoConfig daoConfig;
+    private final ShardFactory shardFactory;
+    private final Database mainDatabase;
+    private final Map<String, Database> shards = new ConcurrentHashMap<String, Database>();
+    private final Map<Class<?>, Database> routes = new ConcurrentHashMap<Class<?>, Database>();
+    private final List<TableChangeListener> tableChangeListeners = new CopyOnWriteArrayList<TableChangeListener>();
+    private volatile AsyncDatabase asyncDatabase;
+
+    public ShardedDatabase(IController controller, DaoConfig daoConfig, ShardFactory shardFactory) {
+        super(controller);
+        this.daoConfig = daoConfig;
+        this.shardFactory = shardFactory;
+        this.mainDatabase = shardFactory.create(daoConfig);
+    }
+
+    public Database getMainDatabase() {
+        return mainDatabase;
+    }
+
+    /**
+     * @return the database of the shard, opened on first use
+     */
+    public Database getShard(String shard) {
+        if (shard == null) {
+            return mainDatabase;
+        }
+        Database database = shards.get(shard);
+        if (database == null) {
+            synchronized (shards) {
+                database = shards.get(shard);
+                if (database == null) {
+                    database = shardFactory.create(daoConfig.forShard(shard));
+                    for (TableChangeListener listener : tableChangeListeners) {
+                        database.addTableChangeListener(listener);
+                    }
+                    shards.put(shard, database);
+                }
+            }
+        }
+        return database;
+    }
+
+    /**
+     * @return the database storing entityType
+     */
+    public Database route(Class<?> entityType) {
+        Database database = routes.get(entityType);
+        if (database == null) {
+            database = getShard(daoConfig.getShard(entityType));
+            routes.put(entityType, database);
+        }
+        return database;
+    }
+
+    private Database route(Object entity) {
+        return route(entity.getClass());
+    }
+
+    private Database route(Selector selector) {
+        return route(selector.getEntityType());
+    }
+
+    /**
+     * @return the entities grouped by database, in the order of their first entity
+     */
+    private Map<Database, List<Object>> partition(List<?> entities) {
+        Map<Database, List<Object>> partitions = new LinkedHashMap<Database, List<Object>>();
+        for (Object entity : entities) {
+            Database database = route(entity);
+            List<Object> partition = partitions.get(database);
+            if (partition == null) {
+                partition = new ArrayList<Object>();
+                partitions.put(database, partition);
+            }
+            partition.add(entity);
+        }
+        return partitions;
+    }
+
+    private boolean isSingleShard(List<?> entities) {
+        if (entities == null || entities.isEmpty()) {
+            return true;
+        }
+        Database first = route(entities.get(0));
+        for (int i = 1; i < entities.size(); i++) {
+            if (route(entities.get(i)) != first) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Database routeFirst(List<?> entities) {
+        return entities == null || entities.isEmpty() ? mainDatabase : route(entities.get(0));
+    }
+
+    @Override
+    public DaoConfig getDaoConfig() {
+        return daoConfig;
+    }
+
+    /**
+     * @return metrics of the main database, see {@link #getShard(String)} for the other shards
+     */
+    @Override
+    public SqlMetrics getSqlMetrics() {
+        return mainDatabase.getSqlMetrics();
+    }
+
+    /**
+     * @return entity cache of the main database, see {@link #getShard(String)} for the other shards
+     */
+    @Override
+    public EntityCache getEntityCache() {
+        return mainDatabase.getEntityCache();
+    }
+
+    /**
+     * @return change log of the main database, see {@link #getShard(String)} for the other shards
+     */
+    @Override
+    public ChangeLog getChangeLog() {
+        return mainDatabase.getChangeLog();
+    }
+
+    @Override
+    public AsyncDatabase getAsyncDatabase() {
+        if (asyncDatabase == null) {
+            synchronized (this) {
+                if (asyncDatabase == null) {
+                    asyncDatabase = new AsyncDatabase(this) {
+                        @Override
+                        protected String getWriteKey(Class<?> entityType) {
+                            return daoConfig.getShard(entityType);
+                        }
+                    };
+                }
+            }
+        }
+        return asyncDatabase;
+    }
+
+    @Override
+    public void addTableChangeListener(TableChangeListener listener) {
+        synchronized (shards) {
+            tableChangeListeners.add(listener);
+            mainDatabase.addTableChangeListener(listener);
+            for (Database database : shards.values()) {
+                database.addTableChangeListener(listener);
+            }
+        }
+    }
+
+    @Override
+    public void removeTableChangeListener(TableChangeListener listener) {
+        synchronized (shards) {
+            tableChangeListeners.remove(listener);
+            mainDatabase.removeTableChangeListener(listener);
+            for (Database database : shards.values()) {
+                database.removeTableChangeListener(listener);
+            }
+        }
+    }
+
+    @Override
+    public long getTableVersion(Class<?> entityType) {
+        return route(entityType).getTableVersion(entityType);
+    }
+
+    /**
+     * Shut down the async facade, then close every shard opened and the main database.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (asyncDatabase != null) {
+                asyncDatabase.shutdown();
+                asyncDatabase = null;
+            }
+        }
+        synchronized (shards) {
+            for (Database database : shards.values()) {
+                database.close();
+            }
+            shards.clear();
+            routes.clear();
+        }
+        mainDatabase.close();
+    }
+
+    //***************************************** save *****************************************
+
+    @Override
+    public void saveOrUpdate(Object entity) throws DbException {
+        route(entity).saveOrUpdate(entity);
+    }
+
+    @Override
+    public void saveOrUpdateAll(List<?> entities) throws DbException {
+        if (isSingleShard(entities)) {
+            routeFirst(entities).saveOrUpdateAll(entities);
+            return;
+        }
+        for (Map.Entry<Database, List<Object>> entry : partition(entities).entrySet()) {
+            entry.getKey().saveOrUpdateAll(entry.getValue());
+        }
+    }
+
+    @Override
+    public void replace(Object entity) throws DbException {
+        route(entity).replace(entity);
+    }
+
+    @Override
+    public void replaceAll(List<?> entities) throws DbException {
+        if (isSingleShard(entities)) {
+            routeFirst(entities).replaceAll(entities);
+            return;
+        }
+        for (Map.Entry<Database, List<Object>> entry : partition(entities).entrySet()) {
+            entry.getKey().replaceAll(entry.getValue());
+        }
+    }
+
+    @Override
+    public void save(Object entity) throws DbException {
+        route(entity).save(entity);
+    }
+
+    @Override
+    public void saveAll(List<?> entities) throws DbException {
+        if (isSingleShard(entities)) {
+            routeFirst(entities).saveAll(entities);
+            return;
+        }
+        for (Map.Entry<Database, List<Object>> entry : partition(entities).entrySet()) {
+            entry.getKey().saveAll(entry.getValue());
+        }
+    }
+
+    @Override
+    public boolean saveBindingId(Object entity) throws DbException {
+        return route(entity).saveBindingId(entity);
+    }
+
+    @Override
+    public void saveBindingIdAll(List<?> entities) throws DbException {
+        if (isSingleShard(entities)) {
+            routeFirst(entities).saveBindingIdAll(entities);
+            return;
+        }
+        for (Map.Entry<Database, List<Object>> entry : partition(entities).entrySet()) {
+            entry.getKey().saveBindingIdAll(entry.getValue());
+        }
+    }
+
+    //***************************************** delete *****************************************
+
+    @Override
+    public void deleteById(Class<?> entityType, Object idValue) throws DbException {
+        route(entityType).deleteById(entityType, idValue);
+    }
+
+    @Override
+    public void delete(Object entity) throws DbException {
+        route(entity).delete(entity);
+    }
+
+    @Override
+    public void delete(Class<?> entityType, WhereBuilder whereBuilder) throws DbException {
+        route(entityType).delete(entityType, whereBuilder);
+    }
+
+    @Override
+    public void deleteAll(List<?> entities) throws DbException {
+        if (isSingleShard(entities)) {
+            routeFirst(entities).deleteAll(entities);
+            return;
+        }
+        for (Map.Entry<Database, List<Object>> entry : partition(entities).entrySet()) {
+            entry.getKey().deleteAll(entry.getValue());
+        }
+    }
+
+    @Override
+    public void deleteAll(Class<?> entityType) throws DbException {
+        route(entityType).deleteAll(entityType);
+    }
+
+    //***************************************** update *****************************************
+
+    @Override
+    public void update(Object entity, String... updateColumnNames) throws DbException {
+        route(entity).update(entity, updateColumnNames);
+    }
+
+    @Override
+    public void update(Object entity, WhereBuilder whereBuilder, String... updateColumnNames) throws DbException {
+        route(entity).update(entity, whereBuilder, updateColumnNames);
+    }
+
+    @Override
+    public void updateAll(List<?> entities, String... updateColumnNames) throws DbException {
+        if (isSingleShard(entities)) {
+            routeFirst(entities).updateAll(entities, updateColumnNames);
+            return;
+        }
+        for (Map.Entry<Database, List<Object>> entry : partition(entities).entrySet()) {
+            entry.getKey().updateAll(entry.getValue(), updateColumnNames);
+        }
+    }
+
+    @Override
+    public void updateAll(List<?> entities, WhereBuilder whereBuilder, String... updateColumnNames) throws DbException {
+        if (isSingleShard(entities)) {
+            routeFirst(entities).updateAll(entities, whereBuilder, updateColumnNames);
+            return;
+        }
+        for (Map.Entry<Database, List<Object>> entry : partition(entities).entrySet()) {
+            entry.getKey().updateAll(entry.getValue(), whereBuilder, updateColumnNames);
+        }
+    }
+
+    //***************************************** find *****************************************
+
+    @Override
+    public <T> T findById(Class<T> entityType, Object idValue) throws DbException {
+        return route(entityType).findById(entityType, idValue);
+    }
+
+    @Override
+    public <T> T findFirst(Selector selector) throws DbException {
+        return route(selector).findFirst(selector);
+    }
+
+    @Override
+    public <T> T findFirst(Class<T> entityType) throws DbException {
+        return route(entityType).findFirst(entityType);
+    }
+
+    @Override
+    public <T> List<T> findAll(Selector selector) throws DbException {
+        return route(selector).findAll(selector);
+    }
+
+    @Override
+    public <T> List<T> findAll(Class<T> entityType) throws DbException {
+        return route(entityType).findAll(entityType);
+    }
+
+    @Override
+    public <T> List<T> findByIds(Class<T> entityType, Collection<?> idValues) throws DbException {
+        return route(entityType).findByIds(entityType, idValues);
+    }
+
+    @Override
+    public <T> List<T> findByIds(Class<T> entityType, Collection<?> idValues, boolean keepOrder) throws DbException {
+        return route(entityType).findByIds(entityType, idValues, keepOrder);
+    }
+
+    @Override
+    public DbModel findDbModelFirst(SqlInfo sqlInfo) throws DbException {
+        return mainDatabase.findDbModelFirst(sqlInfo);
+    }
+
+    @Override
+    public DbModel findDbModelFirst(DbModelSelector selector) throws DbException {
+        return route(selector.getEntityType()).findDbModelFirst(selector);
+    }
+
+    @Override
+    public List<DbModel> findDbModelAll(SqlInfo sqlInfo) throws DbException {
+        return mainDatabase.findDbModelAll(sqlInfo);
+    }
+
+    @Override
+    public List<DbModel> findDbModelAll(DbModelSelector selector) throws DbException {
+        return route(selector.getEntityType()).findDbModelAll(selector);
+    }
+
+    @Override
+    public long count(Selector selector) throws DbException {
+        return route(selector).count(selector);
+    }
+
+    @Override
+    public long count(Class<?> entityType) throws DbException {
+        return route(entityType).count(entityType);
+    }
+
+    //***************************************** aggregate *****************************************
+
+    @Override
+    public long sumLong(Selector selector, String columnName) throws DbException {
+        return route(selector).sumLong(selector, columnName);
+    }
+
+    @Override
+    public double sumDouble(Selector selector, String columnName) throws DbException {
+        return route(selector).sumDouble(selector, columnName);
+    }
+
+    @Override
+    public double avg(Selector selector, String columnName) throws DbException {
+        return route(selector).avg(selector, columnName);
+    }
+
+    @Override
+    public long minLong(Selector selector, String columnName) throws DbException {
+        return route(selector).minLong(selector, columnName);
+    }
+
+    @Override
+    public long maxLong(Selector selector, String columnName) throws DbException {
+        return route(selector).maxLong(selector, columnName);
+    }
+
+    @Override
+    public double min(Selector selector, String columnName) throws DbException {
+        return route(selector).min(selector, columnName);
+    }
+
+    @Override
+    public double max(Selector selector, String columnName) throws DbException {
+        return route(selector).max(selector, columnName);
+    }
+
+    @Override
+    public GroupAggregate countGroupBy(Selector selector, String groupByColumnName) throws DbException {
+        return route(selector).countGroupBy(selector, groupByColumnName);
+    }
+
+    @Override
+    public GroupAggregate sumGroupBy(Selector selector, String groupByColumnName, String columnName) throws DbException {
+        return route(selector).sumGroupBy(selector, groupByColumnName, columnName);
+    }
+
+    @Override
+    public GroupAggregate avgGroupBy(Selector selector, String groupByColumnName, String columnName) throws DbException {
+        return route(selector).avgGroupBy(selector, groupByColumnName, columnName);
+    }
+
+    @Override
+    public GroupAggregate minGroupBy(Selector selector, String groupByColumnName, String columnName) throws DbException {
+        return route(selector).minGroupBy(selector, groupByColumnName, columnName);
+    }
+
+    @Override
+    public GroupAggregate maxGroupBy(Selector selector, String groupByColumnName, String columnName) throws DbException {
+        return route(selector).maxGroupBy(selector, groupByColumnName, columnName);
+    }
+
+    //***************************************** exec sql *****************************************
+
+    @Override
+    public CompiledStatement compile(SqlInfo template) throws DbException {
+        return mainDatabase.compile(template);
+    }
+
+    @Override
+    public CompiledStatement compile(Class<?> entityType, SqlInfo template) throws DbException {
+        return route(entityType).compile(entityType, template);
+    }
+
+    @Override
+    public void execNonQuery(SqlInfo sqlInfo) throws DbException {
+        mainDatabase.execNonQuery(sqlInfo);
+    }
+
+    @Override
+    public void execNonQuery(String sql) throws DbException {
+        mainDatabase.execNonQuery(sql);
+    }
+
+    @Override
+    public void execNonQueryInTransaction(List<SqlInfo> sqlInfoList) throws DbException {
+        mainDatabase.execNonQueryInTransaction(sqlInfoList);
+    }
+}
@@ -0,0 +1,170 @@
+package com.frodo.app.framework.orm;
+
+import com.frodo.app.framework.orm.sql.ColumnDbType;
+import com.frodo.app.framework.orm.table.ColumnUtils;
+
+import java.util.Comparator;
+
+/**
+ * Column values of {@link MemoryDatabase} with the sqlite semantic:
+ * values are stored as Long, Double, String or byte[], ordered NULL < numbers < text < blob,
+ * and operands take the affinity of the column they are compared with.
+ */
+/* package */ final class SqlValues {
+
+    static final Comparator<Object> COMPARATOR = new Comparator<Object>() {
+        @Override
+        public int compare(Object lhs, Object rhs) {
+            return SqlValues.compare(lhs, rhs);
+        }
+    };
+
+    private SqlValues() {
+    }
+
+    /**
+     * @return the storage form of a column value
+     */
+    static Object normalize(Object value) {
+        value = ColumnUtils.convert2DbColumnValueIfNeeded(value);
+        if (value == null || value instanceof Long || value instanceof Double
+                || value instanceof String || value instanceof byte[]) {
+            return value;
+        }
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Float) {
+            return ((Float) value).doubleValue();
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1L : 0L;
+        }
+        return value.toString();
+    }
+
+    /**
+     * numeric text compared with a numeric column is a number, numbers compared with a text column are text
+     */
+    static Object applyAffinity(ColumnDbType dbType, Object value) {
+        value = normalize(value);
+        if (value == null || dbType == null) {
+            return value;
+        }
+        switch (dbType) {
+            case INTEGER:
+            case REAL:
+                if (value instanceof String) {
+                    Object number = parseNumber((String) value);
+                    return number == null ? value : number;
+                }
+                return value;
+            case TEXT:
+                return value instanceof Long || value instanceof Double ? toString(value) : value;
+            default:
+                return value;
+        }
+    }
+
+    private static Object parseNumber(String text) {
+        String trimmed = text.trim();
+        try {
+            return Long.parseLong(trimmed);
+        } catch (NumberFormatException e) {
+            try {
+                return Double.parseDouble(trimmed);
+            } catch (NumberFormatException ignored) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @return the key of hash indexes: equal numbers have equal keys whatever their type
+     */
+    static Object key(Object value) {
+        if (value instanceof Double) {
+            double d = (Double) value;
+            if (d == Math.rint(d) && d >= Long.MIN_VALUE && d <= Long.MAX_VALUE) {
+                return (long) d;
+            }
+        }
+        return value;
+    }
+
+    private static int rank(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof Number) {
+            return 1;
+        }
+        if (value instanceof String) {
+            return 2;
+        }
+        return 3;
+    }
+
+    static int compare(Object lhs, Object rhs) {
+        int lhsRank = rank(lhs);
+        int rhsRank = rank(rhs);
+        if (lhsRank != rhsRank) {
+            return lhsRank < rhsRank ? -1 : 1;
+        }
+        switch (lhsRank) {
+            case 0:
+                return 0;
+            case 1:
+                if (lhs instanceof Long && rhs instanceof Long) {
+                    long l = (Long) lhs;
+                    long r = (Long) rhs;
+                    return l < r ? -1 : (l == r ? 0 : 1);
+                }
+                return Double.compare(((Number) lhs).doubleValue(), ((Number) rhs).doubleValue());
+            case 2:
+                return ((String) lhs).compareTo((String) rhs);
+            default:
+                byte[] l = (byte[]) lhs;
+                byte[] r = (byte[]) rhs;
+                for (int i = 0; i < l.length && i < r.length; i++) {
+                    int diff = (l[i] & 0xff) - (r[i] & 0xff);
+                    if (diff != 0) {
+                        return diff;
+                    }
+                }
+                return l.length - r.length;
+        }
+    }
+
+    static long toLong(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof String) {
+            Object number = parseNumber((String) value);
+            return number == null ? 0 : ((Number) number).longValue();
+        }
+        return 0;
+    }
+
+    static double toDouble(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof String) {
+            Object number = parseNumber((String) value);
+            return number == null ? 0 : ((Number) number).doubleValue();
+        }
+        return 0;
+    }
+
+    static String toString(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof byte[]) {
+            return new String((byte[]) value);
+        }
+        return value.toString();
+    }
+}
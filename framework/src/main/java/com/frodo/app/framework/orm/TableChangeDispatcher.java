@@ -0,0 +1,121 @@
+package com.frodo.app.framework.orm;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers committed table changes to {@link TableChangeListener}s on a single background thread.
+ * Tables published while a delivery is scheduled are merged into it, so a burst of transactions
+ * results in one notification per debounce window.
+ * Every table also has a version, incremented at once by each publish, see {@link #getVersion(String)}.
+ */
+public class TableChangeDispatcher {
+
+    private final String name;
+    private final List<TableChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<String, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
+    private Set<String> pendingTables = new HashSet<>();
+    private boolean scheduled;
+    private ScheduledExecutorService executor;
+
+    public TableChangeDispatcher(String name) {
+        this.name = name;
+    }
+
+    public void addListener(TableChangeListener listener) {
+        if (listener != null && !listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeListener(TableChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return count of the publishes of the table, read it before a query and compare it later
+     * to know whether the result may be stale
+     */
+    public long getVersion(String tableName) {
+        AtomicLong version = versions.get(tableName);
+        return version == null ? 0 : version.get();
+    }
+
+    /**
+     * @param tableNames     committed tables, call it once the commit is visible to readers
+     * @param debounceMillis delay merging later changes, 0 delivers as soon as possible
+     */
+    public void publish(Set<String> tableNames, long debounceMillis) {
+        if (tableNames == null || tableNames.isEmpty()) {
+            return;
+        }
+        for (String tableName : tableNames) {
+            AtomicLong version = versions.get(tableName);
+            if (version == null) {
+                AtomicLong newVersion = new AtomicLong();
+                version = versions.putIfAbsent(tableName, newVersion);
+                if (version == null) {
+                    version = newVersion;
+                }
+            }
+            version.incrementAndGet();
+        }
+        if (listeners.isEmpty()) {
+            return;
+        }
+        synchronized (lock) {
+            pendingTables.addAll(tableNames);
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+            if (executor == null) {
+                executor = Executors.newSingleThreadScheduledExecutor(
+                        new ThreadFactoryBuilder().setNameFormat(name + "-table-change").setDaemon(true).build());
+            }
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    dispatch();
+                }
+            }, Math.max(debounceMillis, 0), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void shutdown() {
+        synchronized (lock) {
+            if (executor != null) {
+                executor.shutdown();
+                executor = null;
+            }
+            pendingTables.clear();
+            scheduled = false;
+        }
+    }
+
+    private void dispatch() {
+        Set<String> tables;
+        synchronized (lock) {
+            tables = pendingTables;
+            pendingTables = new HashSet<>();
+            scheduled = false;
+        }
+        for (TableChangeListener listener : listeners) {
+            try {
+                listener.onTablesChanged(tables);
+            } catch (RuntimeException ignored) {
+                // a failing listener must not starve the others
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.frodo.app.framework.orm;
+
+import java.util.Set;
+
+/**
+ * Notified after a transaction changing some tables has been committed,
+ * see {@link Database#addTableChangeListener(TableChangeListener)}.
+ */
+public interface TableChangeListener {
+
+    /**
+     * Called on the dispatcher thread, changes within the debounce window are merged into one call.
+     *
+     * @param tableNames names of the changed tables
+     */
+    void onTablesChanged(Set<String> tableNames);
+}
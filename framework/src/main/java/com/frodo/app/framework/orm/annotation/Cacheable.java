@@ -0,0 +1,28 @@
+package com.frodo.app.framework.orm.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Entities found by id are kept in a second level cache of the database,
+ * see {@link com.frodo.app.framework.orm.EntityCache}.
+ * Writes of the entity type through the database invalidate the cache, raw sql does not.
+ * So do writes of the types it refers to by {@link Foreign} or {@link Finder} fields, its cached entities hold them.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Cacheable {
+
+    /**
+     * estimated size of the cached entities in bytes, least recently used entities are evicted beyond it
+     */
+    long maxBytes() default 64 * 1024;
+
+    /**
+     * true: every find returns a copy of the cached snapshot, callers may modify it;
+     * false: the cached entity is shared and must be treated as immutable, it saves a copy per find
+     */
+    boolean copyOnRead() default true;
+}
@@ -17,4 +17,10 @@ public @interface Finder {
     String valueColumn();
 
     String targetColumn();
+
+    /**
+     * for List fields: entities loaded per query, 0 loads all of them on first access,
+     * see {@link com.frodo.app.framework.orm.sql.LazyList}
+     */
+    int pageSize() default 0;
 }
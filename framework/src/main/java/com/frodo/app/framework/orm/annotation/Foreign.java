@@ -27,4 +27,10 @@ public @interface Foreign {
     String column() default "";
 
     String foreign();
+
+    /**
+     * for List fields: entities loaded per query, 0 loads all of them on first access,
+     * see {@link com.frodo.app.framework.orm.sql.LazyList}
+     */
+    int pageSize() default 0;
 }
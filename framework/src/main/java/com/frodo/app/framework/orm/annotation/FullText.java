@@ -0,0 +1,15 @@
+package com.frodo.app.framework.orm.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Text column indexed by a shadow full text search table ("tableName_fts"),
+ * kept in sync by triggers and queried by {@link com.frodo.app.framework.orm.sql.Selector#match(String)}.
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface FullText {
+}
@@ -0,0 +1,30 @@
+package com.frodo.app.framework.orm.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Secondary index, created together with the table and again after a database upgrade.
+ * <p>
+ * On a field it indexes that column and {@link #columns()} is ignored.
+ * On an entity type it declares a composite index over {@link #columns()},
+ * use {@link Indexes} to declare more than one.
+ */
+@Target({ElementType.FIELD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Index {
+
+    /**
+     * @return index name, default is "tableName_column1_column2_index"
+     */
+    String name() default "";
+
+    /**
+     * @return column names of a composite index, only used on an entity type
+     */
+    String[] columns() default {};
+
+    boolean unique() default false;
+}
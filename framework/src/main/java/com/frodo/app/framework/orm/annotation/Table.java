@@ -27,4 +27,9 @@ public @interface Table {
     String name() default "";
 
     String execAfterTableCreated() default "";
+
+    /**
+     * database shard of the entity, empty for the main database, see {@link com.frodo.app.framework.orm.ShardedDatabase}
+     */
+    String shard() default "";
 }
\ No newline at end of file
@@ -10,10 +10,15 @@ import com.frodo.app.framework.toolbox.TextUtils;
  * Date: 13-11-4
  * Time: 下午10:51
  */
-public class BooleanColumnConverter implements ColumnConverter<Boolean> {
+public class BooleanColumnConverter implements BooleanFieldConverter {
     @Override
     public Boolean getFieldValue(final Cursor cursor, int index) {
-        return cursor.isNull(index) ? null : cursor.getInt(index) == 1;
+        return cursor.isNull(index) ? null : getBooleanFieldValue(cursor, index);
+    }
+
+    @Override
+    public boolean getBooleanFieldValue(final Cursor cursor, int index) {
+        return cursor.getInt(index) == 1;
     }
 
     @Override
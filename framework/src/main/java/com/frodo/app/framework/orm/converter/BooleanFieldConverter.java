@@ -0,0 +1,14 @@
+package com.frodo.app.framework.orm.converter;
+
+import com.frodo.app.framework.orm.Cursor;
+
+/**
+ * Boolean converter reading a boolean column without boxing, used for boolean entity fields.
+ */
+public interface BooleanFieldConverter extends ColumnConverter<Boolean> {
+
+    /**
+     * @param index column index, the value must not be null
+     */
+    boolean getBooleanFieldValue(final Cursor cursor, int index);
+}
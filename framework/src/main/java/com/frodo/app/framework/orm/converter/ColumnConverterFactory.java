@@ -7,69 +7,84 @@ import java.util.concurrent.ConcurrentHashMap;
 
 public class ColumnConverterFactory {
 
-    private static final ConcurrentHashMap<String, com.frodo.app.framework.orm.converter.ColumnConverter> columnType_columnConverter_map;
+    /**
+     * key: column type, Class does not override equals and hashCode so lookups compare identities
+     */
+    private static final ConcurrentHashMap<Class<?>, ColumnConverter<?>> columnType_columnConverter_map;
+
+    /**
+     * cached result of a type without converter
+     */
+    private static final ColumnConverter<?> NONE = new StringColumnConverter();
 
     static {
-        columnType_columnConverter_map = new ConcurrentHashMap<String, com.frodo.app.framework.orm.converter.ColumnConverter>();
+        columnType_columnConverter_map = new ConcurrentHashMap<Class<?>, ColumnConverter<?>>();
 
         com.frodo.app.framework.orm.converter.BooleanColumnConverter booleanColumnConverter = new com.frodo.app.framework.orm.converter.BooleanColumnConverter();
-        columnType_columnConverter_map.put(boolean.class.getName(), booleanColumnConverter);
-        columnType_columnConverter_map.put(Boolean.class.getName(), booleanColumnConverter);
+        columnType_columnConverter_map.put(boolean.class, booleanColumnConverter);
+        columnType_columnConverter_map.put(Boolean.class, booleanColumnConverter);
 
         ByteArrayColumnConverter byteArrayColumnConverter = new ByteArrayColumnConverter();
-        columnType_columnConverter_map.put(byte[].class.getName(), byteArrayColumnConverter);
+        columnType_columnConverter_map.put(byte[].class, byteArrayColumnConverter);
 
         com.frodo.app.framework.orm.converter.ByteColumnConverter byteColumnConverter = new ByteColumnConverter();
-        columnType_columnConverter_map.put(byte.class.getName(), byteColumnConverter);
-        columnType_columnConverter_map.put(Byte.class.getName(), byteColumnConverter);
+        columnType_columnConverter_map.put(byte.class, byteColumnConverter);
+        columnType_columnConverter_map.put(Byte.class, byteColumnConverter);
 
         com.frodo.app.framework.orm.converter.CharColumnConverter charColumnConverter = new CharColumnConverter();
-        columnType_columnConverter_map.put(char.class.getName(), charColumnConverter);
-        columnType_columnConverter_map.put(Character.class.getName(), charColumnConverter);
+        columnType_columnConverter_map.put(char.class, charColumnConverter);
+        columnType_columnConverter_map.put(Character.class, charColumnConverter);
 
         com.frodo.app.framework.orm.converter.DateColumnConverter dateColumnConverter = new DateColumnConverter();
-        columnType_columnConverter_map.put(Date.class.getName(), dateColumnConverter);
+        columnType_columnConverter_map.put(Date.class, dateColumnConverter);
 
         com.frodo.app.framework.orm.converter.DoubleColumnConverter doubleColumnConverter = new DoubleColumnConverter();
-        columnType_columnConverter_map.put(double.class.getName(), doubleColumnConverter);
-        columnType_columnConverter_map.put(Double.class.getName(), doubleColumnConverter);
+        columnType_columnConverter_map.put(double.class, doubleColumnConverter);
+        columnType_columnConverter_map.put(Double.class, doubleColumnConverter);
 
         com.frodo.app.framework.orm.converter.FloatColumnConverter floatColumnConverter = new FloatColumnConverter();
-        columnType_columnConverter_map.put(float.class.getName(), floatColumnConverter);
-        columnType_columnConverter_map.put(Float.class.getName(), floatColumnConverter);
+        columnType_columnConverter_map.put(float.class, floatColumnConverter);
+        columnType_columnConverter_map.put(Float.class, floatColumnConverter);
 
         IntegerColumnConverter integerColumnConverter = new IntegerColumnConverter();
-        columnType_columnConverter_map.put(int.class.getName(), integerColumnConverter);
-        columnType_columnConverter_map.put(Integer.class.getName(), integerColumnConverter);
+        columnType_columnConverter_map.put(int.class, integerColumnConverter);
+        columnType_columnConverter_map.put(Integer.class, integerColumnConverter);
 
         com.frodo.app.framework.orm.converter.LongColumnConverter longColumnConverter = new LongColumnConverter();
-        columnType_columnConverter_map.put(long.class.getName(), longColumnConverter);
-        columnType_columnConverter_map.put(Long.class.getName(), longColumnConverter);
+        columnType_columnConverter_map.put(long.class, longColumnConverter);
+        columnType_columnConverter_map.put(Long.class, longColumnConverter);
 
         com.frodo.app.framework.orm.converter.ShortColumnConverter shortColumnConverter = new ShortColumnConverter();
-        columnType_columnConverter_map.put(short.class.getName(), shortColumnConverter);
-        columnType_columnConverter_map.put(Short.class.getName(), shortColumnConverter);
+        columnType_columnConverter_map.put(short.class, shortColumnConverter);
+        columnType_columnConverter_map.put(Short.class, shortColumnConverter);
 
         SqlDateColumnConverter sqlDateColumnConverter = new SqlDateColumnConverter();
-        columnType_columnConverter_map.put(java.sql.Date.class.getName(), sqlDateColumnConverter);
+        columnType_columnConverter_map.put(java.sql.Date.class, sqlDateColumnConverter);
 
         com.frodo.app.framework.orm.converter.StringColumnConverter stringColumnConverter = new StringColumnConverter();
-        columnType_columnConverter_map.put(String.class.getName(), stringColumnConverter);
+        columnType_columnConverter_map.put(String.class, stringColumnConverter);
     }
 
     private ColumnConverterFactory() {
     }
 
     public static com.frodo.app.framework.orm.converter.ColumnConverter getColumnConverter(Class columnType) {
-        if (columnType_columnConverter_map.containsKey(columnType.getName())) {
-            return columnType_columnConverter_map.get(columnType.getName());
-        } else if (com.frodo.app.framework.orm.converter.ColumnConverter.class.isAssignableFrom(columnType)) {
+        ColumnConverter<?> columnConverter = columnType_columnConverter_map.get(columnType);
+        if (columnConverter == null) {
+            columnConverter = createColumnConverter(columnType);
+            ColumnConverter<?> old =
+                    columnType_columnConverter_map.putIfAbsent(columnType, columnConverter == null ? NONE : columnConverter);
+            if (old != null) {
+                columnConverter = old;
+            }
+        }
+        return columnConverter == NONE ? null : columnConverter;
+    }
+
+    private static ColumnConverter<?> createColumnConverter(Class<?> columnType) {
+        if (com.frodo.app.framework.orm.converter.ColumnConverter.class.isAssignableFrom(columnType)) {
             try {
-                com.frodo.app.framework.orm.converter.ColumnConverter columnConverter = (com.frodo.app.framework.orm.converter.ColumnConverter) columnType.newInstance();
-                if (columnConverter != null) {
-                    columnType_columnConverter_map.put(columnType.getName(), columnConverter);
-                }
-                return columnConverter;
+                return (ColumnConverter<?>) columnType.newInstance();
             } catch (Throwable e) {
             }
         }
@@ -85,22 +100,10 @@ public class ColumnConverterFactory {
     }
 
     public static void registerColumnConverter(Class columnType, com.frodo.app.framework.orm.converter.ColumnConverter columnConverter) {
-        columnType_columnConverter_map.put(columnType.getName(), columnConverter);
+        columnType_columnConverter_map.put(columnType, columnConverter);
     }
 
     public static boolean isSupportColumnConverter(Class columnType) {
-        if (columnType_columnConverter_map.containsKey(columnType.getName())) {
-            return true;
-        } else if (com.frodo.app.framework.orm.converter.ColumnConverter.class.isAssignableFrom(columnType)) {
-            try {
-                com.frodo.app.framework.orm.converter.ColumnConverter columnConverter = (ColumnConverter) columnType.newInstance();
-                if (columnConverter != null) {
-                    columnType_columnConverter_map.put(columnType.getName(), columnConverter);
-                }
-                return columnConverter == null;
-            } catch (Throwable e) {
-            }
-        }
-        return false;
+        return getColumnConverter(columnType) != null;
     }
 }
@@ -4,10 +4,15 @@ import com.frodo.app.framework.orm.Cursor;
 import com.frodo.app.framework.orm.sql.ColumnDbType;
 import com.frodo.app.framework.toolbox.TextUtils;
 
-public class DoubleColumnConverter implements com.frodo.app.framework.orm.converter.ColumnConverter<Double> {
+public class DoubleColumnConverter implements DoubleFieldConverter {
     @Override
     public Double getFieldValue(final Cursor cursor, int index) {
-        return cursor.isNull(index) ? null : cursor.getDouble(index);
+        return cursor.isNull(index) ? null : getDoubleFieldValue(cursor, index);
+    }
+
+    @Override
+    public double getDoubleFieldValue(final Cursor cursor, int index) {
+        return cursor.getDouble(index);
     }
 
     @Override
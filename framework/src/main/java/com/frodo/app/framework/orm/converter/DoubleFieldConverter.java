@@ -0,0 +1,14 @@
+package com.frodo.app.framework.orm.converter;
+
+import com.frodo.app.framework.orm.Cursor;
+
+/**
+ * Double converter reading a double column without boxing, used for double entity fields.
+ */
+public interface DoubleFieldConverter extends ColumnConverter<Double> {
+
+    /**
+     * @param index column index, the value must not be null
+     */
+    double getDoubleFieldValue(final Cursor cursor, int index);
+}
@@ -0,0 +1,14 @@
+package com.frodo.app.framework.orm.converter;
+
+import com.frodo.app.framework.orm.Cursor;
+
+/**
+ * Integer converter reading a int column without boxing, used for int entity fields.
+ */
+public interface IntFieldConverter extends ColumnConverter<Integer> {
+
+    /**
+     * @param index column index, the value must not be null
+     */
+    int getIntFieldValue(final Cursor cursor, int index);
+}
@@ -4,10 +4,15 @@ import com.frodo.app.framework.orm.Cursor;
 import com.frodo.app.framework.orm.sql.ColumnDbType;
 import com.frodo.app.framework.toolbox.TextUtils;
 
-public class IntegerColumnConverter implements com.frodo.app.framework.orm.converter.ColumnConverter<Integer> {
+public class IntegerColumnConverter implements IntFieldConverter {
     @Override
     public Integer getFieldValue(final Cursor cursor, int index) {
-        return cursor.isNull(index) ? null : cursor.getInt(index);
+        return cursor.isNull(index) ? null : getIntFieldValue(cursor, index);
+    }
+
+    @Override
+    public int getIntFieldValue(final Cursor cursor, int index) {
+        return cursor.getInt(index);
     }
 
     @Override
@@ -4,10 +4,15 @@ import com.frodo.app.framework.orm.Cursor;
 import com.frodo.app.framework.orm.sql.ColumnDbType;
 import com.frodo.app.framework.toolbox.TextUtils;
 
-public class LongColumnConverter implements com.frodo.app.framework.orm.converter.ColumnConverter<Long> {
+public class LongColumnConverter implements LongFieldConverter {
     @Override
     public Long getFieldValue(final Cursor cursor, int index) {
-        return cursor.isNull(index) ? null : cursor.getLong(index);
+        return cursor.isNull(index) ? null : getLongFieldValue(cursor, index);
+    }
+
+    @Override
+    public long getLongFieldValue(final Cursor cursor, int index) {
+        return cursor.getLong(index);
     }
 
     @Override
@@ -0,0 +1,14 @@
+package com.frodo.app.framework.orm.converter;
+
+import com.frodo.app.framework.orm.Cursor;
+
+/**
+ * Long converter reading a long column without boxing, used for long entity fields.
+ */
+public interface LongFieldConverter extends ColumnConverter<Long> {
+
+    /**
+     * @param index column index, the value must not be null
+     */
+    long getLongFieldValue(final Cursor cursor, int index);
+}
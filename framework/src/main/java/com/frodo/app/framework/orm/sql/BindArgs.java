@@ -0,0 +1,233 @@
+package com.frodo.app.framework.orm.sql;
+
+import com.frodo.app.framework.orm.CompiledStatement;
+
+import java.util.Arrays;
+
+/**
+ * The bind args of a {@link SqlInfo} in typed growable arrays: numbers are kept unboxed
+ * and handed to the statement as they are, never converted to text.
+ * The arrays are kept by {@link #clear()}, so a buffer reused for a batch of rows stops allocating
+ * once it has grown to the widest row.
+ */
+public final class BindArgs {
+
+    public static final byte TYPE_NULL = 0;
+    public static final byte TYPE_LONG = 1;
+    public static final byte TYPE_DOUBLE = 2;
+    public static final byte TYPE_STRING = 3;
+    public static final byte TYPE_BLOB = 4;
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private byte[] types;
+    /**
+     * longs, and doubles as their raw bits
+     */
+    private long[] numbers;
+    /**
+     * strings and blobs
+     */
+    private Object[] objects;
+    private int size;
+
+    public BindArgs() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public BindArgs(int capacity) {
+        capacity = Math.max(capacity, 1);
+        this.types = new byte[capacity];
+        this.numbers = new long[capacity];
+        this.objects = new Object[capacity];
+    }
+
+    private int next() {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            numbers = Arrays.copyOf(numbers, capacity);
+            objects = Arrays.copyOf(objects, capacity);
+        }
+        return size++;
+    }
+
+    public void addNull() {
+        int i = next();
+        types[i] = TYPE_NULL;
+        objects[i] = null;
+    }
+
+    public void addLong(long value) {
+        int i = next();
+        types[i] = TYPE_LONG;
+        numbers[i] = value;
+        objects[i] = null;
+    }
+
+    public void addDouble(double value) {
+        int i = next();
+        types[i] = TYPE_DOUBLE;
+        numbers[i] = Double.doubleToRawLongBits(value);
+        objects[i] = null;
+    }
+
+    public void addString(String value) {
+        if (value == null) {
+            addNull();
+            return;
+        }
+        int i = next();
+        types[i] = TYPE_STRING;
+        objects[i] = value;
+    }
+
+    public void addBlob(byte[] value) {
+        if (value == null) {
+            addNull();
+            return;
+        }
+        int i = next();
+        types[i] = TYPE_BLOB;
+        objects[i] = value;
+    }
+
+    /**
+     * @param value a value already converted by the column converters
+     */
+    public void add(Object value) {
+        if (value == null) {
+            addNull();
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            addLong(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            addDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            addLong((Boolean) value ? 1 : 0);
+        } else if (value instanceof byte[]) {
+            addBlob((byte[]) value);
+        } else {
+            addString(value.toString());
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index from 0
+     * @return one of the TYPE_ constants
+     */
+    public byte getType(int index) {
+        checkIndex(index);
+        return types[index];
+    }
+
+    public long getLong(int index) {
+        checkIndex(index);
+        return types[index] == TYPE_DOUBLE ? (long) Double.longBitsToDouble(numbers[index]) : numbers[index];
+    }
+
+    public double getDouble(int index) {
+        checkIndex(index);
+        return types[index] == TYPE_DOUBLE ? Double.longBitsToDouble(numbers[index]) : numbers[index];
+    }
+
+    public String getString(int index) {
+        checkIndex(index);
+        switch (types[index]) {
+            case TYPE_LONG:
+                return Long.toString(numbers[index]);
+            case TYPE_DOUBLE:
+                return Double.toString(Double.longBitsToDouble(numbers[index]));
+            case TYPE_STRING:
+                return (String) objects[index];
+            case TYPE_BLOB:
+                return new String((byte[]) objects[index]);
+            default:
+                return null;
+        }
+    }
+
+    public byte[] getBlob(int index) {
+        checkIndex(index);
+        return types[index] == TYPE_BLOB ? (byte[]) objects[index] : null;
+    }
+
+    /**
+     * @return the value boxed as Long, Double, String or byte[]
+     */
+    public Object get(int index) {
+        checkIndex(index);
+        switch (types[index]) {
+            case TYPE_LONG:
+                return numbers[index];
+            case TYPE_DOUBLE:
+                return Double.longBitsToDouble(numbers[index]);
+            case TYPE_STRING:
+            case TYPE_BLOB:
+                return objects[index];
+            default:
+                return null;
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+    }
+
+    /**
+     * bind every value with its type, from index 1
+     */
+    public void bindTo(CompiledStatement statement) {
+        for (int i = 0; i < size; i++) {
+            switch (types[i]) {
+                case TYPE_LONG:
+                    statement.bind(i + 1, numbers[i]);
+                    break;
+                case TYPE_DOUBLE:
+                    statement.bind(i + 1, Double.longBitsToDouble(numbers[i]));
+                    break;
+                case TYPE_STRING:
+                    statement.bind(i + 1, (String) objects[i]);
+                    break;
+                case TYPE_BLOB:
+                    statement.bind(i + 1, (byte[]) objects[i]);
+                    break;
+                default:
+                    statement.bindNull(i + 1);
+                    break;
+            }
+        }
+    }
+
+    public Object[] toArray() {
+        Object[] result = new Object[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = get(i);
+        }
+        return result;
+    }
+
+    /**
+     * @return the values as text, for query apis which only bind strings
+     */
+    public String[] toStringArray() {
+        String[] result = new String[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = getString(i);
+        }
+        return result;
+    }
+
+    /**
+     * remove the values and keep the arrays
+     */
+    public void clear() {
+        Arrays.fill(objects, 0, size, null);
+        size = 0;
+    }
+}
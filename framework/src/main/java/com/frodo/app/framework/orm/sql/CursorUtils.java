@@ -4,15 +4,133 @@ import com.frodo.app.framework.exception.DbException;
 import com.frodo.app.framework.orm.Cursor;
 import com.frodo.app.framework.orm.Database;
 import com.frodo.app.framework.orm.table.Column;
+import com.frodo.app.framework.orm.table.ColumnUtils;
 import com.frodo.app.framework.orm.table.DbModel;
 import com.frodo.app.framework.orm.table.Finder;
+import com.frodo.app.framework.orm.table.Foreign;
 import com.frodo.app.framework.orm.table.Id;
 import com.frodo.app.framework.orm.table.Table;
 
-import java.util.concurrent.ConcurrentHashMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class CursorUtils {
 
+    private static final int ROW_BUFFER_SIZE = 256;
+    private static final int MIN_PARALLEL_SLICE = 32;
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+    private static ExecutorService hydrationExecutor;
+
+    /**
+     * Read all rows of cursor as entities. Rows are copied into a {@link RowBuffer} window by window,
+     * then the entities are built from the buffer.
+     *
+     * @param parallelThreshold results of at least this many rows are built on all cores,
+     *                          if the entity has no foreign or finder column. A negative value disables it.
+     */
+    public static <T> List<T> getEntities(final Database db, final Cursor cursor, Class<T> entityType,
+                                          long findCacheSequence, int parallelThreshold) throws DbException {
+        List<T> result = new ArrayList<>();
+        if (db == null || cursor == null) return result;
+
+        Table table = Table.get(db, entityType);
+        RowBuffer buffer = new RowBuffer(table, cursor, ROW_BUFFER_SIZE);
+        boolean parallel = parallelThreshold >= 0 && CPU_COUNT > 1 && isFlat(table)
+                && cursor.getCount() >= parallelThreshold;
+        while (buffer.fill(cursor) > 0) {
+            if (parallel) {
+                getEntitiesParallel(db, buffer, entityType, findCacheSequence, result);
+            } else {
+                while (buffer.moveToNext()) {
+                    result.add(getEntity(db, buffer, entityType, findCacheSequence));
+                }
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void getEntitiesParallel(final Database db, RowBuffer buffer, final Class<T> entityType,
+                                                final long findCacheSequence, List<T> result) throws DbException {
+        final int size = buffer.getCount();
+        int sliceCount = Math.min(CPU_COUNT, size / MIN_PARALLEL_SLICE);
+        if (sliceCount <= 1) {
+            while (buffer.moveToNext()) {
+                result.add(getEntity(db, buffer, entityType, findCacheSequence));
+            }
+            return;
+        }
+
+        final Object[] entities = new Object[size];
+        int sliceSize = (size + sliceCount - 1) / sliceCount;
+        List<Future<Void>> futures = new ArrayList<>(sliceCount - 1);
+        for (int from = sliceSize; from < size; from += sliceSize) {
+            final RowBuffer slice = buffer.view(from - 1);
+            final int end = Math.min(from + sliceSize, size);
+            futures.add(getHydrationExecutor().submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    hydrateSlice(db, slice, entityType, findCacheSequence, entities, end);
+                    return null;
+                }
+            }));
+        }
+        // the calling thread builds the first slice
+        hydrateSlice(db, buffer.view(-1), entityType, findCacheSequence, entities, sliceSize);
+
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof DbException ? (DbException) e.getCause() : new DbException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DbException(e);
+            }
+        }
+        for (Object entity : entities) {
+            result.add((T) entity);
+        }
+    }
+
+    private static <T> void hydrateSlice(Database db, RowBuffer slice, Class<T> entityType, long findCacheSequence,
+                                         Object[] entities, int end) throws DbException {
+        while (slice.moveToNext() && slice.getPosition() < end) {
+            entities[slice.getPosition()] = getEntity(db, slice, entityType, findCacheSequence);
+        }
+    }
+
+    private static boolean isFlat(Table table) {
+        if (!table.finderMap.isEmpty()) {
+            return false;
+        }
+        for (Column column : table.columnMap.values()) {
+            if (column instanceof Foreign) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static synchronized ExecutorService getHydrationExecutor() {
+        if (hydrationExecutor == null) {
+            hydrationExecutor = Executors.newFixedThreadPool(CPU_COUNT - 1,
+                    new ThreadFactoryBuilder().setNameFormat("orm-hydration-%d").setDaemon(true).build());
+        }
+        return hydrationExecutor;
+    }
+
     @SuppressWarnings("unchecked")
     public static <T> T getEntity(final Database db, final Cursor cursor, Class<T> entityType, long findCacheSequence) throws DbException {
         if (db == null || cursor == null) return null;
@@ -54,6 +172,32 @@ public class CursorUtils {
         }
     }
 
+    /**
+     * @return the entities in the order of idValues, ids without entity are skipped
+     */
+    public static <T> List<T> sortByIds(Table table, List<T> entities, Collection<?> idValues) throws DbException {
+        Map<Object, T> entityMap = new HashMap<Object, T>(entities.size() * 2);
+        for (T entity : entities) {
+            entityMap.put(idKey(table.id.getColumnValue(entity)), entity);
+        }
+        List<T> result = new ArrayList<T>(entities.size());
+        for (Object idValue : idValues) {
+            T entity = entityMap.remove(idKey(ColumnUtils.convert2DbColumnValueIfNeeded(idValue)));
+            if (entity != null) {
+                result.add(entity);
+            }
+        }
+        return result;
+    }
+
+    // 1, 1L and (short) 1 are the same id
+    private static Object idKey(Object columnValue) {
+        if (columnValue instanceof Integer || columnValue instanceof Short || columnValue instanceof Byte) {
+            return ((Number) columnValue).longValue();
+        }
+        return columnValue;
+    }
+
     public static DbModel getDbModel(final Cursor cursor) {
         DbModel result = null;
         if (cursor != null) {
@@ -66,43 +210,66 @@ public class CursorUtils {
         return result;
     }
 
+    /**
+     * A find gets a new sequence number, the lazy loaders of its entities keep the one of their thread,
+     * so the find caches are shared by a find and its lazy loads.
+     */
     public static class FindCacheSequence {
         private static final String FOREIGN_LAZY_LOADER_CLASS_NAME = ForeignLazyLoader.class.getName();
         private static final String FINDER_LAZY_LOADER_CLASS_NAME = FinderLazyLoader.class.getName();
-        private static long seq = 0;
+        private static final AtomicLong SEQUENCE = new AtomicLong();
+        private static final ThreadLocal<long[]> CURRENT_SEQ = new ThreadLocal<long[]>() {
+            @Override
+            protected long[] initialValue() {
+                return new long[1];
+            }
+        };
 
         private FindCacheSequence() {
         }
 
         public static long getSeq() {
+            long[] current = CURRENT_SEQ.get();
             String findMethodCaller = Thread.currentThread().getStackTrace()[4].getClassName();
-            if (!findMethodCaller.equals(FOREIGN_LAZY_LOADER_CLASS_NAME) && !findMethodCaller.equals(FINDER_LAZY_LOADER_CLASS_NAME)) {
-                ++seq;
+            if (current[0] == 0 || !findMethodCaller.equals(FOREIGN_LAZY_LOADER_CLASS_NAME)
+                    && !findMethodCaller.equals(FINDER_LAZY_LOADER_CLASS_NAME)) {
+                current[0] = SEQUENCE.incrementAndGet();
             }
-            return seq;
+            return current[0];
         }
     }
 
+    /**
+     * Entities built by the current find of the thread, so a row read twice is one entity.
+     * Confined to the thread: concurrent finds never share their mutable entities or clear each other's cache.
+     */
     private static class EntityTempCache {
-        private static final ConcurrentHashMap<String, Object> cache = new ConcurrentHashMap<String, Object>();
-        private static long seq = 0;
+        private static final ThreadLocal<EntityTempCache> CURRENT = new ThreadLocal<>();
 
-        private EntityTempCache() {
+        private final long seq;
+        private final HashMap<String, Object> cache = new HashMap<>();
+
+        private EntityTempCache(long seq) {
+            this.seq = seq;
         }
 
         public static <T> void put(Class<T> entityType, Object idValue, Object entity) {
-            cache.put(entityType.getName() + "#" + idValue, entity);
+            EntityTempCache current = CURRENT.get();
+            if (current != null) {
+                current.cache.put(entityType.getName() + "#" + idValue, entity);
+            }
         }
 
         @SuppressWarnings("unchecked")
         public static <T> T get(Class<T> entityType, Object idValue) {
-            return (T) cache.get(entityType.getName() + "#" + idValue);
+            EntityTempCache current = CURRENT.get();
+            return current == null ? null : (T) current.cache.get(entityType.getName() + "#" + idValue);
         }
 
         public static void setSeq(long seq) {
-            if (EntityTempCache.seq != seq) {
-                cache.clear();
-                EntityTempCache.seq = seq;
+            EntityTempCache current = CURRENT.get();
+            if (current == null || current.seq != seq) {
+                CURRENT.set(new EntityTempCache(seq));
             }
         }
     }
@@ -104,6 +104,11 @@ public class DbModelSelector {
         return this;
     }
 
+    public DbModelSelector match(String query) {
+        selector.match(query);
+        return this;
+    }
+
     public DbModelSelector orderBy(String columnName) {
         selector.orderBy(columnName);
         return this;
@@ -128,9 +133,25 @@ public class DbModelSelector {
         return selector.getEntityType();
     }
 
+    public Selector getSelector() {
+        return selector;
+    }
+
+    public String[] getColumnExpressions() {
+        return columnExpressions;
+    }
+
+    public String getGroupByColumnName() {
+        return groupByColumnName;
+    }
+
+    public WhereBuilder getHaving() {
+        return having;
+    }
+
     @Override
     public String toString() {
-        StringBuffer result = new StringBuffer();
+        StringBuilder result = new StringBuilder();
         result.append("SELECT ");
         if (columnExpressions != null && columnExpressions.length > 0) {
             for (int i = 0; i < columnExpressions.length; i++) {
@@ -145,25 +166,23 @@ public class DbModelSelector {
                 result.append("*");
             }
         }
-        result.append(" FROM ").append(selector.tableName);
-        if (selector.whereBuilder != null && selector.whereBuilder.getWhereItemSize() > 0) {
-            result.append(" WHERE ").append(selector.whereBuilder.toString());
-        }
+        selector.appendFromWhere(result);
         if (!TextUtils.isEmpty(groupByColumnName)) {
             result.append(" GROUP BY ").append(groupByColumnName);
             if (having != null && having.getWhereItemSize() > 0) {
                 result.append(" HAVING ").append(having.toString());
             }
         }
-        if (selector.orderByList != null) {
-            for (int i = 0; i < selector.orderByList.size(); i++) {
-                result.append(" ORDER BY ").append(selector.orderByList.get(i).toString());
-            }
-        }
-        if (selector.limit > 0) {
-            result.append(" LIMIT ").append(selector.limit);
-            result.append(" OFFSET ").append(selector.offset);
-        }
+        selector.appendOrderByLimit(result);
         return result.toString();
     }
+
+    /**
+     * @return the statement with its bind args, see {@link Selector#toSqlInfo()}
+     */
+    public SqlInfo toSqlInfo() {
+        SqlInfo sqlInfo = new SqlInfo(toString());
+        selector.appendBindArgs(sqlInfo);
+        return sqlInfo;
+    }
 }
@@ -33,6 +33,19 @@ public class FinderLazyLoader<T> {
         return entities;
     }
 
+    /**
+     * @param pageSize entities loaded per query, 0 loads all of them on first access
+     * @return the entities, queried when the list is first read
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> getLazyList(int pageSize) {
+        Table table = finderColumn.getTable();
+        if (table == null) {
+            return null;
+        }
+        return new LazyList<T>(table.db, (Class<T>) finderColumn.getTargetEntityType(), finderColumn.getTargetColumnName(), finderValue, pageSize);
+    }
+
     public T getFirstFromDb() throws DbException {
         T entity = null;
         Table table = finderColumn.getTable();
@@ -0,0 +1,215 @@
+package com.frodo.app.framework.orm.sql;
+
+import com.frodo.app.framework.exception.DbException;
+import com.frodo.app.framework.orm.Database;
+import com.frodo.app.framework.orm.table.Table;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+
+/**
+ * Value of a List typed foreign or finder field: the entities "columnName = value" of the target type,
+ * queried on first access instead of when the owner is loaded.
+ * <p/>
+ * Without page size all entities are loaded at once and the list can be modified like an ArrayList.
+ * With a page size the list is read only: size() runs a count query and
+ * every page is loaded in id order when one of its entities is read.
+ * <p/>
+ * The {@link Database#getTableVersion(Class)} of the target type is read before a query: when it has moved since,
+ * the next access reloads the list, the count and the pages, and iterators in progress fail fast.
+ * A list modified by the caller is the caller's and is kept until it is saved.
+ * Query errors are thrown as RuntimeException with the {@link DbException} as cause.
+ */
+public class LazyList<T> extends AbstractList<T> {
+
+    private final Database db;
+    private final Class<T> entityType;
+    private final String columnName;
+    private final Object value;
+    private final int pageSize;
+
+    private List<T> entities;
+    private boolean modified;
+    private int size = -1;
+    private Map<Integer, List<T>> pages;
+    /**
+     * table version read before the loaded entities, count and pages were queried
+     */
+    private long version;
+
+    LazyList(Database db, Class<T> entityType, String columnName, Object value, int pageSize) {
+        this.db = db;
+        this.entityType = entityType;
+        this.columnName = columnName;
+        this.value = value;
+        this.pageSize = pageSize;
+    }
+
+    private Selector selector() {
+        return Selector.from(entityType).where(columnName, "=", value);
+    }
+
+    /**
+     * @return the value of the column the entities are queried by
+     */
+    public Object getColumnValue() {
+        return value;
+    }
+
+    /**
+     * @return a list of the same entities which has not queried them yet
+     */
+    public LazyList<T> unloadedCopy() {
+        return new LazyList<T>(db, entityType, columnName, value, pageSize);
+    }
+
+    /**
+     * @return whether the entities were queried, always false with a page size
+     */
+    public synchronized boolean isLoaded() {
+        return entities != null;
+    }
+
+    /**
+     * drop what was loaded from an older version of the table, every query of the list then reads the same version
+     */
+    private void checkVersion() {
+        if (entities == null && size < 0 && pages == null) {
+            version = db.getTableVersion(entityType);
+            return;
+        }
+        if (modified) {
+            return;
+        }
+        long current = db.getTableVersion(entityType);
+        if (current != version) {
+            entities = null;
+            size = -1;
+            pages = null;
+            version = current;
+            modCount++;
+        }
+    }
+
+    private synchronized List<T> entities() {
+        checkVersion();
+        if (entities == null) {
+            try {
+                List<T> result = db.findAll(selector());
+                entities = result == null ? new ArrayList<T>(0) : new ArrayList<T>(result);
+            } catch (DbException e) {
+                throw new RuntimeException("load " + entityType.getName() + " failed", e);
+            }
+        }
+        return entities;
+    }
+
+    private synchronized List<T> page(int page) {
+        checkVersion();
+        if (pages == null) {
+            pages = new HashMap<>();
+        }
+        List<T> entities = pages.get(page);
+        if (entities == null) {
+            try {
+                String idColumnName = Table.get(db, entityType).id.getColumnName();
+                entities = db.findAll(selector().orderBy(idColumnName).limit(pageSize).offset(page * pageSize));
+            } catch (DbException e) {
+                throw new RuntimeException("load " + entityType.getName() + " failed", e);
+            }
+            if (entities == null) {
+                entities = new ArrayList<T>(0);
+            }
+            pages.put(page, entities);
+        }
+        return entities;
+    }
+
+    /**
+     * A new iterator starts from the current version, it fails fast if the list is reloaded while it runs.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        refresh();
+        return super.iterator();
+    }
+
+    @Override
+    public ListIterator<T> listIterator(int location) {
+        refresh();
+        return super.listIterator(location);
+    }
+
+    private synchronized void refresh() {
+        checkVersion();
+    }
+
+    @Override
+    public T get(int location) {
+        if (pageSize <= 0) {
+            return entities().get(location);
+        }
+        if (location < 0 || location >= size()) {
+            throw new IndexOutOfBoundsException("Invalid index " + location + ", size is " + size());
+        }
+        List<T> page = page(location / pageSize);
+        int index = location % pageSize;
+        if (index >= page.size()) {
+            // rows were deleted since size() was counted
+            throw new IndexOutOfBoundsException("Invalid index " + location);
+        }
+        return page.get(index);
+    }
+
+    @Override
+    public synchronized int size() {
+        if (pageSize <= 0) {
+            return entities().size();
+        }
+        checkVersion();
+        if (size < 0) {
+            try {
+                size = (int) db.count(selector());
+            } catch (DbException e) {
+                throw new RuntimeException("count " + entityType.getName() + " failed", e);
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public T set(int location, T object) {
+        if (pageSize > 0) {
+            throw new UnsupportedOperationException("paged list is read only");
+        }
+        T previous = entities().set(location, object);
+        modified = true;
+        return previous;
+    }
+
+    @Override
+    public void add(int location, T object) {
+        if (pageSize > 0) {
+            throw new UnsupportedOperationException("paged list is read only");
+        }
+        entities().add(location, object);
+        modified = true;
+        modCount++;
+    }
+
+    @Override
+    public T remove(int location) {
+        if (pageSize > 0) {
+            throw new UnsupportedOperationException("paged list is read only");
+        }
+        T removed = entities().remove(location);
+        modified = true;
+        modCount++;
+        return removed;
+    }
+}
@@ -0,0 +1,262 @@
+package com.frodo.app.framework.orm.sql;
+
+import com.frodo.app.framework.orm.Cursor;
+import com.frodo.app.framework.orm.table.Column;
+import com.frodo.app.framework.orm.table.Table;
+
+/**
+ * A window of rows copied from a {@link Cursor} into typed column arrays.
+ * The window is refilled in place, so a whole result is read through the same arrays,
+ * and it is itself a {@link Cursor} over the buffered rows.
+ * Column types come from the entity columns, unknown columns are read as text.
+ */
+/* package */ class RowBuffer implements Cursor {
+
+    private static final byte KIND_LONG = 0;
+    private static final byte KIND_DOUBLE = 1;
+    private static final byte KIND_STRING = 2;
+    private static final byte KIND_BLOB = 3;
+
+    private final int capacity;
+    private final String[] columnNames;
+    private final byte[] kinds;
+
+    /**
+     * column major: cell (row, column) is at column * capacity + row
+     */
+    private final boolean[] nulls;
+    private final long[] longs;
+    private final double[] doubles;
+    private final Object[] objects;
+
+    private int size;
+    private int position = -1;
+
+    RowBuffer(Table table, Cursor source, int capacity) {
+        this.capacity = capacity;
+        int columnCount = source.getColumnCount();
+        this.columnNames = new String[columnCount];
+        this.kinds = new byte[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            columnNames[i] = source.getColumnName(i);
+            Column column = table.id.getColumnName().equals(columnNames[i]) ? table.id : table.columnMap.get(columnNames[i]);
+            kinds[i] = column == null ? KIND_STRING : kindOf(column.getColumnDbType());
+        }
+        int cells = columnCount * capacity;
+        this.nulls = new boolean[cells];
+        this.longs = new long[cells];
+        this.doubles = new double[cells];
+        this.objects = new Object[cells];
+    }
+
+    /**
+     * A cursor sharing the buffered rows with its own position, for hydrating a slice on another thread.
+     */
+    private RowBuffer(RowBuffer buffer, int position) {
+        this.capacity = buffer.capacity;
+        this.columnNames = buffer.columnNames;
+        this.kinds = buffer.kinds;
+        this.nulls = buffer.nulls;
+        this.longs = buffer.longs;
+        this.doubles = buffer.doubles;
+        this.objects = buffer.objects;
+        this.size = buffer.size;
+        this.position = position;
+    }
+
+    private static byte kindOf(ColumnDbType dbType) {
+        switch (dbType) {
+            case INTEGER:
+                return KIND_LONG;
+            case REAL:
+                return KIND_DOUBLE;
+            case BLOB:
+                return KIND_BLOB;
+            default:
+                return KIND_STRING;
+        }
+    }
+
+    /**
+     * Replace the buffered rows by the next rows of source.
+     *
+     * @return number of rows read, 0 at the end of source
+     */
+    int fill(Cursor source) {
+        int columnCount = columnNames.length;
+        for (int i = 0; i < size * columnCount; i++) {
+            objects[(i % columnCount) * capacity + i / columnCount] = null;
+        }
+        size = 0;
+        position = -1;
+        while (size < capacity && source.moveToNext()) {
+            for (int column = 0; column < columnCount; column++) {
+                int cell = column * capacity + size;
+                boolean isNull = source.isNull(column);
+                nulls[cell] = isNull;
+                if (isNull) {
+                    continue;
+                }
+                switch (kinds[column]) {
+                    case KIND_LONG:
+                        longs[cell] = source.getLong(column);
+                        break;
+                    case KIND_DOUBLE:
+                        doubles[cell] = source.getDouble(column);
+                        break;
+                    case KIND_BLOB:
+                        objects[cell] = source.getBlob(column);
+                        break;
+                    default:
+                        objects[cell] = source.getString(column);
+                        break;
+                }
+            }
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * @param position row before the first one to read, the cursor starts at position + 1
+     */
+    RowBuffer view(int position) {
+        return new RowBuffer(this, position);
+    }
+
+    int getPosition() {
+        return position;
+    }
+
+    private int cell(int index) {
+        return index * capacity + position;
+    }
+
+    @Override
+    public boolean moveToNext() {
+        if (position + 1 >= size) {
+            return false;
+        }
+        position++;
+        return true;
+    }
+
+    @Override
+    public int getCount() {
+        return size;
+    }
+
+    @Override
+    public boolean isNull(int index) {
+        return nulls[cell(index)];
+    }
+
+    @Override
+    public int getInt(int index) {
+        return (int) getLong(index);
+    }
+
+    @Override
+    public int getColumnIndex(String columnName) {
+        for (int i = 0; i < columnNames.length; i++) {
+            if (columnNames[i].equals(columnName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    @Override
+    public String getColumnName(int i) {
+        return columnNames[i];
+    }
+
+    @Override
+    public String getString(int i) {
+        int cell = cell(i);
+        if (nulls[cell]) {
+            return null;
+        }
+        switch (kinds[i]) {
+            case KIND_LONG:
+                return String.valueOf(longs[cell]);
+            case KIND_DOUBLE:
+                return String.valueOf(doubles[cell]);
+            case KIND_BLOB:
+                return new String((byte[]) objects[cell]);
+            default:
+                return (String) objects[cell];
+        }
+    }
+
+    @Override
+    public byte[] getBlob(int index) {
+        int cell = cell(index);
+        if (nulls[cell]) {
+            return null;
+        }
+        Object value = objects[cell];
+        if (value instanceof byte[]) {
+            return (byte[]) value;
+        }
+        return value == null ? getString(index).getBytes() : value.toString().getBytes();
+    }
+
+    @Override
+    public long getLong(int index) {
+        int cell = cell(index);
+        switch (kinds[index]) {
+            case KIND_LONG:
+                return longs[cell];
+            case KIND_DOUBLE:
+                return (long) doubles[cell];
+            default:
+                return objects[cell] instanceof String ? parseLong((String) objects[cell]) : 0;
+        }
+    }
+
+    @Override
+    public double getDouble(int index) {
+        int cell = cell(index);
+        switch (kinds[index]) {
+            case KIND_LONG:
+                return longs[cell];
+            case KIND_DOUBLE:
+                return doubles[cell];
+            default:
+                return objects[cell] instanceof String ? parseDouble((String) objects[cell]) : 0;
+        }
+    }
+
+    @Override
+    public float getFloat(int index) {
+        return (float) getDouble(index);
+    }
+
+    @Override
+    public short getShort(int index) {
+        return (short) getLong(index);
+    }
+
+    // sqlite returns 0 for text that is not a number
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return (long) parseDouble(value);
+        }
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
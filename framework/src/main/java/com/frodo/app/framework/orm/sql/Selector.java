@@ -15,13 +15,25 @@
 
 package com.frodo.app.framework.orm.sql;
 
+import com.frodo.app.framework.orm.table.ColumnUtils;
 import com.frodo.app.framework.orm.table.TableUtils;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 
 public class Selector {
 
+    /**
+     * SQLITE_MAX_VARIABLE_NUMBER of the sqlite builds shipped with Android
+     */
+    public static final int MAX_BIND_ARGS = 999;
+
+    private static final String FTS_ALIAS = "__fts";
+    private static final String FTS_DOCID = "__fts_docid";
+    private static final String FTS_RANK = "__fts_rank";
+
     protected Class<?> entityType;
     protected String tableName;
 
@@ -29,6 +41,9 @@ public class Selector {
     protected List<OrderBy> orderByList;
     protected int limit = 0;
     protected int offset = 0;
+    protected String matchQuery;
+    protected String inColumnName;
+    protected List<Object> inKeys;
 
     private Selector(Class<?> entityType) {
         this.entityType = entityType;
@@ -55,7 +70,7 @@ public class Selector {
     }
 
     public Selector and(WhereBuilder where) {
-        this.whereBuilder.expr("AND (" + where.toString() + ")");
+        this.whereBuilder.and(where);
         return this;
     }
 
@@ -65,7 +80,7 @@ public class Selector {
     }
 
     public Selector or(WhereBuilder where) {
-        this.whereBuilder.expr("OR (" + where.toString() + ")");
+        this.whereBuilder.or(where);
         return this;
     }
 
@@ -85,6 +100,46 @@ public class Selector {
         return this;
     }
 
+    /**
+     * Restrict the result to rows whose {@link com.frodo.app.framework.orm.annotation.FullText} columns
+     * match the query, e.g. "star wars" or "title:star*".
+     * Rows are ranked by the number of matches of the query terms in the row, after any explicit
+     * {@link #orderBy(String)}. The query is bound as a parameter, execute {@link #toSqlInfo()}.
+     *
+     * @param query fts3 MATCH expression
+     */
+    public Selector match(String query) {
+        this.matchQuery = query;
+        return this;
+    }
+
+    /**
+     * Restrict the result to rows whose column is one of the keys, in addition to the where clause.
+     * Databases bind the keys as parameters by chunks of {@link #MAX_BIND_ARGS} instead of
+     * writing them into the sql, see {@link #toSqlInfos(int)}.
+     * Duplicate keys are bound once, in the order of their first occurrence.
+     */
+    public Selector whereIn(String columnName, Collection<?> keys) {
+        this.inColumnName = columnName;
+        this.inKeys = new ArrayList<Object>(new LinkedHashSet<Object>(keys));
+        return this;
+    }
+
+    public String getInColumnName() {
+        return inColumnName;
+    }
+
+    public List<Object> getInKeys() {
+        return inKeys;
+    }
+
+    /**
+     * @return whether the result can be merged from queries of key chunks: no order by, limit or offset
+     */
+    public boolean isChunkable() {
+        return orderByList == null && matchQuery == null && limit <= 0 && offset <= 0;
+    }
+
     public DbModelSelector groupBy(String columnName) {
         return new DbModelSelector(this, columnName);
     }
@@ -119,33 +174,166 @@ public class Selector {
         return this;
     }
 
+    /**
+     * @return the sql, with a "?" for the {@link #match(String)} query, see {@link #toSqlInfo()}
+     */
     @Override
     public String toString() {
         StringBuilder result = new StringBuilder();
+        appendSelect(result);
+        appendFromWhere(result);
+        appendOrderByLimit(result);
+        return result.toString();
+    }
+
+    /**
+     * @return the statement with its bind args, the {@link #match(String)} query
+     */
+    public SqlInfo toSqlInfo() {
+        SqlInfo sqlInfo = new SqlInfo(toString());
+        appendBindArgs(sqlInfo);
+        return sqlInfo;
+    }
+
+    /**
+     * add the args bound by {@link #appendFromWhere(StringBuilder)}, before the keys of the IN list
+     */
+    protected void appendBindArgs(SqlInfo sqlInfo) {
+        if (matchQuery != null) {
+            sqlInfo.addBindArg(matchQuery);
+        }
+    }
+
+    /**
+     * The statements of {@link #whereIn(String, Collection)} with the keys bound by chunks,
+     * a single statement without keys.
+     *
+     * @param chunkSize keys per statement, at most {@link #MAX_BIND_ARGS}
+     */
+    public List<SqlInfo> toSqlInfos(int chunkSize) {
+        if (inKeys == null) {
+            List<SqlInfo> sqlInfos = new ArrayList<SqlInfo>(1);
+            sqlInfos.add(toSqlInfo());
+            return sqlInfos;
+        }
+        chunkSize = Math.max(1, Math.min(chunkSize, MAX_BIND_ARGS));
+        List<SqlInfo> sqlInfos = new ArrayList<SqlInfo>(inKeys.size() / chunkSize + 1);
+        String fullChunkSql = null;
+        for (int from = 0; from < inKeys.size() || from == 0; from += chunkSize) {
+            int to = Math.min(from + chunkSize, inKeys.size());
+            String sql;
+            if (to - from == chunkSize && fullChunkSql != null) {
+                sql = fullChunkSql;
+            } else {
+                StringBuilder result = new StringBuilder();
+                appendSelect(result);
+                appendFromWhere(result, to - from);
+                appendOrderByLimit(result);
+                sql = result.toString();
+                if (to - from == chunkSize) {
+                    fullChunkSql = sql;
+                }
+            }
+            SqlInfo sqlInfo = new SqlInfo(sql);
+            appendBindArgs(sqlInfo);
+            for (int i = from; i < to; i++) {
+                sqlInfo.addBindArg(ColumnUtils.convert2DbColumnValueIfNeeded(inKeys.get(i)));
+            }
+            sqlInfos.add(sqlInfo);
+        }
+        return sqlInfos;
+    }
+
+    private void appendSelect(StringBuilder result) {
         result.append("SELECT ")
-              .append("*")
-              .append(" FROM ")
-              .append(tableName);
-        if (whereBuilder != null && whereBuilder.getWhereItemSize() > 0) {
-            result.append(" WHERE ").append(whereBuilder.toString());
+              .append(matchQuery == null ? "*" : tableName + ".*");
+    }
+
+    protected void appendFromWhere(StringBuilder result) {
+        appendFromWhere(result, -1);
+    }
+
+    /**
+     * @param inPlaceholders number of "?" of the IN list, -1 for the literal keys
+     */
+    private void appendFromWhere(StringBuilder result, int inPlaceholders) {
+        result.append(" FROM ").append(tableName);
+        if (matchQuery != null) {
+            String ftsTableName = TableUtils.getFullTextTableName(tableName);
+            String offsets = "offsets(" + ftsTableName + ")";
+            // offsets() holds 4 space separated integers per match, count them whatever their digits
+            result.append(" JOIN (SELECT docid AS " + FTS_DOCID + ", (length(").append(offsets)
+                  .append(") - length(replace(").append(offsets).append(", ' ', '')) + 1) / 4 AS " + FTS_RANK)
+                  .append(" FROM ").append(ftsTableName)
+                  .append(" WHERE ").append(ftsTableName).append(" MATCH ?) AS " + FTS_ALIAS + " ON ")
+                  .append(tableName).append(".rowid = " + FTS_ALIAS + "." + FTS_DOCID);
+        }
+        boolean hasWhere = whereBuilder != null && whereBuilder.getWhereItemSize() > 0;
+        if (inColumnName == null) {
+            if (hasWhere) {
+                result.append(" WHERE ").append(whereBuilder.toString());
+            }
+            return;
+        }
+        result.append(" WHERE ");
+        if (hasWhere) {
+            result.append("(").append(whereBuilder.toString()).append(") AND ");
         }
+        if (inPlaceholders >= 0) {
+            result.append(inColumnName).append(" IN (");
+            for (int i = 0; i < inPlaceholders; i++) {
+                result.append(i == 0 ? "?" : ",?");
+            }
+            result.append(")");
+        } else if (inKeys.isEmpty()) {
+            result.append(inColumnName).append(" IN ()");
+        } else {
+            result.append(WhereBuilder.b(inColumnName, "IN", inKeys).toString());
+        }
+    }
+
+    protected void appendOrderByLimit(StringBuilder result) {
+        String separator = " ORDER BY ";
         if (orderByList != null) {
             for (int i = 0; i < orderByList.size(); i++) {
-                result.append(" ORDER BY ").append(orderByList.get(i).toString());
+                result.append(separator).append(orderByList.get(i).toString());
+                separator = ", ";
             }
         }
+        if (matchQuery != null) {
+            result.append(separator).append(FTS_ALIAS + "." + FTS_RANK + " DESC");
+        }
         if (limit > 0) {
             result.append(" LIMIT ").append(limit);
             result.append(" OFFSET ").append(offset);
         }
-        return result.toString();
     }
 
     public Class<?> getEntityType() {
         return entityType;
     }
 
-    protected class OrderBy {
+    public WhereBuilder getWhereBuilder() {
+        return whereBuilder;
+    }
+
+    public List<OrderBy> getOrderByList() {
+        return orderByList;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public String getMatchQuery() {
+        return matchQuery;
+    }
+
+    public static class OrderBy {
         private String columnName;
         private boolean desc;
 
@@ -158,6 +346,14 @@ public class Selector {
             this.desc = desc;
         }
 
+        public String getColumnName() {
+            return columnName;
+        }
+
+        public boolean isDesc() {
+            return desc;
+        }
+
         @Override
         public String toString() {
             return columnName + (desc ? " DESC" : " ASC");
@@ -16,14 +16,16 @@
 package com.frodo.app.framework.orm.sql;
 
 
+import com.frodo.app.framework.orm.CompiledStatement;
 import com.frodo.app.framework.orm.table.ColumnUtils;
 
+import java.util.Arrays;
 import java.util.LinkedList;
 
 public class SqlInfo {
 
     private String sql;
-    private LinkedList<Object> bindArgs;
+    private BindArgs bindArgs;
 
     public SqlInfo() {
     }
@@ -45,10 +47,29 @@ public class SqlInfo {
         this.sql = sql;
     }
 
+    /**
+     * @return a copy of the bind args, null if none was added
+     * @deprecated the args are kept unboxed, use {@link #getBindArgBuffer()}
+     */
+    @Deprecated
     public LinkedList<Object> getBindArgs() {
+        if (bindArgs != null) {
+            return new LinkedList<Object>(Arrays.asList(bindArgs.toArray()));
+        }
+        return null;
+    }
+
+    /**
+     * @return the typed bind args, null if none was added
+     */
+    public BindArgs getBindArgBuffer() {
         return bindArgs;
     }
 
+    public int getBindArgCount() {
+        return bindArgs == null ? 0 : bindArgs.size();
+    }
+
     public Object[] getBindArgsAsArray() {
         if (bindArgs != null) {
             return bindArgs.toArray();
@@ -58,27 +79,37 @@ public class SqlInfo {
 
     public String[] getBindArgsAsStrArray() {
         if (bindArgs != null) {
-            String[] strings = new String[bindArgs.size()];
-            for (int i = 0; i < bindArgs.size(); i++) {
-                Object value = bindArgs.get(i);
-                strings[i] = value == null ? null : value.toString();
-            }
-            return strings;
+            return bindArgs.toStringArray();
         }
         return null;
     }
 
-    public void addBindArg(Object arg) {
-        if (bindArgs == null) {
-            bindArgs = new LinkedList<Object>();
+    /**
+     * bind the args with their types from index 1, without boxing or text conversion
+     */
+    public void bindTo(CompiledStatement statement) {
+        if (bindArgs != null) {
+            bindArgs.bindTo(statement);
         }
+    }
 
-        bindArgs.add(ColumnUtils.convert2DbColumnValueIfNeeded(arg));
+    /**
+     * reuse this SqlInfo for another statement, the bind buffer is kept
+     */
+    public void reset(String sql) {
+        this.sql = sql;
+        if (bindArgs != null) {
+            bindArgs.clear();
+        }
+    }
+
+    public void addBindArg(Object arg) {
+        addBindArgWithoutConverter(ColumnUtils.convert2DbColumnValueIfNeeded(arg));
     }
 
     /* package */ void addBindArgWithoutConverter(Object arg) {
         if (bindArgs == null) {
-            bindArgs = new LinkedList<>();
+            bindArgs = new BindArgs();
         }
 
         bindArgs.add(arg);
@@ -86,6 +117,9 @@ public class SqlInfo {
 
     public void addBindArgs(Object... bindArgs) {
         if (bindArgs != null) {
+            if (this.bindArgs == null) {
+                this.bindArgs = new BindArgs(bindArgs.length);
+            }
             for (Object arg : bindArgs) {
                 addBindArg(arg);
             }
@@ -2,6 +2,8 @@ package com.frodo.app.framework.orm.sql;
 
 import com.frodo.app.framework.exception.DbException;
 import com.frodo.app.framework.orm.Database;
+import com.frodo.app.framework.orm.annotation.Index;
+import com.frodo.app.framework.orm.annotation.Indexes;
 import com.frodo.app.framework.orm.table.Column;
 import com.frodo.app.framework.orm.table.ColumnUtils;
 import com.frodo.app.framework.orm.table.Finder;
@@ -9,6 +11,7 @@ import com.frodo.app.framework.orm.table.Id;
 import com.frodo.app.framework.orm.table.KeyValue;
 import com.frodo.app.framework.orm.table.Table;
 import com.frodo.app.framework.orm.table.TableUtils;
+import com.frodo.app.framework.toolbox.TextUtils;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -28,11 +31,20 @@ public class SqlInfoBuilder {
     //*********************************************** insert sql ***********************************************
 
     public static com.frodo.app.framework.orm.sql.SqlInfo buildInsertSqlInfo(Database db, Object entity) throws DbException {
+        return buildInsertSqlInfo(db, entity, null);
+    }
+
+    /**
+     * @param reuse SqlInfo of the previous row of a batch, reset and returned so its bind buffer is kept, may be null
+     */
+    public static com.frodo.app.framework.orm.sql.SqlInfo buildInsertSqlInfo(Database db, Object entity,
+                                                                            com.frodo.app.framework.orm.sql.SqlInfo reuse) throws DbException {
 
         List<KeyValue> keyValueList = entity2KeyValueList(db, entity);
         if (keyValueList.isEmpty()) return null;
 
-        com.frodo.app.framework.orm.sql.SqlInfo result = new com.frodo.app.framework.orm.sql.SqlInfo();
+        com.frodo.app.framework.orm.sql.SqlInfo result = reuse != null ? reuse : new com.frodo.app.framework.orm.sql.SqlInfo();
+        result.reset(null);
         StringBuffer sqlBuffer = new StringBuffer();
 
         sqlBuffer.append("INSERT INTO ")
@@ -217,12 +229,19 @@ public class SqlInfoBuilder {
     //*********************************************** others ***********************************************
 
     public static com.frodo.app.framework.orm.sql.SqlInfo buildCreateTableSqlInfo(Database db, Class<?> entityType) throws DbException {
+        return buildCreateTableSqlInfo(db, entityType, Table.get(db, entityType).tableName);
+    }
+
+    /**
+     * @param tableName create the entity table under another name, e.g. the copy target of a migration
+     */
+    public static SqlInfo buildCreateTableSqlInfo(Database db, Class<?> entityType, String tableName) throws DbException {
         Table table = Table.get(db, entityType);
         Id id = table.id;
 
         StringBuffer sqlBuffer = new StringBuffer();
         sqlBuffer.append("CREATE TABLE IF NOT EXISTS ")
-                 .append(table.tableName)
+                 .append(tableName)
                  .append(" ( ");
 
         if (id.isAutoIncrement()) {
@@ -236,18 +255,7 @@ public class SqlInfoBuilder {
             if (column instanceof Finder) {
                 continue;
             }
-            sqlBuffer.append("\"").append(column.getColumnName()).append("\"  ");
-            sqlBuffer.append(column.getColumnDbType());
-            if (ColumnUtils.isUnique(column.getColumnField())) {
-                sqlBuffer.append(" UNIQUE");
-            }
-            if (ColumnUtils.isNotNull(column.getColumnField())) {
-                sqlBuffer.append(" NOT NULL");
-            }
-            String check = ColumnUtils.getCheck(column.getColumnField());
-            if (check != null) {
-                sqlBuffer.append(" CHECK(").append(check).append(")");
-            }
+            appendColumnDefinition(sqlBuffer, column);
             sqlBuffer.append(",");
         }
 
@@ -256,6 +264,159 @@ public class SqlInfoBuilder {
         return new SqlInfo(sqlBuffer.toString());
     }
 
+    /**
+     * "ALTER TABLE ... ADD COLUMN" can not add UNIQUE columns, nor NOT NULL columns without a default value.
+     */
+    public static SqlInfo buildAddColumnSqlInfo(Table table, Column column) {
+        StringBuffer sqlBuffer = new StringBuffer();
+        sqlBuffer.append("ALTER TABLE ").append(table.tableName).append(" ADD COLUMN ");
+        appendColumnDefinition(sqlBuffer, column);
+        return new SqlInfo(sqlBuffer.toString());
+    }
+
+    private static void appendColumnDefinition(StringBuffer sqlBuffer, Column column) {
+        sqlBuffer.append("\"").append(column.getColumnName()).append("\"  ");
+        sqlBuffer.append(column.getColumnDbType());
+        if (ColumnUtils.isUnique(column.getColumnField())) {
+            sqlBuffer.append(" UNIQUE");
+        }
+        if (ColumnUtils.isNotNull(column.getColumnField())) {
+            sqlBuffer.append(" NOT NULL");
+        }
+        String check = ColumnUtils.getCheck(column.getColumnField());
+        if (check != null) {
+            sqlBuffer.append(" CHECK(").append(check).append(")");
+        }
+    }
+
+    public static List<SqlInfo> buildCreateIndexSqlInfos(Database db, Class<?> entityType) throws DbException {
+        Table table = Table.get(db, entityType);
+        List<SqlInfo> result = new ArrayList<>();
+
+        List<Column> columns = new ArrayList<>(table.columnMap.size() + 1);
+        columns.add(table.id);
+        columns.addAll(table.columnMap.values());
+        for (Column column : columns) {
+            if (column instanceof Finder) {
+                continue;
+            }
+            Index index = column.getColumnField().getAnnotation(Index.class);
+            if (index != null) {
+                result.add(buildCreateIndexSqlInfo(table.tableName, index.name(), index.unique(), column.getColumnName()));
+            }
+        }
+
+        Index typeIndex = entityType.getAnnotation(Index.class);
+        if (typeIndex != null) {
+            result.add(buildCreateIndexSqlInfo(table.tableName, typeIndex.name(), typeIndex.unique(), typeIndex.columns()));
+        }
+        Indexes typeIndexes = entityType.getAnnotation(Indexes.class);
+        if (typeIndexes != null) {
+            for (Index index : typeIndexes.value()) {
+                result.add(buildCreateIndexSqlInfo(table.tableName, index.name(), index.unique(), index.columns()));
+            }
+        }
+        return result;
+    }
+
+    private static SqlInfo buildCreateIndexSqlInfo(String tableName, String indexName, boolean unique, String... columnNames) throws DbException {
+        if (columnNames == null || columnNames.length == 0) {
+            throw new DbException("index on table[" + tableName + "] has no columns");
+        }
+
+        StringBuilder nameBuilder = new StringBuilder();
+        if (TextUtils.isEmpty(indexName)) {
+            nameBuilder.append(tableName);
+            for (String columnName : columnNames) {
+                nameBuilder.append("_").append(columnName);
+            }
+            nameBuilder.append("_index");
+        } else {
+            nameBuilder.append(indexName);
+        }
+
+        StringBuilder sqlBuilder = new StringBuilder("CREATE ");
+        if (unique) {
+            sqlBuilder.append("UNIQUE ");
+        }
+        sqlBuilder.append("INDEX IF NOT EXISTS \"").append(nameBuilder).append("\" ON ")
+                  .append(tableName)
+                  .append(" (");
+        for (String columnName : columnNames) {
+            sqlBuilder.append("\"").append(columnName).append("\",");
+        }
+        sqlBuilder.deleteCharAt(sqlBuilder.length() - 1);
+        sqlBuilder.append(")");
+        return new SqlInfo(sqlBuilder.toString());
+    }
+
+    /**
+     * Build the shadow full text table of {@link com.frodo.app.framework.orm.annotation.FullText} columns,
+     * the triggers keeping it in sync with the entity table and the statement filling it from existing rows.
+     * The full text docid is the rowid of the entity table.
+     *
+     * @return empty if the entity has no full text column
+     */
+    public static List<SqlInfo> buildCreateFullTextSqlInfos(Database db, Class<?> entityType) throws DbException {
+        Table table = Table.get(db, entityType);
+        List<SqlInfo> result = new ArrayList<>();
+        if (table.fullTextColumns.isEmpty()) {
+            return result;
+        }
+
+        String ftsTableName = TableUtils.getFullTextTableName(table.tableName);
+        StringBuilder columns = new StringBuilder();
+        StringBuilder newValues = new StringBuilder();
+        for (Column column : table.fullTextColumns) {
+            columns.append(",\"").append(column.getColumnName()).append("\"");
+            newValues.append(",new.\"").append(column.getColumnName()).append("\"");
+        }
+
+        result.add(new SqlInfo("CREATE VIRTUAL TABLE " + ftsTableName + " USING fts3(" + columns.substring(1) + ")"));
+
+        String deleteOld = "DELETE FROM " + ftsTableName + " WHERE docid = old.rowid;";
+        String deleteNew = "DELETE FROM " + ftsTableName + " WHERE docid = new.rowid;";
+        String insertNew = "INSERT INTO " + ftsTableName + " (docid" + columns + ") VALUES (new.rowid" + newValues + ");";
+        // "REPLACE INTO" does not fire delete triggers and the replacing row may get another rowid than the
+        // replaced one (a primary key which is not the rowid), so the docid of the replaced row is deleted before
+        String deleteReplaced = "DELETE FROM " + ftsTableName + " WHERE docid IN (SELECT rowid FROM " + table.tableName
+                + " WHERE \"" + table.id.getColumnName() + "\" = new.\"" + table.id.getColumnName() + "\");";
+        result.add(new SqlInfo("CREATE TRIGGER IF NOT EXISTS " + getFullTextReplaceTriggerName(table.tableName)
+                + " BEFORE INSERT ON " + table.tableName + " BEGIN " + deleteReplaced + " END"));
+        result.add(new SqlInfo("CREATE TRIGGER IF NOT EXISTS " + ftsTableName + "_ai AFTER INSERT ON " + table.tableName
+                + " BEGIN " + deleteNew + " " + insertNew + " END"));
+        result.add(new SqlInfo("CREATE TRIGGER IF NOT EXISTS " + ftsTableName + "_au AFTER UPDATE ON " + table.tableName
+                + " BEGIN " + deleteOld + " " + deleteNew + " " + insertNew + " END"));
+        result.add(new SqlInfo("CREATE TRIGGER IF NOT EXISTS " + ftsTableName + "_ad AFTER DELETE ON " + table.tableName
+                + " BEGIN " + deleteOld + " END"));
+
+        result.add(new SqlInfo("INSERT INTO " + ftsTableName + " (docid" + columns + ") SELECT rowid" + columns
+                + " FROM " + table.tableName));
+        return result;
+    }
+
+    /**
+     * Drop the full text table and the triggers of {@link #buildCreateFullTextSqlInfos(Database, Class)}.
+     */
+    public static List<SqlInfo> buildDropFullTextSqlInfos(String tableName) {
+        String ftsTableName = TableUtils.getFullTextTableName(tableName);
+        List<SqlInfo> result = new ArrayList<>(5);
+        result.add(new SqlInfo("DROP TRIGGER IF EXISTS " + getFullTextReplaceTriggerName(tableName)));
+        result.add(new SqlInfo("DROP TRIGGER IF EXISTS " + ftsTableName + "_ai"));
+        result.add(new SqlInfo("DROP TRIGGER IF EXISTS " + ftsTableName + "_au"));
+        result.add(new SqlInfo("DROP TRIGGER IF EXISTS " + ftsTableName + "_ad"));
+        result.add(new SqlInfo("DROP TABLE IF EXISTS " + ftsTableName));
+        return result;
+    }
+
+    /**
+     * Name of the trigger removing the full text row of a replaced row, missing from the full text tables
+     * created before it, which are created again.
+     */
+    public static String getFullTextReplaceTriggerName(String tableName) {
+        return TableUtils.getFullTextTableName(tableName) + "_bi";
+    }
+
     private static KeyValue column2KeyValue(Object entity, Column column) throws DbException {
         KeyValue kv = null;
         String key = column.getColumnName();
@@ -0,0 +1,189 @@
+package com.frodo.app.framework.orm.sql;
+
+import com.frodo.app.framework.toolbox.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency metrics grouped by normalized sql template.
+ * Literals are replaced by "?", so "SELECT * FROM movie WHERE id = 3" and "... id = 4" share one template.
+ * The number of templates is bounded, the overflow is counted under {@link #OTHER_TEMPLATE}.
+ */
+public class SqlMetrics {
+
+    public static final String OTHER_TEMPLATE = "<other>";
+    private static final int DEFAULT_MAX_TEMPLATES = 256;
+
+    private final ConcurrentHashMap<String, TemplateMetrics> templates = new ConcurrentHashMap<>();
+    private final int maxTemplates;
+
+    public SqlMetrics() {
+        this(DEFAULT_MAX_TEMPLATES);
+    }
+
+    public SqlMetrics(int maxTemplates) {
+        this.maxTemplates = maxTemplates;
+    }
+
+    /**
+     * @param entityType    entity of the statement, may be null
+     * @param sql           executed sql
+     * @param costNanos     time spent, including cursor iteration for queries
+     * @param rowsReturned  rows read from the cursor
+     * @param rowsHydrated  entities built from those rows
+     */
+    public void record(Class<?> entityType, String sql, long costNanos, int rowsReturned, int rowsHydrated) {
+        String template = normalize(sql);
+        TemplateMetrics metrics = templates.get(template);
+        if (metrics == null) {
+            if (templates.size() >= maxTemplates) {
+                template = OTHER_TEMPLATE;
+                entityType = null;
+            }
+            TemplateMetrics created = new TemplateMetrics(template, entityType == null ? null : entityType.getName());
+            metrics = templates.putIfAbsent(template, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        metrics.histogram.recordNanos(costNanos);
+        metrics.rowsReturned.addAndGet(rowsReturned);
+        metrics.rowsHydrated.addAndGet(rowsHydrated);
+    }
+
+    /**
+     * @return snapshots ordered by total time, most expensive first
+     */
+    public List<Snapshot> snapshot() {
+        List<Snapshot> result = new ArrayList<>(templates.size());
+        for (TemplateMetrics metrics : templates.values()) {
+            result.add(new Snapshot(metrics));
+        }
+        Collections.sort(result, new Comparator<Snapshot>() {
+            @Override
+            public int compare(Snapshot lhs, Snapshot rhs) {
+                return lhs.totalMicros < rhs.totalMicros ? 1 : (lhs.totalMicros == rhs.totalMicros ? 0 : -1);
+            }
+        });
+        return result;
+    }
+
+    public void reset() {
+        templates.clear();
+    }
+
+    /**
+     * Replace string and number literals with "?" and collapse "IN (...)" lists.
+     *
+     * @param sql sql text
+     * @return sql template
+     */
+    public static String normalize(String sql) {
+        if (sql == null) return null;
+
+        int length = sql.length();
+        StringBuilder sb = new StringBuilder(length);
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                i++;
+                while (i < length) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                i++;
+                sb.append('?');
+            } else if (isNumberStart(sql, i) && !isIdentifierPart(sb)) {
+                while (i < length && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.' || sql.charAt(i) == '-')) {
+                    i++;
+                }
+                sb.append('?');
+            } else if (c == '"') {
+                int end = sql.indexOf('"', i + 1);
+                end = end < 0 ? length : end + 1;
+                sb.append(sql, i, end);
+                i = end;
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        return collapseInLists(sb.toString());
+    }
+
+    private static boolean isNumberStart(String sql, int i) {
+        char c = sql.charAt(i);
+        if (Character.isDigit(c)) return true;
+        return c == '-' && i + 1 < sql.length() && Character.isDigit(sql.charAt(i + 1));
+    }
+
+    private static boolean isIdentifierPart(StringBuilder sb) {
+        if (sb.length() == 0) return false;
+        char last = sb.charAt(sb.length() - 1);
+        return Character.isLetterOrDigit(last) || last == '_';
+    }
+
+    private static String collapseInLists(String template) {
+        if (template.indexOf("?,") < 0 && template.indexOf("?, ") < 0) return template;
+        return template.replaceAll("\\?(\\s*,\\s*\\?)+", "?");
+    }
+
+    private static final class TemplateMetrics {
+        private final String template;
+        private final String entityName;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final AtomicLong rowsReturned = new AtomicLong();
+        private final AtomicLong rowsHydrated = new AtomicLong();
+
+        private TemplateMetrics(String template, String entityName) {
+            this.template = template;
+            this.entityName = entityName;
+        }
+    }
+
+    public static final class Snapshot {
+        public final String template;
+        /**
+         * entity class name, null for raw sql
+         */
+        public final String entityName;
+        public final long count;
+        public final long totalMicros;
+        public final long p50Micros;
+        public final long p99Micros;
+        public final long maxMicros;
+        public final long rowsReturned;
+        public final long rowsHydrated;
+
+        private Snapshot(TemplateMetrics metrics) {
+            this.template = metrics.template;
+            this.entityName = metrics.entityName;
+            this.count = metrics.histogram.getCount();
+            this.totalMicros = metrics.histogram.getTotalMicros();
+            this.p50Micros = metrics.histogram.getPercentileMicros(50);
+            this.p99Micros = metrics.histogram.getPercentileMicros(99);
+            this.maxMicros = metrics.histogram.getMaxMicros();
+            this.rowsReturned = metrics.rowsReturned.get();
+            this.rowsHydrated = metrics.rowsHydrated.get();
+        }
+
+        @Override
+        public String toString() {
+            return template + " [count=" + count + ", total=" + totalMicros + "us, p50=" + p50Micros
+                    + "us, p99=" + p99Micros + "us, max=" + maxMicros + "us, rows=" + rowsReturned
+                    + ", hydrated=" + rowsHydrated + "]";
+        }
+    }
+}
@@ -12,9 +12,11 @@ import java.util.List;
 public class WhereBuilder {
 
     private final List<String> whereItems;
+    private final List<Condition> conditions;
 
     private WhereBuilder() {
         this.whereItems = new ArrayList<String>();
+        this.conditions = new ArrayList<Condition>();
     }
 
     /**
@@ -66,8 +68,25 @@ public class WhereBuilder {
         return this;
     }
 
+    /**
+     * add AND (where) group
+     */
+    public WhereBuilder and(WhereBuilder where) {
+        appendGroup(whereItems.isEmpty() ? null : "AND", where);
+        return this;
+    }
+
+    /**
+     * add OR (where) group
+     */
+    public WhereBuilder or(WhereBuilder where) {
+        appendGroup(whereItems.isEmpty() ? null : "OR", where);
+        return this;
+    }
+
     public WhereBuilder expr(String expr) {
         whereItems.add(" " + expr);
+        conditions.add(new Condition(expr));
         return this;
     }
 
@@ -80,6 +99,13 @@ public class WhereBuilder {
         return whereItems.size();
     }
 
+    /**
+     * @return the conditions in the order they were added, for databases which do not run the sql
+     */
+    public List<Condition> getConditions() {
+        return conditions;
+    }
+
     @Override
     public String toString() {
         if (whereItems.isEmpty()) {
@@ -92,6 +118,11 @@ public class WhereBuilder {
         return sb.toString();
     }
 
+    private void appendGroup(String conj, WhereBuilder where) {
+        whereItems.add((conj == null ? "" : " " + conj + " ") + "(" + where.toString() + ")");
+        conditions.add(new Condition(conj, where));
+    }
+
     private void appendCondition(String conj, String columnName, String op, Object value) {
         StringBuilder sqlSb = new StringBuilder();
 
@@ -114,6 +145,8 @@ public class WhereBuilder {
             op = "=";
         }
 
+        conditions.add(new Condition(conj, columnName, op, value));
+
         // append op & value
         if (value == null) {
             if ("=".equals(op)) {
@@ -218,4 +251,52 @@ public class WhereBuilder {
         }
         whereItems.add(sqlSb.toString());
     }
+
+    /**
+     * One item of the where clause: "conj columnName op value", a "conj (group)" or a raw expression.
+     */
+    public static final class Condition {
+        /**
+         * "AND", "OR" or null for the first condition
+         */
+        public final String conj;
+        public final String columnName;
+        /**
+         * upper case operator, "!=" and "==" are converted to "<>" and "="
+         */
+        public final String op;
+        public final Object value;
+        public final WhereBuilder group;
+        /**
+         * raw sql of {@link WhereBuilder#expr(String)}
+         */
+        public final String expr;
+
+        private Condition(String conj, String columnName, String op, Object value) {
+            this.conj = conj;
+            this.columnName = columnName;
+            this.op = op == null ? null : op.toUpperCase();
+            this.value = value;
+            this.group = null;
+            this.expr = null;
+        }
+
+        private Condition(String conj, WhereBuilder group) {
+            this.conj = conj;
+            this.columnName = null;
+            this.op = null;
+            this.value = null;
+            this.group = group;
+            this.expr = null;
+        }
+
+        private Condition(String expr) {
+            this.conj = null;
+            this.columnName = null;
+            this.op = null;
+            this.value = null;
+            this.group = null;
+            this.expr = expr;
+        }
+    }
 }
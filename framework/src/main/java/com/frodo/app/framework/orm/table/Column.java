@@ -2,8 +2,12 @@ package com.frodo.app.framework.orm.table;
 
 import com.frodo.app.framework.exception.DbException;
 import com.frodo.app.framework.orm.Cursor;
+import com.frodo.app.framework.orm.converter.BooleanFieldConverter;
 import com.frodo.app.framework.orm.converter.ColumnConverter;
 import com.frodo.app.framework.orm.converter.ColumnConverterFactory;
+import com.frodo.app.framework.orm.converter.DoubleFieldConverter;
+import com.frodo.app.framework.orm.converter.IntFieldConverter;
+import com.frodo.app.framework.orm.converter.LongFieldConverter;
 import com.frodo.app.framework.orm.sql.ColumnDbType;
 
 import java.lang.reflect.Field;
@@ -17,6 +21,10 @@ public class Column {
     protected final Field columnField;
     protected final ColumnConverter columnConverter;
     private final Object defaultValue;
+    /**
+     * int, long, double or boolean field whose converter reads the primitive, null otherwise
+     */
+    private final Class<?> primitiveType;
     private com.frodo.app.framework.orm.table.Table table;
     private int index = -1;
 
@@ -31,11 +39,36 @@ public class Column {
         }
         this.getMethod = ColumnUtils.getColumnGetMethod(entityType, field);
         this.setMethod = ColumnUtils.getColumnSetMethod(entityType, field);
+        this.primitiveType = getPrimitiveType(field, columnConverter);
+        if (this.primitiveType != null) {
+            this.columnField.setAccessible(true);
+        }
+    }
+
+    private static Class<?> getPrimitiveType(Field field, ColumnConverter<?> converter) {
+        Class<?> type = field.getType();
+        if ((type == int.class && converter instanceof IntFieldConverter)
+                || (type == long.class && converter instanceof LongFieldConverter)
+                || (type == double.class && converter instanceof DoubleFieldConverter)
+                || (type == boolean.class && converter instanceof BooleanFieldConverter)) {
+            return type;
+        }
+        return null;
     }
 
     @SuppressWarnings("unchecked")
     public void setValue2Entity(Object entity, Cursor cursor, int index) throws DbException {
         this.index = index;
+        // primitive fields are written directly, bypassing the setter, so the value is never boxed
+        if (primitiveType != null && !cursor.isNull(index)) {
+            try {
+                setPrimitive2Entity(entity, cursor, index);
+            } catch (Throwable e) {
+                throw new DbException(e);
+            }
+            return;
+        }
+
         Object value = columnConverter.getFieldValue(cursor, index);
         if (value == null && defaultValue == null) return;
 
@@ -55,6 +88,18 @@ public class Column {
         }
     }
 
+    private void setPrimitive2Entity(Object entity, Cursor cursor, int index) throws IllegalAccessException {
+        if (primitiveType == int.class) {
+            columnField.setInt(entity, ((IntFieldConverter) columnConverter).getIntFieldValue(cursor, index));
+        } else if (primitiveType == long.class) {
+            columnField.setLong(entity, ((LongFieldConverter) columnConverter).getLongFieldValue(cursor, index));
+        } else if (primitiveType == double.class) {
+            columnField.setDouble(entity, ((DoubleFieldConverter) columnConverter).getDoubleFieldValue(cursor, index));
+        } else {
+            columnField.setBoolean(entity, ((BooleanFieldConverter) columnConverter).getBooleanFieldValue(cursor, index));
+        }
+    }
+
     @SuppressWarnings("unchecked")
     public Object getColumnValue(Object entity) throws DbException {
         Object fieldValue = getFieldValue(entity);
@@ -5,6 +5,7 @@ import com.frodo.app.framework.orm.annotation.Check;
 import com.frodo.app.framework.orm.annotation.Column;
 import com.frodo.app.framework.orm.annotation.Finder;
 import com.frodo.app.framework.orm.annotation.Foreign;
+import com.frodo.app.framework.orm.annotation.FullText;
 import com.frodo.app.framework.orm.annotation.Id;
 import com.frodo.app.framework.orm.annotation.NotNull;
 import com.frodo.app.framework.orm.annotation.Transient;
@@ -18,36 +19,41 @@ import com.frodo.app.framework.toolbox.TextUtils;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 public class ColumnUtils {
 
-    private static final HashSet<String> DB_PRIMITIVE_TYPES = new HashSet<>(14);
+    /**
+     * identity set, read only after the static initializer
+     */
+    private static final Set<Class<?>> DB_PRIMITIVE_TYPES = Collections.newSetFromMap(new IdentityHashMap<Class<?>, Boolean>(28));
 
     static {
-        DB_PRIMITIVE_TYPES.add(int.class.getName());
-        DB_PRIMITIVE_TYPES.add(long.class.getName());
-        DB_PRIMITIVE_TYPES.add(short.class.getName());
-        DB_PRIMITIVE_TYPES.add(byte.class.getName());
-        DB_PRIMITIVE_TYPES.add(float.class.getName());
-        DB_PRIMITIVE_TYPES.add(double.class.getName());
-
-        DB_PRIMITIVE_TYPES.add(Integer.class.getName());
-        DB_PRIMITIVE_TYPES.add(Long.class.getName());
-        DB_PRIMITIVE_TYPES.add(Short.class.getName());
-        DB_PRIMITIVE_TYPES.add(Byte.class.getName());
-        DB_PRIMITIVE_TYPES.add(Float.class.getName());
-        DB_PRIMITIVE_TYPES.add(Double.class.getName());
-        DB_PRIMITIVE_TYPES.add(String.class.getName());
-        DB_PRIMITIVE_TYPES.add(byte[].class.getName());
+        DB_PRIMITIVE_TYPES.add(int.class);
+        DB_PRIMITIVE_TYPES.add(long.class);
+        DB_PRIMITIVE_TYPES.add(short.class);
+        DB_PRIMITIVE_TYPES.add(byte.class);
+        DB_PRIMITIVE_TYPES.add(float.class);
+        DB_PRIMITIVE_TYPES.add(double.class);
+
+        DB_PRIMITIVE_TYPES.add(Integer.class);
+        DB_PRIMITIVE_TYPES.add(Long.class);
+        DB_PRIMITIVE_TYPES.add(Short.class);
+        DB_PRIMITIVE_TYPES.add(Byte.class);
+        DB_PRIMITIVE_TYPES.add(Float.class);
+        DB_PRIMITIVE_TYPES.add(Double.class);
+        DB_PRIMITIVE_TYPES.add(String.class);
+        DB_PRIMITIVE_TYPES.add(byte[].class);
     }
 
     private ColumnUtils() {
     }
 
     public static boolean isDbPrimitiveType(Class<?> fieldType) {
-        return DB_PRIMITIVE_TYPES.contains(fieldType.getName());
+        return DB_PRIMITIVE_TYPES.contains(fieldType);
     }
 
     public static Method getColumnGetMethod(Class<?> entityType, Field field) throws DbException {
@@ -155,6 +161,10 @@ public class ColumnUtils {
         return field.getAnnotation(NotNull.class) != null;
     }
 
+    public static boolean isFullText(Field field) {
+        return field.getAnnotation(FullText.class) != null;
+    }
+
     /**
      * @param field
      * @return check.value or null
@@ -12,6 +12,7 @@ public class Finder extends com.frodo.app.framework.orm.table.Column {
 
     private final String valueColumnName;
     private final String targetColumnName;
+    private final int pageSize;
 
     Finder(Class<?> entityType, Field field) throws DbException {
         super(entityType, field);
@@ -20,6 +21,7 @@ public class Finder extends com.frodo.app.framework.orm.table.Column {
                 field.getAnnotation(com.frodo.app.framework.orm.annotation.Finder.class);
         this.valueColumnName = finder.valueColumn();
         this.targetColumnName = finder.targetColumn();
+        this.pageSize = finder.pageSize();
     }
 
     public Class<?> getTargetEntityType() {
@@ -38,7 +40,7 @@ public class Finder extends com.frodo.app.framework.orm.table.Column {
         if (columnType.equals(FinderLazyLoader.class)) {
             value = new FinderLazyLoader(this, finderValue);
         } else if (columnType.equals(List.class)) {
-            value = new FinderLazyLoader(this, finderValue).getAllFromDb();
+            value = new FinderLazyLoader(this, finderValue).getLazyList(pageSize);
         } else {
             value = new FinderLazyLoader(this, finderValue).getFirstFromDb();
         }
@@ -6,6 +6,7 @@ import com.frodo.app.framework.orm.converter.ColumnConverter;
 import com.frodo.app.framework.orm.converter.ColumnConverterFactory;
 import com.frodo.app.framework.orm.sql.ColumnDbType;
 import com.frodo.app.framework.orm.sql.ForeignLazyLoader;
+import com.frodo.app.framework.orm.sql.LazyList;
 
 import java.lang.reflect.Field;
 import java.util.List;
@@ -14,6 +15,7 @@ public class Foreign extends com.frodo.app.framework.orm.table.Column {
 
     private final String foreignColumnName;
     private final ColumnConverter foreignColumnConverter;
+    private final int pageSize;
 
     public Foreign(Class<?> entityType, Field field) throws DbException {
         super(entityType, field);
@@ -22,6 +24,7 @@ public class Foreign extends com.frodo.app.framework.orm.table.Column {
         Class<?> foreignColumnType =
                 TableUtils.getColumnOrId(getForeignEntityType(), foreignColumnName).columnField.getType();
         foreignColumnConverter = ColumnConverterFactory.getColumnConverter(foreignColumnType);
+        pageSize = field.getAnnotation(com.frodo.app.framework.orm.annotation.Foreign.class).pageSize();
     }
 
     public String getForeignColumnName() {
@@ -43,7 +46,7 @@ public class Foreign extends com.frodo.app.framework.orm.table.Column {
         if (columnType.equals(ForeignLazyLoader.class)) {
             value = new ForeignLazyLoader(this, fieldValue);
         } else if (columnType.equals(List.class)) {
-            value = new ForeignLazyLoader(this, fieldValue).getAllFromDb();
+            value = new ForeignLazyLoader(this, fieldValue).getLazyList(pageSize);
         } else {
             value = new ForeignLazyLoader(this, fieldValue).getFirstFromDb();
         }
@@ -74,6 +77,9 @@ public class Foreign extends com.frodo.app.framework.orm.table.Column {
             Class<?> columnType = columnField.getType();
             if (columnType.equals(ForeignLazyLoader.class)) {
                 columnValue = ((ForeignLazyLoader) fieldValue).getColumnValue();
+            } else if (fieldValue instanceof LazyList && !((LazyList) fieldValue).isLoaded()) {
+                // not read since it was loaded, the children are unchanged
+                columnValue = ((LazyList) fieldValue).getColumnValue();
             } else if (columnType.equals(List.class)) {
                 try {
                     List<?> foreignEntities = (List<?>) fieldValue;
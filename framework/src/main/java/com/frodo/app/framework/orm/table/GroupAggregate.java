@@ -0,0 +1,146 @@
+package com.frodo.app.framework.orm.table;
+
+import java.util.Arrays;
+
+/**
+ * Result of a "GROUP BY" aggregate query.
+ * Keys are the group column values, every group keeps its aggregate both as long and as double,
+ * so reading a group never parses strings or boxes numbers.
+ */
+public class GroupAggregate {
+
+    private String[] keys;
+    private long[] longValues;
+    private double[] doubleValues;
+    private int size;
+
+    /**
+     * open addressing index: key hash -> position + 1, 0 means empty
+     */
+    private int[] index;
+
+    public GroupAggregate() {
+        this(16);
+    }
+
+    public GroupAggregate(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 4);
+        keys = new String[capacity];
+        longValues = new long[capacity];
+        doubleValues = new double[capacity];
+        index = new int[tableSizeFor(capacity * 2)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public String keyAt(int position) {
+        checkPosition(position);
+        return keys[position];
+    }
+
+    public long longAt(int position) {
+        checkPosition(position);
+        return longValues[position];
+    }
+
+    public double doubleAt(int position) {
+        checkPosition(position);
+        return doubleValues[position];
+    }
+
+    public boolean containsKey(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    public long getLong(String key, long defaultValue) {
+        int position = indexOf(key);
+        return position < 0 ? defaultValue : longValues[position];
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        int position = indexOf(key);
+        return position < 0 ? defaultValue : doubleValues[position];
+    }
+
+    /**
+     * @param key group column value, may be null
+     * @return the position of key or -1
+     */
+    public int indexOf(String key) {
+        int mask = index.length - 1;
+        int slot = hash(key) & mask;
+        while (index[slot] != 0) {
+            int position = index[slot] - 1;
+            if (key == null ? keys[position] == null : key.equals(keys[position])) {
+                return position;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public void add(String key, long longValue, double doubleValue) {
+        int position = indexOf(key);
+        if (position >= 0) {
+            longValues[position] = longValue;
+            doubleValues[position] = doubleValue;
+            return;
+        }
+
+        if (size == keys.length) {
+            int capacity = size * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            longValues = Arrays.copyOf(longValues, capacity);
+            doubleValues = Arrays.copyOf(doubleValues, capacity);
+        }
+        keys[size] = key;
+        longValues[size] = longValue;
+        doubleValues[size] = doubleValue;
+        size++;
+
+        if (size * 2 > index.length) {
+            rehash(index.length * 2);
+        } else {
+            insertIndex(size - 1);
+        }
+    }
+
+    private void rehash(int indexSize) {
+        index = new int[indexSize];
+        for (int i = 0; i < size; i++) {
+            insertIndex(i);
+        }
+    }
+
+    private void insertIndex(int position) {
+        int mask = index.length - 1;
+        int slot = hash(keys[position]) & mask;
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = position + 1;
+    }
+
+    private void checkPosition(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("position: " + position + ", size: " + size);
+        }
+    }
+
+    private static int hash(String key) {
+        if (key == null) return 0;
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSizeFor(int capacity) {
+        int n = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        return n <= 0 ? 1 << 30 : n;
+    }
+}
@@ -20,7 +20,10 @@ import com.frodo.app.framework.exception.DbException;
 import com.frodo.app.framework.orm.Database;
 import com.frodo.app.framework.toolbox.TextUtils;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 
@@ -41,6 +44,10 @@ public class Table {
      * key: columnName
      */
     public final HashMap<String, Finder> finderMap;
+    /**
+     * columns annotated by {@link com.frodo.app.framework.orm.annotation.FullText}
+     */
+    public final List<Column> fullTextColumns;
     private boolean checkedDatabase;
 
     private Table(Database db, Class<?> entityType) throws DbException {
@@ -50,12 +57,16 @@ public class Table {
         this.columnMap = TableUtils.getColumnMap(entityType);
 
         finderMap = new HashMap<>();
+        List<Column> fullTextColumnList = new ArrayList<>(0);
         for (Column column : columnMap.values()) {
             column.setTable(this);
             if (column instanceof Finder) {
                 finderMap.put(column.getColumnName(), (Finder) column);
+            } else if (ColumnUtils.isFullText(column.getColumnField())) {
+                fullTextColumnList.add(column);
             }
         }
+        this.fullTextColumns = Collections.unmodifiableList(fullTextColumnList);
     }
 
     public static synchronized Table get(Database db, Class<?> entityType) throws DbException {
@@ -32,6 +32,21 @@ public class TableUtils {
         return table.name();
     }
 
+    public static String getFullTextTableName(String tableName) {
+        return tableName + "_fts";
+    }
+
+    /**
+     * @return shard name of the entity, null for the main database
+     */
+    public static String getShard(Class<?> entityType) {
+        Table table = entityType.getAnnotation(Table.class);
+        if (table != null && !TextUtils.isEmpty(table.shard())) {
+            return table.shard();
+        }
+        return null;
+    }
+
     public static String getExecAfterTableCreated(Class<?> entityType) {
         Table table = entityType.getAnnotation(Table.class);
         if (table != null) {
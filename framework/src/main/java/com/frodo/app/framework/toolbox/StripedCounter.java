@@ -0,0 +1,58 @@
+package com.frodo.app.framework.toolbox;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter for hot paths, in the spirit of Java 8 LongAdder.
+ * Threads add to one of several cells picked by their id, each cell on its own cache line,
+ * so concurrent increments rarely hit the same memory and {@link #sum()} adds the cells up.
+ * The sum is exact once the updates are over, and a close estimate while they are running.
+ */
+public class StripedCounter {
+
+    /**
+     * longs per cache line, a cell is padded to a line of its own
+     */
+    private static final int PADDING = 8;
+    private static final int STRIPES = stripeCount();
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    private static int stripeCount() {
+        int target = Math.min(Runtime.getRuntime().availableProcessors() * 2, 64);
+        int count = 1;
+        while (count < target) {
+            count <<= 1;
+        }
+        return count;
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long delta) {
+        cells.getAndAdd(cellIndex(), delta);
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    public void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            cells.set(i * PADDING, 0);
+        }
+    }
+
+    private static int cellIndex() {
+        long id = Thread.currentThread().getId();
+        // thread ids are sequential, spread them over the cells
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((h >>> 16) & (STRIPES - 1)) * PADDING;
+    }
+}
@@ -0,0 +1,291 @@
+package com.frodo.app.framework.cache;
+
+import com.frodo.app.framework.controller.IController;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AbstractCacheTest {
+
+    private MapCacheSystem cacheSystem;
+    private StringCache movies;
+    private StringCache books;
+
+    @Before
+    public void setUp() {
+        cacheSystem = new MapCacheSystem();
+        movies = new StringCache(cacheSystem, "movie/");
+        books = new StringCache(cacheSystem, "book/");
+    }
+
+    @Test
+    public void evictAllEmptiesTheCacheOnly() {
+        movies.put("alien", "1979");
+        movies.put("heat", "1995", 1, TimeUnit.HOURS);
+        books.put("dune", "1965");
+
+        movies.evictAll();
+        assertNull(movies.get("alien"));
+        assertNull(movies.get("heat"));
+        assertFalse(movies.isCached("heat"));
+        assertEquals("1965", books.get("dune"));
+        assertEquals(Collections.singleton("book/dune"), cacheSystem.entries.keySet());
+        assertEquals(2, movies.stats().getEvictionCount(EvictionCause.EXPLICIT));
+
+        // nothing is left to evict
+        movies.evictAll();
+        assertEquals(2, movies.stats().getEvictionCount(EvictionCause.EXPLICIT));
+    }
+
+    @Test
+    public void sizeEvictionDropsTheWriteRecord() {
+        movies.put("alien", "1979", 1, TimeUnit.HOURS);
+        movies.put("heat", "1995");
+        int pending = TimingWheel.getDefault().pendingCount();
+
+        cacheSystem.evictForSize("movie/alien");
+        assertFalse(movies.isCached("alien"));
+        // the timeout of the evicted entry is cancelled
+        assertEquals(pending - 1, TimingWheel.getDefault().pendingCount());
+
+        // only the entry still cached is counted
+        movies.evictAll();
+        assertEquals(1, movies.stats().getEvictionCount(EvictionCause.EXPLICIT));
+    }
+
+    @Test
+    public void sizeEvictionOfAnotherCacheKeepsTheWriteRecord() {
+        movies.put("alien", "1979");
+        cacheSystem.evictForSize("book/alien");
+        movies.evictAll();
+        assertEquals(1, movies.stats().getEvictionCount(EvictionCause.EXPLICIT));
+    }
+
+    @Test
+    public void expiredEntryIsEvicted() throws InterruptedException {
+        movies.put("alien", "1979", 50, TimeUnit.MILLISECONDS);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cacheSystem.entries.containsKey("movie/alien") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(movies.isCached("alien"));
+        assertEquals(1, movies.stats().getEvictionCount(EvictionCause.EXPIRED));
+        assertEquals(EvictionCause.EXPIRED, cacheSystem.lastEvictionCause);
+    }
+
+    @Test
+    public void closedCacheStopsListening() {
+        assertEquals(2, cacheSystem.listeners.size());
+        movies.close();
+        books.close();
+        assertTrue(cacheSystem.listeners.isEmpty());
+    }
+
+    /**
+     * stores its entries in the cache system under a prefix of its own, as the caches of an app do
+     */
+    private static final class StringCache extends AbstractCache<String, String> {
+        private final String prefix;
+
+        StringCache(CacheSystem cacheSystem, String prefix) {
+            super(cacheSystem, Type.INTERNAL);
+            this.prefix = prefix;
+        }
+
+        @Override
+        public String get(String key) {
+            return getCacheSystem().findCacheByType(getSystemKey(key), String.class, getType());
+        }
+
+        @Override
+        public void put(String key, String value) {
+            put(key, value, 0, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void put(String key, String value, long ttl, TimeUnit unit) {
+            getCacheSystem().put(getSystemKey(key), value, getType());
+            recordWrite(key, getTimeToLive(ttl, unit));
+        }
+
+        @Override
+        public boolean isCached(String key) {
+            return getCacheSystem().existCacheByType(getSystemKey(key), getType());
+        }
+
+        @Override
+        public boolean isExpired() {
+            return false;
+        }
+
+        @Override
+        public void evict(String key) {
+            evict(key, EvictionCause.EXPLICIT);
+            recordEvict(key);
+        }
+
+        @Override
+        protected void evict(String key, EvictionCause cause) {
+            getCacheSystem().evict(getSystemKey(key), getType(), cause);
+        }
+
+        @Override
+        public void evictAll() {
+            evictAllWritten();
+        }
+
+        @Override
+        protected String getSystemKey(String key) {
+            return prefix + key;
+        }
+    }
+
+    /**
+     * {@link Cache.Type#INTERNAL} entries in a map, the storage key is the key itself
+     */
+    private static final class MapCacheSystem implements CacheSystem {
+        final Map<String, Object> entries = new ConcurrentHashMap<>();
+        final List<EvictionListener> listeners = new CopyOnWriteArrayList<>();
+        volatile EvictionCause lastEvictionCause;
+
+        void evictForSize(String key) {
+            entries.remove(key);
+            for (EvictionListener listener : listeners) {
+                listener.onEvicted(key, EvictionCause.SIZE);
+            }
+        }
+
+        @Override
+        public IController getController() {
+            return null;
+        }
+
+        @Override
+        public String systemName() {
+            return "MapCacheSystem";
+        }
+
+        @Override
+        public String getCacheDir() {
+            return null;
+        }
+
+        @Override
+        public void setCacheDir(String dir) {
+        }
+
+        @Override
+        public ValueCodec getValueCodec() {
+            return null;
+        }
+
+        @Override
+        public void setValueCodec(ValueCodec codec) {
+        }
+
+        @Override
+        public boolean existCacheByType(String key, Cache.Type type) {
+            return entries.containsKey(key);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T findCacheByType(String key, Type classType, Cache.Type type) {
+            return (T) entries.get(key);
+        }
+
+        @Override
+        public <K, V> boolean put(K key, V value, Cache.Type type) {
+            entries.put(key.toString(), value);
+            return true;
+        }
+
+        @Override
+        public <K, V> boolean put(K key, V value, Cache.Type type, long ttl, TimeUnit unit) {
+            return put(key, value, type);
+        }
+
+        @Override
+        public void evict(String key) {
+            entries.remove(key);
+        }
+
+        @Override
+        public void evict(String key, Cache.Type type, EvictionCause cause) {
+            entries.remove(key);
+            lastEvictionCause = cause;
+        }
+
+        @Override
+        public void evictAll() {
+            entries.clear();
+        }
+
+        @Override
+        public void addEvictionListener(EvictionListener listener) {
+            listeners.add(listener);
+        }
+
+        @Override
+        public void removeEvictionListener(EvictionListener listener) {
+            listeners.remove(listener);
+        }
+
+        @Override
+        public String getStorageKey(String key, Cache.Type type) {
+            return key;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public Map<Cache.Type, CacheStats> stats() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public boolean existCacheInInternal(String key) {
+            return entries.containsKey(key);
+        }
+
+        @Override
+        public <T> T findCacheFromInternal(String key, Type classType) {
+            return findCacheByType(key, classType, Cache.Type.INTERNAL);
+        }
+
+        @Override
+        public boolean existCacheInDatabase(String sql) {
+            return false;
+        }
+
+        @Override
+        public <T> T findCacheFromDatabase(String sql, Type classType) {
+            return null;
+        }
+
+        @Override
+        public boolean existCacheInDisk(String fileName) {
+            return false;
+        }
+
+        @Override
+        public <T> T findCacheFromDisk(String fileName, Object clazz) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.frodo.app.framework.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DiskLruCacheTest {
+
+    private File directory;
+    private DiskLruCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("disk-lru-cache").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (cache != null) {
+            cache.close();
+        }
+        deleteRecursively(directory);
+    }
+
+    private DiskLruCache open(long maxSize) throws IOException {
+        if (cache != null) {
+            cache.close();
+        }
+        cache = DiskLruCache.open(directory, maxSize);
+        return cache;
+    }
+
+    @Test
+    public void reopenKeepsEntriesAndRemovals() throws IOException {
+        open(1024);
+        cache.putString("a", "one");
+        cache.putString("b", "two");
+        cache.putString("a", "three");
+        cache.remove("b");
+
+        open(1024);
+        assertEquals("three", cache.getString("a"));
+        assertNull(cache.getString("b"));
+        assertEquals(1, cache.count());
+        assertEquals(5, cache.size());
+    }
+
+    @Test
+    public void reopenAfterTruncatedJournalDropsTheLostEntry() throws IOException {
+        open(1024);
+        cache.putString("a", "one");
+        cache.putString("b", "two");
+        cache.close();
+        cache = null;
+
+        // the last journal line was cut by a crash, and a temporary file was left behind
+        File journal = new File(directory, DiskLruCache.JOURNAL_FILE);
+        RandomAccessFile file = new RandomAccessFile(journal, "rw");
+        try {
+            file.setLength(file.length() - 3);
+        } finally {
+            file.close();
+        }
+        File temp = new File(directory, "c.1.tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(new byte[]{1, 2, 3});
+        } finally {
+            out.close();
+        }
+
+        open(1024);
+        assertEquals("one", cache.getString("a"));
+        assertNull(cache.getString("b"));
+        assertFalse("entry file without journal line", new File(directory, "b").exists());
+        assertFalse("temporary file", temp.exists());
+        assertEquals(1, cache.count());
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void reopenAfterTruncatedEntryFileDropsTheEntry() throws IOException {
+        open(1024);
+        cache.putString("a", "one");
+        cache.putString("b", "two");
+        cache.close();
+        cache = null;
+
+        RandomAccessFile file = new RandomAccessFile(new File(directory, "b"), "rw");
+        try {
+            file.setLength(1);
+        } finally {
+            file.close();
+        }
+
+        open(1024);
+        assertEquals("one", cache.getString("a"));
+        assertNull(cache.getString("b"));
+        assertEquals(1, cache.count());
+    }
+
+    @Test
+    public void reopenAfterCompaction() throws IOException {
+        open(1024);
+        cache.putString("b", "kept");
+        for (int i = 0; i < 2100; i++) {
+            cache.putString("a", "v" + i);
+        }
+        // rebuilt with one line per entry when it became mostly redundant
+        assertTrue("journal compacted", journalLines().size() < 2100);
+
+        open(1024);
+        assertEquals("v2099", cache.getString("a"));
+        assertEquals("kept", cache.getString("b"));
+        assertEquals(2, cache.count());
+    }
+
+    @Test
+    public void reopenAfterCrashDuringCompaction() throws IOException {
+        open(1024);
+        cache.putString("a", "one");
+        cache.close();
+        cache = null;
+
+        // the old journal was deleted before the new one was renamed
+        File journal = new File(directory, DiskLruCache.JOURNAL_FILE);
+        assertTrue(journal.renameTo(new File(directory, DiskLruCache.JOURNAL_FILE_TEMP)));
+
+        open(1024);
+        assertEquals("one", cache.getString("a"));
+        assertTrue(journal.exists());
+    }
+
+    @Test
+    public void reopenAfterEvictionKeepsTheRecentlyUsedEntries() throws IOException {
+        open(10);
+        final List<String> evicted = new ArrayList<>();
+        cache.setEvictionListener(new EvictionListener() {
+            @Override
+            public void onEvicted(String key, EvictionCause cause) {
+                assertEquals(EvictionCause.SIZE, cause);
+                evicted.add(key);
+            }
+        });
+        cache.putString("a", "1111");
+        cache.putString("b", "2222");
+        // a becomes the most recently used, b is evicted to make room for c
+        cache.getString("a");
+        cache.putString("c", "3333");
+        assertEquals(1, evicted.size());
+        assertEquals("b", evicted.get(0));
+        cache.flush();
+
+        open(10);
+        assertEquals("1111", cache.getString("a"));
+        assertNull(cache.getString("b"));
+        assertEquals("3333", cache.getString("c"));
+        assertFalse(new File(directory, "b").exists());
+
+        // the recency order survived the reopen: a was read last, so c is evicted next
+        cache.getString("a");
+        cache.putString("d", "4444");
+        assertNull(cache.getString("c"));
+        assertEquals("1111", cache.getString("a"));
+    }
+
+    private List<String> journalLines() throws IOException {
+        List<String> lines = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(new File(directory, DiskLruCache.JOURNAL_FILE)), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,111 @@
+package com.frodo.app.framework.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MemoryCacheTest {
+
+    private static final Weigher<String, String> LENGTH_WEIGHER = new Weigher<String, String>() {
+        @Override
+        public int weigh(String key, String value) {
+            return value.length();
+        }
+    };
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() {
+        final List<String> evicted = new ArrayList<>();
+        MemoryCache<String, String> cache = new MemoryCache<String, String>(3, null, 1) {
+            @Override
+            protected void onEvicted(String key, String value) {
+                evicted.add(key);
+            }
+        };
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        assertEquals("1", cache.get("a"));
+        cache.put("d", "4");
+
+        assertEquals(Collections.singletonList("b"), evicted);
+        assertFalse(cache.containsKey("b"));
+        assertTrue(cache.containsKey("a"));
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void replacedAndTooHeavyValues() {
+        MemoryCache<String, String> cache = new MemoryCache<>(8, LENGTH_WEIGHER, 2);
+        assertNull(cache.put("k", "abc"));
+        assertEquals("abc", cache.put("k", "de"));
+        assertEquals(2, cache.weight());
+
+        // a segment owns half of the weight, the heavier value replaces nothing and is not cached
+        assertEquals("de", cache.put("k", "abcde"));
+        assertNull(cache.get("k"));
+        assertEquals(0, cache.weight());
+    }
+
+    @Test
+    public void concurrentWritersKeepTheWeightWithinBounds() throws InterruptedException {
+        final MemoryCache<String, String> cache = new MemoryCache<>(1000, LENGTH_WEIGHER, 8);
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < 5000; i++) {
+                            String key = thread + "-" + (i % 300);
+                            if (i % 7 == 0) {
+                                cache.remove(key);
+                            } else {
+                                cache.put(key, i % 2 == 0 ? "even" : "odd");
+                                cache.get(thread + "-" + (i % 50));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        assertTrue("writers done", done.await(30, TimeUnit.SECONDS));
+        assertNull(error.get());
+
+        long weight = 0;
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < 300; i++) {
+                String value = cache.get(t + "-" + i);
+                if (value != null) {
+                    weight += value.length();
+                }
+            }
+        }
+        assertEquals(weight, cache.weight());
+        assertTrue("weight " + weight, weight <= cache.getMaxWeight());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weight());
+    }
+}
@@ -0,0 +1,187 @@
+package com.frodo.app.framework.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class SegmentStoreTest {
+
+    private static final int SEGMENT_SIZE = 256;
+    /**
+     * header, a key of 2 characters, the value and the CRC: 7 records per segment
+     */
+    private static final int VALUE_SIZE = 20;
+    private static final int RECORD_SIZE = 8 + 2 + VALUE_SIZE + 4;
+
+    private File directory;
+    private SegmentStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("segment-store").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        if (store != null) {
+            store.close();
+        }
+        DiskLruCacheTest.deleteRecursively(directory);
+    }
+
+    private SegmentStore open(long maxSize) throws IOException {
+        if (store != null) {
+            store.close();
+        }
+        store = SegmentStore.open(directory, maxSize, SEGMENT_SIZE, SegmentStore.DEFAULT_COMPACTION_THRESHOLD);
+        return store;
+    }
+
+    @Test
+    public void reopenKeepsEntriesAndRemovals() throws IOException {
+        open(SEGMENT_SIZE * 8);
+        store.put("k0", value(0));
+        store.put("k1", value(1));
+        store.put("k0", value(2));
+        store.remove("k1");
+
+        open(SEGMENT_SIZE * 8);
+        assertArrayEquals(value(2), store.get("k0"));
+        assertNull(store.get("k1"));
+        assertEquals(1, store.count());
+    }
+
+    @Test
+    public void reopenAfterTruncatedWriteDropsTheTornRecord() throws IOException {
+        open(SEGMENT_SIZE * 8);
+        store.put("k0", value(0));
+        store.put("k1", value(1));
+        store.close();
+        store = null;
+
+        // the end of the second record never reached the file
+        RandomAccessFile file = new RandomAccessFile(new File(directory, "segment-00000001.dat"), "rw");
+        try {
+            file.seek(RECORD_SIZE + RECORD_SIZE / 2);
+            file.write(new byte[RECORD_SIZE / 2]);
+        } finally {
+            file.close();
+        }
+
+        open(SEGMENT_SIZE * 8);
+        assertArrayEquals(value(0), store.get("k0"));
+        assertNull(store.get("k1"));
+        assertEquals(1, store.count());
+
+        // the next record is appended over the torn one
+        store.put("k2", value(2));
+        open(SEGMENT_SIZE * 8);
+        assertArrayEquals(value(0), store.get("k0"));
+        assertNull(store.get("k1"));
+        assertArrayEquals(value(2), store.get("k2"));
+        assertEquals(2, store.count());
+    }
+
+    @Test
+    public void reopenAfterCompactionKeepsTheLatestValues() throws Exception {
+        open(SEGMENT_SIZE * 16);
+        for (int i = 0; i < 7; i++) {
+            store.put("k" + i, value(i));
+        }
+        // the first segment is full: overwriting 4 of its 7 records passes the threshold
+        for (int i = 0; i < 4; i++) {
+            store.put("k" + i, value(10 + i));
+        }
+        File first = new File(directory, "segment-00000001.dat");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (first.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse("first segment compacted", first.exists());
+        assertLatestValues();
+
+        open(SEGMENT_SIZE * 16);
+        assertLatestValues();
+        assertEquals(7, store.count());
+    }
+
+    private void assertLatestValues() throws IOException {
+        for (int i = 0; i < 7; i++) {
+            assertArrayEquals("k" + i, value(i < 4 ? 10 + i : i), store.get("k" + i));
+        }
+    }
+
+    @Test
+    public void reopenAfterEvictionDropsTheOldestSegment() throws IOException {
+        open(SEGMENT_SIZE * 2);
+        final List<String> evicted = new ArrayList<>();
+        store.setEvictionListener(new EvictionListener() {
+            @Override
+            public void onEvicted(String key, EvictionCause cause) {
+                assertEquals(EvictionCause.SIZE, cause);
+                evicted.add(key);
+            }
+        });
+        // three segments of 7 records, the first one is dropped when the third one is created
+        for (int i = 0; i < 15; i++) {
+            store.put(key(i), value(i));
+        }
+        assertEquals(Arrays.asList("k0", "k1", "k2", "k3", "k4", "k5", "k6"), sorted(evicted));
+        assertEquals(SEGMENT_SIZE * 2, store.size());
+
+        open(SEGMENT_SIZE * 2);
+        for (int i = 0; i < 15; i++) {
+            if (i < 7) {
+                assertNull(key(i), store.get(key(i)));
+            } else {
+                assertArrayEquals(key(i), value(i), store.get(key(i)));
+            }
+        }
+        assertEquals(8, store.count());
+    }
+
+    @Test
+    public void evictAllSurvivesReopen() throws IOException {
+        open(SEGMENT_SIZE * 8);
+        store.put("k0", value(0));
+        store.evictAll();
+        assertEquals(0, store.count());
+
+        open(SEGMENT_SIZE * 8);
+        assertNull(store.get("k0"));
+        assertEquals(0, store.count());
+    }
+
+    /**
+     * keys of 2 characters, so every record has the same size
+     */
+    private static String key(int i) {
+        return i < 10 ? "k" + i : String.valueOf(i);
+    }
+
+    private static byte[] value(int seed) {
+        byte[] value = new byte[VALUE_SIZE];
+        Arrays.fill(value, (byte) seed);
+        return value;
+    }
+
+    private static List<String> sorted(List<String> keys) {
+        List<String> copy = new ArrayList<>(keys);
+        Collections.sort(copy);
+        return copy;
+    }
+}
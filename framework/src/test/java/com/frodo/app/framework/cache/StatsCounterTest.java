@@ -0,0 +1,92 @@
+package com.frodo.app.framework.cache;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StatsCounterTest {
+
+    @Test
+    public void snapshotCountsLookupsLoadsAndEvictionsByCause() {
+        StatsCounter counter = new StatsCounter();
+        counter.recordHit();
+        counter.recordHit();
+        counter.recordHit();
+        counter.recordMiss();
+        counter.recordLoadSuccess(TimeUnit.MILLISECONDS.toNanos(1));
+        counter.recordLoadFailure(TimeUnit.MILLISECONDS.toNanos(3));
+        counter.recordEviction(EvictionCause.SIZE);
+        counter.recordEvictions(EvictionCause.EXPIRED, 4);
+
+        CacheStats stats = counter.snapshot(10, -1);
+        assertEquals(4, stats.getRequestCount());
+        assertEquals(0.75, stats.getHitRate(), 0);
+        assertEquals(0.25, stats.getMissRate(), 0);
+        assertEquals(1, stats.getLoadSuccessCount());
+        assertEquals(1, stats.getLoadFailureCount());
+        assertEquals(2000, stats.getMeanLoadMicros());
+        assertEquals(3000, stats.getMaxLoadMicros());
+        // percentiles are bucket bounds, accurate to a quarter
+        assertTrue("p99 " + stats.getP99LoadMicros(), stats.getP99LoadMicros() >= 3000 && stats.getP99LoadMicros() <= 3750);
+        assertEquals(1, stats.getEvictionCount(EvictionCause.SIZE));
+        assertEquals(4, stats.getEvictionCount(EvictionCause.EXPIRED));
+        assertEquals(5, stats.getEvictionCount());
+        assertEquals(10, stats.getEntryCount());
+        assertEquals(-1, stats.getByteSize());
+    }
+
+    @Test
+    public void resetStartsFromNothing() {
+        StatsCounter counter = new StatsCounter();
+        counter.recordMiss();
+        counter.recordLoadSuccess(1000);
+        counter.recordEviction(EvictionCause.EXPLICIT);
+        counter.reset();
+
+        CacheStats stats = counter.snapshot(0, 0);
+        assertEquals(0, stats.getRequestCount());
+        assertEquals(1.0, stats.getHitRate(), 0);
+        assertEquals(0, stats.getLoadSuccessCount());
+        assertEquals(0, stats.getMaxLoadMicros());
+        assertEquals(0, stats.getEvictionCount());
+    }
+
+    @Test
+    public void concurrentRecordsAreAllCounted() throws InterruptedException {
+        final StatsCounter counter = new StatsCounter();
+        final int threads = 8;
+        final int records = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < records; i++) {
+                            counter.recordHit();
+                            if (i % 2 == 0) {
+                                counter.recordMiss();
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        assertTrue("recorders done", done.await(30, TimeUnit.SECONDS));
+
+        CacheStats stats = counter.snapshot(-1, -1);
+        assertEquals(threads * records, stats.getHitCount());
+        assertEquals(threads * records / 2, stats.getMissCount());
+    }
+}
@@ -0,0 +1,169 @@
+package com.frodo.app.framework.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TieredCacheTest {
+
+    @Test
+    public void writeBehindMergesTheWritesOfAKey() throws InterruptedException {
+        MapTier fast = new MapTier();
+        MapTier slow = new MapTier();
+        slow.blockPuts();
+        TieredCache<String, String> cache = new TieredCache<>(Arrays.asList(fast, slow), null,
+                TieredCache.WritePolicy.WRITE_BEHIND);
+
+        cache.put("a", "1");
+        assertTrue("write behind started", slow.putStarted.await(5, TimeUnit.SECONDS));
+        // queued while the write of "a" is blocked, only the last value reaches the slow tier
+        cache.put("b", "1");
+        cache.put("b", "2");
+        cache.put("b", "3");
+        assertEquals("3", cache.get("b"));
+        assertFalse(slow.isCached("b"));
+
+        slow.releasePuts();
+        assertTrue("flushed", cache.flush(5, TimeUnit.SECONDS));
+        assertEquals("1", slow.get("a"));
+        assertEquals("3", slow.get("b"));
+        assertEquals(Arrays.asList("a", "b"), slow.putKeys);
+        cache.shutdown();
+    }
+
+    @Test
+    public void evictWaitsForTheWriteOfTheKey() throws InterruptedException {
+        MapTier fast = new MapTier();
+        MapTier slow = new MapTier();
+        slow.blockPuts();
+        final TieredCache<String, String> cache = new TieredCache<>(Arrays.asList(fast, slow), null,
+                TieredCache.WritePolicy.WRITE_BEHIND);
+
+        cache.put("a", "1");
+        assertTrue("write behind started", slow.putStarted.await(5, TimeUnit.SECONDS));
+        final CountDownLatch evicted = new CountDownLatch(1);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                cache.evict("a");
+                evicted.countDown();
+            }
+        }).start();
+        assertFalse("evicted during the write", evicted.await(100, TimeUnit.MILLISECONDS));
+        slow.releasePuts();
+        assertTrue("evicted", evicted.await(5, TimeUnit.SECONDS));
+        assertFalse(slow.isCached("a"));
+        assertFalse(cache.isCached("a"));
+        cache.shutdown();
+    }
+
+    @Test
+    public void promotionKeepsTheTimeToLiveLeft() {
+        MapTier fast = new MapTier();
+        fast.setExpireAfterWrite(1, TimeUnit.HOURS);
+        MapTier slow = new MapTier();
+        slow.put("k", "v", 10, TimeUnit.SECONDS);
+        TieredCache<String, String> cache = new TieredCache<>(Arrays.asList(fast, slow), null,
+                TieredCache.WritePolicy.WRITE_THROUGH);
+
+        assertEquals("v", cache.get("k"));
+        long ttlMillis = fast.getRemainingTimeToLive("k", TimeUnit.MILLISECONDS);
+        assertTrue("time to live " + ttlMillis, ttlMillis > 0 && ttlMillis <= 10000);
+        assertEquals(ttlMillis, cache.getRemainingTimeToLive("k", TimeUnit.MILLISECONDS), 1000);
+
+        // without a time to live in the slower tier, the faster one applies its default
+        slow.put("kept", "v");
+        assertEquals("v", cache.get("kept"));
+        assertTrue(fast.getRemainingTimeToLive("kept", TimeUnit.MINUTES) > 10);
+        assertEquals(0, slow.getRemainingTimeToLive("kept", TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void writesGoThroughAfterShutdown() {
+        MapTier fast = new MapTier();
+        MapTier slow = new MapTier();
+        TieredCache<String, String> cache = new TieredCache<>(Arrays.asList(fast, slow), null,
+                TieredCache.WritePolicy.WRITE_BEHIND);
+        cache.shutdown();
+
+        cache.put("a", "1");
+        assertEquals("1", fast.get("a"));
+        assertEquals("1", slow.get("a"));
+        assertEquals(Collections.singletonList("a"), slow.putKeys);
+        assertNull(cache.get("missing"));
+    }
+
+    /**
+     * entries in a map, puts can be held up to observe the write behind
+     */
+    private static final class MapTier extends AbstractCache<String, String> {
+        final Map<String, String> entries = new ConcurrentHashMap<>();
+        final List<String> putKeys = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch putStarted = new CountDownLatch(1);
+        private volatile CountDownLatch putsReleased = new CountDownLatch(0);
+
+        MapTier() {
+            super(null, Type.INTERNAL);
+        }
+
+        void blockPuts() {
+            putsReleased = new CountDownLatch(1);
+        }
+
+        void releasePuts() {
+            putsReleased.countDown();
+        }
+
+        @Override
+        public String get(String key) {
+            return isExpired(key) ? null : entries.get(key);
+        }
+
+        @Override
+        public void put(String key, String value) {
+            putStarted.countDown();
+            try {
+                putsReleased.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            entries.put(key, value);
+            putKeys.add(key);
+            recordWrite(key);
+        }
+
+        @Override
+        public boolean isCached(String key) {
+            return entries.containsKey(key);
+        }
+
+        @Override
+        public boolean isExpired() {
+            return false;
+        }
+
+        @Override
+        public void evict(String key) {
+            entries.remove(key);
+            recordEvict(key);
+        }
+
+        @Override
+        public void evictAll() {
+            entries.clear();
+            recordEvictAll();
+        }
+    }
+}
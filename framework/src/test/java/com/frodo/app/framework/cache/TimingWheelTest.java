@@ -0,0 +1,129 @@
+package com.frodo.app.framework.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TimingWheelTest {
+
+    /**
+     * with a tick of 100 microseconds, level 0 covers 6.4 milliseconds and level 1 covers 409.6 milliseconds
+     */
+    private static final long TICK_MICROS = 100;
+
+    @Test
+    public void tasksCascadeDownTheLevelsAndRunInOrder() throws InterruptedException {
+        TimingWheel wheel = new TimingWheel("timing-wheel-test", TICK_MICROS, TimeUnit.MICROSECONDS);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch done = new CountDownLatch(3);
+        long start = System.nanoTime();
+
+        // scheduled from the highest level down, so the order of the runs comes from the cascades
+        Task level2 = new Task("level2", start, order, done);
+        Task level1 = new Task("level1", start, order, done);
+        Task level0 = new Task("level0", start, order, done);
+        TimingWheel.Timeout timeout2 = wheel.schedule(level2, 500, TimeUnit.MILLISECONDS);
+        TimingWheel.Timeout timeout1 = wheel.schedule(level1, 50, TimeUnit.MILLISECONDS);
+        TimingWheel.Timeout timeout0 = wheel.schedule(level0, 3, TimeUnit.MILLISECONDS);
+        assertEquals(3, wheel.pendingCount());
+
+        assertTrue("tasks run", done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("level0", "level1", "level2"), order);
+        assertTrue("level 0 task early", level0.elapsedNanos >= TimeUnit.MILLISECONDS.toNanos(3));
+        assertTrue("level 1 task early", level1.elapsedNanos >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue("level 2 task early", level2.elapsedNanos >= TimeUnit.MILLISECONDS.toNanos(500));
+        assertTrue(timeout0.isExpired());
+        assertTrue(timeout1.isExpired());
+        assertTrue(timeout2.isExpired());
+        assertFalse("expired task cancelled", timeout2.cancel());
+        assertEquals(0, wheel.pendingCount());
+    }
+
+    @Test
+    public void cancelledTaskNeverRuns() throws InterruptedException {
+        TimingWheel wheel = new TimingWheel("timing-wheel-test", TICK_MICROS, TimeUnit.MICROSECONDS);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch done = new CountDownLatch(2);
+        long start = System.nanoTime();
+
+        TimingWheel.Timeout cancelled = wheel.schedule(new Task("cancelled", start, order, done),
+                20, TimeUnit.MILLISECONDS);
+        wheel.schedule(new Task("kept", start, order, done), 100, TimeUnit.MILLISECONDS);
+        assertEquals(2, wheel.pendingCount());
+
+        assertTrue(cancelled.cancel());
+        assertTrue(cancelled.isCancelled());
+        assertFalse("cancelled twice", cancelled.cancel());
+        assertEquals(1, wheel.pendingCount());
+
+        // the kept task runs after the cancelled one would have, once its slot has cascaded to level 0
+        assertFalse("cancelled task ran", done.await(1, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("kept"), order);
+        assertFalse(cancelled.isExpired());
+        assertEquals(0, wheel.pendingCount());
+    }
+
+    @Test
+    public void shutdownCancelsThePendingTasks() throws InterruptedException {
+        TimingWheel wheel = new TimingWheel("timing-wheel-test", TICK_MICROS, TimeUnit.MICROSECONDS);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch done = new CountDownLatch(1);
+        TimingWheel.Timeout timeout = wheel.schedule(new Task("pending", System.nanoTime(), order, done),
+                20, TimeUnit.MILLISECONDS);
+
+        wheel.shutdown();
+        assertTrue(wheel.isShutdown());
+        assertTrue(timeout.isCancelled());
+        assertEquals(0, wheel.pendingCount());
+        assertFalse("task ran after shutdown", done.await(200, TimeUnit.MILLISECONDS));
+        try {
+            wheel.schedule(new Task("late", System.nanoTime(), order, done), 1, TimeUnit.MILLISECONDS);
+            fail("scheduled after shutdown");
+        } catch (IllegalStateException expected) {
+            // the wheel thread is gone
+        }
+        assertTrue(order.isEmpty());
+    }
+
+    @Test
+    public void defaultWheelIsCreatedAgainAfterShutdown() {
+        TimingWheel wheel = TimingWheel.getDefault();
+        TimingWheel.shutdownDefault();
+        assertTrue(wheel.isShutdown());
+        TimingWheel next = TimingWheel.getDefault();
+        assertFalse(next.isShutdown());
+        assertTrue(next != wheel);
+    }
+
+    private static final class Task implements Runnable {
+        private final String name;
+        private final long startNanos;
+        private final List<String> order;
+        private final CountDownLatch done;
+        volatile long elapsedNanos;
+
+        Task(String name, long startNanos, List<String> order, CountDownLatch done) {
+            this.name = name;
+            this.startNanos = startNanos;
+            this.order = order;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            elapsedNanos = System.nanoTime() - startNanos;
+            order.add(name);
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.frodo.app.framework.orm;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ChangeEventTest {
+
+    @Test
+    public void writeTypeOfStatements() {
+        assertEquals(ChangeEvent.Type.INSERT, ChangeEvent.getWriteType("INSERT INTO movie (title) VALUES (?)"));
+        assertEquals(ChangeEvent.Type.REPLACE, ChangeEvent.getWriteType("REPLACE INTO movie (title) VALUES (?)"));
+        assertEquals(ChangeEvent.Type.REPLACE, ChangeEvent.getWriteType("insert or replace into movie VALUES (?)"));
+        assertEquals(ChangeEvent.Type.UPDATE, ChangeEvent.getWriteType("  update movie SET year=? WHERE id=?"));
+        assertEquals(ChangeEvent.Type.DELETE, ChangeEvent.getWriteType("DELETE FROM movie WHERE id=?"));
+        assertEquals(ChangeEvent.Type.DELETE, ChangeEvent.getWriteType(
+                "WITH old AS (SELECT id FROM movie WHERE year<?) DELETE FROM movie WHERE id IN old"));
+    }
+
+    @Test
+    public void readsHaveNoWriteType() {
+        assertNull(ChangeEvent.getWriteType("SELECT COUNT(*) FROM movie WHERE title=?"));
+        assertNull(ChangeEvent.getWriteType("WITH recent AS (SELECT * FROM movie) SELECT updated FROM recent"));
+    }
+}
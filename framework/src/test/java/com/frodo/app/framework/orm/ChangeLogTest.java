@@ -0,0 +1,77 @@
+package com.frodo.app.framework.orm;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeLogTest {
+
+    @Test
+    public void consumersPollTheBatchesInCommitOrder() {
+        ChangeLog log = new ChangeLog(4);
+        ChangeLog.Consumer early = log.newConsumer();
+        log.append(events(1L, 2L));
+        ChangeLog.Consumer late = log.newConsumer();
+        log.append(events(3L));
+        log.append(Collections.<ChangeEvent>emptyList());
+
+        List<ChangeLog.Batch> batches = early.poll(10);
+        assertEquals(2, batches.size());
+        assertEquals(0, batches.get(0).getSequence());
+        assertEquals(2, batches.get(0).getEvents().size());
+        assertEquals(3L, batches.get(1).getEvents().get(0).getId());
+        assertEquals(0, early.getLag());
+        assertTrue(early.poll(10).isEmpty());
+
+        assertEquals(1, late.getLag());
+        assertEquals(1, late.poll(10).get(0).getSequence());
+        assertEquals(0, late.getLostBatchCount());
+    }
+
+    @Test
+    public void consumerFallingBehindLosesTheOldestBatches() {
+        ChangeLog log = new ChangeLog(3);
+        ChangeLog.Consumer consumer = log.newConsumer();
+        for (long id = 0; id < 5; id++) {
+            log.append(events(id));
+        }
+
+        assertEquals(5, consumer.getLag());
+        List<ChangeLog.Batch> first = consumer.poll(2);
+        assertEquals(2, consumer.getLostBatchCount());
+        assertEquals(2, first.size());
+        assertEquals(2, first.get(0).getSequence());
+        assertEquals(3, first.get(1).getSequence());
+        assertEquals(4, consumer.poll(2).get(0).getSequence());
+        assertEquals(5, consumer.getPosition());
+
+        // the ring wraps around, the oldest batch still in it is the one written capacity appends ago
+        ChangeLog.Consumer fromOldest = log.newConsumerFromOldest();
+        assertEquals(2, fromOldest.getPosition());
+        assertEquals(2L, fromOldest.poll(1).get(0).getEvents().get(0).getId());
+    }
+
+    @Test
+    public void disabledLogKeepsNothing() {
+        ChangeLog log = new ChangeLog(0);
+        assertFalse(log.isEnabled());
+        ChangeLog.Consumer consumer = log.newConsumerFromOldest();
+        log.append(events(1L));
+        assertTrue(consumer.poll(10).isEmpty());
+        assertEquals(0, consumer.getLag());
+    }
+
+    private static List<ChangeEvent> events(long... ids) {
+        List<ChangeEvent> events = new ArrayList<>();
+        for (long id : ids) {
+            events.add(new ChangeEvent(ChangeEvent.Type.INSERT, Object.class, id, null));
+        }
+        return events;
+    }
+}
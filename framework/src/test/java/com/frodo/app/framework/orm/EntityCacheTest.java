@@ -0,0 +1,174 @@
+package com.frodo.app.framework.orm;
+
+import com.frodo.app.framework.context.MicroContext;
+import com.frodo.app.framework.controller.IController;
+import com.frodo.app.framework.exception.DbException;
+import com.frodo.app.framework.orm.annotation.Cacheable;
+import com.frodo.app.framework.orm.annotation.Finder;
+import com.frodo.app.framework.orm.table.Table;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EntityCacheTest {
+
+    private MemoryDatabase db;
+    private EntityCache cache;
+    private Table directorTable;
+    private Director scott;
+
+    @Before
+    public void setUp() throws DbException {
+        IController controller = (IController) Proxy.newProxyInstance(IController.class.getClassLoader(),
+                new Class<?>[]{IController.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return null;
+                    }
+                });
+        DaoConfig config = new DaoConfig((MicroContext) null);
+        // a name per test: the finder columns query the database of the last table metadata created
+        config.setDbName("entity-cache-test-" + System.nanoTime());
+        db = new MemoryDatabase(controller, config);
+        cache = new EntityCache();
+        directorTable = Table.get(db, Director.class);
+
+        Director director = new Director();
+        director.setName("Ridley Scott");
+        db.saveBindingId(director);
+        Film alien = new Film();
+        alien.setTitle("alien");
+        alien.setDirectorId(director.getId());
+        db.save(alien);
+        scott = db.findById(Director.class, director.getId());
+    }
+
+    @After
+    public void tearDown() throws DbException {
+        db.dropDb();
+        db.close();
+    }
+
+    @Test
+    public void findsReturnCopiesByDefault() throws DbException {
+        EntityCache.Region region = cache.getRegion(Director.class);
+        region.put(directorTable, scott.getId(), scott, region.getVersion());
+
+        Director first = (Director) region.get(directorTable, scott.getId());
+        first.setName("changed by the caller");
+        Director second = (Director) region.get(directorTable, scott.getId());
+        assertTrue(first != second);
+        assertEquals("Ridley Scott", second.getName());
+        assertEquals(2, region.getHitCount());
+    }
+
+    @Test
+    public void everyCopyQueriesItsOwnChildren() throws DbException {
+        EntityCache.Region region = cache.getRegion(Director.class);
+        region.put(directorTable, scott.getId(), scott, region.getVersion());
+
+        Director first = (Director) region.get(directorTable, scott.getId());
+        assertEquals(1, first.getFilms().size());
+
+        Film gladiator = new Film();
+        gladiator.setTitle("gladiator");
+        gladiator.setDirectorId(scott.getId());
+        db.save(gladiator);
+        Director second = (Director) region.get(directorTable, scott.getId());
+        assertTrue(first.getFilms() != second.getFilms());
+        assertEquals(2, second.getFilms().size());
+    }
+
+    @Test
+    public void writeOfAReferredTypeInvalidatesTheReferrers() throws DbException {
+        EntityCache.Region region = cache.getRegion(Director.class);
+        long version = region.getVersion();
+        region.put(directorTable, scott.getId(), scott, version);
+        assertEquals(1, region.size());
+
+        // films are not cacheable, their directors still hold them
+        assertNull(cache.getRegion(Film.class));
+        cache.invalidate(Film.class);
+        assertEquals(0, region.size());
+        assertNull(region.get(directorTable, scott.getId()));
+
+        // a find which queried before the write does not cache its result
+        region.put(directorTable, scott.getId(), scott, version);
+        assertEquals(0, region.size());
+        region.put(directorTable, scott.getId(), scott, region.getVersion());
+        assertNotNull(region.get(directorTable, scott.getId()));
+    }
+
+    @Cacheable
+    public static class Director {
+        private long id;
+        private String name;
+        @Finder(valueColumn = "id", targetColumn = "directorId")
+        private List<Film> films;
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public List<Film> getFilms() {
+            return films;
+        }
+
+        public void setFilms(List<Film> films) {
+            this.films = films;
+        }
+    }
+
+    public static class Film {
+        private long id;
+        private String title;
+        private long directorId;
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public void setTitle(String title) {
+            this.title = title;
+        }
+
+        public long getDirectorId() {
+            return directorId;
+        }
+
+        public void setDirectorId(long directorId) {
+            this.directorId = directorId;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.frodo.app.framework.orm;
+
+import com.frodo.app.framework.context.MicroContext;
+import com.frodo.app.framework.controller.IController;
+import com.frodo.app.framework.exception.DbException;
+import com.frodo.app.framework.orm.annotation.Index;
+import com.frodo.app.framework.orm.annotation.Unique;
+import com.frodo.app.framework.orm.sql.Selector;
+import com.frodo.app.framework.orm.sql.WhereBuilder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MemoryDatabaseTest {
+
+    private MemoryDatabase db;
+
+    @Before
+    public void setUp() throws DbException {
+        IController controller = (IController) Proxy.newProxyInstance(IController.class.getClassLoader(),
+                new Class<?>[]{IController.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return null;
+                    }
+                });
+        DaoConfig config = new DaoConfig((MicroContext) null);
+        // table metadata are cached by db name
+        config.setDbName("memory-database-test");
+        db = new MemoryDatabase(controller, config);
+
+        List<Movie> movies = new ArrayList<>();
+        movies.add(new Movie("alien", 1979, "Ridley Scott"));
+        movies.add(new Movie("blade runner", 1982, "Ridley Scott"));
+        movies.add(new Movie("brazil", 1985, "Terry Gilliam"));
+        movies.add(new Movie("heat", 1995, "Michael Mann"));
+        movies.add(new Movie("gladiator", 2000, "Ridley Scott"));
+        movies.add(new Movie("collateral", 2004, "Michael Mann"));
+        db.saveAll(movies);
+    }
+
+    @After
+    public void tearDown() throws DbException {
+        db.dropDb();
+        db.close();
+    }
+
+    @Test
+    public void indexedColumnPredicates() throws DbException {
+        assertEquals(Collections.singletonList("heat"), titles(Selector.from(Movie.class).where("year", "=", 1995)));
+        assertEquals(Arrays.asList("alien", "brazil", "gladiator"), sortedTitles(Selector.from(Movie.class)
+                .where("year", "IN", Arrays.asList(1979, 1985, 2000, 2010))));
+        assertEquals(Arrays.asList("alien", "blade runner"), sortedTitles(Selector.from(Movie.class)
+                .where("year", "<", 1985)));
+        assertEquals(Arrays.asList("brazil", "gladiator", "heat"), sortedTitles(Selector.from(Movie.class)
+                .where("year", "BETWEEN", new int[]{1985, 2000})));
+        // an operand of another type gets the affinity of the column, as in sqlite
+        assertEquals(Collections.singletonList("heat"), titles(Selector.from(Movie.class).where("year", "=", "1995")));
+        assertEquals(6, db.count(Movie.class));
+    }
+
+    @Test
+    public void scannedColumnPredicates() throws DbException {
+        assertEquals(Arrays.asList("alien", "blade runner", "gladiator"), sortedTitles(Selector.from(Movie.class)
+                .where("director", "LIKE", "ridley%")));
+        assertEquals(Arrays.asList("brazil", "collateral", "heat"), sortedTitles(Selector.from(Movie.class)
+                .where("director", "=", "Terry Gilliam").or("director", "LIKE", "%mann")));
+        // AND binds tighter than OR
+        assertEquals(Arrays.asList("alien", "collateral"), sortedTitles(Selector.from(Movie.class)
+                .where("year", "<", 1980).or("director", "=", "Michael Mann").and("year", ">", 2000)));
+    }
+
+    @Test
+    public void orderByIndexedColumnWithLimitAndOffset() throws DbException {
+        assertEquals(Arrays.asList("blade runner", "brazil", "heat"), titles(Selector.from(Movie.class)
+                .orderBy("year").limit(3).offset(1)));
+        assertEquals(Arrays.asList("collateral", "gladiator"), titles(Selector.from(Movie.class)
+                .orderBy("year", true).limit(2)));
+        assertEquals(Arrays.asList("gladiator", "blade runner"), titles(Selector.from(Movie.class)
+                .where("director", "=", "Ridley Scott").orderBy("year", true).limit(2)));
+    }
+
+    @Test
+    public void updateAndDeleteKeepTheIndexesConsistent() throws DbException {
+        Movie heat = db.findFirst(Selector.from(Movie.class).where("title", "=", "heat"));
+        heat.setYear(1996);
+        db.update(heat);
+        assertEquals(Collections.<String>emptyList(), titles(Selector.from(Movie.class).where("year", "=", 1995)));
+        assertEquals(Collections.singletonList("heat"), titles(Selector.from(Movie.class).where("year", "=", 1996)));
+        assertEquals(Arrays.asList("brazil", "heat"), sortedTitles(Selector.from(Movie.class)
+                .where("year", "BETWEEN", new int[]{1985, 1999})));
+
+        db.delete(Movie.class, WhereBuilder.b("year", "<", 1985));
+        assertEquals(Collections.<String>emptyList(), titles(Selector.from(Movie.class).where("year", "=", 1979)));
+        assertEquals(Arrays.asList("brazil", "heat", "gladiator", "collateral"), titles(Selector.from(Movie.class)
+                .orderBy("year")));
+        // the deleted title is free again
+        db.save(new Movie("alien", 1986, "James Cameron"));
+        assertEquals(Collections.singletonList("alien"), titles(Selector.from(Movie.class).where("year", "=", 1986)));
+        assertEquals(5, db.count(Movie.class));
+    }
+
+    @Test
+    public void uniqueViolationRollsBackTheWholeWrite() throws DbException {
+        List<Movie> movies = new ArrayList<>();
+        movies.add(new Movie("ran", 1985, "Akira Kurosawa"));
+        movies.add(new Movie("heat", 2010, "somebody else"));
+        try {
+            db.saveAll(movies);
+            fail("unique title saved twice");
+        } catch (DbException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("UNIQUE constraint failed"));
+        }
+        assertEquals(6, db.count(Movie.class));
+        assertEquals(Collections.<String>emptyList(), titles(Selector.from(Movie.class).where("title", "=", "ran")));
+        assertEquals(Collections.singletonList("brazil"), titles(Selector.from(Movie.class).where("year", "=", 1985)));
+        assertEquals(Collections.<String>emptyList(), titles(Selector.from(Movie.class).where("year", "=", 2010)));
+    }
+
+    @Test
+    public void leadingGroupHasNoConjunction() throws DbException {
+        WhereBuilder group = WhereBuilder.b("director", "=", "Michael Mann").or("year", "<", 1980);
+        assertEquals(Arrays.asList("alien", "collateral", "heat"), sortedTitles(Selector.from(Movie.class)
+                .where(WhereBuilder.b().and(group))));
+        assertEquals(Arrays.asList("alien", "heat"), sortedTitles(Selector.from(Movie.class)
+                .where(WhereBuilder.b().or(group)).and("year", "<", 2000)));
+        assertEquals(Arrays.asList("alien", "heat"), sortedTitles(Selector.from(Movie.class)
+                .where(WhereBuilder.b().and(group).and("year", "<", 2000))));
+    }
+
+    private List<String> titles(Selector selector) throws DbException {
+        List<Movie> movies = db.findAll(selector);
+        List<String> titles = new ArrayList<>();
+        for (Movie movie : movies) {
+            titles.add(movie.getTitle());
+        }
+        return titles;
+    }
+
+    private List<String> sortedTitles(Selector selector) throws DbException {
+        List<String> titles = titles(selector);
+        Collections.sort(titles);
+        return titles;
+    }
+
+    public static class Movie {
+        private long id;
+        @Unique
+        private String title;
+        @Index
+        private int year;
+        private String director;
+
+        public Movie() {
+        }
+
+        Movie(String title, int year, String director) {
+            this.title = title;
+            this.year = year;
+            this.director = director;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public void setTitle(String title) {
+            this.title = title;
+        }
+
+        public int getYear() {
+            return year;
+        }
+
+        public void setYear(int year) {
+            this.year = year;
+        }
+
+        public String getDirector() {
+            return director;
+        }
+
+        public void setDirector(String director) {
+            this.director = director;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.frodo.app.framework.orm;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class PersistentTreeMapTest {
+
+    @Test
+    public void matchesATreeMapAndKeepsItsSnapshots() {
+        Random random = new Random(42);
+        TreeMap<Object, String> expected = new TreeMap<Object, String>(SqlValues.COMPARATOR);
+        PersistentTreeMap<Object, String> map = PersistentTreeMap.empty(SqlValues.COMPARATOR);
+        for (int i = 0; i < 2000; i++) {
+            long key = random.nextInt(500);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.remove(key);
+            } else {
+                expected.put(key, "v" + i);
+                map = map.put(key, "v" + i);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        assertEquals(new ArrayList<Object>(expected.keySet()), list(map.keys()));
+        assertEquals(new ArrayList<String>(expected.descendingMap().values()), list(map.values(true)));
+        for (long key = 0; key < 500; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+
+        PersistentTreeMap<Object, String> snapshot = map;
+        List<Object> snapshotKeys = list(snapshot.keys());
+        for (Map.Entry<Object, String> entry : expected.entrySet()) {
+            map = map.remove(entry.getKey());
+        }
+        assertEquals(0, map.size());
+        assertEquals(snapshotKeys, list(snapshot.keys()));
+        assertEquals(expected.size(), snapshot.size());
+    }
+
+    @Test
+    public void rangesHonourTheirBounds() {
+        PersistentTreeMap<Object, String> map = PersistentTreeMap.empty(SqlValues.COMPARATOR);
+        for (long key = 1; key <= 9; key++) {
+            map = map.put(key, String.valueOf(key));
+        }
+        assertEquals(Arrays.asList("1", "2", "3"), list(map.headValues(3L, true)));
+        assertEquals(Arrays.asList("1", "2"), list(map.headValues(3L, false)));
+        assertEquals(Arrays.asList("8", "9"), list(map.tailValues(8L, true)));
+        assertEquals(Collections.singletonList("9"), list(map.tailValues(8L, false)));
+        assertEquals(Arrays.asList("4", "5", "6"), list(map.subValues(4L, true, 6L, true)));
+        assertEquals(Collections.singletonList("5"), list(map.subValues(4L, false, 6L, false)));
+        assertEquals(Collections.<String>emptyList(), list(map.tailValues(10L, true)));
+    }
+
+    @Test
+    public void nullIsAKeyAsAnyOther() {
+        PersistentTreeMap<Object, String> map = PersistentTreeMap.<Object, String>empty(SqlValues.COMPARATOR)
+                .put(1L, "one").put(null, "null");
+        assertEquals("null", map.get(null));
+        // null sorts first
+        assertEquals(Arrays.asList("null", "one"), list(map.values(false)));
+        assertEquals(Collections.singletonList("null"), list(map.headValues(1L, false)));
+        assertSame(map, map.put(1L, map.get(1L)));
+        assertNull(map.remove(null).get(null));
+        assertSame(map, map.remove(2L));
+    }
+
+    private static <T> List<T> list(Iterable<T> iterable) {
+        List<T> list = new ArrayList<T>();
+        for (T t : iterable) {
+            list.add(t);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,88 @@
+package com.frodo.app.framework.orm.sql;
+
+import com.frodo.app.framework.orm.CompiledStatement;
+
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class BindArgsTest {
+
+    @Test
+    public void valuesKeepTheirTypeAndGrowPastTheCapacity() {
+        BindArgs args = new BindArgs(1);
+        byte[] blob = {1, 2};
+        args.add(7);
+        args.add(2.5f);
+        args.add(true);
+        args.add("title");
+        args.add(blob);
+        args.add(null);
+        args.addString(null);
+
+        assertEquals(7, args.size());
+        assertEquals(BindArgs.TYPE_LONG, args.getType(0));
+        assertEquals(BindArgs.TYPE_DOUBLE, args.getType(1));
+        assertEquals(BindArgs.TYPE_LONG, args.getType(2));
+        assertEquals(BindArgs.TYPE_STRING, args.getType(3));
+        assertEquals(BindArgs.TYPE_BLOB, args.getType(4));
+        assertEquals(BindArgs.TYPE_NULL, args.getType(5));
+        assertEquals(BindArgs.TYPE_NULL, args.getType(6));
+
+        assertEquals(2.5, args.getDouble(1), 0);
+        assertEquals(2, args.getLong(1));
+        assertEquals(1, args.getLong(2));
+        assertEquals(Arrays.<Object>asList(7L, 2.5, 1L, "title", blob, null, null), Arrays.asList(args.toArray()));
+        assertEquals(Arrays.asList("7", "2.5", "1", "title", new String(blob), null, null),
+                Arrays.asList(args.toStringArray()));
+    }
+
+    @Test
+    public void clearKeepsTheArraysAndForgetsTheValues() {
+        BindArgs args = new BindArgs(2);
+        args.addString("a");
+        args.addLong(1);
+        args.clear();
+        assertEquals(0, args.size());
+        try {
+            args.get(0);
+            fail("read a cleared value");
+        } catch (IndexOutOfBoundsException expected) {
+            // cleared
+        }
+        args.addDouble(-0.5);
+        assertEquals(-0.5, args.get(0));
+        assertNull(args.getBlob(0));
+    }
+
+    @Test
+    public void valuesAreBoundWithTheirTypeFromIndexOne() {
+        BindArgs args = new BindArgs();
+        args.addLong(Long.MAX_VALUE);
+        args.addDouble(0.1);
+        args.addString("x");
+        args.addNull();
+        final List<String> calls = new ArrayList<>();
+        CompiledStatement statement = (CompiledStatement) Proxy.newProxyInstance(CompiledStatement.class.getClassLoader(),
+                new Class<?>[]{CompiledStatement.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] methodArgs) {
+                        Class<?>[] parameterTypes = method.getParameterTypes();
+                        calls.add(method.getName() + " " + methodArgs[0]
+                                + (parameterTypes.length > 1 ? " " + parameterTypes[1].getSimpleName() + " " + methodArgs[1] : ""));
+                        return null;
+                    }
+                });
+        args.bindTo(statement);
+        assertEquals(Arrays.asList("bind 1 long " + Long.MAX_VALUE, "bind 2 double 0.1", "bind 3 String x", "bindNull 4"), calls);
+    }
+}
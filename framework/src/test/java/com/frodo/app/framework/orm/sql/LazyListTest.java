@@ -0,0 +1,148 @@
+package com.frodo.app.framework.orm.sql;
+
+import com.frodo.app.framework.context.MicroContext;
+import com.frodo.app.framework.controller.IController;
+import com.frodo.app.framework.exception.DbException;
+import com.frodo.app.framework.orm.DaoConfig;
+import com.frodo.app.framework.orm.MemoryDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LazyListTest {
+
+    private MemoryDatabase db;
+
+    @Before
+    public void setUp() throws DbException {
+        IController controller = (IController) Proxy.newProxyInstance(IController.class.getClassLoader(),
+                new Class<?>[]{IController.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return null;
+                    }
+                });
+        DaoConfig config = new DaoConfig((MicroContext) null);
+        config.setDbName("lazy-list-test");
+        db = new MemoryDatabase(controller, config);
+        db.saveAll(Arrays.asList(new Film("alien", 1), new Film("blade runner", 1), new Film("heat", 2)));
+    }
+
+    @After
+    public void tearDown() throws DbException {
+        db.dropDb();
+        db.close();
+    }
+
+    @Test
+    public void loadedListIsReloadedAfterAWrite() throws DbException {
+        LazyList<Film> films = new LazyList<Film>(db, Film.class, "directorId", 1L, 0);
+        assertEquals(Arrays.asList("alien", "blade runner"), titles(films));
+        assertTrue(films.isLoaded());
+
+        db.save(new Film("gladiator", 1));
+        assertEquals(Arrays.asList("alien", "blade runner", "gladiator"), titles(films));
+        // a write of another director's film moves the version too, the list is the same once reloaded
+        db.save(new Film("collateral", 2));
+        assertEquals(3, films.size());
+    }
+
+    @Test
+    public void pagedListRecountsAndReloadsItsPages() throws DbException {
+        LazyList<Film> films = new LazyList<Film>(db, Film.class, "directorId", 1L, 1);
+        assertEquals(2, films.size());
+        assertEquals("blade runner", films.get(1).getTitle());
+
+        db.delete(Film.class, WhereBuilder.b("title", "=", "alien"));
+        assertEquals(1, films.size());
+        assertEquals("blade runner", films.get(0).getTitle());
+    }
+
+    @Test
+    public void iteratorFailsFastWhenTheListIsReloaded() throws DbException {
+        LazyList<Film> films = new LazyList<Film>(db, Film.class, "directorId", 1L, 0);
+        Iterator<Film> iterator = films.iterator();
+        iterator.next();
+        db.save(new Film("gladiator", 1));
+        try {
+            // hasNext() reloads the list
+            assertTrue(iterator.hasNext());
+            iterator.next();
+            fail("iterated over a reloaded list");
+        } catch (ConcurrentModificationException expected) {
+            // the caller iterates again
+        }
+        // a new iterator starts from the reloaded list
+        assertEquals(Arrays.asList("alien", "blade runner", "gladiator"), titles(films));
+    }
+
+    @Test
+    public void listModifiedByTheCallerIsKept() throws DbException {
+        LazyList<Film> films = new LazyList<Film>(db, Film.class, "directorId", 1L, 0);
+        films.add(new Film("not saved yet", 1));
+        db.save(new Film("gladiator", 1));
+        assertEquals(Arrays.asList("alien", "blade runner", "not saved yet"), titles(films));
+        assertFalse(films.isEmpty());
+    }
+
+    private static List<String> titles(List<Film> films) {
+        List<String> titles = new ArrayList<>();
+        for (Film film : films) {
+            titles.add(film.getTitle());
+        }
+        return titles;
+    }
+
+    public static class Film {
+        private long id;
+        private String title;
+        private long directorId;
+
+        public Film() {
+        }
+
+        Film(String title, long directorId) {
+            this.title = title;
+            this.directorId = directorId;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public void setTitle(String title) {
+            this.title = title;
+        }
+
+        public long getDirectorId() {
+            return directorId;
+        }
+
+        public void setDirectorId(long directorId) {
+            this.directorId = directorId;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.frodo.app.framework.orm.sql;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SelectorTest {
+
+    @Test
+    public void whereInBindsEveryKeyOnce() {
+        Selector selector = Selector.from(Film.class).whereIn("id", Arrays.asList(3L, 1L, 3L, 2L, 1L, 4L));
+        assertEquals(Arrays.<Object>asList(3L, 1L, 2L, 4L), selector.getInKeys());
+
+        List<SqlInfo> sqlInfos = selector.toSqlInfos(3);
+        assertEquals(2, sqlInfos.size());
+        assertEquals(Arrays.<Object>asList(3L, 1L, 2L), Arrays.asList(sqlInfos.get(0).getBindArgsAsArray()));
+        assertEquals(Collections.<Object>singletonList(4L), Arrays.asList(sqlInfos.get(1).getBindArgsAsArray()));
+        assertTrue(sqlInfos.get(0).getSql().contains("IN (?,?,?)"));
+        assertTrue(sqlInfos.get(1).getSql().contains("IN (?)"));
+    }
+
+    @Test
+    public void fullChunksShareTheirSqlAndKeepTheWhereClause() {
+        List<Long> keys = new ArrayList<>();
+        for (long key = 0; key < 7; key++) {
+            keys.add(key);
+        }
+        Selector selector = Selector.from(Film.class).where("directorId", "=", 9L).whereIn("id", keys);
+        List<SqlInfo> sqlInfos = selector.toSqlInfos(3);
+        assertEquals(3, sqlInfos.size());
+        assertSame(sqlInfos.get(0).getSql(), sqlInfos.get(1).getSql());
+        assertEquals(Arrays.<Object>asList(3L, 4L, 5L), Arrays.asList(sqlInfos.get(1).getBindArgsAsArray()));
+        assertEquals(Collections.<Object>singletonList(6L), Arrays.asList(sqlInfos.get(2).getBindArgsAsArray()));
+        for (SqlInfo sqlInfo : sqlInfos) {
+            assertTrue(sqlInfo.getSql(), sqlInfo.getSql().contains("directorId"));
+        }
+        assertTrue(selector.isChunkable());
+        assertFalse(selector.orderBy("id").isChunkable());
+    }
+
+    public static class Film {
+        private long id;
+        private long directorId;
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+
+        public long getDirectorId() {
+            return directorId;
+        }
+
+        public void setDirectorId(long directorId) {
+            this.directorId = directorId;
+        }
+    }
+}
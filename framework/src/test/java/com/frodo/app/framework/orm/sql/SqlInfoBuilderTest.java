@@ -0,0 +1,95 @@
+package com.frodo.app.framework.orm.sql;
+
+import com.frodo.app.framework.context.MicroContext;
+import com.frodo.app.framework.controller.IController;
+import com.frodo.app.framework.exception.DbException;
+import com.frodo.app.framework.orm.DaoConfig;
+import com.frodo.app.framework.orm.MemoryDatabase;
+import com.frodo.app.framework.orm.annotation.FullText;
+import com.frodo.app.framework.orm.annotation.Id;
+import com.frodo.app.framework.orm.annotation.Table;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SqlInfoBuilderTest {
+
+    private MemoryDatabase db;
+
+    @Before
+    public void setUp() {
+        IController controller = (IController) Proxy.newProxyInstance(IController.class.getClassLoader(),
+                new Class<?>[]{IController.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return null;
+                    }
+                });
+        DaoConfig config = new DaoConfig((MicroContext) null);
+        config.setDbName("sql-info-builder-test");
+        db = new MemoryDatabase(controller, config);
+    }
+
+    @After
+    public void tearDown() throws DbException {
+        db.dropDb();
+        db.close();
+    }
+
+    @Test
+    public void replacedRowLeavesTheFullTextTableBeforeTheInsert() throws DbException {
+        List<SqlInfo> sqlInfos = SqlInfoBuilder.buildCreateFullTextSqlInfos(db, Article.class);
+        String tableName = "article";
+        String replaceTrigger = null;
+        for (SqlInfo sqlInfo : sqlInfos) {
+            if (sqlInfo.getSql().contains(" BEFORE INSERT ON ")) {
+                replaceTrigger = sqlInfo.getSql();
+            }
+        }
+        assertEquals("CREATE TRIGGER IF NOT EXISTS " + tableName + "_fts_bi BEFORE INSERT ON " + tableName
+                + " BEGIN DELETE FROM " + tableName + "_fts WHERE docid IN (SELECT rowid FROM " + tableName
+                + " WHERE \"slug\" = new.\"slug\"); END", replaceTrigger);
+        assertEquals(tableName + "_fts_bi", SqlInfoBuilder.getFullTextReplaceTriggerName(tableName));
+    }
+
+    @Test
+    public void dropRemovesTheReplaceTrigger() {
+        List<SqlInfo> sqlInfos = SqlInfoBuilder.buildDropFullTextSqlInfos("article");
+        assertEquals(5, sqlInfos.size());
+        assertEquals("DROP TRIGGER IF EXISTS article_fts_bi", sqlInfos.get(0).getSql());
+        assertTrue(sqlInfos.get(4).getSql().startsWith("DROP TABLE"));
+    }
+
+    @Table(name = "article")
+    public static class Article {
+        @Id
+        private String slug;
+        @FullText
+        private String body;
+
+        public String getSlug() {
+            return slug;
+        }
+
+        public void setSlug(String slug) {
+            this.slug = slug;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public void setBody(String body) {
+            this.body = body;
+        }
+    }
+}
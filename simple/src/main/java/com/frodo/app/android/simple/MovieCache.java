@@ -5,41 +5,58 @@ import com.frodo.app.android.core.toolbox.HashUtils;
 import com.frodo.app.android.simple.entity.Movie;
 import com.frodo.app.framework.cache.AbstractCache;
 import com.frodo.app.framework.cache.CacheSystem;
+import com.frodo.app.framework.cache.EvictionCause;
 import com.frodo.app.framework.filesystem.FileSystem;
 import com.frodo.app.framework.log.Logger;
 
 import java.io.File;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by frodo on 2015/7/23.
  */
 public class MovieCache extends AbstractCache<String, List<Movie>> {
 
+    private static final java.lang.reflect.Type MOVIES_TYPE = new TypeReference<List<Movie>>() {
+    }.getType();
+
     public MovieCache(CacheSystem cacheSystem, Type type) {
         super(cacheSystem, type);
     }
 
     @Override
     public List<Movie> get(String key) {
-        if (isCached(key)) {
-            return getCacheSystem().findCacheFromDisk(createAbsoluteKey(key), new TypeReference<List<Movie>>() {
-            });
+        // an expired entry the timing wheel has not evicted yet is a miss
+        if (!evictIfExpired(key) && isCached(key)) {
+            List<Movie> movies = getCacheSystem().findCacheByType(createAbsoluteKey(key), MOVIES_TYPE, getType());
+            if (movies != null) {
+                getStatsCounter().recordHit();
+                return movies;
+            }
         }
+        getStatsCounter().recordMiss();
         return null;
     }
 
     @Override
     public void put(String key, List<Movie> value) {
-        getCacheSystem().put(createAbsoluteKey(key), value, getType());
+        put(key, value, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * the time to live is stored with the entry, so a disk entry still expires after a restart
+     */
+    @Override
+    public void put(String key, List<Movie> value, long ttl, TimeUnit unit) {
+        long ttlNanos = getTimeToLive(ttl, unit);
+        getCacheSystem().put(createAbsoluteKey(key), value, getType(), ttlNanos, TimeUnit.NANOSECONDS);
+        recordWrite(key, ttlNanos);
     }
 
     @Override
     public boolean isCached(String key) {
-        if (getType().equals(Type.DISK)) {
-            return getCacheSystem().existCacheInDisk(createAbsoluteKey(key));
-        }
-        return false;
+        return getCacheSystem().existCacheByType(createAbsoluteKey(key), getType());
     }
 
     @Override
@@ -47,9 +64,31 @@ public class MovieCache extends AbstractCache<String, List<Movie>> {
         return false;
     }
 
+    @Override
+    public void evict(String key) {
+        evict(key, EvictionCause.EXPLICIT);
+        recordEvict(key);
+    }
+
+    /**
+     * removes the entry of this type only
+     */
+    @Override
+    protected void evict(String key, EvictionCause cause) {
+        getCacheSystem().evict(createAbsoluteKey(key), getType(), cause);
+    }
+
+    /**
+     * evicts the entries written through this cache, the cache system stores the entries of other caches too
+     */
     @Override
     public void evictAll() {
-        getCacheSystem().evict("");
+        evictAllWritten();
+    }
+
+    @Override
+    protected String getSystemKey(String key) {
+        return createAbsoluteKey(key);
     }
 
     private String createAbsoluteKey(String relativeKey) {
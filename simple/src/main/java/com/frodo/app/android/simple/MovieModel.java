@@ -5,6 +5,8 @@ import com.frodo.app.android.core.task.AndroidFetchNetworkDataTask;
 import com.frodo.app.android.core.toolbox.JsonConverter;
 import com.frodo.app.android.simple.entity.Movie;
 import com.frodo.app.framework.cache.Cache;
+import com.frodo.app.framework.cache.CacheSystem;
+import com.frodo.app.framework.cache.TieredCache;
 import com.frodo.app.framework.controller.AbstractModel;
 import com.frodo.app.framework.controller.MainController;
 import com.frodo.app.framework.net.Request;
@@ -13,7 +15,9 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import rx.Subscriber;
 
@@ -22,7 +26,7 @@ import rx.Subscriber;
  */
 public class MovieModel extends AbstractModel {
     private AndroidFetchNetworkDataTask fetchNetworkDataTask;
-    private MovieCache movieCache;
+    private TieredCache<String, List<Movie>> movieCache;
     private boolean enableCached;
 
     private List<Movie> movies;
@@ -30,10 +34,22 @@ public class MovieModel extends AbstractModel {
     public MovieModel(MainController controller) {
         super(controller);
         if (enableCached) {
-            movieCache = new MovieCache(getMainController().getCacheSystem(), Cache.Type.DISK);
+            movieCache = createMovieCache();
         }
     }
 
+    /**
+     * memory first, the disk copy is written behind and promoted to memory on the next launch
+     */
+    private TieredCache<String, List<Movie>> createMovieCache() {
+        CacheSystem cacheSystem = getMainController().getCacheSystem();
+        MovieCache memoryTier = new MovieCache(cacheSystem, Cache.Type.INTERNAL);
+        memoryTier.setExpireAfterWrite(10, TimeUnit.MINUTES);
+        MovieCache diskTier = new MovieCache(cacheSystem, Cache.Type.DISK);
+        diskTier.setExpireAfterWrite(1, TimeUnit.DAYS);
+        return new TieredCache<>(Arrays.asList(memoryTier, diskTier), null, TieredCache.WritePolicy.WRITE_BEHIND);
+    }
+
     public void loadMoviesWithRxjava(final Subscriber<? super List<Movie>> subscriber) {
         Request request = new Request("GET", Path.movie_popular);
         request.addQueryParam("page", "1");
@@ -107,7 +123,7 @@ public class MovieModel extends AbstractModel {
         this.enableCached = enableCached;
 
         if (movieCache == null) {
-            movieCache = new MovieCache(getMainController().getCacheSystem(), Cache.Type.DISK);
+            movieCache = createMovieCache();
         }
     }
 